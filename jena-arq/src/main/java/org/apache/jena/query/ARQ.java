@@ -556,6 +556,32 @@ public class ARQ
     // TDB reorders based on stats when the input binding is known.
     public static final Symbol optReorderBGP = SystemARQ.allocSymbol("optReorderBGP");
 
+    /**
+     * Context key controlling whether basic graph patterns are executed adaptively:
+     * the join order is re-planned during execution using the measured fan-out of
+     * each remaining triple pattern over a sample of the partial results.
+     * <p>By default, this is not applied.
+     * @see org.apache.jena.sparql.engine.main.solver.SolverAdaptive
+     */
+    public static final Symbol optAdaptiveBGP = SystemARQ.allocSymbol("optAdaptiveBGP");
+
+    /**
+     * Context key controlling whether joins, filters, projection and extend exchange
+     * intermediate results in batches of rows held as columns.
+     * <p>By default, this is not applied.
+     * @see org.apache.jena.sparql.engine.batch.BatchExec
+     */
+    public static final Symbol optBatchExecution = SystemARQ.allocSymbol("optBatchExecution");
+
+    /**
+     * Context key controlling whether parts of a query are executed in parallel:
+     * the branches of a UNION, the two sides of a join, and partitions of a basic
+     * graph pattern. Results are passed back through bounded queues.
+     * <p>By default, this is not applied.
+     * @see org.apache.jena.sparql.engine.iterator.QueryIterParallel
+     */
+    public static final Symbol optParallelExecution = SystemARQ.allocSymbol("optParallelExecution");
+
     /**
      *  Context key controlling whether the main query engine processes property functions.
      *  <p>By default, this is applied.
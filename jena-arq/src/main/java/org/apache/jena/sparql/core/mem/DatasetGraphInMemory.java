@@ -50,7 +50,7 @@ import org.slf4j.Logger;
  * A {@link DatasetGraph} backed by an {@link QuadTable}. By default, this is a
  * {@link HexTable} designed for high-speed in-memory operation.
  */
-public class DatasetGraphInMemory extends DatasetGraphTriplesQuads implements Transactional {
+public class DatasetGraphInMemory extends DatasetGraphTriplesQuads implements Transactional, TransactionalDataVersion {
 
     private static final Logger log = getLogger(DatasetGraphInMemory.class);
 
@@ -106,6 +106,13 @@ public class DatasetGraphInMemory extends DatasetGraphTriplesQuads implements Tr
         return transactionType.get();
     }
 
+    @Override
+    public long getDataVersion() {
+        if (!isInTransaction())
+            throw new JenaTransactionException("Not in a transaction");
+        return version.get();
+    }
+
     private void transactionMode(final ReadWrite readWrite) {
         transactionMode.set(readWrite);
     }
@@ -212,14 +212,19 @@ public class ExecutionContext implements FunctionEnv
         return cancelSignal;
     }
 
+    // Iterators may be created and closed on worker threads (see QueryIterParallel).
     public void openIterator(QueryIterator qIter) {
-        openIterators.add(qIter);
-        if ( allIterators != null )
-            allIterators.add(qIter);
+        synchronized (openIterators) {
+            openIterators.add(qIter);
+            if ( allIterators != null )
+                allIterators.add(qIter);
+        }
     }
 
     public void closedIterator(QueryIterator qIter) {
-        openIterators.remove(qIter);
+        synchronized (openIterators) {
+            openIterators.remove(qIter);
+        }
     }
 
     public Iterator<QueryIterator> listOpenIterators() {
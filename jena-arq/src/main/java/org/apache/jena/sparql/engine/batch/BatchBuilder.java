@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.batch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+
+/**
+ * Build {@link BindingBatch BindingBatches} row by row.
+ * <p>
+ * A column is added the first time a variable is seen; earlier rows are unbound for
+ * it. Column numbers are stable for the life of the builder, so the mapping from the
+ * columns of an input batch ({@link #columns(BindingBatch)}) can be reused across
+ * calls of {@link #build()}.
+ */
+class BatchBuilder {
+    private final int limit;
+    private final List<Var> vars = new ArrayList<>();
+    private final List<Node[]> columns = new ArrayList<>();
+    private int capacity;
+    private int rows = 0;
+
+    /** A builder for batches of about {@code limit} rows; see {@link #isFull()}. */
+    BatchBuilder(int limit) {
+        this.limit = limit;
+        this.capacity = initialCapacity();
+    }
+
+    // Columns grow as needed; the limit may be "no limit".
+    private int initialCapacity() {
+        return Math.max(1, Math.min(limit, 1024));
+    }
+
+    /** Column for a variable, adding one if necessary. */
+    int column(Var var) {
+        int idx = vars.indexOf(var);
+        if ( idx >= 0 )
+            return idx;
+        vars.add(var);
+        columns.add(new Node[capacity]);
+        return vars.size()-1;
+    }
+
+    /** Builder column for each column of {@code batch}. */
+    int[] columns(BindingBatch batch) {
+        int[] map = new int[batch.columnCount()];
+        for ( int i = 0 ; i < map.length ; i++ )
+            map[i] = column(batch.var(i));
+        return map;
+    }
+
+    private void ensureRow() {
+        if ( rows < capacity )
+            return;
+        capacity = capacity * 2;
+        for ( int i = 0 ; i < columns.size() ; i++ )
+            columns.set(i, Arrays.copyOf(columns.get(i), capacity));
+    }
+
+    void add(Binding binding) {
+        ensureRow();
+        binding.forEach((v, n) -> columns.get(column(v))[rows] = n);
+        rows++;
+    }
+
+    /** Add a physical row of a batch; {@code map} is from {@link #columns(BindingBatch)}. */
+    void add(BindingBatch batch, int[] map, int row) {
+        ensureRow();
+        set(batch, map, row);
+        rows++;
+    }
+
+    /** Add the merge of two compatible rows. */
+    void add(BindingBatch batch1, int[] map1, int row1, BindingBatch batch2, int[] map2, int row2) {
+        ensureRow();
+        set(batch1, map1, row1);
+        set(batch2, map2, row2);
+        rows++;
+    }
+
+    private void set(BindingBatch batch, int[] map, int row) {
+        for ( int i = 0 ; i < map.length ; i++ ) {
+            Node n = batch.get(i, row);
+            if ( n != null )
+                columns.get(map[i])[rows] = n;
+        }
+    }
+
+    int size() {
+        return rows;
+    }
+
+    boolean isEmpty() {
+        return rows == 0;
+    }
+
+    boolean isFull() {
+        return rows >= limit;
+    }
+
+    /** The rows so far as a batch. The builder is reset and can be used again. */
+    BindingBatch build() {
+        Var[] batchVars = vars.toArray(new Var[vars.size()]);
+        Node[][] batchColumns = columns.toArray(new Node[columns.size()][]);
+        BindingBatch batch = new BindingBatch(batchVars, batchColumns, rows);
+        capacity = initialCapacity();
+        rows = 0;
+        for ( int i = 0 ; i < columns.size() ; i++ )
+            columns.set(i, new Node[capacity]);
+        return batch;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.batch;
+
+import java.util.List;
+
+import org.apache.jena.query.ARQ;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.core.VarExprList;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.util.Context;
+
+/**
+ * Batch execution of join, filter, project and extend.
+ * <p>
+ * Intermediate results between these operators are exchanged as
+ * {@link BindingBatch BindingBatches} of up to {@link #BatchSize} rows held as
+ * columns of nodes, rather than one {@code Binding} object per row. Each operation
+ * takes and returns a {@link QueryIterator}; when the input is itself a batch
+ * operator, the batches are passed along directly.
+ * <p>
+ * Enabled by the context setting {@link ARQ#optBatchExecution}.
+ */
+public class BatchExec {
+
+    /** Number of rows in a batch. */
+    public static int BatchSize = 1000;
+
+    /** Test whether batch execution is enabled. */
+    public static boolean isEnabled(ExecutionContext execCxt) {
+        Context context = execCxt.getContext();
+        return context != null && context.isTrue(ARQ.optBatchExecution);
+    }
+
+    public static QueryIterator filter(QueryIterator input, ExprList exprs, ExecutionContext execCxt) {
+        BatchIterator batches = new BatchIterFilter(QueryIterBatch.batches(input), exprs, execCxt);
+        return new QueryIterBatch(batches, execCxt);
+    }
+
+    public static QueryIterator project(QueryIterator input, List<Var> vars, ExecutionContext execCxt) {
+        BatchIterator batches = new BatchIterProject(QueryIterBatch.batches(input), vars);
+        return new QueryIterBatch(batches, execCxt);
+    }
+
+    public static QueryIterator extend(QueryIterator input, VarExprList exprs, ExecutionContext execCxt) {
+        BatchIterator batches = new BatchIterExtend(QueryIterBatch.batches(input), exprs, execCxt);
+        return new QueryIterBatch(batches, execCxt);
+    }
+
+    /** Hash join; the right side is read into memory. */
+    public static QueryIterator join(QueryIterator left, QueryIterator right, ExecutionContext execCxt) {
+        BatchIterator batches = new BatchIterHashJoin(QueryIterBatch.batches(left), QueryIterBatch.batches(right), BatchSize);
+        return new QueryIterBatch(batches, execCxt);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.batch;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.core.VarExprList;
+import org.apache.jena.sparql.engine.ExecutionContext;
+
+/**
+ * Extend each batch with the values of expressions, as for
+ * {@link org.apache.jena.sparql.engine.iterator.QueryIterAssign}: each expression
+ * adds a column and can see the columns added before it. An expression that fails to
+ * evaluate leaves the variable unbound. A row where the variable is already bound to a
+ * different value is dropped.
+ */
+class BatchIterExtend extends BatchIterProcess {
+    private final VarExprList exprs;
+    private final ExecutionContext execCxt;
+
+    BatchIterExtend(BatchIterator input, VarExprList exprs, ExecutionContext execCxt) {
+        super(input);
+        this.exprs = exprs;
+        this.execCxt = execCxt;
+    }
+
+    @Override
+    protected BindingBatch process(BindingBatch batch) {
+        for ( Var v : exprs.getVars() ) {
+            Node[] existing = batch.columnArray(v);
+            Node[] column = ( existing == null ) ? new Node[batch.physicalRows()] : existing.clone();
+            int[] selected = new int[batch.size()];
+            int count = 0;
+            for ( int i = 0 ; i < batch.size() ; i++ ) {
+                int row = batch.row(i);
+                Node n = exprs.get(v, batch.binding(i), execCxt);
+                if ( n != null ) {
+                    Node n2 = column[row];
+                    if ( n2 == null )
+                        column[row] = n;
+                    else if ( !n2.sameValueAs(n) )
+                        continue;
+                }
+                selected[count++] = row;
+            }
+            batch = batch.withColumn(v, column).select(selected, count);
+            if ( batch.isEmpty() )
+                return batch;
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.batch;
+
+import org.apache.jena.atlas.logging.Log;
+import org.apache.jena.query.QueryCancelledException;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprException;
+import org.apache.jena.sparql.expr.ExprList;
+
+/**
+ * Filter each batch by a list of expressions, as for
+ * {@link org.apache.jena.sparql.engine.iterator.QueryIterFilterExpr}.
+ * Each expression narrows the selection vector of the batch; the columns are not copied.
+ */
+class BatchIterFilter extends BatchIterProcess {
+    private final ExprList exprs;
+    private final ExecutionContext execCxt;
+
+    BatchIterFilter(BatchIterator input, ExprList exprs, ExecutionContext execCxt) {
+        super(input);
+        this.exprs = exprs;
+        this.execCxt = execCxt;
+    }
+
+    @Override
+    protected BindingBatch process(BindingBatch batch) {
+        for ( Expr expr : exprs ) {
+            int[] selected = new int[batch.size()];
+            int count = 0;
+            for ( int i = 0 ; i < batch.size() ; i++ ) {
+                if ( accept(expr, batch, i) )
+                    selected[count++] = batch.row(i);
+            }
+            batch = batch.select(selected, count);
+            if ( batch.isEmpty() )
+                return batch;
+        }
+        return batch;
+    }
+
+    private boolean accept(Expr expr, BindingBatch batch, int i) {
+        try {
+            return expr.isSatisfied(batch.binding(i), execCxt);
+        } catch (QueryCancelledException ex) {
+            throw ex;
+        } catch (ExprException ex) {
+            Log.warn(this, "Expression Exception in " + expr, ex);
+            return false;
+        } catch (Exception ex) {
+            Log.warn(this, "General exception in " + expr, ex);
+            return false;
+        }
+    }
+}
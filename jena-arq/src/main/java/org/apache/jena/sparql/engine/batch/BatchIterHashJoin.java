@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.batch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.atlas.iterator.IteratorSlotted;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+
+/**
+ * Hash join of two streams of batches.
+ * <p>
+ * The right side is read into a single batch and indexed on the join key: the
+ * variables that are bound in every row of the right side and are also columns of
+ * the first batch of the left side. Rows with equal keys are chained through an
+ * {@code int} array. Left batches are then streamed past the table. A left row that
+ * does not bind every key variable is checked against all right rows.
+ * <p>
+ * Output is produced in batches of about the batch size; the probe of a left batch
+ * can stop at any point and resume on the next call.
+ */
+class BatchIterHashJoin extends IteratorSlotted<BindingBatch> implements BatchIterator {
+    private final BatchIterator left;
+    private final BatchIterator right;
+    private final BatchBuilder output;
+
+    private boolean initialized = false;
+    // The right side.
+    private BindingBatch table = null;
+    private int[] tableMap = null;
+    private List<Var> keyVars = null;
+    private Map<Object, Integer> heads = null;
+    private int[] chain = null;
+
+    // Probe state.
+    private BindingBatch probe = null;
+    private int[] probeMap = null;
+    private int[] probeKeyColumns = null;
+    // Pairs of (probe column, table column) for the variables in common.
+    private int[] commonProbe = null;
+    private int[] commonTable = null;
+    private int probeIdx = 0;
+    private boolean scanning = false;
+    private int candidate = -1;
+
+    BatchIterHashJoin(BatchIterator left, BatchIterator right, int batchSize) {
+        this.left = left;
+        this.right = right;
+        this.output = new BatchBuilder(batchSize);
+    }
+
+    private void init() {
+        initialized = true;
+        if ( !left.hasNext() )
+            return;
+        BindingBatch first = left.next();
+        BatchBuilder builder = new BatchBuilder(Integer.MAX_VALUE);
+        while ( right.hasNext() ) {
+            BindingBatch batch = right.next();
+            int[] map = builder.columns(batch);
+            for ( int i = 0 ; i < batch.size() ; i++ )
+                builder.add(batch, map, batch.row(i));
+        }
+        if ( builder.isEmpty() )
+            return;
+        table = builder.build();
+        tableMap = output.columns(table);
+
+        keyVars = new ArrayList<>();
+        for ( int c = 0 ; c < table.columnCount() ; c++ ) {
+            Var v = table.var(c);
+            if ( first.column(v) >= 0 && alwaysBound(table, c) )
+                keyVars.add(v);
+        }
+        if ( keyVars.isEmpty() ) {
+            // Every left row scans the table.
+            startProbe(first);
+            return;
+        }
+        int rows = table.physicalRows();
+        chain = new int[rows];
+        heads = new HashMap<>();
+        int[] keyColumns = keyColumns(table);
+        // Insert in reverse so that each chain is in row order.
+        for ( int r = rows-1 ; r >= 0 ; r-- ) {
+            Object key = key(table, keyColumns, r);
+            Integer head = heads.put(key, r);
+            chain[r] = ( head == null ) ? -1 : head;
+        }
+        startProbe(first);
+    }
+
+    private static boolean alwaysBound(BindingBatch batch, int column) {
+        for ( int r = 0 ; r < batch.physicalRows() ; r++ ) {
+            if ( batch.get(column, r) == null )
+                return false;
+        }
+        return true;
+    }
+
+    // Column of each key variable in the batch; -1 if the batch does not have it.
+    private int[] keyColumns(BindingBatch batch) {
+        int[] x = new int[keyVars.size()];
+        for ( int i = 0 ; i < x.length ; i++ )
+            x[i] = batch.column(keyVars.get(i));
+        return x;
+    }
+
+    // The key for a row, or null if a key variable is unbound.
+    private static Object key(BindingBatch batch, int[] keyColumns, int row) {
+        if ( keyColumns.length == 1 )
+            return keyColumns[0] < 0 ? null : batch.get(keyColumns[0], row);
+        Node[] nodes = new Node[keyColumns.length];
+        for ( int i = 0 ; i < keyColumns.length ; i++ ) {
+            Node n = keyColumns[i] < 0 ? null : batch.get(keyColumns[i], row);
+            if ( n == null )
+                return null;
+            nodes[i] = n;
+        }
+        return Arrays.asList(nodes);
+    }
+
+    private void startProbe(BindingBatch batch) {
+        probe = batch;
+        probeMap = output.columns(batch);
+        probeKeyColumns = keyColumns(batch);
+        List<Integer> x1 = new ArrayList<>();
+        List<Integer> x2 = new ArrayList<>();
+        for ( int c = 0 ; c < batch.columnCount() ; c++ ) {
+            int c2 = table.column(batch.var(c));
+            if ( c2 >= 0 ) {
+                x1.add(c);
+                x2.add(c2);
+            }
+        }
+        commonProbe = x1.stream().mapToInt(Integer::intValue).toArray();
+        commonTable = x2.stream().mapToInt(Integer::intValue).toArray();
+        probeIdx = 0;
+        startRow();
+    }
+
+    private void startRow() {
+        if ( probeIdx >= probe.size() )
+            return;
+        if ( keyVars.isEmpty() ) {
+            scanning = true;
+            candidate = 0;
+            return;
+        }
+        Object key = key(probe, probeKeyColumns, probe.row(probeIdx));
+        if ( key == null ) {
+            scanning = true;
+            candidate = 0;
+            return;
+        }
+        scanning = false;
+        Integer head = heads.get(key);
+        candidate = ( head == null ) ? -1 : head;
+    }
+
+    // Move the candidate on; -1 for the end of the candidates for this row.
+    private void nextCandidate() {
+        if ( scanning ) {
+            candidate++;
+            if ( candidate >= table.physicalRows() )
+                candidate = -1;
+        } else
+            candidate = chain[candidate];
+    }
+
+    private boolean compatible(int probeRow, int tableRow) {
+        for ( int i = 0 ; i < commonProbe.length ; i++ ) {
+            Node n1 = probe.get(commonProbe[i], probeRow);
+            if ( n1 == null )
+                continue;
+            Node n2 = table.get(commonTable[i], tableRow);
+            if ( n2 != null && !n1.equals(n2) )
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    protected boolean hasMore() {
+        return true;
+    }
+
+    @Override
+    protected BindingBatch moveToNext() {
+        if ( !initialized )
+            init();
+        if ( table == null )
+            return null;
+        for (;;) {
+            if ( output.isFull() )
+                return output.build();
+            if ( probe == null ) {
+                if ( !left.hasNext() )
+                    return output.isEmpty() ? null : output.build();
+                startProbe(left.next());
+                continue;
+            }
+            if ( probeIdx >= probe.size() ) {
+                probe = null;
+                continue;
+            }
+            if ( candidate < 0 ) {
+                probeIdx++;
+                startRow();
+                continue;
+            }
+            int probeRow = probe.row(probeIdx);
+            if ( compatible(probeRow, candidate) )
+                output.add(probe, probeMap, probeRow, table, tableMap, candidate);
+            nextCandidate();
+        }
+    }
+
+    @Override
+    public void cancel() {
+        left.cancel();
+        right.cancel();
+    }
+
+    @Override
+    protected void closeIterator() {
+        left.close();
+        right.close();
+    }
+}
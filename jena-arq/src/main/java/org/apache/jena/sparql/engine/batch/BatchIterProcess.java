@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.batch;
+
+import org.apache.jena.atlas.iterator.IteratorSlotted;
+
+/**
+ * Apply a batch-to-batch step to each batch of the input.
+ * Batches that become empty are skipped.
+ */
+abstract class BatchIterProcess extends IteratorSlotted<BindingBatch> implements BatchIterator {
+    private final BatchIterator input;
+
+    protected BatchIterProcess(BatchIterator input) {
+        this.input = input;
+    }
+
+    /** Process one batch. Return null or an empty batch for "no rows". */
+    protected abstract BindingBatch process(BindingBatch batch);
+
+    @Override
+    protected boolean hasMore() {
+        return true;
+    }
+
+    @Override
+    protected BindingBatch moveToNext() {
+        while ( input.hasNext() ) {
+            BindingBatch batch = process(input.next());
+            if ( batch != null && !batch.isEmpty() )
+                return batch;
+        }
+        return null;
+    }
+
+    @Override
+    public void cancel() {
+        input.cancel();
+    }
+
+    @Override
+    protected void closeIterator() {
+        input.close();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.batch;
+
+import org.apache.jena.atlas.iterator.IteratorSlotted;
+import org.apache.jena.sparql.engine.QueryIterator;
+
+/** Group the rows of a {@link QueryIterator} into batches. */
+class BatchIterRows extends IteratorSlotted<BindingBatch> implements BatchIterator {
+    private final QueryIterator input;
+    private final BatchBuilder builder;
+
+    BatchIterRows(QueryIterator input, int batchSize) {
+        this.input = input;
+        this.builder = new BatchBuilder(batchSize);
+    }
+
+    @Override
+    protected boolean hasMore() {
+        return input.hasNext();
+    }
+
+    @Override
+    protected BindingBatch moveToNext() {
+        while ( !builder.isFull() && input.hasNext() )
+            builder.add(input.next());
+        if ( builder.isEmpty() )
+            return null;
+        return builder.build();
+    }
+
+    @Override
+    public void cancel() {
+        input.cancel();
+    }
+
+    @Override
+    protected void closeIterator() {
+        input.close();
+    }
+}
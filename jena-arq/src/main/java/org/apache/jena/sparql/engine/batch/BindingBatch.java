@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.batch;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+
+/**
+ * A batch of rows held as columns.
+ * <p>
+ * There is one array of {@link Node Nodes} per variable, indexed by row; {@code null}
+ * is "unbound". A selection vector, if present, lists the rows of the batch that are
+ * still live, so filtering a batch does not copy the columns. Projecting and
+ * extending a batch share the existing column arrays.
+ * <p>
+ * Batches are not modified after they are built.
+ */
+public class BindingBatch {
+    private final Var[] vars;
+    private final Node[][] columns;
+    private final int rows;
+    // Physical rows in this batch; null means all of 0..rows-1.
+    private final int[] selection;
+    private final int size;
+
+    /*package*/ BindingBatch(Var[] vars, Node[][] columns, int rows) {
+        this(vars, columns, rows, null, rows);
+    }
+
+    private BindingBatch(Var[] vars, Node[][] columns, int rows, int[] selection, int size) {
+        this.vars = vars;
+        this.columns = columns;
+        this.rows = rows;
+        this.selection = selection;
+        this.size = size;
+    }
+
+    /** Number of rows in the batch. */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** The variables, one per column. A column may still be unbound in some rows. */
+    public List<Var> vars() {
+        return Arrays.asList(vars);
+    }
+
+    /** Number of rows in the underlying columns, including rows not selected. */
+    /*package*/ int physicalRows() {
+        return rows;
+    }
+
+    /*package*/ int columnCount() {
+        return vars.length;
+    }
+
+    /*package*/ Var var(int column) {
+        return vars[column];
+    }
+
+    /** The column index for a variable, or -1. */
+    public int column(Var var) {
+        for ( int i = 0 ; i < vars.length ; i++ ) {
+            if ( vars[i].equals(var) )
+                return i;
+        }
+        return -1;
+    }
+
+    /** Physical row of the i'th row of the batch. */
+    public int row(int i) {
+        return selection == null ? i : selection[i];
+    }
+
+    /** The value in a column for a physical row, or null. */
+    public Node get(int column, int row) {
+        return columns[column][row];
+    }
+
+    /** The i'th row of the batch as a {@link Binding}. The binding is a view of the batch. */
+    public Binding binding(int i) {
+        return new BindingBatchRow(this, row(i));
+    }
+
+    /** A batch with the same columns and only the given physical rows. */
+    public BindingBatch select(int[] selected, int count) {
+        if ( count == size )
+            return this;
+        return new BindingBatch(vars, columns, rows, selected, count);
+    }
+
+    /** A batch of the given variables, where present. */
+    public BindingBatch project(List<Var> projectVars) {
+        Var[] vars2 = new Var[projectVars.size()];
+        Node[][] columns2 = new Node[projectVars.size()][];
+        int n = 0;
+        for ( Var v : projectVars ) {
+            int idx = column(v);
+            if ( idx < 0 )
+                continue;
+            vars2[n] = v;
+            columns2[n] = columns[idx];
+            n++;
+        }
+        if ( n < vars2.length ) {
+            vars2 = Arrays.copyOf(vars2, n);
+            columns2 = Arrays.copyOf(columns2, n);
+        }
+        return new BindingBatch(vars2, columns2, rows, selection, size);
+    }
+
+    /**
+     * A batch with the column for {@code var} set to {@code column}, replacing any
+     * existing column for the variable. The column is indexed by physical row.
+     */
+    public BindingBatch withColumn(Var var, Node[] column) {
+        int idx = column(var);
+        if ( idx >= 0 ) {
+            Node[][] columns2 = columns.clone();
+            columns2[idx] = column;
+            return new BindingBatch(vars, columns2, rows, selection, size);
+        }
+        Var[] vars2 = Arrays.copyOf(vars, vars.length+1);
+        Node[][] columns2 = Arrays.copyOf(columns, columns.length+1);
+        vars2[vars.length] = var;
+        columns2[columns.length] = column;
+        return new BindingBatch(vars2, columns2, rows, selection, size);
+    }
+
+    /** The column of values for a variable, indexed by physical row, or null. */
+    /*package*/ Node[] columnArray(Var var) {
+        int idx = column(var);
+        return idx < 0 ? null : columns[idx];
+    }
+
+    @Override
+    public String toString() {
+        return "BindingBatch"+Arrays.asList(vars)+"["+size+"/"+rows+"]";
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.batch;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBase;
+
+/** One row of a {@link BindingBatch} as a {@link Binding}, without copying. */
+class BindingBatchRow extends BindingBase {
+    private final BindingBatch batch;
+    private final int row;
+
+    BindingBatchRow(BindingBatch batch, int row) {
+        super(null);
+        this.batch = batch;
+        this.row = row;
+    }
+
+    @Override
+    protected Iterator<Var> vars1() {
+        return new Iterator<Var>() {
+            private int idx = advance(0);
+
+            private int advance(int i) {
+                while ( i < batch.columnCount() && batch.get(i, row) == null )
+                    i++;
+                return i;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return idx < batch.columnCount();
+            }
+
+            @Override
+            public Var next() {
+                if ( !hasNext() )
+                    throw new NoSuchElementException();
+                Var v = batch.var(idx);
+                idx = advance(idx+1);
+                return v;
+            }
+        };
+    }
+
+    @Override
+    protected void forEach1(BiConsumer<Var, Node> action) {
+        for ( int i = 0 ; i < batch.columnCount() ; i++ ) {
+            Node n = batch.get(i, row);
+            if ( n != null )
+                action.accept(batch.var(i), n);
+        }
+    }
+
+    @Override
+    protected int size1() {
+        int x = 0;
+        for ( int i = 0 ; i < batch.columnCount() ; i++ ) {
+            if ( batch.get(i, row) != null )
+                x++;
+        }
+        return x;
+    }
+
+    @Override
+    protected boolean isEmpty1() {
+        return size1() == 0;
+    }
+
+    @Override
+    protected boolean contains1(Var var) {
+        return get1(var) != null;
+    }
+
+    @Override
+    protected Node get1(Var var) {
+        int idx = batch.column(var);
+        return idx < 0 ? null : batch.get(idx, row);
+    }
+
+    @Override
+    protected Binding detachWithNewParent(Binding newParent) {
+        throw new UnsupportedOperationException("BindingBatchRow has no parent");
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.batch;
+
+import org.apache.jena.atlas.io.IndentedWriter;
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.iterator.QueryIter;
+import org.apache.jena.sparql.serializer.SerializationContext;
+
+/**
+ * A {@link QueryIterator} over the rows of a {@link BatchIterator}.
+ * <p>
+ * A batch operator that takes its input from a {@code QueryIterBatch} uses
+ * {@link #batches(QueryIterator)} to receive the batches directly,
+ * so a chain of batch operators does not convert back to rows between steps.
+ */
+public class QueryIterBatch extends QueryIter {
+    private final BatchIterator batches;
+    private BindingBatch current = null;
+    private int idx = 0;
+
+    public QueryIterBatch(BatchIterator batches, ExecutionContext execCxt) {
+        super(execCxt);
+        this.batches = batches;
+    }
+
+    /**
+     * The batches of a {@link QueryIterator}.
+     * If it is a {@code QueryIterBatch}, this is its batch iterator; otherwise the rows are grouped into batches.
+     * Closing the returned {@link BatchIterator} closes {@code qIter}.
+     */
+    public static BatchIterator batches(QueryIterator qIter) {
+        if ( qIter instanceof QueryIterBatch qIterBatch && qIterBatch.current == null )
+            return qIterBatch.new PassThrough();
+        return new BatchIterRows(qIter, BatchExec.BatchSize);
+    }
+
+    @Override
+    protected boolean hasNextBinding() {
+        while ( current == null || idx >= current.size() ) {
+            if ( !batches.hasNext() )
+                return false;
+            current = batches.next();
+            idx = 0;
+        }
+        return true;
+    }
+
+    @Override
+    protected Binding moveToNextBinding() {
+        return current.binding(idx++);
+    }
+
+    @Override
+    protected void requestCancel() {
+        batches.cancel();
+    }
+
+    @Override
+    protected void closeIterator() {
+        batches.close();
+    }
+
+    @Override
+    public void output(IndentedWriter out, SerializationContext sCxt) {
+        out.print(Lib.className(this));
+    }
+
+    /** The batches of this iterator, for use by the next batch operator. */
+    private class PassThrough implements BatchIterator {
+        @Override
+        public boolean hasNext() {
+            return batches.hasNext();
+        }
+
+        @Override
+        public BindingBatch next() {
+            return batches.next();
+        }
+
+        @Override
+        public void cancel() {
+            QueryIterBatch.this.cancel();
+        }
+
+        @Override
+        public void close() {
+            QueryIterBatch.this.close();
+        }
+    }
+}
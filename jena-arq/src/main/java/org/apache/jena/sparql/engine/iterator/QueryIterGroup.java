@@ -20,15 +20,27 @@ package org.apache.jena.sparql.engine.iterator;
 
 import java.util.ArrayList ;
 import java.util.Collection ;
+import java.util.Comparator ;
+import java.util.HashMap ;
 import java.util.Iterator ;
 import java.util.List ;
+import java.util.Map ;
+import java.util.function.Function ;
 
 import org.apache.commons.collections4.MultiMapUtils;
 import org.apache.commons.collections4.MultiValuedMap;
+import org.apache.jena.atlas.data.BagFactory ;
+import org.apache.jena.atlas.data.SortedDataBag ;
+import org.apache.jena.atlas.data.ThresholdPolicy ;
+import org.apache.jena.atlas.data.ThresholdPolicyFactory ;
 import org.apache.jena.atlas.iterator.Iter ;
 import org.apache.jena.atlas.iterator.IteratorDelayedInitialization ;
+import org.apache.jena.atlas.iterator.IteratorSlotted ;
+import org.apache.jena.atlas.iterator.PeekIterator ;
 import org.apache.jena.atlas.lib.Pair ;
 import org.apache.jena.graph.Node ;
+import org.apache.jena.query.ARQ ;
+import org.apache.jena.sparql.ARQConstants ;
 import org.apache.jena.sparql.core.Var ;
 import org.apache.jena.sparql.core.VarExprList ;
 import org.apache.jena.sparql.engine.ExecutionContext ;
@@ -39,40 +51,80 @@ import org.apache.jena.sparql.engine.binding.BindingFactory ;
 import org.apache.jena.sparql.expr.ExprAggregator ;
 import org.apache.jena.sparql.expr.NodeValue ;
 import org.apache.jena.sparql.expr.aggregate.Accumulator ;
+import org.apache.jena.sparql.system.SerializationFactoryFinder ;
+import org.apache.jena.sparql.util.NodeCmp ;
 
+/**
+ * Grouping and aggregation.
+ * <p>
+ * Groups are accumulated in memory. If {@link ARQ#spillToDiskThreshold} is set and
+ * the number of groups reaches it, rows for groups already in memory continue to be
+ * accumulated there, while rows for any new group are written, with their group key,
+ * to a {@link SortedDataBag}. After the input is exhausted, the in-memory groups are
+ * returned, then the bag is read back in key order and each run of rows with the same
+ * key is aggregated with fresh accumulators. No accumulator state is ever written
+ * to disk, so this works for every aggregator, including custom ones.
+ * <p>
+ * In memory, groups are found by a hash key for each row. By default this is the
+ * group key binding itself; a storage layer can supply a function giving a key that
+ * is equal for two rows exactly when their group keys are the same terms, such as one
+ * made from internal term ids, so that rows of groups already seen are not
+ * turned into RDF terms just to be matched.
+ */
 public class QueryIterGroup extends QueryIterPlainWrapper
 {
 	private final QueryIterator embeddedIterator;
+	private final Function<Binding, Object> groupKey;
+	private SortedDataBag<Binding> spillBag = null;
 
 	public QueryIterGroup(QueryIterator qIter,
                           VarExprList groupVars,
                           List<ExprAggregator> aggregators,
                           ExecutionContext execCxt) {
+        this(qIter, groupVars, aggregators, null, execCxt);
+    }
+
+    /**
+     * Grouping where the in-memory groups are found by {@code groupKey}, a function
+     * from an input row to a hash key for its group. The function must give equal keys
+     * for two rows exactly when the group keys of the rows are the same. If null, the
+     * group key binding is used.
+     */
+    public QueryIterGroup(QueryIterator qIter,
+                          VarExprList groupVars,
+                          List<ExprAggregator> aggregators,
+                          Function<Binding, Object> groupKey,
+                          ExecutionContext execCxt) {
 	    // Delayed initalization
 	    // Does the group calculation when first used (typically hasNext)
-        super(calc(qIter, groupVars, aggregators, execCxt),
-              execCxt);
+        super(null, execCxt);
         this.embeddedIterator = qIter;
+        this.groupKey = groupKey;
+        setIterator(calc(qIter, groupVars, aggregators, execCxt));
     }
 
     @Override
     public void requestCancel() {
+        if ( spillBag != null )
+            spillBag.cancel();
         this.embeddedIterator.cancel();
         super.requestCancel();
     }
 
     @Override
     protected void closeIterator() {
+        if ( spillBag != null )
+            spillBag.close();
         this.embeddedIterator.close();
         super.closeIterator();
     }
 
 	private static Pair<Var, Accumulator> placeholder = Pair.create((Var)null, (Accumulator)null) ;
 
-    private static Iterator<Binding> calc(final QueryIterator iter,
-                                          final VarExprList groupVarExpr,
-                                          final List<ExprAggregator> aggregators,
-                                          final ExecutionContext execCxt) {
+    private Iterator<Binding> calc(final QueryIterator iter,
+                                   final VarExprList groupVarExpr,
+                                   final List<ExprAggregator> aggregators,
+                                   final ExecutionContext execCxt) {
         return new IteratorDelayedInitialization<Binding>() {
             @Override
             protected Iterator<Binding> initializeIterator() {
@@ -106,43 +158,62 @@ public class QueryIterGroup extends QueryIterPlainWrapper
 
                 // Case: there is input.
                 // Phase 1 : Create keys and aggregators per key, and pump bindings through the aggregators.
-                MultiValuedMap<Binding, Pair<Var, Accumulator>> accumulators = MultiMapUtils.newListValuedHashMap();
+                // Once the in-memory group limit is reached, rows of new groups go to the spill bag.
+                ThresholdPolicy<Binding> policy = ThresholdPolicyFactory.policyFromContext(execCxt.getContext());
+                GroupSpill spill = null;
+                MultiValuedMap<Object, Pair<Var, Accumulator>> accumulators = MultiMapUtils.newListValuedHashMap();
+                // Hash key to group key binding.
+                Map<Object, Binding> keys = new HashMap<>();
                 while (iter.hasNext()) {
                     Binding b = iter.nextBinding();
-                    Binding key = genKey(groupVarExpr, b, execCxt);
-
-                    if ( !hasAggregators ) {
-                        // Put in a dummy to remember the input.
-                        accumulators.put(key, placeholder);
-                        continue;
-                    }
+                    Object hashKey = ( groupKey == null ) ? genKey(groupVarExpr, b, execCxt) : groupKey.apply(b);
 
                     // Create if does not exist.
-                    if ( !accumulators.containsKey(key) ) {
+                    if ( !accumulators.containsKey(hashKey) ) {
+                        Binding key = ( groupKey == null ) ? (Binding)hashKey : genKey(groupVarExpr, b, execCxt);
+                        if ( policy.isThresholdExceeded() ) {
+                            if ( spill == null ) {
+                                spill = new GroupSpill(groupVarExpr, execCxt);
+                                spillBag = spill.bag;
+                            }
+                            spill.add(key, b);
+                            continue;
+                        }
+                        policy.increment(key);
+                        keys.put(hashKey, key);
+                        if ( !hasAggregators ) {
+                            // Put in a dummy to remember the input.
+                            accumulators.put(hashKey, placeholder);
+                            continue;
+                        }
                         for ( ExprAggregator agg : aggregators ) {
                             Accumulator x = agg.getAggregator().createAccumulator();
                             Var v = agg.getVar();
-                            accumulators.put(key, Pair.create(v, x));
+                            accumulators.put(hashKey, Pair.create(v, x));
                         }
                     }
 
                     // Do the per-accumulator calculation.
-                    for ( Pair<Var, Accumulator> pair : accumulators.get(key) )
-                        pair.getRight().accumulate(b, execCxt);
+                    if ( hasAggregators ) {
+                        for ( Pair<Var, Accumulator> pair : accumulators.get(hashKey) )
+                            pair.getRight().accumulate(b, execCxt);
+                    }
                 }
 
                 // Phase 2 : There was input and so there are some groups.
                 // For each bucket, get binding, add aggregator values to the binding.
                 // We used AccNull so there are always accumulators.
 
+                Iterator<Binding> spilled = ( spill == null ) ? null : spill.groups(aggregators, execCxt);
+
                 if ( !hasAggregators )
                     // We used placeholder so there are always the key.
-                    return accumulators.keySet().iterator();
+                    return Iter.concat(keys.values().iterator(), spilled);
 
                 List<Binding> results = new ArrayList<>();
-                for ( Binding k : accumulators.keySet() ) {
-                    BindingBuilder builder2 = Binding.builder(k);
-                    Collection<Pair<Var, Accumulator>> accs = accumulators.get(k);
+                for ( Map.Entry<Object, Binding> e : keys.entrySet() ) {
+                    BindingBuilder builder2 = Binding.builder(e.getValue());
+                    Collection<Pair<Var, Accumulator>> accs = accumulators.get(e.getKey());
 
                     for ( Pair<Var, Accumulator> pair : accs ) {
                         NodeValue value = pair.getRight().getValue();
@@ -153,11 +224,118 @@ public class QueryIterGroup extends QueryIterPlainWrapper
                     }
                     results.add(builder2.build());
                 }
-                return results.iterator();
+                return Iter.concat(results.iterator(), spilled);
             }
         };
     }
 
+    /**
+     * Rows of the groups that did not fit in memory. Each row is stored with its group
+     * key, under renamed variables, and the bag is sorted on the key so that each group
+     * comes back as a contiguous run of rows.
+     */
+    private static class GroupSpill {
+        private final List<Var> keyVars;
+        private final List<Var> spillVars;
+        final SortedDataBag<Binding> bag;
+
+        GroupSpill(VarExprList groupVarExpr, ExecutionContext execCxt) {
+            this.keyVars = groupVarExpr.getVars();
+            this.spillVars = new ArrayList<>(keyVars.size());
+            for ( int i = 0 ; i < keyVars.size() ; i++ )
+                spillVars.add(Var.alloc(ARQConstants.allocVarMarker+"group"+i));
+            ThresholdPolicy<Binding> policy = ThresholdPolicyFactory.policyFromContext(execCxt.getContext());
+            Comparator<Binding> comparator = this::compareKeys;
+            this.bag = BagFactory.newSortedBag(policy, SerializationFactoryFinder.bindingSerializationFactory(), comparator);
+        }
+
+        void add(Binding key, Binding row) {
+            BindingBuilder builder = Binding.builder(row);
+            for ( int i = 0 ; i < keyVars.size() ; i++ ) {
+                Node n = key.get(keyVars.get(i));
+                if ( n != null )
+                    builder.add(spillVars.get(i), n);
+            }
+            bag.add(builder.build());
+        }
+
+        // Unbound sorts first; otherwise the RDF term order, which is zero only for the same term.
+        private int compareKeys(Binding b1, Binding b2) {
+            for ( Var v : spillVars ) {
+                int x = NodeCmp.compareRDFTerms(b1.get(v), b2.get(v));
+                if ( x != 0 )
+                    return x;
+            }
+            return 0;
+        }
+
+        private Binding key(Binding stored) {
+            BindingBuilder builder = Binding.builder();
+            for ( int i = 0 ; i < keyVars.size() ; i++ ) {
+                Node n = stored.get(spillVars.get(i));
+                if ( n != null )
+                    builder.add(keyVars.get(i), n);
+            }
+            return builder.build();
+        }
+
+        private Binding row(Binding stored) {
+            BindingBuilder builder = Binding.builder();
+            stored.forEach((v, n) -> {
+                if ( !spillVars.contains(v) )
+                    builder.add(v, n);
+            });
+            return builder.build();
+        }
+
+        /** Aggregate the spilled rows, one group at a time. */
+        Iterator<Binding> groups(List<ExprAggregator> aggregators, ExecutionContext execCxt) {
+            boolean hasAggregators = ( aggregators != null && ! aggregators.isEmpty() );
+            PeekIterator<Binding> sorted = PeekIterator.create(bag.iterator());
+            return new IteratorSlotted<Binding>() {
+                @Override
+                protected Binding moveToNext() {
+                    Binding first = sorted.next();
+                    BindingBuilder builder = Binding.builder(key(first));
+                    if ( !hasAggregators ) {
+                        while ( sorted.hasNext() && compareKeys(first, sorted.peek()) == 0 )
+                            sorted.next();
+                        return builder.build();
+                    }
+                    List<Accumulator> accs = new ArrayList<>(aggregators.size());
+                    for ( ExprAggregator agg : aggregators )
+                        accs.add(agg.getAggregator().createAccumulator());
+                    Binding stored = first;
+                    for (;;) {
+                        Binding b = row(stored);
+                        for ( Accumulator acc : accs )
+                            acc.accumulate(b, execCxt);
+                        if ( !sorted.hasNext() || compareKeys(first, sorted.peek()) != 0 )
+                            break;
+                        stored = sorted.next();
+                    }
+                    for ( int i = 0 ; i < accs.size() ; i++ ) {
+                        NodeValue value = accs.get(i).getValue();
+                        if ( value == null )
+                            continue;
+                        builder.add(aggregators.get(i).getVar(), value.asNode());
+                    }
+                    return builder.build();
+                }
+
+                @Override
+                protected boolean hasMore() {
+                    return sorted.hasNext();
+                }
+
+                @Override
+                protected void closeIterator() {
+                    bag.close();
+                }
+            };
+        }
+    }
+
     static private Binding genKey(VarExprList vars, Binding binding, ExecutionContext execCxt) {
         return copyProject(vars, binding, execCxt);
     }
@@ -0,0 +1,371 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.iterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.jena.atlas.io.IndentedWriter;
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.QueryCancelledException;
+import org.apache.jena.query.QueryExecException;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphWrapper;
+import org.apache.jena.sparql.core.TransactionalDataVersion;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.serializer.SerializationContext;
+import org.apache.jena.sparql.util.Context;
+
+/**
+ * A query iterator that runs each of its sub-iterators on a worker thread and returns
+ * their results, in no particular order, as they arrive.
+ * <p>
+ * The workers put results into a shared bounded queue of {@link #QueueSize} entries,
+ * so a worker can run ahead of the consumer by at most that much. Workers start on the
+ * first call of {@code hasNext()}. An exception in a worker, including
+ * {@link QueryCancelledException}, is passed to the consumer. Cancelling this
+ * iterator cancels the sub-iterators, which also see the cancel signal of the
+ * execution context (query timeouts). Closing this iterator stops the workers and
+ * waits for them to finish; each worker closes its own sub-iterator.
+ * <p>
+ * For a dataset with isolating transactions, each worker starts a read transaction
+ * of its own. It must see the same version of the data as the read transaction the
+ * query runs in (see {@link TransactionalDataVersion}); if a write transaction has
+ * committed in between, the worker hands its sub-iterator back and it is run on the
+ * consumer's thread.
+ * <p>
+ * Enabled by the context setting {@link ARQ#optParallelExecution}.
+ */
+public class QueryIterParallel extends QueryIter {
+
+    /** Capacity of the queue of results. */
+    public static int QueueSize = 1000;
+
+    /** Number of partitions for {@link #partition}. */
+    public static int Parallelism = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    // Bindings taken from the shared input of partitions at a time.
+    private static final int ChunkSize = 100;
+
+    // Timeout when waiting, in order to check whether the iterator has been closed.
+    private static final long PollMillis = 100;
+
+    private static final AtomicInteger threadCounter = new AtomicInteger(0);
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "ARQ-parallel-"+threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Marks the end of the results of one worker.
+    private static final Object END = new Object();
+
+    // A sub-iterator handed back by a worker, to be run by the consumer.
+    private record Inline(QueryIterator source) {}
+
+    /**
+     * Test whether parallel execution is enabled.
+     * <p>
+     * For datasets where read transactions are a lock, worker threads read the
+     * dataset without a transaction of their own. Datasets with isolating
+     * transactions bound to the thread (those that support abort) must provide
+     * {@link TransactionalDataVersion} and the query must be in a read transaction;
+     * otherwise the setting is ignored.
+     */
+    public static boolean isEnabled(ExecutionContext execCxt) {
+        Context context = execCxt.getContext();
+        if ( context == null || !context.isTrue(ARQ.optParallelExecution) )
+            return false;
+        DatasetGraph dsg = execCxt.getDataset();
+        return dsg == null || !dsg.supportsTransactionAbort() || txnDataset(execCxt) != null;
+    }
+
+    /**
+     * The dataset for workers to start read transactions on, or null if workers do
+     * not need transactions or the dataset can not share the read transaction of
+     * this thread.
+     */
+    private static DatasetGraph txnDataset(ExecutionContext execCxt) {
+        DatasetGraph dsg = execCxt.getDataset();
+        if ( dsg == null || !dsg.supportsTransactionAbort() )
+            return null;
+        DatasetGraph base = DatasetGraphWrapper.unwrap(dsg);
+        if ( base instanceof TransactionalDataVersion && base.isInTransaction() && base.transactionMode() == ReadWrite.READ )
+            return base;
+        return null;
+    }
+
+    /** Run a query iterator on a worker thread, buffering results ahead of the consumer. */
+    public static QueryIterator async(QueryIterator qIter, ExecutionContext execCxt) {
+        return new QueryIterParallel(List.of(qIter), List.of(), execCxt);
+    }
+
+    /**
+     * Split the stream {@code input} into partitions and apply {@code stage} to each
+     * partition on its own worker thread. Each partition takes a chunk of the input at
+     * a time, so faster workers take more of the input.
+     */
+    public static QueryIterator partition(QueryIterator input, Function<QueryIterator, QueryIterator> stage, ExecutionContext execCxt) {
+        List<QueryIterator> partitions = new ArrayList<>(Parallelism);
+        for ( int i = 0 ; i < Parallelism ; i++ )
+            partitions.add(stage.apply(new QueryIterSharedInput(input, execCxt)));
+        return new QueryIterParallel(partitions, List.of(input), execCxt);
+    }
+
+    private final List<QueryIterator> sources;
+    // Shared inputs of the sources. Closed after the workers have finished.
+    private final List<QueryIterator> inputs;
+    // Dataset for the read transactions of the workers, and the data version they must see.
+    private final DatasetGraph txnDataset;
+    private final long dataVersion;
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QueueSize);
+    private final List<Future<?>> workers = new ArrayList<>();
+    private volatile boolean closing = false;
+    private boolean started = false;
+    private int running = 0;
+    private Binding slot = null;
+    // A sub-iterator being run by the consumer.
+    private QueryIterator inline = null;
+
+    public QueryIterParallel(List<QueryIterator> sources, ExecutionContext execCxt) {
+        this(sources, List.of(), execCxt);
+    }
+
+    private QueryIterParallel(List<QueryIterator> sources, List<QueryIterator> inputs, ExecutionContext execCxt) {
+        super(execCxt);
+        this.sources = sources;
+        this.inputs = inputs;
+        this.txnDataset = txnDataset(execCxt);
+        this.dataVersion = ( txnDataset == null ) ? -1 : ((TransactionalDataVersion)txnDataset).getDataVersion();
+    }
+
+    private void start() {
+        started = true;
+        running = sources.size();
+        for ( QueryIterator source : sources )
+            workers.add(executor.submit(() -> work(source)));
+    }
+
+    private void work(QueryIterator source) {
+        boolean inTxn = false;
+        boolean handedBack = false;
+        try {
+            if ( txnDataset != null ) {
+                inTxn = beginRead();
+                if ( !inTxn ) {
+                    handedBack = put(new Inline(source));
+                    return;
+                }
+            }
+            while ( !closing && source.hasNext() ) {
+                if ( !put(source.next()) )
+                    break;
+            }
+        } catch (Throwable th) {
+            put(th);
+        } finally {
+            if ( !handedBack ) {
+                try { source.close(); } catch (Throwable th) { put(th); }
+                if ( inTxn )
+                    txnDataset.end();
+                put(END);
+            }
+        }
+    }
+
+    // Start a read transaction on this thread.
+    // Returns false, with no transaction, if it does not see the same data as the query.
+    private boolean beginRead() {
+        txnDataset.begin(TxnType.READ);
+        if ( ((TransactionalDataVersion)txnDataset).getDataVersion() == dataVersion )
+            return true;
+        txnDataset.end();
+        return false;
+    }
+
+    // Returns false if this iterator is closing.
+    private boolean put(Object obj) {
+        try {
+            while ( !closing ) {
+                if ( queue.offer(obj, PollMillis, TimeUnit.MILLISECONDS) )
+                    return true;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    @Override
+    protected boolean hasNextBinding() {
+        if ( slot != null )
+            return true;
+        if ( !started )
+            start();
+        for (;;) {
+            if ( inline != null ) {
+                if ( inline.hasNext() ) {
+                    slot = inline.next();
+                    return true;
+                }
+                inline.close();
+                inline = null;
+                running--;
+            }
+            if ( running == 0 )
+                return false;
+            Object obj;
+            try {
+                obj = queue.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new QueryCancelledException();
+            }
+            if ( obj == END ) {
+                running--;
+                continue;
+            }
+            if ( obj instanceof Inline x ) {
+                inline = x.source();
+                continue;
+            }
+            if ( obj instanceof Throwable th ) {
+                if ( th instanceof RuntimeException ex )
+                    throw ex;
+                if ( th instanceof Error err )
+                    throw err;
+                throw new QueryExecException(th);
+            }
+            slot = (Binding)obj;
+            return true;
+        }
+    }
+
+    @Override
+    protected Binding moveToNextBinding() {
+        Binding b = slot;
+        slot = null;
+        return b;
+    }
+
+    @Override
+    protected void requestCancel() {
+        for ( QueryIterator source : sources )
+            source.cancel();
+        for ( QueryIterator input : inputs )
+            input.cancel();
+    }
+
+    @Override
+    protected void closeIterator() {
+        closing = true;
+        if ( !started ) {
+            for ( QueryIterator source : sources )
+                source.close();
+        }
+        for ( Future<?> worker : workers ) {
+            for (;;) {
+                // Unblock the worker if it is waiting to put.
+                clearQueue();
+                try {
+                    worker.get(PollMillis, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException ex) {
+                    continue;
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException | CancellationException ex) {
+                    break;
+                }
+            }
+        }
+        clearQueue();
+        if ( inline != null )
+            inline.close();
+        for ( QueryIterator input : inputs )
+            input.close();
+    }
+
+    // Discard queued results, closing any sub-iterators handed back by workers.
+    private void clearQueue() {
+        Object obj;
+        while ( (obj = queue.poll()) != null ) {
+            if ( obj instanceof Inline x )
+                x.source().close();
+        }
+    }
+
+    @Override
+    public void output(IndentedWriter out, SerializationContext sCxt) {
+        out.print(Lib.className(this));
+        out.print("/"+sources.size());
+    }
+
+    /**
+     * One reader of an input shared between several threads.
+     * Bindings are taken a chunk at a time, under a lock on the input.
+     */
+    private static class QueryIterSharedInput extends QueryIter {
+        private final QueryIterator input;
+        private final List<Binding> chunk = new ArrayList<>(ChunkSize);
+        private int idx = 0;
+
+        QueryIterSharedInput(QueryIterator input, ExecutionContext execCxt) {
+            super(execCxt);
+            this.input = input;
+        }
+
+        @Override
+        protected boolean hasNextBinding() {
+            if ( idx < chunk.size() )
+                return true;
+            chunk.clear();
+            idx = 0;
+            synchronized (input) {
+                while ( chunk.size() < ChunkSize && input.hasNext() )
+                    chunk.add(input.next());
+            }
+            return !chunk.isEmpty();
+        }
+
+        @Override
+        protected Binding moveToNextBinding() {
+            return chunk.get(idx++);
+        }
+
+        @Override
+        protected void requestCancel() {
+            input.cancel();
+        }
+
+        // The input is closed by the QueryIterParallel.
+        @Override
+        protected void closeIterator() {}
+    }
+}
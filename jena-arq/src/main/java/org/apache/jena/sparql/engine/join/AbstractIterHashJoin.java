@@ -18,10 +18,15 @@
 
 package org.apache.jena.sparql.engine.join;
 
+import java.util.ArrayList ;
 import java.util.Iterator ;
 import java.util.List ;
 
+import org.apache.jena.atlas.data.ThresholdPolicy ;
+import org.apache.jena.atlas.data.ThresholdPolicyFactory ;
 import org.apache.jena.atlas.iterator.Iter ;
+import org.apache.jena.atlas.iterator.IteratorSlotted ;
+import org.apache.jena.query.ARQ ;
 import org.apache.jena.sparql.algebra.Algebra ;
 import org.apache.jena.sparql.core.Var ;
 import org.apache.jena.sparql.engine.ExecutionContext ;
@@ -34,6 +39,11 @@ import org.apache.jena.sparql.engine.iterator.QueryIterPeek ;
  *
  * This code materializes one input into the probe table
  * then hash joins the other input from the stream side.
+ * <p>
+ * If the subclass allows it ({@link #canSpill()}) and the probe side is larger
+ * than {@link ARQ#spillToDiskThreshold}, both inputs are partitioned to disk by
+ * the hash of the join key and the join is done one partition at a time
+ * (a grace hash join).
  */
 
 public abstract class AbstractIterHashJoin extends QueryIter2 {
@@ -46,12 +56,17 @@ public abstract class AbstractIterHashJoin extends QueryIter2 {
     protected JoinKey                   joinKey ;
     protected MultiHashProbeTable       hashTable ;
 
-    private QueryIterator               iterStream ;
+    private QueryIterator               streamInput ;
+    // The stream input, or the stream rows of the current partition.
+    private Iterator<Binding>           iterStream ;
     private Binding                     rowStream       = null ;
     private Iterator<Binding>           iterCurrent ;
     private boolean                     yielded ;       // Flag to note when current probe causes a result.
     // Hanlde any "post join" additions.
     private Iterator<Binding>           iterTail        = null ;
+    // Grace hash join: partitions on disk, and the current partition.
+    private HashJoinPartitions          partitions      = null ;
+    private int                         partition       = -1 ;
 
     enum Phase { INIT, HASH , STREAM, TRAILER, DONE }
     Phase state = Phase.INIT ;
@@ -62,6 +77,7 @@ public abstract class AbstractIterHashJoin extends QueryIter2 {
         super(probeIter, streamIter, execCxt) ;
 
         this.joinKey = initialJoinKey ;
+        this.streamInput = streamIter ;
         this.iterStream = streamIter ;
         this.iterCurrent = null ;
     }
@@ -75,7 +91,8 @@ public abstract class AbstractIterHashJoin extends QueryIter2 {
                 QueryIterPeek pProbe = QueryIterPeek.create(probeIter, execCxt) ;
                 probeIter = pProbe ;
 
-                QueryIterPeek pStream = QueryIterPeek.create(iterStream, execCxt) ;
+                QueryIterPeek pStream = QueryIterPeek.create(streamInput, execCxt) ;
+                this.streamInput = pStream ;
                 this.iterStream = pStream ;
 
                 Binding bLeft = pProbe.peek() ;
@@ -97,13 +114,60 @@ public abstract class AbstractIterHashJoin extends QueryIter2 {
 
     private void buildHashTable(QueryIterator iter1) {
         state = Phase.HASH ;
-        iter1.forEachRemaining(row1 -> {
+        ExecutionContext execCxt = getExecContext() ;
+        ThresholdPolicy<Binding> policy = ( canSpill() && execCxt != null )
+                ? ThresholdPolicyFactory.policyFromContext(execCxt.getContext())
+                : ThresholdPolicyFactory.never() ;
+        while ( iter1.hasNext() ) {
+            Binding row1 = iter1.next() ;
             s_countProbe ++ ;
             hashTable.put(row1) ;
-        });
+            policy.increment(row1) ;
+            if ( policy.isThresholdExceeded() ) {
+                spill(iter1) ;
+                break ;
+            }
+        }
         state = Phase.STREAM ;
     }
 
+    /**
+     * Switch to a grace hash join: partition the probe rows so far, the rest of
+     * the probe side and all of the stream side, then start on the first partition.
+     */
+    private void spill(QueryIterator iter1) {
+        partitions = new HashJoinPartitions(joinKey) ;
+        hashTable.values().forEachRemaining(partitions::addProbe) ;
+        hashTable.clear() ;
+        iter1.forEachRemaining(row1 -> {
+            s_countProbe ++ ;
+            partitions.addProbe(row1) ;
+        });
+        streamInput.forEachRemaining(partitions::addStream) ;
+        iterStream = Iter.nullIterator() ;
+        nextPartition() ;
+    }
+
+    /** Load the probe table for the next partition that has stream rows. */
+    private boolean nextPartition() {
+        Iter.close(iterStream) ;
+        hashTable.clear() ;
+        for(;;) {
+            partition++ ;
+            if ( partition >= partitions.size() ) {
+                iterStream = Iter.nullIterator() ;
+                return false ;
+            }
+            if ( ! partitions.isEmptyStream(partition) )
+                break ;
+        }
+        hashTable = new MultiHashProbeTable(null, joinKey) ;
+        partitions.probe(partition).forEachRemaining(hashTable::put) ;
+        partitions.probeUnkeyed().forEachRemaining(hashTable::put) ;
+        iterStream = partitions.stream(partition) ;
+        return true ;
+    }
+
     @Override
     protected boolean hasNextBinding() {
         if ( isFinished() )
@@ -147,8 +211,12 @@ public abstract class AbstractIterHashJoin extends QueryIter2 {
             while ( iterCurrent == null ) {
                 // Move on to the next row from the right.
                 if ( ! iterStream.hasNext() ) {
+                    if ( partitions != null && nextPartition() )
+                        continue ;
                     state = Phase.TRAILER ;
                     iterTail = joinFinished() ;
+                    if ( partitions != null )
+                        iterTail = Iter.concat(new UnkeyedStreamJoin(), iterTail) ;
                     if ( iterTail != null )
                         return doOneTail() ;
                     return null ;
@@ -205,6 +273,94 @@ public abstract class AbstractIterHashJoin extends QueryIter2 {
         return null ;
     }
 
+    /**
+     * Grace hash join: join the stream rows that do not bind every join key
+     * variable with all the probe rows, using a block of stream rows in memory at a time.
+     */
+    private class UnkeyedStreamJoin extends IteratorSlotted<Binding> {
+        private final Iterator<Binding> streamRows = partitions.streamUnkeyed() ;
+        private final int blockSize = (int)Math.max(1, Math.min(Integer.MAX_VALUE,
+                                                                getExecContext().getContext().getLong(ARQ.spillToDiskThreshold, 1))) ;
+        private List<Binding> block = null ;
+        private boolean[] blockYielded = null ;
+        private Iterator<Binding> probeRows = null ;
+        private Binding probeRow = null ;
+        private int idx = 0 ;
+        // After all the probe rows, position in the block for rows with no results.
+        private int idxNoYield = -1 ;
+
+        @Override
+        protected Binding moveToNext() {
+            for(;;) {
+                if ( block == null ) {
+                    if ( ! streamRows.hasNext() )
+                        return null ;
+                    block = new ArrayList<>() ;
+                    while ( block.size() < blockSize && streamRows.hasNext() ) {
+                        block.add(streamRows.next()) ;
+                        s_countScan ++ ;
+                    }
+                    blockYielded = new boolean[block.size()] ;
+                    probeRows = partitions.probeAll() ;
+                    probeRow = null ;
+                    idxNoYield = -1 ;
+                }
+                if ( idxNoYield >= 0 ) {
+                    while ( idxNoYield < block.size() ) {
+                        int i = idxNoYield++ ;
+                        if ( ! blockYielded[i] ) {
+                            Binding b = noYieldedRows(block.get(i)) ;
+                            if ( b != null )
+                                return b ;
+                        }
+                    }
+                    block = null ;
+                    continue ;
+                }
+                if ( probeRow == null || idx >= block.size() ) {
+                    if ( ! probeRows.hasNext() ) {
+                        Iter.close(probeRows) ;
+                        idxNoYield = 0 ;
+                        continue ;
+                    }
+                    probeRow = probeRows.next() ;
+                    idx = 0 ;
+                }
+                int i = idx++ ;
+                Binding rowStream = block.get(i) ;
+                Binding r = Algebra.merge(probeRow, rowStream) ;
+                if ( r == null )
+                    continue ;
+                Binding r2 = yieldOneResult(probeRow, rowStream, r) ;
+                if ( r2 == null )
+                    continue ;
+                blockYielded[i] = true ;
+                return r2 ;
+            }
+        }
+
+        @Override
+        protected boolean hasMore() {
+            return true ;
+        }
+
+        @Override
+        protected void closeIterator() {
+            Iter.close(probeRows) ;
+            Iter.close(streamRows) ;
+        }
+    }
+
+    /**
+     * Whether this join may partition its inputs to disk when the probe side is large.
+     * The join must not need the probe table after the stream side has been
+     * processed ({@link #joinFinished()}) because the probe table only holds one
+     * partition at a time.
+     */
+    protected boolean canSpill() {
+        return false ;
+    }
+
     /**
      * Signal about to return a result.
      * @param rowCurrentProbe
@@ -239,7 +395,12 @@ public abstract class AbstractIterHashJoin extends QueryIter2 {
             System.out.println(x) ;
         }
         // In case it's a peek iterator.
-        iterStream.close() ;
+        streamInput.close() ;
+        if ( iterStream != streamInput )
+            Iter.close(iterStream) ;
+        Iter.close(iterTail) ;
+        if ( partitions != null )
+            partitions.close() ;
         hashTable.clear();
     }
 
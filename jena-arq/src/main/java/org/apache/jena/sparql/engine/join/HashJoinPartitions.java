@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.join;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.jena.atlas.data.BagFactory;
+import org.apache.jena.atlas.data.DataBag;
+import org.apache.jena.atlas.data.SerializationFactory;
+import org.apache.jena.atlas.data.ThresholdPolicyFactory;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.system.SerializationFactoryFinder;
+
+/**
+ * The partitions of a grace hash join, on disk.
+ * <p>
+ * Rows that bind every variable of the join key go to a partition chosen by the
+ * hash of the join key values so rows that can join are in the same partition.
+ * Rows that do not bind every join key variable are kept apart; they may join
+ * with rows in any partition.
+ */
+class HashJoinPartitions {
+    /** Number of partitions. Each partition of the probe side is loaded into memory in turn. */
+    static int NumPartitions = 32;
+
+    private final JoinKey joinKey;
+    private final SerializationFactory<Binding> serializationFactory = SerializationFactoryFinder.bindingSerializationFactory();
+    private final List<DataBag<Binding>> probeParts = new ArrayList<>();
+    private final List<DataBag<Binding>> streamParts = new ArrayList<>();
+    private final DataBag<Binding> probeUnkeyed;
+    private final DataBag<Binding> streamUnkeyed;
+
+    HashJoinPartitions(JoinKey joinKey) {
+        this.joinKey = joinKey;
+        for ( int i = 0 ; i < NumPartitions ; i++ ) {
+            probeParts.add(newBag());
+            streamParts.add(newBag());
+        }
+        probeUnkeyed = newBag();
+        streamUnkeyed = newBag();
+    }
+
+    private DataBag<Binding> newBag() {
+        // Always on disk.
+        return BagFactory.newDefaultBag(ThresholdPolicyFactory.count(0), serializationFactory);
+    }
+
+    int size() {
+        return NumPartitions;
+    }
+
+    void addProbe(Binding row) {
+        int idx = partition(row);
+        if ( idx < 0 )
+            probeUnkeyed.add(row);
+        else
+            probeParts.get(idx).add(row);
+    }
+
+    void addStream(Binding row) {
+        int idx = partition(row);
+        if ( idx < 0 )
+            streamUnkeyed.add(row);
+        else
+            streamParts.get(idx).add(row);
+    }
+
+    /** The partition for a row, or -1 if the row does not bind every join key variable. */
+    private int partition(Binding row) {
+        if ( joinKey.isEmpty() )
+            return -1;
+        for ( Var v : joinKey ) {
+            if ( ! row.contains(v) )
+                return -1;
+        }
+        Object hash = JoinLib.hash(joinKey, row);
+        return Math.floorMod(hash.hashCode(), NumPartitions);
+    }
+
+    /** The probe rows of a partition. */
+    Iterator<Binding> probe(int idx) {
+        return iterator(probeParts.get(idx));
+    }
+
+    /** The probe rows that can join with any stream row. */
+    Iterator<Binding> probeUnkeyed() {
+        return iterator(probeUnkeyed);
+    }
+
+    /** All the probe rows. */
+    Iterator<Binding> probeAll() {
+        Iterator<Binding> iter = probeUnkeyed();
+        for ( int i = 0 ; i < NumPartitions ; i++ )
+            iter = Iter.concat(iter, probe(i));
+        return iter;
+    }
+
+    /** The stream rows of a partition. */
+    Iterator<Binding> stream(int idx) {
+        return iterator(streamParts.get(idx));
+    }
+
+    boolean isEmptyStream(int idx) {
+        return streamParts.get(idx).size() == 0;
+    }
+
+    /** The stream rows that can join with any probe row. */
+    Iterator<Binding> streamUnkeyed() {
+        return iterator(streamUnkeyed);
+    }
+
+    private static Iterator<Binding> iterator(DataBag<Binding> bag) {
+        // A bag that has never been written to has no spill file.
+        if ( bag.size() == 0 )
+            return Iter.nullIterator();
+        return bag.iterator();
+    }
+
+    void close() {
+        probeParts.forEach(DataBag::close);
+        streamParts.forEach(DataBag::close);
+        probeUnkeyed.close();
+        streamUnkeyed.close();
+    }
+}
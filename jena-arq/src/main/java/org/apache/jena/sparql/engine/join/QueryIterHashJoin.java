@@ -78,6 +78,11 @@ public class QueryIterHashJoin extends AbstractIterHashJoin {
         return null;
     }
 
+    @Override
+    protected boolean canSpill() {
+        return true ;
+    }
+
     @Override
     protected QueryIterator joinFinished() {
         return null;
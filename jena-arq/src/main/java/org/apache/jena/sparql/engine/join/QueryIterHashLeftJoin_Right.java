@@ -98,6 +98,11 @@ public class QueryIterHashLeftJoin_Right extends AbstractIterHashJoin {
         return rowCurrentProbe;
     }
     
+    @Override
+    protected boolean canSpill() {
+        return true ;
+    }
+
     @Override
     protected QueryIterator joinFinished() {
         return null ;
@@ -37,12 +37,14 @@ import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.engine.ExecutionContext;
 import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.batch.BatchExec;
 import org.apache.jena.sparql.engine.binding.Binding;
 import org.apache.jena.sparql.engine.iterator.*;
 import org.apache.jena.sparql.engine.join.Join;
 import org.apache.jena.sparql.engine.main.iterator.QueryIterGraph;
 import org.apache.jena.sparql.engine.main.iterator.QueryIterOptionalIndex;
 import org.apache.jena.sparql.engine.main.iterator.QueryIterUnion;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
 import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.sparql.expr.ExprList;
 import org.apache.jena.sparql.procedure.ProcEval;
@@ -123,7 +125,21 @@ public class OpExecutor {
 
     protected QueryIterator execute(OpBGP opBGP, QueryIterator input) {
         BasicPattern pattern = opBGP.getPattern();
-        QueryIterator qIter = stageGenerator.execute(pattern, input, execCxt);
+        QueryIterator qIter;
+        if ( pattern.size() >= 2 && input instanceof QueryIterRoot && QueryIterParallel.isEnabled(execCxt) ) {
+            // Order the pattern as the stage generator would, scan the first pattern,
+            // and partition its results between workers each doing the rest of the pattern.
+            ReorderTransformation reorder = stageGenerator.getReorderTransformation(execCxt);
+            BasicPattern bgp = ( reorder == null ) ? pattern : reorder.reorder(pattern);
+            BasicPattern first = new BasicPattern();
+            first.add(bgp.get(0));
+            BasicPattern rest = new BasicPattern();
+            for ( int i = 1 ; i < bgp.size() ; i++ )
+                rest.add(bgp.get(i));
+            QueryIterator scan = stageGenerator.execute(first, input, execCxt);
+            qIter = QueryIterParallel.partition(scan, in -> stageGenerator.execute(rest, in, execCxt), execCxt);
+        } else
+            qIter = stageGenerator.execute(pattern, input, execCxt);
         if ( hideBNodeVars )
             qIter = new QueryIterDistinguishedVars(qIter, execCxt);
         return qIter;
@@ -212,6 +228,13 @@ public class OpExecutor {
         }
         QueryIterator left = exec(opJoin.getLeft(), input);
         QueryIterator right = exec(opJoin.getRight(), root());
+        if ( QueryIterParallel.isEnabled(execCxt) ) {
+            // Evaluate both sides at the same time.
+            left = QueryIterParallel.async(left, execCxt);
+            right = QueryIterParallel.async(right, execCxt);
+        }
+        if ( BatchExec.isEnabled(execCxt) )
+            return BatchExec.join(left, right, execCxt);
         // Join key.
         QueryIterator qIter = Join.join(left, right, execCxt);
         return qIter;
@@ -281,6 +304,14 @@ public class OpExecutor {
 
     protected QueryIterator execute(OpUnion opUnion, QueryIterator input) {
         List<Op> x = flattenUnion(opUnion);
+        if ( input instanceof QueryIterRoot && QueryIterParallel.isEnabled(execCxt) ) {
+            // Each branch is evaluated once so the branches can run at the same time.
+            List<QueryIterator> branches = new ArrayList<>(x.size());
+            for ( Op op : x )
+                branches.add(exec(op, root()));
+            input.close();
+            return new QueryIterParallel(branches, execCxt);
+        }
         QueryIterator cIter = new QueryIterUnion(input, x, execCxt);
         return cIter;
     }
@@ -309,6 +340,8 @@ public class OpExecutor {
 
         Op base = opFilter.getSubOp();
         QueryIterator qIter = exec(base, input);
+        if ( BatchExec.isEnabled(execCxt) )
+            return BatchExec.filter(qIter, exprs, execCxt);
 
         for ( Expr expr : exprs )
             qIter = new QueryIterFilterExpr(qIter, expr, execCxt);
@@ -399,6 +432,8 @@ public class OpExecutor {
 
         if ( input instanceof QueryIterRoot ) {
             QueryIterator qIter = exec(opProject.getSubOp(), input);
+            if ( BatchExec.isEnabled(execCxt) )
+                return BatchExec.project(qIter, opProject.getVars(), execCxt);
             qIter = QueryIterProject.create(qIter, opProject.getVars(), execCxt);
             return qIter;
         }
@@ -454,6 +489,8 @@ public class OpExecutor {
         // the query so we can use QueryIterAssign knowing that it behaves
         // the same as extend. The boolean should only be a check.
         QueryIterator qIter = exec(opExtend.getSubOp(), input);
+        if ( BatchExec.isEnabled(execCxt) )
+            return BatchExec.extend(qIter, opExtend.getVarExprList(), execCxt);
         qIter = new QueryIterAssign(qIter, opExtend.getVarExprList(), execCxt, true);
         return qIter;
     }
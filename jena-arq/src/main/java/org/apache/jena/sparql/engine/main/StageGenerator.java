@@ -21,6 +21,7 @@ package org.apache.jena.sparql.engine.main;
 import org.apache.jena.sparql.core.BasicPattern ;
 import org.apache.jena.sparql.engine.ExecutionContext ;
 import org.apache.jena.sparql.engine.QueryIterator ;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation ;
 
 /** Interface for execution of a basic graph pattern.
  *  A StageGenerator is registered in the context of an query
@@ -46,4 +47,12 @@ public interface StageGenerator
     public QueryIterator execute(BasicPattern pattern, 
                                  QueryIterator input,
                                  ExecutionContext execCxt) ;
+
+    /**
+     * The reorder transformation this stage generator applies to a basic graph pattern
+     * for the active graph of the execution context, or null if it does not reorder.
+     */
+    public default ReorderTransformation getReorderTransformation(ExecutionContext execCxt) {
+        return null ;
+    }
 }
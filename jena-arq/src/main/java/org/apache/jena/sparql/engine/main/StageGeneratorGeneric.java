@@ -51,6 +51,11 @@ public class StageGeneratorGeneric implements StageGenerator {
         return execute(pattern, reorder, input, execCxt) ;
     }
 
+    @Override
+    public ReorderTransformation getReorderTransformation(ExecutionContext execCxt) {
+        return reorderFixed ;
+    }
+
     /**
      * Attempts to construct an iterator that executes the input against the pattern.
      * If the construction fails, such as due to {@link QueryCancelledException}, then the exception is passed on
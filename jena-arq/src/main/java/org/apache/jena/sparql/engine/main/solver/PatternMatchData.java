@@ -53,6 +53,13 @@ public class PatternMatchData {
         Iterator<Binding> chain = input;
         List<Abortable> killList = new ArrayList<>();
 
+        if ( SolverAdaptive.isEnabled(execCxt) ) {
+            chain = SolverAdaptive.execute(chain, triples,
+                                           (iter, triple) -> SolverRX3.rdfStarTriple(iter, triple, execCxt),
+                                           iter -> SolverLib.makeAbortable(iter, killList));
+            return new QueryIterAbortable(chain, killList, input, execCxt);
+        }
+
         for ( Triple triple : triples ) {
             // Plain, no RDF-star
             //chain = StageMatchTriple.accessTriple(chain, graph, triple, filter, execCxt);
@@ -92,6 +99,14 @@ public class PatternMatchData {
         Iterator<Binding> chain = input;
         List<Abortable> killList = new ArrayList<>();
 
+        if ( SolverAdaptive.isEnabled(execCxt) ) {
+            Node gn = graphNode;
+            chain = SolverAdaptive.execute(chain, triples,
+                                           (iter, triple) -> SolverRX4.rdfStarQuad(iter, gn, triple, execCxt),
+                                           iter -> SolverLib.makeAbortable(iter, killList));
+            return new QueryIterAbortable(chain, killList, input, execCxt);
+        }
+
         for ( Triple triple : triples ) {
             // Plain - no RDF-star.
             //chain = StageMatchData.accessQuad(chain, graphNode, triple, filter, anyGraph, execCxt);
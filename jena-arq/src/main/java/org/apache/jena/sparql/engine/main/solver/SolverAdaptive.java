@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.main.solver;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.UnaryOperator;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.util.Context;
+
+/**
+ * Adaptive execution of a basic graph pattern.
+ * <p>
+ * The static order of the triple patterns is a starting point. At each step, the
+ * first {@link #SampleSize} bindings of the current stream are buffered and every
+ * remaining triple pattern is run over that sample to measure its actual fan-out.
+ * The pattern with the smallest output on the sample is joined next; the sample is
+ * put back at the head of the stream so no work is lost. Ties, including the case
+ * where every pattern reaches the probe limit, keep the static order.
+ * <p>
+ * This is generic in the binding type so that it works for the graph solver
+ * ({@code Binding}) and for storage layers that solve in their own binding type.
+ * <p>
+ * Enabled by the context setting {@link ARQ#optAdaptiveBGP}.
+ */
+public class SolverAdaptive {
+
+    /** Number of bindings sampled to measure the fan-out of the remaining patterns. */
+    public static int SampleSize = 200;
+
+    /** Probing a pattern stops after this many results per binding in the sample. */
+    public static int ProbeLimit = 100;
+
+    /** Test whether adaptive BGP execution is enabled. */
+    public static boolean isEnabled(ExecutionContext execCxt) {
+        Context context = execCxt.getContext();
+        return context != null && context.isTrue(ARQ.optAdaptiveBGP);
+    }
+
+    /**
+     * Join the input with the triple patterns, choosing the order at runtime.
+     * <p>
+     * {@code stage} joins a stream of bindings with one triple pattern. It is used
+     * for probing on the sample as well as for the execution itself.
+     * {@code wrap} is applied to each step of the final execution (e.g. to make it abortable).
+     */
+    public static <X> Iterator<X> execute(Iterator<X> input, List<Triple> triples,
+                                          BiFunction<Iterator<X>, Triple, Iterator<X>> stage,
+                                          UnaryOperator<Iterator<X>> wrap) {
+        if ( triples.size() <= 1 ) {
+            Iterator<X> chain = input;
+            for ( Triple triple : triples )
+                chain = wrap.apply(stage.apply(chain, triple));
+            return chain;
+        }
+        return new IteratorAdaptive<>(input, triples, stage, wrap);
+    }
+
+    /** Delay planning until the first access. */
+    private static class IteratorAdaptive<X> implements Iterator<X> {
+        private final Iterator<X> input;
+        private final List<Triple> triples;
+        private final BiFunction<Iterator<X>, Triple, Iterator<X>> stage;
+        private final UnaryOperator<Iterator<X>> wrap;
+        private Iterator<X> chain = null;
+
+        IteratorAdaptive(Iterator<X> input, List<Triple> triples,
+                         BiFunction<Iterator<X>, Triple, Iterator<X>> stage,
+                         UnaryOperator<Iterator<X>> wrap) {
+            this.input = input;
+            this.triples = triples;
+            this.stage = stage;
+            this.wrap = wrap;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if ( chain == null )
+                chain = plan(input, triples, stage, wrap);
+            return chain.hasNext();
+        }
+
+        @Override
+        public X next() {
+            if ( chain == null )
+                chain = plan(input, triples, stage, wrap);
+            return chain.next();
+        }
+    }
+
+    private static <X> Iterator<X> plan(Iterator<X> input, List<Triple> triples,
+                                        BiFunction<Iterator<X>, Triple, Iterator<X>> stage,
+                                        UnaryOperator<Iterator<X>> wrap) {
+        List<Triple> remaining = new ArrayList<>(triples);
+        Iterator<X> chain = input;
+        while ( remaining.size() > 1 ) {
+            List<X> sample = new ArrayList<>(SampleSize);
+            while ( sample.size() < SampleSize && chain.hasNext() )
+                sample.add(chain.next());
+            if ( sample.isEmpty() )
+                // No solutions - the remaining patterns can not add any.
+                return chain;
+            int idx = choose(sample, remaining, stage);
+            Triple triple = remaining.remove(idx);
+            chain = Iter.concat(sample.iterator(), chain);
+            chain = wrap.apply(stage.apply(chain, triple));
+        }
+        return wrap.apply(stage.apply(chain, remaining.get(0)));
+    }
+
+    /** Index of the pattern with the smallest output on the sample. */
+    private static <X> int choose(List<X> sample, List<Triple> remaining,
+                                  BiFunction<Iterator<X>, Triple, Iterator<X>> stage) {
+        long limit = (long)sample.size() * ProbeLimit;
+        int best = 0;
+        long bestCount = Long.MAX_VALUE;
+        for ( int i = 0 ; i < remaining.size() ; i++ ) {
+            // Only need to know whether this pattern is better than the best so far.
+            long max = Math.min(limit, bestCount);
+            long x = count(stage.apply(sample.iterator(), remaining.get(i)), max);
+            if ( x < bestCount ) {
+                best = i;
+                bestCount = x;
+            }
+        }
+        return best;
+    }
+
+    private static <X> long count(Iterator<X> iter, long max) {
+        try {
+            long x = 0;
+            while ( x < max && iter.hasNext() ) {
+                iter.next();
+                x++;
+            }
+            return x;
+        } finally {
+            Iter.close(iter);
+        }
+    }
+}
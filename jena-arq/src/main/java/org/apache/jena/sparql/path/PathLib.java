@@ -43,6 +43,7 @@ import org.apache.jena.sparql.engine.binding.Binding ;
 import org.apache.jena.sparql.engine.binding.BindingFactory ;
 import org.apache.jena.sparql.engine.iterator.*;
 import org.apache.jena.sparql.mgt.Explain ;
+import org.apache.jena.sparql.path.eval.PathClosure ;
 import org.apache.jena.sparql.path.eval.PathEval ;
 import org.apache.jena.sparql.pfunction.PropertyFunctionFactory ;
 import org.apache.jena.sparql.pfunction.PropertyFunctionRegistry ;
@@ -162,6 +163,12 @@ public class PathLib
     private static QueryIterator evalGroundedPath(Binding binding,
                                                   Graph graph, Node subject, Path path, Node object,
                                                   ExecutionContext execCxt) {
+        if ( PathClosure.isClosure(path) && ! object.isLiteral() ) {
+            // path* or path+ : search from both ends.
+            // Literals are matched by value, below, so can match more than once.
+            boolean b = PathClosure.connects(graph, subject, path, object, execCxt.getContext());
+            return b ? QueryIterSingleton.create(binding, execCxt) : QueryIterNullIterator.create(execCxt);
+        }
         Iterator<Node> iter = PathEval.eval(graph, subject, path, execCxt.getContext()) ;
         // Now count the number of matches.
 
@@ -180,8 +187,12 @@ public class PathLib
         // Starting at the subject, forward direction path
         Iterator<Node> iter = ungroundedStartingSet(graph, path, execCxt) ;
         QueryIterator input = new QueryIterExtendByVar(binding, sVar, iter, execCxt);
+        // :p* and :p+ : read the links once, not for each start node.
+        PathClosure.Adjacency adjacency = PathClosure.adjacency(graph, path, execCxt.getContext());
         Function<Binding, QueryIterator> mapper = b -> {
-            Iterator<Node> pathIter = PathEval.eval(graph, b.get(sVar), path, execCxt.getContext());
+            Iterator<Node> pathIter = ( adjacency != null )
+                    ? adjacency.reach(b.get(sVar)).iterator()
+                    : PathEval.eval(graph, b.get(sVar), path, execCxt.getContext());
             QueryIterator qIter = evalGroundedOneEnd(b, pathIter, oVar, execCxt);
             return qIter;
         };
@@ -287,6 +298,8 @@ public class PathLib
     private static int existsPath(Graph graph, Node subject, Path path, final Node object, ExecutionContext execCxt) {
         if ( ! subject.isConcrete() || !object.isConcrete() )
             throw new ARQInternalErrorException("Non concrete node for existsPath evaluation") ;
+        if ( PathClosure.isClosure(path) )
+            return PathClosure.connects(graph, subject, path, object, execCxt.getContext()) ? 1 : 0 ;
         Iterator<Node> iter = PathEval.eval(graph, subject, path, execCxt.getContext()) ;
         Predicate<Node> filter = node -> Objects.equals(node,  object);
         // See if we got to the node we're interested in finishing at.
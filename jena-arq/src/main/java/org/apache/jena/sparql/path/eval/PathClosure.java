@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.path.eval;
+
+import java.util.*;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.path.*;
+import org.apache.jena.sparql.pfunction.PropertyFunctionRegistry;
+import org.apache.jena.sparql.util.Context;
+
+/**
+ * Evaluation of {@code path*} and {@code path+} (SPARQL semantics) as
+ * breadth-first searches that advance a whole frontier of nodes at each step.
+ * <ul>
+ * <li>{@link #connects} tests a path where both ends are known by searching
+ * from both ends until the searches meet.</li>
+ * <li>{@link #adjacency} reads the links of a simple property once so that a
+ * path with neither end known does not look up the graph again for each start
+ * node.</li>
+ * </ul>
+ */
+public class PathClosure
+{
+    /** Whether the path is {@code path*} or {@code path+}, or the inverse of one of these. */
+    public static boolean isClosure(Path path) {
+        if ( path instanceof P_Inverse pInv )
+            path = pInv.getSubPath();
+        return path instanceof P_ZeroOrMore1 || path instanceof P_OneOrMore1;
+    }
+
+    /**
+     * Test whether {@code path}, which is {@code step*} or {@code step+} (or the
+     * inverse of one of these), connects {@code start} to {@code end}. This
+     * searches forwards from {@code start} and backwards from {@code end}, each
+     * round expanding the smaller frontier, and stops as soon as the two searches
+     * meet or one of them runs out.
+     * <p>
+     * The test is for the same term: it does not find value-equal literals.
+     */
+    public static boolean connects(Graph graph, Node start, Path path, Node end, Context context) {
+        if ( ! isClosure(path) )
+            throw new IllegalArgumentException("Not a path* or path+: "+path);
+        if ( path instanceof P_Inverse pInv )
+            return connects(graph, end, pInv.getSubPath(), start, context);
+        Path step = ((P_Path1)path).getSubPath();
+        boolean zeroLength = ( path instanceof P_ZeroOrMore1 );
+        PathEngine forwards = new PathEngineSPARQL(graph, true, context);
+        PathEngine backwards = new PathEngineSPARQL(graph, false, context);
+
+        Set<Node> visitedFwd = new HashSet<>();
+        Set<Node> visitedBwd = new HashSet<>();
+        List<Node> frontierFwd = new ArrayList<>();
+        List<Node> frontierBwd = new ArrayList<>();
+
+        if ( zeroLength ) {
+            if ( start.equals(end) )
+                return true;
+            visitedFwd.add(start);
+            frontierFwd.add(start);
+        } else {
+            // path+ : the forward search starts one step out.
+            Iter<Node> iter = PathEval.eval$(graph, start, step, forwards);
+            for ( ; iter.hasNext() ; ) {
+                Node n = iter.next();
+                if ( n.equals(end) )
+                    return true;
+                if ( visitedFwd.add(n) )
+                    frontierFwd.add(n);
+            }
+        }
+        visitedBwd.add(end);
+        frontierBwd.add(end);
+
+        while ( ! frontierFwd.isEmpty() && ! frontierBwd.isEmpty() ) {
+            if ( frontierFwd.size() <= frontierBwd.size() ) {
+                frontierFwd = step(graph, forwards, step, frontierFwd, visitedFwd, visitedBwd);
+                if ( frontierFwd == null )
+                    return true;
+            } else {
+                frontierBwd = step(graph, backwards, step, frontierBwd, visitedBwd, visitedFwd);
+                if ( frontierBwd == null )
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * One step from every node of the frontier. Returns the new frontier, or null
+     * if a node visited by the search from the other end has been reached.
+     */
+    private static List<Node> step(Graph graph, PathEngine engine, Path step, List<Node> frontier, Set<Node> visited, Set<Node> other) {
+        List<Node> next = new ArrayList<>();
+        for ( Node n : frontier ) {
+            Iter<Node> iter = PathEval.eval$(graph, n, step, engine);
+            for ( ; iter.hasNext() ; ) {
+                Node n1 = iter.next();
+                if ( other.contains(n1) )
+                    return null;
+                if ( visited.add(n1) )
+                    next.add(n1);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Return an {@link Adjacency} for {@code path}, which is {@code step*} or
+     * {@code step+} or the inverse of one of these, if the step is a property or
+     * the inverse of a property that is not a property function, otherwise return
+     * null.
+     */
+    public static Adjacency adjacency(Graph graph, Path path, Context context) {
+        if ( ! isClosure(path) )
+            return null;
+        boolean forwards = true;
+        if ( path instanceof P_Inverse pInv ) {
+            path = pInv.getSubPath();
+            forwards = false;
+        }
+        Path step = ((P_Path1)path).getSubPath();
+        if ( step instanceof P_Inverse pInv ) {
+            step = pInv.getSubPath();
+            forwards = !forwards;
+        }
+        if ( ! ( step instanceof P_Link pLink ) )
+            return null;
+        Node property = pLink.getNode();
+        if ( property.isURI() && PropertyFunctionRegistry.chooseRegistry(context).isRegistered(property.getURI()) )
+            return null;
+        return new Adjacency(graph, property, forwards, path instanceof P_ZeroOrMore1);
+    }
+
+    /**
+     * The links of one property, held in memory, for evaluating {@code :p*},
+     * {@code :p+}, {@code ^:p*} or {@code ^:p+} from many start nodes. The graph is
+     * read, with a single {@code find}, the first time {@link #reach} is called.
+     */
+    public static class Adjacency {
+        private final Graph graph;
+        private final Node property;
+        private final boolean forwards;
+        private final boolean zeroLength;
+        private Map<Node, List<Node>> links = null;
+
+        private Adjacency(Graph graph, Node property, boolean forwards, boolean zeroLength) {
+            this.graph = graph;
+            this.property = property;
+            this.forwards = forwards;
+            this.zeroLength = zeroLength;
+        }
+
+        private Map<Node, List<Node>> links() {
+            if ( links == null ) {
+                Map<Node, List<Node>> x = new HashMap<>();
+                Iter<Triple> iter = Iter.iter(graph.find(Node.ANY, property, Node.ANY));
+                try {
+                    iter.forEachRemaining(t -> {
+                        Node from = forwards ? t.getSubject() : t.getObject();
+                        Node to = forwards ? t.getObject() : t.getSubject();
+                        x.computeIfAbsent(from, k -> new ArrayList<>(2)).add(to);
+                    });
+                } finally { iter.close(); }
+                links = x;
+            }
+            return links;
+        }
+
+        /** The nodes reached from {@code start}, each once. */
+        public List<Node> reach(Node start) {
+            Map<Node, List<Node>> links = links();
+            Set<Node> visited = new HashSet<>();
+            List<Node> output = new ArrayList<>();
+            List<Node> frontier = new ArrayList<>();
+            if ( zeroLength )
+                frontier.add(start);
+            else
+                frontier.addAll(links.getOrDefault(start, List.of()));
+            frontier.removeIf(n -> !visited.add(n));
+            while ( ! frontier.isEmpty() ) {
+                output.addAll(frontier);
+                List<Node> next = new ArrayList<>();
+                for ( Node n : frontier ) {
+                    for ( Node n1 : links.getOrDefault(n, List.of()) ) {
+                        if ( visited.add(n1) )
+                            next.add(n1);
+                    }
+                }
+                frontier = next;
+            }
+            return output;
+        }
+    }
+}
@@ -99,7 +99,7 @@ public class PathEngineSPARQL extends PathEngine
     @Override
     protected void doZeroOrMore(Path pathStep, Node node, Collection<Node> output) {
         Set<Node> visited = visitedAcc() ;
-        ALP_1(0, -1, node, pathStep, visited, output) ;
+        ALP_1(List.of(node), pathStep, visited, output) ;
     }
 
     @Override
@@ -107,11 +107,9 @@ public class PathEngineSPARQL extends PathEngine
         // Track visited.
         Set<Node> visited = visitedAcc() ;
         // Do one step without including.
-        Iter<Node> iter1 = eval(pathStep, node) ;
-        for (; iter1.hasNext();) {
-            Node n1 = iter1.next() ;
-            ALP_1(0, -1, n1, pathStep, visited, output) ;
-        }
+        List<Node> start = new ArrayList<>() ;
+        eval(pathStep, node, start) ;
+        ALP_1(start, pathStep, visited, output) ;
     }
 
     @Override
@@ -120,17 +118,30 @@ public class PathEngineSPARQL extends PathEngine
         output.add(node) ;
     }
 
-    private void ALP_1(int stepCount, int maxStepCount, Node node, Path path, Set<Node> visited, Collection<Node> output) {
-        if ( maxStepCount >= 0 && stepCount > maxStepCount )
-            return ;
-        if ( !visited.add(node) )
-            return ;
-        output.add(node);
-        Iter<Node> iter1 = eval(path, node) ;
-        // For each step, add to results and recurse.
-        for (; iter1.hasNext();) {
-            Node n1 = iter1.next() ;
-            ALP_1(stepCount + 1, maxStepCount, n1, path, visited, output) ;
+    /**
+     * The worker function for path{*} and path{+} (SPARQL semantics). This is a
+     * breadth-first search: each round takes one step from every node of the
+     * frontier, and the nodes not seen before become the next frontier. There is
+     * no recursion so long chains do not use up the stack.
+     */
+    private void ALP_1(Collection<Node> start, Path path, Set<Node> visited, Collection<Node> output) {
+        List<Node> frontier = new ArrayList<>() ;
+        for ( Node n : start ) {
+            if ( visited.add(n) )
+                frontier.add(n) ;
+        }
+        while ( ! frontier.isEmpty() ) {
+            output.addAll(frontier) ;
+            List<Node> next = new ArrayList<>() ;
+            for ( Node n : frontier ) {
+                Iter<Node> iter1 = eval(path, n) ;
+                for (; iter1.hasNext();) {
+                    Node n1 = iter1.next() ;
+                    if ( visited.add(n1) )
+                        next.add(n1) ;
+                }
+            }
+            frontier = next ;
         }
     }
 
@@ -30,6 +30,7 @@ import org.apache.jena.sparql.core.TS_SparqlCore;
 import org.apache.jena.sparql.core.assembler.TS_Assembler;
 import org.apache.jena.sparql.core.mem.TS_DatasetTxnMem;
 import org.apache.jena.sparql.engine.TS_Engine;
+import org.apache.jena.sparql.engine.batch.TS_Batch;
 import org.apache.jena.sparql.engine.binding.TS_EngineBinding;
 import org.apache.jena.sparql.engine.index.TS_Minus;
 import org.apache.jena.sparql.engine.iterator.TS_QueryIterators;
@@ -84,6 +85,7 @@ import org.junit.platform.suite.api.Suite;
     , TS_Solver.class
     , TS_Algebra.class
     , TS_Join.class
+    , TS_Batch.class
     , TS_Minus.class
     , TS_QueryIterators.class
     , TS_Optimization.class
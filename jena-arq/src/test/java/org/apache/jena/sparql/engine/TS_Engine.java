@@ -26,6 +26,7 @@ import org.junit.platform.suite.api.Suite;
         TestQueryEngineMultiThreaded.class
       , TestQueryEngineFromContext.class
       , TestJsonEval.class
+      , TestSolverAdaptive.class
 })
 
 public class TS_Engine {}
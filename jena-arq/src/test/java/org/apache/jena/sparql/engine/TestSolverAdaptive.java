@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.*;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.engine.main.solver.SolverAdaptive;
+import org.apache.jena.sparql.resultset.ResultSetCompare;
+import org.apache.jena.sparql.sse.SSE;
+
+public class TestSolverAdaptive {
+
+    // Each "binding" records the patterns applied to it, in order.
+    // The fan-out of a pattern is the integer object of the triple.
+    private static Iterator<List<String>> stage(Iterator<List<String>> input, Triple triple) {
+        String name = triple.getPredicate().getLocalName();
+        int fanout = Integer.parseInt(triple.getObject().getLiteralLexicalForm());
+        return Iter.flatMap(input, x -> {
+            List<List<String>> results = new ArrayList<>();
+            for ( int i = 0 ; i < fanout ; i++ ) {
+                List<String> x2 = new ArrayList<>(x);
+                x2.add(name);
+                results.add(x2);
+            }
+            return results.iterator();
+        });
+    }
+
+    private static List<List<String>> run(int numInput, String... patterns) {
+        List<Triple> triples = new ArrayList<>();
+        for ( String p : patterns )
+            triples.add(SSE.parseTriple(p));
+        List<List<String>> input = new ArrayList<>();
+        for ( int i = 0 ; i < numInput ; i++ )
+            input.add(List.of());
+        Iterator<List<String>> iter = SolverAdaptive.execute(input.iterator(), triples, TestSolverAdaptive::stage, x -> x);
+        return Iter.toList(iter);
+    }
+
+    @Test public void adaptive_01() {
+        List<List<String>> x = run(1, "(?s :a 10)", "(?s :b 1)");
+        assertEquals(10, x.size());
+        assertEquals(List.of("b", "a"), x.get(0));
+    }
+
+    @Test public void adaptive_02() {
+        List<List<String>> x = run(1, "(?s :a 5)", "(?s :b 3)", "(?s :c 2)");
+        assertEquals(30, x.size());
+        assertEquals(List.of("c", "b", "a"), x.get(0));
+    }
+
+    @Test public void adaptive_03() {
+        // Tie - keep the order.
+        List<List<String>> x = run(1, "(?s :a 2)", "(?s :b 2)");
+        assertEquals(4, x.size());
+        assertEquals(List.of("a", "b"), x.get(0));
+    }
+
+    @Test public void adaptive_04() {
+        List<List<String>> x = run(1, "(?s :a 10)", "(?s :b 0)");
+        assertTrue(x.isEmpty());
+    }
+
+    @Test public void adaptive_05() {
+        // More input than the sample size.
+        int N = 2*SolverAdaptive.SampleSize+1;
+        List<List<String>> x = run(N, "(?s :a 3)", "(?s :b 1)");
+        assertEquals(3*N, x.size());
+        x.forEach(r->assertEquals(List.of("b", "a"), r));
+    }
+
+    @Test public void adaptive_06() {
+        List<List<String>> x = run(0, "(?s :a 3)", "(?s :b 1)");
+        assertTrue(x.isEmpty());
+    }
+
+    private static String data = """
+        (dataset
+          (graph
+            (:s1 :p :x1) (:s1 :p :x2) (:s1 :p :x3) (:s2 :p :x1) (:s2 :p :x2)
+            (:s1 :q :o) (:s3 :q :o)
+            (:x1 :r :o) (:x3 :r :o)
+          )
+          (graph :g
+            (:s1 :p :x1) (:s1 :p :x2) (:s2 :p :x1)
+            (:s1 :q :o)
+            (:x1 :r :o)
+          )
+        )
+        """;
+
+    @Test public void adaptive_query_01() {
+        testQuery("PREFIX : <http://example/> SELECT * { ?s :p ?x . ?s :q ?o . ?x :r ?o }");
+    }
+
+    @Test public void adaptive_query_02() {
+        testQuery("PREFIX : <http://example/> SELECT * { GRAPH ?g { ?s :p ?x . ?s :q ?o . ?x :r ?o } }");
+    }
+
+    @Test public void adaptive_query_03() {
+        testQuery("PREFIX : <http://example/> SELECT * { ?s :p ?x . ?s :q ?o . ?x :z ?o }");
+    }
+
+    private static void testQuery(String queryString) {
+        DatasetGraph dsg = SSE.parseDatasetGraph(data);
+        Dataset ds = DatasetFactory.wrap(dsg);
+        ResultSetRewindable expected;
+        try ( QueryExecution qExec = QueryExecution.dataset(ds).query(queryString).build() ) {
+            expected = qExec.execSelect().rewindable();
+        }
+        ResultSetRewindable actual;
+        try ( QueryExecution qExec = QueryExecution.dataset(ds).query(queryString).set(ARQ.optAdaptiveBGP, true).build() ) {
+            actual = qExec.execSelect().rewindable();
+        }
+        assertTrue(ResultSetCompare.equalsByTerm(expected, actual));
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.batch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.*;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.resultset.ResultSetCompare;
+import org.apache.jena.sparql.sse.SSE;
+
+public class TestBatchExec {
+
+    private static final Var x = Var.alloc("x");
+    private static final Var y = Var.alloc("y");
+    private static final Var z = Var.alloc("z");
+
+    private static BindingBatch batch(String... bindings) {
+        BatchBuilder builder = new BatchBuilder(10);
+        for ( String str : bindings )
+            builder.add(SSE.parseBinding(str));
+        return builder.build();
+    }
+
+    @Test public void batch_build_01() {
+        BindingBatch batch = batch("(binding (?x 1))", "(binding (?y 2))", "(binding (?x 3) (?y 4))");
+        assertEquals(3, batch.size());
+        assertEquals(List.of(x, y), batch.vars());
+        assertEquals(SSE.parseBinding("(binding (?y 2))"), batch.binding(1));
+        assertEquals(SSE.parseBinding("(binding (?x 3) (?y 4))"), batch.binding(2));
+        assertEquals(1, batch.binding(0).size());
+        assertNull(batch.binding(0).get(y));
+    }
+
+    @Test public void batch_select_01() {
+        BindingBatch batch = batch("(binding (?x 1))", "(binding (?x 2))", "(binding (?x 3))");
+        BindingBatch batch2 = batch.select(new int[] {0, 2}, 2);
+        assertEquals(2, batch2.size());
+        assertEquals(SSE.parseBinding("(binding (?x 3))"), batch2.binding(1));
+        // Selecting from a selection uses physical rows.
+        BindingBatch batch3 = batch2.select(new int[] {batch2.row(1)}, 1);
+        assertEquals(SSE.parseBinding("(binding (?x 3))"), batch3.binding(0));
+    }
+
+    @Test public void batch_project_01() {
+        BindingBatch batch = batch("(binding (?x 1) (?y 2))", "(binding (?y 3))");
+        BindingBatch batch2 = batch.project(List.of(y, z));
+        assertEquals(List.of(y), batch2.vars());
+        assertEquals(SSE.parseBinding("(binding (?y 2))"), batch2.binding(0));
+    }
+
+    @Test public void batch_column_01() {
+        BindingBatch batch = batch("(binding (?x 1))", "(binding (?x 2))");
+        Node[] column = { SSE.parseNode("'a'"), null };
+        BindingBatch batch2 = batch.withColumn(z, column);
+        assertEquals(SSE.parseBinding("(binding (?x 1) (?z 'a'))"), batch2.binding(0));
+        assertEquals(SSE.parseBinding("(binding (?x 2))"), batch2.binding(1));
+        // Original unchanged.
+        assertEquals(List.of(x), batch.vars());
+    }
+
+    @Test public void batch_builder_01() {
+        // Rows beyond the limit grow the columns.
+        BatchBuilder builder = new BatchBuilder(1);
+        builder.add(SSE.parseBinding("(binding (?x 1))"));
+        assertTrue(builder.isFull());
+        builder.add(SSE.parseBinding("(binding (?y 2))"));
+        BindingBatch batch = builder.build();
+        assertEquals(2, batch.size());
+        assertTrue(builder.isEmpty());
+        builder.add(SSE.parseBinding("(binding (?y 5))"));
+        Binding b = builder.build().binding(0);
+        assertEquals(SSE.parseBinding("(binding (?y 5))"), b);
+    }
+
+    private static String data = """
+        (dataset
+          (graph
+             (:s1 :p 1) (:s1 :q "a") (:s1 :r :s2)
+             (:s2 :p 2) (:s2 :q "b") (:s2 :r :s3)
+             (:s3 :p 3) (:s3 :r :s1)
+             (:s4 :p 4) (:s4 :q "a")
+             (:s5 :p "x")
+          ))
+        """;
+
+    @Test public void batch_query_filter_01() {
+        testQuery("SELECT * { ?s :p ?v FILTER(?v > 1) }");
+    }
+
+    @Test public void batch_query_filter_02() {
+        // Error in a filter.
+        testQuery("SELECT * { ?s :p ?v FILTER(?v + 1 > 2 && ?s != :s4) }");
+    }
+
+    @Test public void batch_query_extend_01() {
+        testQuery("SELECT * { ?s :p ?v BIND(?v * 2 AS ?w) BIND(?w + 1 AS ?u) }");
+    }
+
+    @Test public void batch_query_extend_02() {
+        testQuery("SELECT ?s ?w { ?s :p ?v OPTIONAL { ?s :q ?q } BIND(concat(?q, 'z') AS ?w) }");
+    }
+
+    @Test public void batch_query_join_01() {
+        testQuery("SELECT * { { ?s :p ?v } { ?s :q ?q } }");
+    }
+
+    @Test public void batch_query_join_02() {
+        // Partial bindings on both sides.
+        testQuery("SELECT * { { ?s :p ?v OPTIONAL { ?s :q ?q } } { ?t :q ?q OPTIONAL { ?t :r ?s } } }");
+    }
+
+    @Test public void batch_query_join_03() {
+        // No common variables.
+        testQuery("SELECT * { { ?s :q ?q } { ?t :r ?u } }");
+    }
+
+    @Test public void batch_query_join_04() {
+        testQuery("SELECT ?s ?n { { ?s :r ?o } { SELECT ?o (count(*) AS ?n) { ?o ?p ?v } GROUP BY ?o } FILTER(?n > 2) }");
+    }
+
+    private static void testQuery(String queryString) {
+        Query query = QueryFactory.create("PREFIX : <http://example/> "+queryString);
+        DatasetGraph dsg = SSE.parseDatasetGraph(data);
+        Dataset ds = DatasetFactory.wrap(dsg);
+        ResultSetRewindable expected;
+        try ( QueryExecution qExec = QueryExecution.dataset(ds).query(query).build() ) {
+            expected = qExec.execSelect().rewindable();
+        }
+        int batchSize = BatchExec.BatchSize;
+        try {
+            for ( int size : new int[] {1, 2, 1000} ) {
+                BatchExec.BatchSize = size;
+                ResultSetRewindable actual;
+                try ( QueryExecution qExec = QueryExecution.dataset(ds).query(query).set(ARQ.optBatchExecution, true).build() ) {
+                    actual = qExec.execSelect().rewindable();
+                }
+                expected.reset();
+                assertTrue(ResultSetCompare.equalsByTerm(expected, actual), "Batch size "+size);
+            }
+        } finally {
+            BatchExec.BatchSize = batchSize;
+        }
+    }
+}
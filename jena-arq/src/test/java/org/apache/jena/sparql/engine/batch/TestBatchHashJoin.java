@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.batch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+
+import org.apache.jena.sparql.algebra.Table;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.join.AbstractTestInnerJoin;
+import org.apache.jena.sparql.engine.join.JoinKey;
+import org.apache.jena.sparql.expr.ExprList;
+
+public class TestBatchHashJoin extends AbstractTestInnerJoin {
+    private int batchSize;
+
+    // Small batches so that inputs and outputs are split across several batches.
+    @BeforeEach public void before() {
+        batchSize = BatchExec.BatchSize;
+        BatchExec.BatchSize = 2;
+    }
+
+    @AfterEach public void after() {
+        BatchExec.BatchSize = batchSize;
+    }
+
+    @Override
+    public QueryIterator join(JoinKey joinKey, Table left, Table right, ExprList conditions) {
+        return BatchExec.join(left.iterator(null), right.iterator(null), null);
+    }
+}
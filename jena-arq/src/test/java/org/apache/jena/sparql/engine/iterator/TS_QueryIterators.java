@@ -30,6 +30,8 @@ import org.junit.platform.suite.api.Suite;
     , TestDataBagDistinctOrder.class
     , TestCancelDistinct.class
     , TestSortedDataBagCancellation.class
+    , TestQueryIterGroupSpill.class
+    , TestQueryIterParallel.class
 })
 public class TS_QueryIterators {
 
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.iterator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.*;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.resultset.ResultSetCompare;
+import org.apache.jena.sparql.util.NodeFactoryExtra;
+
+/** Grouping with a spill threshold gives the same results as grouping in memory. */
+public class TestQueryIterGroupSpill {
+
+    private static final String PREFIX = "PREFIX : <http://example/>\n";
+    private static final Dataset dataset = data(200);
+
+    // Subject :sN has :p with values 0..(N%7), and :q only for even N.
+    private static Dataset data(int N) {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        Graph graph = dsg.getDefaultGraph();
+        Node p = NodeFactory.createURI("http://example/p");
+        Node q = NodeFactory.createURI("http://example/q");
+        for ( int i = 0 ; i < N ; i++ ) {
+            Node s = NodeFactory.createURI("http://example/s"+i);
+            for ( int j = 0 ; j <= i % 7 ; j++ )
+                graph.add(s, p, NodeFactoryExtra.intToNode(j*i % 13));
+            if ( i % 2 == 0 )
+                graph.add(s, q, NodeFactory.createLiteralString("q"+(i % 5)));
+        }
+        return DatasetFactory.wrap(dsg);
+    }
+
+    @Test public void group_spill_01() {
+        test("SELECT ?s (count(*) AS ?c) { ?s :p ?v } GROUP BY ?s", 200);
+    }
+
+    @Test public void group_spill_02() {
+        test("SELECT ?s (sum(?v) AS ?sum) (avg(?v) AS ?avg) (min(?v) AS ?min) (max(?v) AS ?max) { ?s :p ?v } GROUP BY ?s", 200);
+    }
+
+    @Test public void group_spill_03() {
+        test("SELECT ?v (count(distinct ?s) AS ?c) (sum(distinct ?v) AS ?sum) { ?s :p ?v } GROUP BY ?v", 13);
+    }
+
+    @Test public void group_spill_04() {
+        // Unbound group key.
+        test("SELECT ?q (count(*) AS ?c) { ?s :p ?v OPTIONAL { ?s :q ?q } } GROUP BY ?q", 6);
+    }
+
+    @Test public void group_spill_05() {
+        // Group by expression, two keys.
+        test("SELECT ?q ?k (max(?v) AS ?m) { ?s :p ?v OPTIONAL { ?s :q ?q } } GROUP BY ?q (?v*2 AS ?k)", -1);
+    }
+
+    @Test public void group_spill_06() {
+        // No aggregators.
+        test("SELECT ?s { ?s :p ?v } GROUP BY ?s", 200);
+    }
+
+    @Test public void group_spill_07() {
+        // No GROUP BY: one group.
+        test("SELECT (count(*) AS ?c) (sum(?v) AS ?sum) { ?s :p ?v }", 1);
+    }
+
+    @Test public void group_spill_08() {
+        test("SELECT ?s (count(*) AS ?c) { ?s :p ?v } GROUP BY ?s HAVING (count(*) > 3)", -1);
+    }
+
+    @Test public void group_spill_09() {
+        // Aggregate over a variable that is not always bound.
+        test("SELECT ?s (count(?q) AS ?c) (group_concat(?q) AS ?gc) { ?s :p ?v OPTIONAL { ?s :q ?q } } GROUP BY ?s ?q", 200);
+    }
+
+    private static void test(String queryString, int expectedRows) {
+        Query query = QueryFactory.create(PREFIX+queryString);
+        ResultSetRewindable expected;
+        try ( QueryExecution qExec = QueryExecution.dataset(dataset).query(query).build() ) {
+            expected = qExec.execSelect().rewindable();
+        }
+        for ( long threshold : new long[] {10, 100} ) {
+            ResultSetRewindable actual;
+            try ( QueryExecution qExec = QueryExecution.dataset(dataset).query(query).set(ARQ.spillToDiskThreshold, threshold).build() ) {
+                actual = qExec.execSelect().rewindable();
+            }
+            if ( expectedRows >= 0 )
+                assertEquals(expectedRows, actual.size());
+            expected.reset();
+            assertTrue(ResultSetCompare.equalsByTerm(expected, actual), "Threshold "+threshold);
+        }
+    }
+}
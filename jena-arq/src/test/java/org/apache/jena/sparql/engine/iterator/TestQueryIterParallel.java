@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.iterator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.*;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.main.StageGenerator;
+import org.apache.jena.sparql.engine.main.StageGeneratorGeneric;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderProc;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderProcIndexes;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
+import org.apache.jena.sparql.resultset.ResultSetCompare;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.sparql.util.NodeFactoryExtra;
+import org.apache.jena.system.Txn;
+
+public class TestQueryIterParallel {
+
+    private static final String PREFIX = "PREFIX : <http://example/>\n";
+    private static final Dataset dataset = data(DatasetGraphFactory.create(), 500);
+    // A dataset with isolating transactions.
+    private static final Dataset datasetTxn = data(DatasetGraphFactory.createTxnMem(), 500);
+
+    // :sN :p :s(N+1) ; :v N ; :q "x" for N multiple of 3.
+    private static Dataset data(DatasetGraph dsg, int N) {
+        Txn.executeWrite(dsg, ()->addData(dsg.getDefaultGraph(), N));
+        return DatasetFactory.wrap(dsg);
+    }
+
+    private static void addData(Graph graph, int N) {
+        Node p = NodeFactory.createURI("http://example/p");
+        Node q = NodeFactory.createURI("http://example/q");
+        Node v = NodeFactory.createURI("http://example/v");
+        for ( int i = 0 ; i < N ; i++ ) {
+            Node s = node(i);
+            graph.add(s, p, node(i+1));
+            graph.add(s, v, NodeFactoryExtra.intToNode(i));
+            if ( i % 3 == 0 )
+                graph.add(s, q, NodeFactory.createLiteralString("x"));
+        }
+    }
+
+    private static Node node(int i) {
+        return NodeFactory.createURI("http://example/s"+i);
+    }
+
+    @Test public void parallel_union_01() {
+        testQuery("SELECT * { { ?s :p ?o } UNION { ?s :q ?o } UNION { ?s :v ?o } }");
+    }
+
+    @Test public void parallel_join_01() {
+        testQuery("SELECT * { { ?s :p ?o } { SELECT ?s (count(*) AS ?c) { ?s ?p ?x } GROUP BY ?s } }");
+    }
+
+    @Test public void parallel_bgp_01() {
+        testQuery("SELECT * { ?s :p ?o . ?o :p ?o2 . ?o2 :v ?v }");
+    }
+
+    @Test public void parallel_bgp_02() {
+        testQuery("SELECT * { ?s :q ?x . ?s :p ?o . ?o :v ?v FILTER(?v > 100) }");
+    }
+
+    @Test public void parallel_txn_01() {
+        testQuery(datasetTxn, "SELECT * { ?s :p ?o . ?o :p ?o2 . ?o2 :v ?v }");
+    }
+
+    @Test public void parallel_txn_02() {
+        testQuery(datasetTxn, "SELECT * { { ?s :p ?o . ?o :q ?x } UNION { ?s :q ?x . ?s :v ?v } }");
+    }
+
+    @Test public void parallel_txn_03() {
+        testQuery(datasetTxn, "SELECT * { { ?s :p ?o } { SELECT ?s (count(*) AS ?c) { ?s ?p ?x } GROUP BY ?s } }");
+    }
+
+    @Test public void parallel_txn_version_01() {
+        // A write transaction commits after the query's read transaction starts.
+        // Workers can not see the same data so the consumer runs their work.
+        Dataset ds = data(DatasetGraphFactory.createTxnMem(), 100);
+        Query query = QueryFactory.create(PREFIX+"SELECT * { ?s :p ?o . ?o :v ?v }");
+        ds.begin(TxnType.READ);
+        try {
+            Thread writer = new Thread(()->Txn.executeWrite(ds, ()->addData(ds.asDatasetGraph().getDefaultGraph(), 200)));
+            writer.start();
+            writer.join();
+            ResultSetRewindable expected;
+            try ( QueryExecution qExec = QueryExecution.dataset(ds).query(query).build() ) {
+                expected = qExec.execSelect().rewindable();
+            }
+            ResultSetRewindable actual;
+            try ( QueryExecution qExec = QueryExecution.dataset(ds).query(query).set(ARQ.optParallelExecution, true).build() ) {
+                actual = qExec.execSelect().rewindable();
+            }
+            assertEquals(99, expected.size());
+            expected.reset();
+            assertTrue(ResultSetCompare.equalsByTerm(expected, actual));
+        } catch (InterruptedException ex) {
+            fail("Interrupted");
+        } finally { ds.end(); }
+    }
+
+    @Test public void parallel_bgp_reorder_01() {
+        // The pattern is ordered by the stage generator before the first pattern is partitioned.
+        Query query = QueryFactory.create(PREFIX+"SELECT * { ?s :p ?o . ?s :q ?x }");
+        List<BasicPattern> patterns = Collections.synchronizedList(new ArrayList<>());
+        StageGenerator generic = new StageGeneratorGeneric();
+        StageGenerator stageGenerator = new StageGenerator() {
+            @Override
+            public QueryIterator execute(BasicPattern pattern, QueryIterator input, ExecutionContext execCxt) {
+                patterns.add(pattern);
+                return generic.execute(pattern, input, execCxt);
+            }
+            @Override
+            public ReorderTransformation getReorderTransformation(ExecutionContext execCxt) {
+                // Last pattern first.
+                return new ReorderTransformation() {
+                    @Override
+                    public ReorderProc reorderIndexes(BasicPattern bgp) {
+                        int[] indexes = new int[bgp.size()];
+                        for ( int i = 0 ; i < indexes.length ; i++ )
+                            indexes[i] = indexes.length-1-i;
+                        return new ReorderProcIndexes(indexes);
+                    }
+                    @Override
+                    public BasicPattern reorder(BasicPattern bgp) {
+                        return reorderIndexes(bgp).reorder(bgp);
+                    }
+                };
+            }
+        };
+        try ( QueryExecution qExec = QueryExecution.dataset(dataset).query(query)
+                    .set(ARQ.optParallelExecution, true).set(ARQ.stageGenerator, stageGenerator).build() ) {
+            assertEquals(167, ResultSetFormatter.consume(qExec.execSelect()));
+        }
+        assertEquals(1, patterns.get(0).size());
+        assertEquals(NodeFactory.createURI("http://example/q"), patterns.get(0).get(0).getPredicate());
+    }
+
+    @Test public void parallel_nested_01() {
+        testQuery("SELECT * { { ?s :p ?o . ?o :q ?x } UNION { ?s :q ?x . ?s :v ?v } }");
+    }
+
+    @Test public void parallel_limit_01() {
+        // Stop reading before the workers have finished.
+        Query query = QueryFactory.create(PREFIX+"SELECT * { { ?s :p ?o . ?o :p ?o2 } UNION { ?a :v ?b . ?c :q ?d } } LIMIT 5");
+        for ( int i = 0 ; i < 20 ; i++ ) {
+            try ( QueryExecution qExec = QueryExecution.dataset(dataset).query(query).set(ARQ.optParallelExecution, true).build() ) {
+                assertEquals(5, ResultSetFormatter.consume(qExec.execSelect()));
+            }
+        }
+    }
+
+    @Test public void parallel_timeout_01() {
+        // Large result from every branch; cancelled by the query timeout.
+        Query query = QueryFactory.create(PREFIX+"SELECT * { { ?a :v ?b . ?c :v ?d . ?e :v ?f } UNION { ?a :p ?b . ?c :p ?d . ?e :p ?f } }");
+        try ( QueryExecution qExec = QueryExecution.dataset(dataset).query(query).set(ARQ.optParallelExecution, true).timeout(200).build() ) {
+            ResultSet rs = qExec.execSelect();
+            assertThrows(QueryCancelledException.class, ()->ResultSetFormatter.consume(rs));
+        }
+    }
+
+    @Test public void parallel_enabled_01() {
+        Context cxt = new Context();
+        cxt.set(ARQ.optParallelExecution, true);
+        assertTrue(QueryIterParallel.isEnabled(execCxt(cxt, DatasetGraphFactory.create())));
+        assertFalse(QueryIterParallel.isEnabled(execCxt(new Context(), DatasetGraphFactory.create())));
+        // Isolating transactions: only inside a read transaction.
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        assertFalse(QueryIterParallel.isEnabled(execCxt(cxt, dsg)));
+        Txn.executeRead(dsg, ()->assertTrue(QueryIterParallel.isEnabled(execCxt(cxt, dsg))));
+        Txn.executeWrite(dsg, ()->assertFalse(QueryIterParallel.isEnabled(execCxt(cxt, dsg))));
+    }
+
+    @Test public void parallel_iterator_01() {
+        ExecutionContext execCxt = execCxt(new Context(), DatasetGraphFactory.create());
+        List<QueryIterator> sources = new ArrayList<>();
+        for ( int i = 0 ; i < 4 ; i++ )
+            sources.add(QueryIterPlainWrapper.create(bindings(i*1000, 1000).iterator(), execCxt));
+        QueryIterator qIter = new QueryIterParallel(sources, execCxt);
+        List<Binding> results = new ArrayList<>();
+        qIter.forEachRemaining(results::add);
+        qIter.close();
+        assertEquals(4000, results.size());
+        assertEquals(4000, results.stream().distinct().count());
+        assertFalse(execCxt.listOpenIterators().hasNext());
+    }
+
+    @Test public void parallel_iterator_close_01() {
+        // Close while the worker is blocked on a full queue.
+        ExecutionContext execCxt = execCxt(new Context(), DatasetGraphFactory.create());
+        AtomicBoolean closed = new AtomicBoolean(false);
+        QueryIterator source = new QueryIterPlainWrapper(endless(0), execCxt) {
+            @Override protected void closeIterator() { closed.set(true); super.closeIterator(); }
+        };
+        QueryIterator qIter = QueryIterParallel.async(source, execCxt);
+        assertTrue(qIter.hasNext());
+        qIter.next();
+        qIter.close();
+        assertTrue(closed.get());
+        assertFalse(execCxt.listOpenIterators().hasNext());
+    }
+
+    @Test public void parallel_iterator_cancel_01() {
+        // Cancel from another thread while the consumer waits.
+        ExecutionContext execCxt = execCxt(new Context(), DatasetGraphFactory.create());
+        QueryIterator source = QueryIterPlainWrapper.create(endless(10), execCxt);
+        QueryIterator qIter = QueryIterParallel.async(source, execCxt);
+        new Thread(()->{ Lib.sleep(200); qIter.cancel(); }).start();
+        assertThrows(QueryCancelledException.class, ()->{
+            while ( qIter.hasNext() )
+                qIter.next();
+        });
+        qIter.close();
+    }
+
+    @Test public void parallel_iterator_error_01() {
+        ExecutionContext execCxt = execCxt(new Context(), DatasetGraphFactory.create());
+        Iterator<Binding> iter = new Iterator<>() {
+            @Override public boolean hasNext() { return true; }
+            @Override public Binding next() { throw new QueryExecException("Test"); }
+        };
+        QueryIterator qIter = QueryIterParallel.async(QueryIterPlainWrapper.create(iter, execCxt), execCxt);
+        assertThrows(QueryExecException.class, ()->qIter.hasNext());
+        qIter.close();
+    }
+
+    private static final Var var = Var.alloc("x");
+
+    private static List<Binding> bindings(int start, int count) {
+        List<Binding> x = new ArrayList<>(count);
+        for ( int i = start ; i < start+count ; i++ )
+            x.add(BindingFactory.binding(var, NodeFactoryExtra.intToNode(i)));
+        return x;
+    }
+
+    private static Iterator<Binding> endless(int delayMillis) {
+        return new Iterator<>() {
+            private int i = 0;
+            @Override public boolean hasNext() { return true; }
+            @Override public Binding next() {
+                if ( delayMillis > 0 )
+                    Lib.sleep(delayMillis);
+                return BindingFactory.binding(var, NodeFactoryExtra.intToNode(i++));
+            }
+        };
+    }
+
+    private static ExecutionContext execCxt(Context cxt, DatasetGraph dsg) {
+        return new ExecutionContext(cxt, dsg.getDefaultGraph(), dsg, null);
+    }
+
+    private static void testQuery(String queryString) {
+        testQuery(dataset, queryString);
+    }
+
+    private static void testQuery(Dataset ds, String queryString) {
+        Query query = QueryFactory.create(PREFIX+queryString);
+        Txn.executeRead(ds, ()->{
+            ResultSetRewindable expected;
+            try ( QueryExecution qExec = QueryExecution.dataset(ds).query(query).build() ) {
+                expected = qExec.execSelect().rewindable();
+            }
+            assertTrue(expected.size() > 0);
+            ResultSetRewindable actual;
+            try ( QueryExecution qExec = QueryExecution.dataset(ds).query(query).set(ARQ.optParallelExecution, true).build() ) {
+                actual = qExec.execSelect().rewindable();
+            }
+            expected.reset();
+            assertTrue(ResultSetCompare.equalsByTerm(expected, actual));
+        });
+    }
+}
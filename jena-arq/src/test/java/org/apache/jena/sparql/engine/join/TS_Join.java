@@ -27,12 +27,14 @@ import org.junit.platform.suite.api.Suite;
     , TestJoinNestedLoopSimple.class    // Real simple materializing version.
     , TestJoinNestedLoop.class
     , TestHashJoin.class
+    , TestHashJoinSpill.class
 
     , TestLeftJoinSimple.class
     , TestLeftJoinNestedLoopSimple.class    // Real simple materializing version.
     , TestLeftJoinNestedLoop.class
     , TestHashLeftJoin_Left.class           // Left hash, stream right
     , TestHashLeftJoin_Right.class          // Normal implementation.
+    , TestHashLeftJoin_RightSpill.class
     , TestTableJoin.class
 })
 
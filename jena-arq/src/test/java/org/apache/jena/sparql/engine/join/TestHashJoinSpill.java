@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.join;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.sparql.algebra.Table;
+import org.apache.jena.sparql.algebra.TableFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.util.Context;
+
+/** Hash join where the probe table is partitioned to disk (grace hash join). */
+public class TestHashJoinSpill extends AbstractTestInnerJoin {
+    @Override
+    public QueryIterator join(JoinKey joinKey, Table left, Table right, ExprList conditions) {
+        return Join.hashJoin(joinKey, left.iterator(null), right.iterator(null), execCxtSpill());
+    }
+
+    static ExecutionContext execCxtSpill() {
+        return execCxtSpill(1);
+    }
+
+    static ExecutionContext execCxtSpill(long threshold) {
+        Context context = new Context();
+        context.set(ARQ.spillToDiskThreshold, threshold);
+        return ExecutionContext.create(context);
+    }
+
+    private static final Var a = Var.alloc("a");
+    private static final Var b = Var.alloc("b");
+    private static final Var c = Var.alloc("c");
+
+    /** Rows with ?a (sometimes missing) and another variable. */
+    static Table randomTable(Random random, int size, Var other) {
+        Table table = TableFactory.create();
+        for ( int i = 0 ; i < size ; i++ ) {
+            BindingBuilder builder = Binding.builder();
+            if ( random.nextInt(10) != 0 )
+                builder.add(a, NodeFactory.createLiteralString("a"+random.nextInt(50)));
+            builder.add(other, NodeFactory.createLiteralString("x"+i));
+            table.addBinding(builder.build());
+        }
+        return table;
+    }
+
+    static Map<Binding, Long> counts(QueryIterator qIter) {
+        Map<Binding, Long> counts = new HashMap<>();
+        qIter.forEachRemaining(row->counts.merge(row, 1L, Long::sum));
+        return counts;
+    }
+
+    @Test public void join_spill_random() {
+        Random random = new Random(0);
+        Table left = randomTable(random, 500, b);
+        Table right = randomTable(random, 400, c);
+        Map<Binding, Long> expected = counts(Join.nestedLoopJoin(left.iterator(null), right.iterator(null), null));
+        Map<Binding, Long> actual = counts(Join.hashJoin(left.iterator(null), right.iterator(null), execCxtSpill(50)));
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, actual);
+    }
+}
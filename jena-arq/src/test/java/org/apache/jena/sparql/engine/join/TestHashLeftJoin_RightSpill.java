@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.engine.join;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.jena.sparql.algebra.Table;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.expr.ExprList;
+
+/** Left outer join, hash probe table from the right hand side, partitioned to disk. */
+public class TestHashLeftJoin_RightSpill extends AbstractTestLeftJoin {
+    @Override
+    public QueryIterator join(JoinKey joinKey, Table left, Table right, ExprList conditions) {
+        return QueryIterHashLeftJoin_Right.create(joinKey, left.iterator(null), right.iterator(null), conditions,
+                                                  TestHashJoinSpill.execCxtSpill());
+    }
+
+    @Test public void leftjoin_spill_random() {
+        Random random = new Random(1);
+        Table left = TestHashJoinSpill.randomTable(random, 500, Var.alloc("b"));
+        Table right = TestHashJoinSpill.randomTable(random, 400, Var.alloc("c"));
+        Map<Binding, Long> expected = TestHashJoinSpill.counts(Join.nestedLoopLeftJoin(left.iterator(null), right.iterator(null), null, null));
+        Map<Binding, Long> actual = TestHashJoinSpill.counts(QueryIterHashLeftJoin_Right.create(left.iterator(null), right.iterator(null), null,
+                                                                                                TestHashJoinSpill.execCxtSpill(50)));
+        assertEquals(expected, actual);
+    }
+}
@@ -27,6 +27,7 @@ import org.junit.platform.suite.api.Suite;
     , TestPath2.class
     , TestPathQuery.class
     , TestPathPF.class
+    , TestPathClosure.class
 })
 
 public class TS_Path
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.sparql.path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.shared.impl.PrefixMappingImpl;
+import org.apache.jena.sparql.core.Prologue;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.exec.RowSet;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.sparql.path.eval.PathClosure;
+import org.apache.jena.sparql.path.eval.PathEval;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.sparql.util.graph.GraphUtils;
+
+/** Breadth-first and bidirectional evaluation of {@code path*} and {@code path+}. */
+public class TestPathClosure
+{
+    static PrefixMapping pmap  = new PrefixMappingImpl();
+    static { pmap.setNsPrefix("", "http://example/"); }
+    static Prologue prologue = new Prologue(pmap);
+
+    static Node p = NodeFactory.createURI("http://example/p");
+    static Node q = NodeFactory.createURI("http://example/q");
+
+    static Graph graph = GraphFactory.createDefaultGraph();
+    static {
+        // Chains of 5 joined by longer links, so there are cycles and some nodes are not reachable.
+        for ( int i = 0 ; i < 30 ; i++ ) {
+            if ( i % 5 != 4 )
+                graph.add(Triple.create(node(i), p, node(i+1)));
+            if ( i % 3 == 0 )
+                graph.add(Triple.create(node(i), p, node((i*7+3)%30)));
+            if ( i % 4 == 0 )
+                graph.add(Triple.create(node(i), q, node(i+2)));
+        }
+        graph.add(SSE.parseTriple("(:x :p :x)", pmap));
+        graph.add(SSE.parseTriple("(:a3 :p 12)", pmap));
+        graph.add(SSE.parseTriple("(:y :q :z)", pmap));
+    }
+
+    private static Node node(int i) {
+        return NodeFactory.createURI("http://example/a"+i);
+    }
+
+    private static final String[] paths = { ":p*", ":p+", "^:p*", "^:p+", "(^:p)*", "(^:p)+", "(:p|:q)*", "(:p|^:q)+", "(:p/:p)+" };
+
+    @Test public void closure_connects() {
+        List<Node> nodes = Iter.toList(GraphUtils.allNodes(graph));
+        for ( String pathStr : paths ) {
+            Path path = PathParser.parse(pathStr, prologue);
+            for ( Node start : nodes ) {
+                Set<Node> expected = reference(start, path);
+                for ( Node end : nodes ) {
+                    boolean b = PathClosure.connects(graph, start, path, end, Context.emptyContext());
+                    assertEquals(expected.contains(end), b, ()->pathStr+" "+start+" "+end);
+                }
+            }
+        }
+    }
+
+    @Test public void closure_reach() {
+        List<Node> nodes = Iter.toList(GraphUtils.allNodes(graph));
+        for ( String pathStr : paths ) {
+            Path path = PathParser.parse(pathStr, prologue);
+            PathClosure.Adjacency adjacency = PathClosure.adjacency(graph, path, Context.emptyContext());
+            if ( adjacency == null )
+                continue;
+            for ( Node start : nodes ) {
+                List<Node> x = adjacency.reach(start);
+                assertEquals(x.size(), new HashSet<>(x).size());
+                assertEquals(reference(start, path), new HashSet<>(x), ()->pathStr+" "+start);
+                // Same as the general path engine.
+                assertEquals(new HashSet<>(Iter.toList(PathEval.eval(graph, start, path, null))), new HashSet<>(x));
+            }
+        }
+    }
+
+    @Test public void closure_adjacency() {
+        assertNotNull(PathClosure.adjacency(graph, PathParser.parse("^:p+", prologue), null));
+        assertNull(PathClosure.adjacency(graph, PathParser.parse(":p", prologue), null));
+        assertNull(PathClosure.adjacency(graph, PathParser.parse("(:p|:q)*", prologue), null));
+        // Property function
+        assertNull(PathClosure.adjacency(graph, PathParser.parse("<http://jena.apache.org/ARQ/list#member>*", prologue), null));
+    }
+
+    @Test public void closure_query_01() { test(":p*"); }
+    @Test public void closure_query_02() { test(":p+"); }
+    @Test public void closure_query_03() { test("^:p+"); }
+    @Test public void closure_query_04() { test("(:p|:q)*"); }
+    @Test public void closure_query_05() { test("(:p/:p)+"); }
+    @Test public void closure_query_05a() { test("(^:p)*"); }
+
+    @Test public void closure_query_06() {
+        assertEquals(1, count("SELECT * { :a0 :p+ :a22 }"));
+        assertEquals(0, count("SELECT * { :a4 :p+ :a0 }"));
+        assertEquals(1, count("SELECT * { :a0 :p* 12 }"));
+        assertEquals(1, count("SELECT * { :notInData :p* :notInData }"));
+        assertEquals(0, count("SELECT * { :notInData :p+ :notInData }"));
+        assertEquals(1, count("SELECT * { :x :p+ :x }"));
+    }
+
+    @Test public void closure_query_07() {
+        // Same variable at both ends: the nodes on a cycle.
+        long expected = Iter.count(Iter.filter(GraphUtils.allNodes(graph), n->reference(n, new P_OneOrMore1(new P_Link(p))).contains(n)));
+        assertTrue(expected > 0);
+        assertEquals(expected, count("SELECT * { ?x :p+ ?x }"));
+    }
+
+    @Test public void closure_long_chain() {
+        // Deep enough that a recursive search would overflow the stack.
+        int N = 50_000;
+        Graph g = GraphFactory.createDefaultGraph();
+        for ( int i = 0 ; i < N ; i++ )
+            g.add(Triple.create(node(i), p, node(i+1)));
+        Path path = new P_ZeroOrMore1(new P_Link(p));
+        assertEquals(N+1, Iter.count(PathEval.eval(g, node(0), path, null)));
+        assertEquals(N+1, Iter.count(PathEval.evalReverse(g, node(N), path, null)));
+        assertTrue(PathClosure.connects(g, node(0), path, node(N), null));
+        assertFalse(PathClosure.connects(g, node(N), path, node(0), null));
+    }
+
+    private static void test(String pathStr) {
+        Path path = PathParser.parse(pathStr, prologue);
+        long expected = 0;
+        for ( Iterator<Node> iter = GraphUtils.allNodes(graph) ; iter.hasNext() ; )
+            expected += reference(iter.next(), path).size();
+        assertEquals(expected, count("SELECT * { ?s "+pathStr+" ?o }"));
+    }
+
+    private static long count(String qs) {
+        Query query = QueryFactory.create("PREFIX : <http://example/> "+qs);
+        RowSet rowSet = QueryExec.graph(graph).query(query).select();
+        return Iter.count(rowSet);
+    }
+
+    /** Nodes reached by repeating one step of the path, by the general path engine. */
+    private static Set<Node> reference(Node start, Path path) {
+        boolean reverse = ( path instanceof P_Inverse );
+        if ( reverse )
+            path = ((P_Inverse)path).getSubPath();
+        Path step = ((P_Path1)path).getSubPath();
+        Set<Node> visited = new HashSet<>();
+        Deque<Node> todo = new ArrayDeque<>();
+        if ( path instanceof P_ZeroOrMore1 ) {
+            visited.add(start);
+            todo.add(start);
+        } else {
+            eval(start, step, reverse).forEachRemaining(n->{ if ( visited.add(n) ) todo.add(n); });
+        }
+        while ( ! todo.isEmpty() ) {
+            Node n = todo.poll();
+            eval(n, step, reverse).forEachRemaining(n1->{ if ( visited.add(n1) ) todo.add(n1); });
+        }
+        return visited;
+    }
+
+    private static Iterator<Node> eval(Node node, Path step, boolean reverse) {
+        return reverse ? PathEval.evalReverse(graph, node, step, null) : PathEval.eval(graph, node, step, null);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.dboe.trans.bplustree;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import org.apache.jena.atlas.lib.Bytes;
+import org.apache.jena.dboe.base.record.Record;
+import org.apache.jena.dboe.base.record.RecordFactory;
+import org.apache.jena.mem.graph.helper.JMHDefaultOptions;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+
+/**
+ * Scan and lookup in B+Trees with and without prefix compressed records blocks.
+ * Records are 16 bytes, two longs, like a triple index with sorted, clustered keys.
+ */
+@State(Scope.Benchmark)
+public class TestBPlusTreeCompression {
+
+    @Param({
+            "100000",
+            "1000000",
+    })
+    public int param0_Size;
+
+    @Param({
+            "false",
+            "true",
+    })
+    public boolean param1_CompressLeaves;
+
+    private final RecordFactory factory = new RecordFactory(16, 0);
+
+    private BPlusTree bpt;
+
+    private Record[] lookups;
+
+    private Record record(long a, long b) {
+        byte[] key = new byte[16];
+        Bytes.setLong(a, key, 0);
+        Bytes.setLong(b, key, 8);
+        return factory.create(key);
+    }
+
+    @Benchmark
+    public long scan() {
+        long x = 0;
+        Iterator<Record> iter = bpt.iterator();
+        while(iter.hasNext())
+            x += iter.next().getKey()[15];
+        return x;
+    }
+
+    @Benchmark
+    public int lookup() {
+        int x = 0;
+        for(Record r : lookups) {
+            if(bpt.contains(r))
+                x++;
+        }
+        return x;
+    }
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        int order = BPlusTreeParams.calcOrder(8192, factory);
+        this.bpt = BPlusTreeFactory.makeMem(null, order, -1, 16, 0, param1_CompressLeaves);
+        this.bpt.nonTransactional();
+        for(int i = 0; i < param0_Size; i++)
+            bpt.insert(record(i / 20, i % 20));
+        var random = new Random(0);
+        this.lookups = new Record[10_000];
+        for(int i = 0; i < lookups.length; i++) {
+            int j = random.nextInt(param0_Size);
+            lookups[i] = record(j / 20, j % 20);
+        }
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        var opt = JMHDefaultOptions.getDefaults(this.getClass())
+                .build();
+        var results = new Runner(opt).run();
+        Assert.assertNotNull(results);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import java.util.Random;
+
+import org.apache.jena.dboe.base.file.Location;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.mem.graph.helper.JMHDefaultOptions;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.jena.tdb2.params.StoreParams;
+import org.apache.jena.tdb2.sys.SystemTDB;
+import org.apache.jena.tdb2.sys.TDBInternal;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+
+/**
+ * Cyclic graph queries, in the style of the LDBC social network benchmark, on TDB2
+ * with and without leapfrog triejoin.
+ * <p>
+ * The data is a social network: persons with a skewed number of {@code :knows}
+ * links, mostly to persons in the same community, each with interests and a city.
+ */
+@State(Scope.Benchmark)
+public class TestLeapfrogJoinQueries {
+
+    private static final String PREFIX = "PREFIX : <http://example/> ";
+
+    @Param({
+            // Triangle of friends.
+            "SELECT (count(*) AS ?n) { ?a :knows ?b . ?b :knows ?c . ?c :knows ?a }",
+            // Friends of friends who are also friends, sharing an interest.
+            "SELECT (count(*) AS ?n) { ?a :knows ?b . ?b :knows ?c . ?a :knows ?c . ?a :hasInterest ?t . ?c :hasInterest ?t }",
+            // Four-cycle.
+            "SELECT (count(*) AS ?n) { ?a :knows ?b . ?b :knows ?c . ?c :knows ?d . ?d :knows ?a }",
+            // Triangle in the same city.
+            "SELECT (count(*) AS ?n) { ?a :knows ?b . ?b :knows ?c . ?c :knows ?a . ?a :livesIn ?x . ?b :livesIn ?x . ?c :livesIn ?x }",
+    })
+    public String param0_Query;
+
+    @Param({
+            "10000",
+    })
+    public int param1_Persons;
+
+    @Param({
+            "false",
+            "true",
+    })
+    public boolean param2_Leapfrog;
+
+    @Param({
+            "SPO,POS,OSP",
+            "SPO,POS,OSP,PSO",
+    })
+    public String param3_TripleIndexes;
+
+    private DatasetGraph dsg;
+
+    @Benchmark
+    public long query() {
+        return Txn.calculateRead(dsg, ()->
+            QueryExec.dataset(dsg)
+                     .query(PREFIX+param0_Query)
+                     .set(SystemTDB.symLeapfrogJoin, param2_Leapfrog)
+                     .select()
+                     .next().get("n").getLiteralValue().hashCode()
+        );
+    }
+
+    private static Node uri(String localName) {
+        return NodeFactory.createURI("http://example/"+localName);
+    }
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        StoreParams params = StoreParams.builder().tripleIndexes(param3_TripleIndexes.split(",")).build();
+        dsg = DatabaseMgr.connectDatasetGraph(Location.mem(), params);
+        Node knows = uri("knows");
+        Node hasInterest = uri("hasInterest");
+        Node livesIn = uri("livesIn");
+        int communitySize = 50;
+        Random random = new Random(0);
+        Txn.executeWrite(dsg, ()->{
+            for ( int i = 0 ; i < param1_Persons ; i++ ) {
+                Node person = uri("person"+i);
+                int community = i / communitySize;
+                // Skewed degree: a few persons know many others.
+                int degree = 2 + (int)(8 / (0.1 + random.nextDouble()));
+                degree = Math.min(degree, 100);
+                for ( int j = 0 ; j < degree ; j++ ) {
+                    int other = ( random.nextInt(10) < 8 )
+                            ? community*communitySize + random.nextInt(communitySize)
+                            : random.nextInt(param1_Persons);
+                    if ( other != i && other < param1_Persons )
+                        dsg.getDefaultGraph().add(person, knows, uri("person"+other));
+                }
+                for ( int j = 0 ; j < 3 ; j++ )
+                    dsg.getDefaultGraph().add(person, hasInterest, uri("tag"+random.nextInt(200)));
+                dsg.getDefaultGraph().add(person, livesIn, uri("city"+(community % 40)));
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        TDBInternal.expel(dsg);
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        var opt = JMHDefaultOptions.getDefaults(this.getClass())
+                .build();
+        var results = new Runner(opt).run();
+        Assert.assertNotNull(results);
+    }
+}
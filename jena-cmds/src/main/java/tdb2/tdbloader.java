@@ -40,7 +40,10 @@ import org.apache.jena.system.progress.MonitorOutputs;
 import org.apache.jena.tdb2.loader.DataLoader;
 import org.apache.jena.tdb2.loader.LoaderFactory;
 import org.apache.jena.tdb2.loader.base.LoaderOps;
+import org.apache.jena.tdb2.loader.main.LoaderCheckpoint;
 import org.apache.jena.tdb2.loader.main.LoaderPlans;
+import org.apache.jena.tdb2.sys.SystemTDB;
+import org.apache.jena.tdb2.sys.TDBInternal;
 import org.apache.jena.util.FileUtils;
 import tdb2.cmdline.CmdTDB;
 import tdb2.cmdline.CmdTDBGraph;
@@ -49,6 +52,7 @@ public class tdbloader extends CmdTDBGraph {
     private static final ArgDecl argStats = new ArgDecl(ArgDecl.HasValue, "stats");
     private static final ArgDecl argLoader = new ArgDecl(ArgDecl.HasValue, "loader");
     private static final ArgDecl argSyntax = new ArgDecl(ArgDecl.HasValue, "syntax");
+    private static final ArgDecl argCheckpoint = new ArgDecl(ArgDecl.HasValue, "checkpoint");
 
     private enum LoaderEnum {
         Basic, Parallel, Sequential, Light, Phased
@@ -58,6 +62,7 @@ public class tdbloader extends CmdTDBGraph {
     private boolean generateStats = false;
     private LoaderEnum loader = null;
     private Lang lang = Lang.NQUADS;
+    private long checkpoint = 0;
 
     public static void main(String...args) {
         CmdTDB.init();
@@ -69,6 +74,7 @@ public class tdbloader extends CmdTDBGraph {
 // super.add(argStats, "Generate statistics");
         super.add(argLoader, "--loader=", "Loader to use: 'basic', 'phased' (default), 'sequential', 'parallel' or 'light'");
         super.add(argSyntax, "--syntax=LANG", "Syntax of data from stdin");
+        super.add(argCheckpoint, "--checkpoint=N", "Phased/parallel loaders: checkpoint every N triples/quads so an unfinished load of files can be restarted");
     }
 
     @Override
@@ -97,6 +103,15 @@ public class tdbloader extends CmdTDBGraph {
             generateStats = super.hasValueOfTrue(argStats);
         }
 
+        if ( super.contains(argCheckpoint) ) {
+            String str = getValue(argCheckpoint);
+            try {
+                checkpoint = Long.parseLong(str.replace("_", "").replace(",", ""));
+            } catch (NumberFormatException ex) {
+                throw new CmdException("--checkpoint :: Failed to parse '"+str+"' as a number");
+            }
+        }
+
         if ( super.graphName != null )
             lang = Lang.NTRIPLES;
 
@@ -216,6 +231,11 @@ public class tdbloader extends CmdTDBGraph {
         return elapsed;
     }
 
+    private static boolean hasCheckpoint(DatasetGraph dsg) {
+        Path path = LoaderCheckpoint.checkpointFile(TDBInternal.getDatasetGraphTDB(dsg).getLocation());
+        return path != null && Files.exists(path);
+    }
+
     /** Decide on the bulk loader. */
     private DataLoader chooseLoader(DatasetGraph dsg, String graphName) {
         Objects.requireNonNull(dsg);
@@ -223,11 +243,15 @@ public class tdbloader extends CmdTDBGraph {
         if ( graphName != null )
             gn = NodeFactory.createURI(graphName);
 
+        if ( checkpoint > 0 )
+            dsg.getContext().set(SystemTDB.symLoaderCheckpoint, checkpoint);
+
         LoaderEnum useLoader = loader;
         if ( useLoader == null ) {
             // Default choice - phased if empty. basic if not.
+            // Phased if restarting a phased load from a checkpoint.
             boolean isEmpty = Txn.calculateRead(dsg, () -> dsg.isEmpty());
-            if ( isEmpty )
+            if ( isEmpty || ( checkpoint > 0 && hasCheckpoint(dsg) ) )
                 useLoader = LoaderEnum.Phased;
             else
                 useLoader = LoaderEnum.Basic;
@@ -22,11 +22,14 @@ import java.util.Iterator;
 
 import org.apache.jena.atlas.lib.tuple.Tuple;
 import org.apache.jena.atlas.logging.Log;
+import org.apache.jena.cmd.ArgDecl;
 import org.apache.jena.system.Txn;
 import org.apache.jena.graph.Node;
 import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.tdb2.solver.SolverLibTDB;
+import org.apache.jena.tdb2.solver.stats.CardinalityStats;
 import org.apache.jena.tdb2.solver.stats.Stats;
+import org.apache.jena.tdb2.solver.stats.StatsCollectorCardinality;
 import org.apache.jena.tdb2.solver.stats.StatsCollectorNodeId;
 import org.apache.jena.tdb2.solver.stats.StatsResults;
 import org.apache.jena.tdb2.store.DatasetGraphTDB;
@@ -38,6 +41,10 @@ import tdb2.cmdline.CmdTDB;
 import tdb2.cmdline.CmdTDBGraph;
 
 public class tdbstats extends CmdTDBGraph {
+    private static final ArgDecl argCardinality = new ArgDecl(ArgDecl.NoValue, "cardinality");
+
+    private boolean cardinality = false;
+
     static public void main(String... argv) {
         CmdTDB.init();
         new tdbstats(argv).mainRun();
@@ -45,6 +52,13 @@ public class tdbstats extends CmdTDBGraph {
 
     protected tdbstats(String[] argv) {
         super(argv);
+        super.add(argCardinality, "--cardinality", "Output cardinality statistics (for cardinality.opt)");
+    }
+
+    @Override
+    protected void processModulesAndArgs() {
+        super.processModulesAndArgs();
+        cardinality = contains(argCardinality);
     }
 
     @Override
@@ -56,11 +70,29 @@ public class tdbstats extends CmdTDBGraph {
         return Txn.calculateRead(dsg, ()->stats$(dsg, gn));
     }
 
-    private static StatsResults stats$(DatasetGraphTDB dsg, Node gn) {
+    public static CardinalityStats cardinality(DatasetGraphTDB dsg, Node gn) {
+        return Txn.calculateRead(dsg, ()->{
+            NodeTable nt = dsg.getTripleTable().getNodeTupleTable().getNodeTable();
+            StatsCollectorCardinality<NodeId> stats = StatsCollectorCardinality.create(nt);
+            scan(dsg, gn, stats::record);
+            return stats.results();
+        });
+    }
 
+    private static StatsResults stats$(DatasetGraphTDB dsg, Node gn) {
         NodeTable nt = dsg.getTripleTable().getNodeTupleTable().getNodeTable();
         StatsCollectorNodeId stats = new StatsCollectorNodeId(nt);
+        scan(dsg, gn, stats::record);
+        return stats.results();
+    }
+
+    private interface Recorder {
+        void record(NodeId g, NodeId s, NodeId p, NodeId o);
+    }
 
+    // Triples and quads are grouped by subject.
+    private static void scan(DatasetGraphTDB dsg, Node gn, Recorder stats) {
+        NodeTable nt = dsg.getTripleTable().getNodeTupleTable().getNodeTable();
         if ( gn == null ) {
             Iterator<Tuple<NodeId>> iter = dsg.getTripleTable().getNodeTupleTable().findAll();
             for ( ; iter.hasNext() ; ) {
@@ -87,13 +119,16 @@ public class tdbstats extends CmdTDBGraph {
                 stats.record(t.get(0), t.get(1), t.get(2), t.get(3));
             }
         }
-        return stats.results();
     }
 
     @Override
     protected void exec() {
         DatasetGraphTDB dsg = TDBInternal.getDatasetGraphTDB(getDatasetGraph());
         Node gn = getGraphName();
+        if ( cardinality ) {
+            cardinality(dsg, gn).write(System.out);
+            return;
+        }
         StatsResults results = stats(dsg, gn);
         Stats.write(System.out, results);
     }
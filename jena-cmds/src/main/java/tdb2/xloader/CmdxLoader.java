@@ -24,11 +24,13 @@ import java.io.InputStream;
 import org.apache.jena.atlas.io.IO;
 import org.apache.jena.atlas.io.IOX;
 import org.apache.jena.atlas.lib.FileOps;
+import org.apache.jena.cmd.ArgDecl;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.tdb1.store.bulkloader.BulkLoader;
 import org.apache.jena.tdb2.DatabaseMgr;
 import org.apache.jena.tdb2.sys.TDBInternal;
 import org.apache.jena.tdb2.xloader.BulkLoaderX;
+import org.apache.jena.tdb2.xloader.XLoaderCheckpoint;
 
 /**
  * A version of xloader/TDB2 that runs in a single JVM.
@@ -43,6 +45,8 @@ import org.apache.jena.tdb2.xloader.BulkLoaderX;
  */
 public class CmdxLoader extends AbstractCmdxLoad {
 
+    private static ArgDecl argResume = new ArgDecl(false, "resume");
+
     public static void main(String... args) {
         new CmdxLoader("AIO", args).mainRun();
     }
@@ -56,6 +60,7 @@ public class CmdxLoader extends AbstractCmdxLoad {
         super.add(argLocation,      "--loc=", "Database location");
         super.add(argTmpdir,        "--tmpdir=", "Temporary directory (defaults to --loc)");
         super.add(argSortThreads,   "--threads=", "Number of threads; passed as an argument to sort(1)");
+        super.add(argResume,        "--resume", "Restart a load of the same data that did not finish, skipping completed steps");
     }
 
     @Override
@@ -74,6 +79,7 @@ public class CmdxLoader extends AbstractCmdxLoad {
     private String TMPDIR;
     private String DIR;
     private String datafile;
+    private XLoaderCheckpoint checkpoint;
 
     @Override
     protected void exec() {
@@ -81,12 +87,24 @@ public class CmdxLoader extends AbstractCmdxLoad {
         DIR = super.location;
         datafile = super.filenames.get(0);
 
-        FileOps.ensureDir(TMPDIR);
-        FileOps.clearAll(TMPDIR);
+        checkpoint = null;
+        if ( super.contains(argResume) ) {
+            checkpoint = XLoaderCheckpoint.resume(loaderFiles, super.filenames);
+            if ( checkpoint == null )
+                System.out.println("No record of an earlier load of this data: starting from the beginning");
+            else
+                System.out.println("Resume: completed steps: "+checkpoint.getDone());
+        }
+
+        if ( checkpoint == null ) {
+            FileOps.ensureDir(TMPDIR);
+            FileOps.clearAll(TMPDIR);
 
-        if ( !TMPDIR.equals(DIR) ) {
-            FileOps.ensureDir(DIR);
-            FileOps.clearAll(DIR);
+            if ( !TMPDIR.equals(DIR) ) {
+                FileOps.ensureDir(DIR);
+                FileOps.clearAll(DIR);
+            }
+            checkpoint = XLoaderCheckpoint.create(loaderFiles, super.filenames);
         }
 
         BulkLoaderX.DataTick = 100_000;
@@ -97,29 +115,30 @@ public class CmdxLoader extends AbstractCmdxLoad {
         System.out.printf("RAM = %,d\n", maxMemory);
 
         System.out.println("STEP 1 - load node table");
-        step(() -> CmdxBuildNodeTable.main("--loc=" + DIR, "--threads=" + super.sortThreads, datafile));
+        step("nodes", () -> CmdxBuildNodeTable.main("--loc=" + DIR, "--threads=" + super.sortThreads, datafile));
 
         System.out.println("STEP 2 - ingest triples and quads");
-        step(() -> CmdxIngestData.main("--loc=" + DIR, datafile));
+        step("data", () -> CmdxIngestData.main("--loc=" + DIR, datafile));
 
         System.out.println("STEP 3 - build indexes");
 
         if ( !isEmptyFile(loaderFiles.triplesFile) ) {
-            step(() -> CmdxBuildIndex.main("--loc=" + DIR, "--threads=" + super.sortThreads, "--index=SPO"));
-            step(() -> CmdxBuildIndex.main("--loc=" + DIR, "--threads=" + super.sortThreads, "--index=POS"));
-            step(() -> CmdxBuildIndex.main("--loc=" + DIR, "--threads=" + super.sortThreads, "--index=OSP"));
+            step("index-SPO", () -> CmdxBuildIndex.main("--loc=" + DIR, "--threads=" + super.sortThreads, "--index=SPO"));
+            step("index-POS", () -> CmdxBuildIndex.main("--loc=" + DIR, "--threads=" + super.sortThreads, "--index=POS"));
+            step("index-OSP", () -> CmdxBuildIndex.main("--loc=" + DIR, "--threads=" + super.sortThreads, "--index=OSP"));
         }
 
         if ( !isEmptyFile(loaderFiles.quadsFile) ) {
-            step(() -> CmdxBuildIndex.main("--loc=" + DIR, "--threads=" + super.sortThreads, "--index=GSPO"));
-            step(() -> CmdxBuildIndex.main("--loc=" + DIR, "--threads=" + super.sortThreads, "--index=GPOS"));
-            step(() -> CmdxBuildIndex.main("--loc=" + DIR, "--threads=" + super.sortThreads, "--index=GOSP"));
+            step("index-GSPO", () -> CmdxBuildIndex.main("--loc=" + DIR, "--threads=" + super.sortThreads, "--index=GSPO"));
+            step("index-GPOS", () -> CmdxBuildIndex.main("--loc=" + DIR, "--threads=" + super.sortThreads, "--index=GPOS"));
+            step("index-GOSP", () -> CmdxBuildIndex.main("--loc=" + DIR, "--threads=" + super.sortThreads, "--index=GOSP"));
 
-            step(() -> CmdxBuildIndex.main("--loc=" + DIR, "--threads=" + super.sortThreads, "--index=SPOG"));
-            step(() -> CmdxBuildIndex.main("--loc=" + DIR, "--threads=" + super.sortThreads, "--index=POSG"));
-            step(() -> CmdxBuildIndex.main("--loc=" + DIR, "--threads=" + super.sortThreads, "--index=OSPG"));
+            step("index-SPOG", () -> CmdxBuildIndex.main("--loc=" + DIR, "--threads=" + super.sortThreads, "--index=SPOG"));
+            step("index-POSG", () -> CmdxBuildIndex.main("--loc=" + DIR, "--threads=" + super.sortThreads, "--index=POSG"));
+            step("index-OSPG", () -> CmdxBuildIndex.main("--loc=" + DIR, "--threads=" + super.sortThreads, "--index=OSPG"));
         }
         expel();
+        checkpoint.delete();
     }
 
     // Compression - empty file != zero size
@@ -132,9 +151,14 @@ public class CmdxLoader extends AbstractCmdxLoad {
         }
     }
 
-    private void step(Runnable action) {
+    private void step(String name, Runnable action) {
+        if ( checkpoint.isDone(name) ) {
+            System.out.println("Skip "+name+" : completed");
+            return;
+        }
         // expel();
         action.run();
+        checkpoint.done(name);
     }
 
     private void expel() {
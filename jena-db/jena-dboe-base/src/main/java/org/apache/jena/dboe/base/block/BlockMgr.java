@@ -63,6 +63,13 @@ public interface BlockMgr extends Sync, Closeable /*UnitMgr<Block>*/
    /** Announce a block is no longer in use (i.e it's now freed) */
     public void free(Block block);
 
+    /**
+     * Hint that a block is used often, for example an upper level node of a B+Tree,
+     * and should be kept by any cache in preference to other blocks.
+     * This is only advice; the default is to do nothing.
+     */
+    public default void pin(long id) {}
+
     /** Is this a valid block id? (may be a free block)*/
     public boolean valid(int id);
 
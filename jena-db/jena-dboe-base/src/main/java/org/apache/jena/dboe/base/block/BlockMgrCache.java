@@ -20,7 +20,9 @@ package org.apache.jena.dboe.base.block;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.BiConsumer;
 
 import org.apache.jena.atlas.lib.Cache;
@@ -28,7 +30,20 @@ import org.apache.jena.atlas.lib.CacheFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Caching block manager - this is an LRU cache */
+/**
+ * Caching block manager.
+ * <p>
+ * The read cache is a {@link CacheFactory#createCache Caffeine cache}. Its eviction policy
+ * is W-TinyLFU which admits a new block only if it is used more often than the block it would
+ * replace, so a large scan does not flush out frequently used blocks.
+ * <p>
+ * Blocks given as a {@link #pin} hint, such as the upper levels of a B+Tree, are moved
+ * from the read cache to a separate, smaller, area where they are kept, in LRU order,
+ * until it is full. This area is a quarter of the size of the read cache.
+ * <p>
+ * Each cache counts hits and misses; there is one cache per block file (e.g. each B+Tree
+ * index has one for its nodes and one for its records).
+ */
 public class BlockMgrCache extends BlockMgrSync {
     // Actually, this is two cache one on the read blocks and one on the write
     // blocks.
@@ -43,6 +58,10 @@ public class BlockMgrCache extends BlockMgrSync {
     // Delayed dirty writes. May be present, may not.
     private final Cache<Long, Block> writeCache;
 
+    // Pinned read blocks. Access order, bounded.
+    private final int                pinSlots;
+    private final Map<Long, Block>   pinned;
+
     // Also enable the logging level.
     public static boolean            globalLogging  = false;
     private boolean                  logging        = false;
@@ -50,6 +69,7 @@ public class BlockMgrCache extends BlockMgrSync {
     long                             cacheReadHits  = 0;
     long                             cacheMisses    = 0;
     long                             cacheWriteHits = 0;
+    long                             cachePinHits   = 0;
 
     static BlockMgr create(int readSlots, int writeSlots, final BlockMgr blockMgr) {
         if ( readSlots < 0 && writeSlots < 0 )
@@ -64,6 +84,13 @@ public class BlockMgrCache extends BlockMgrSync {
             readCache = CacheFactory.createNullCache();
         else
             readCache = CacheFactory.createCache(readSlots);
+        pinSlots = Math.max(0, readSlots/4);
+        pinned = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Block> eldest) {
+                return size() > pinSlots;
+            }
+        };
         if ( writeSlots <= 0 )
             writeCache = null;
         else {
@@ -92,6 +119,7 @@ public class BlockMgrCache extends BlockMgrSync {
         // An abort is rare (?). We do the operation very carefully.
         // Could (probably) delete in the loop or use Iteator.remove on keys().
         // (Check the Cache contract)
+        pinned.keySet().removeIf(x -> x >= boundary);
         List<Long> removals = new ArrayList<>();
         readCache.keys().forEachRemaining((x)->{
             if ( x >= boundary )
@@ -111,7 +139,13 @@ public class BlockMgrCache extends BlockMgrSync {
     synchronized public Block getRead(long id) {
         // A Block may be in the read cache or the write cache.
         // It can be just in the write cache because the read cache is finite.
-        Block blk = readCache.getIfPresent(id);
+        Block blk = pinned.get(id);
+        if ( blk != null ) {
+            cachePinHits++;
+            log("Hit(r->p) : %d", id);
+            return blk;
+        }
+        blk = readCache.getIfPresent(id);
         if ( blk != null ) {
             cacheReadHits++;
             log("Hit(r->r) : %d", id);
@@ -153,6 +187,14 @@ public class BlockMgrCache extends BlockMgrSync {
         // blk is null.
         // A requested block may be in the other cache. Promote it.
 
+        blk = pinned.get(id);
+        if ( blk != null ) {
+            cachePinHits++;
+            log("Hit(w->p) : %d", id);
+            blk = promote(blk);
+            return blk;
+        }
+
         if ( readCache.containsKey(id) ) {
             blk = readCache.getIfPresent(id);
             cacheReadHits++;
@@ -174,6 +216,7 @@ public class BlockMgrCache extends BlockMgrSync {
     @Override
     synchronized public Block promote(Block block) {
         Long id = block.getId();
+        pinned.remove(id);
         readCache.remove(id);
         Block block2 = super.promote(block);
         if ( writeCache != null )
@@ -196,14 +239,34 @@ public class BlockMgrCache extends BlockMgrSync {
         // Keep read cache up-to-date.
         // Must at least expel the read block (which is not the overwrite
         // block).
-        readCache.put(id, block);
+        if ( pinned.containsKey(id) )
+            pinned.put(id, block);
+        else
+            readCache.put(id, block);
+    }
+
+    /**
+     * Keep a block that is in the read cache in preference to other blocks.
+     * Blocks being written are not pinned.
+     */
+    @Override
+    synchronized public void pin(long _id) {
+        Long id = _id;
+        if ( pinSlots == 0 || pinned.containsKey(id) )
+            return;
+        Block blk = readCache.getIfPresent(id);
+        if ( blk == null )
+            return;
+        log("Pin : %d", id);
+        readCache.remove(id);
+        pinned.put(id, blk);
     }
 
     private void writeCache(Block block) {
         Long id = block.getId();
         log("WriteCache : %d", id);
         // Should not be in the read cache due to a getWrite earlier.
-        if ( readCache.containsKey(id) )
+        if ( readCache.containsKey(id) || pinned.containsKey(id) )
             log.warn("write: Block in the read cache");
         if ( writeCache != null ) {
             writeCache.put(id, block);
@@ -215,9 +278,10 @@ public class BlockMgrCache extends BlockMgrSync {
     synchronized public void free(Block block) {
         Long id = block.getId();
         log("Free  : %d", id);
-        if ( readCache.containsKey(id) ) {
+        if ( readCache.containsKey(id) || pinned.containsKey(id) ) {
             log.warn("Freeing block from read cache");
             readCache.remove(id);
+            pinned.remove(id);
         }
         if ( writeCache != null )
             writeCache.remove(id);
@@ -242,6 +306,35 @@ public class BlockMgrCache extends BlockMgrSync {
         super.close();
     }
 
+    /** Reads found in the read cache (not including pinned blocks). */
+    synchronized public long getReadHits()      { return cacheReadHits; }
+
+    /** Reads and writes found in the pinned blocks. */
+    synchronized public long getPinHits()       { return cachePinHits; }
+
+    /** Reads and writes found in the write cache. */
+    synchronized public long getWriteHits()     { return cacheWriteHits; }
+
+    /** Reads and writes passed to the underlying BlockMgr. */
+    synchronized public long getMisses()        { return cacheMisses; }
+
+    /** Number of blocks currently pinned. */
+    synchronized public int getPinnedCount()    { return pinned.size(); }
+
+    /** Fraction of requests that were cache hits, or -1 if there have been no requests. */
+    synchronized public double getHitRate() {
+        long hits = cacheReadHits + cachePinHits + cacheWriteHits;
+        long total = hits + cacheMisses;
+        return ( total == 0 ) ? -1 : (double)hits/total;
+    }
+
+    synchronized public void resetStats() {
+        cacheReadHits = 0;
+        cachePinHits = 0;
+        cacheWriteHits = 0;
+        cacheMisses = 0;
+    }
+
     @Override
     public String toString() {
         return "Cache:" + super.blockMgr.toString();
@@ -261,7 +354,7 @@ public class BlockMgrCache extends BlockMgrSync {
             String x = "";
             if ( getLabel() != null )
                 x = getLabel() + " : ";
-            log("%sH=%d, M=%d, W=%d", x, cacheReadHits, cacheMisses, cacheWriteHits);
+            log("%sH=%d, P=%d, M=%d, W=%d", x, cacheReadHits, cachePinHits, cacheMisses, cacheWriteHits);
         }
 
         if ( writeCache != null )
@@ -18,9 +18,12 @@
 
 package org.apache.jena.dboe.base.block;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.apache.jena.atlas.logging.Log;
 import org.apache.jena.dboe.DBOpEnvException;
 import org.apache.jena.dboe.base.file.*;
+import org.apache.jena.dboe.sys.SysDB;
 import org.apache.jena.dboe.sys.SystemIndex;
 
 public class BlockMgrFactory {
@@ -87,6 +90,10 @@ public class BlockMgrFactory {
                 return createMMapFile(filename, blockSize);
             case direct :
                 return createStdFile(filename, blockSize, readBlockCacheSize, writeBlockCacheSize);
+            case segment :
+            case segmentSequential :
+            case segmentRandom :
+                return createSegmentFile(filename, fileMode, blockSize);
         }
         throw new DBOpEnvException("Unknown file mode: " + fileMode);
     }
@@ -98,6 +105,24 @@ public class BlockMgrFactory {
         return track(blockMgr);
     }
 
+    private static final AtomicBoolean warnedSegment = new AtomicBoolean(false);
+
+    /**
+     * Create a Block Manager using one memory mapped segment for the file.
+     * Before Java 22, this is the same as {@link #createMMapFile}.
+     * @see BlockAccessSegments
+     */
+    public static BlockMgr createSegmentFile(String filename, FileMode fileMode, int blockSize) {
+        if ( ! BlockAccessSegments.isAvailable() ) {
+            if ( warnedSegment.compareAndSet(false, true) )
+                SysDB.syslog.info("File mode '"+fileMode+"' requires Java 22 or later: using '"+FileMode.mapped+"'");
+            return createMMapFile(filename, blockSize);
+        }
+        BlockAccess file = BlockAccessSegments.create(filename, blockSize, fileMode);
+        BlockMgr blockMgr = wrapFileAccess(file, blockSize);
+        return track(blockMgr);
+    }
+
     /** Create a Block Manager using direct access (and a cache) */
     public static BlockMgr createStdFile(String filename, int blockSize, int readBlockCacheSize, int writeBlockCacheSize) {
         BlockAccess file = new BlockAccessDirect(filename, blockSize);
@@ -136,7 +161,7 @@ public class BlockMgrFactory {
             return blockMgr;
         if ( fileMode == null )
             fileMode = SystemIndex.fileMode();
-        if ( fileMode == FileMode.mapped )
+        if ( fileMode.isMapped() )
             return blockMgr;
         return addCache(blockMgr, readBlockCacheSize, writeBlockCacheSize);
     }
@@ -119,6 +119,11 @@ public class BlockMgrLogger implements BlockMgr // extends BlockMgrWrapper
         blockMgr.free(block);
     }
 
+    @Override
+    public void pin(long id) {
+        blockMgr.pin(id);
+    }
+
     @Override
     public boolean valid(int id) {
         info("valid(" + id + ")");
@@ -74,6 +74,11 @@ public class BlockMgrSync implements BlockMgr {
         blockMgr.free(block);
     }
 
+    @Override
+    synchronized public void pin(long id) {
+        blockMgr.pin(id);
+    }
+
     @Override
     synchronized public void sync() {
         blockMgr.sync();
@@ -213,6 +213,11 @@ public class BlockMgrTracker /* extends BlockMgrWrapper */ implements BlockMgr {
         blockMgr.free(block);
     }
 
+    @Override
+    public void pin(long id) {
+        blockMgr.pin(id);
+    }
+
     @Override
     public void sync() {
         blockMgr.sync();
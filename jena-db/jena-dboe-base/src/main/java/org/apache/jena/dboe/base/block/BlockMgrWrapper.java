@@ -76,6 +76,11 @@ public class BlockMgrWrapper implements BlockMgr {
         blockMgr.free(block);
     }
 
+    @Override
+    public void pin(long id) {
+        blockMgr.pin(id);
+    }
+
     @Override
     public boolean isEmpty() {
         return blockMgr.isEmpty();
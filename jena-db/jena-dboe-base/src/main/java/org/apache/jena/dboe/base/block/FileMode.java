@@ -23,5 +23,19 @@ public enum FileMode
     /** Use memory mapped files */
     mapped,
     /** Use in-JVM caching */
-    direct;
+    direct,
+    /**
+     * Use memory mapped files, with one mapping per file, using {@code java.lang.foreign}.
+     * Requires Java 22 or later; otherwise the same as {@link #mapped}.
+     */
+    segment,
+    /** As {@link #segment}, and advise the OS that access is mostly sequential. */
+    segmentSequential,
+    /** As {@link #segment}, and advise the OS that access is mostly random. */
+    segmentRandom;
+
+    /** Whether this mode uses memory mapped files (and so OS caching, not in-JVM caching). */
+    public boolean isMapped() {
+        return this != direct;
+    }
 }
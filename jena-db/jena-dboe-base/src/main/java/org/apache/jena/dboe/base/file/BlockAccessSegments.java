@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.dboe.base.file;
+
+import org.apache.jena.dboe.base.block.FileMode;
+
+/**
+ * Create a {@link BlockAccess} for {@link FileMode#segment} and its variants.
+ * <p>
+ * On Java 22 and later, this class is replaced, in the multi-release jar, by a version
+ * that returns a {@code BlockAccessSegment}: one {@code MemorySegment} mapping per file,
+ * with long offsets, explicit unmapping on close, and OS access advice.
+ * <p>
+ * This version, for earlier Java versions, is not available.
+ * {@link org.apache.jena.dboe.base.block.BlockMgrFactory} uses {@link BlockAccessMapped} instead.
+ */
+public final class BlockAccessSegments {
+    private BlockAccessSegments() {}
+
+    /** Whether file mode "segment" uses {@code java.lang.foreign} in this JVM. */
+    public static boolean isAvailable() {
+        return false;
+    }
+
+    public static BlockAccess create(String filename, int blockSize, FileMode fileMode) {
+        throw new FileException("File mode '"+fileMode+"' requires Java 22 or later: "+filename);
+    }
+}
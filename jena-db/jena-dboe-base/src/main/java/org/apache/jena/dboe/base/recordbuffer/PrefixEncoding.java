@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.dboe.base.recordbuffer;
+
+import java.nio.ByteBuffer;
+
+import org.apache.jena.dboe.base.record.Record;
+
+/**
+ * Prefix encoding of a sorted sequence of fixed length records.
+ * <p>
+ * Each record is written as one byte, the number of leading bytes it shares
+ * with the record before it, followed by the remaining bytes of the record.
+ * The first record shares nothing. For B+Tree indexes of NodeIds, consecutive
+ * records usually share the leading NodeIds and the high bytes of the next one.
+ */
+final class PrefixEncoding {
+    private PrefixEncoding() {}
+
+    /** The largest shared prefix that can be recorded in the length byte. */
+    private static final int MaxPrefix = 0xFF;
+
+    /** Length of the prefix of the records at byte offsets {@code off1} and {@code off2}. */
+    static int prefix(byte[] bytes1, int off1, byte[] bytes2, int off2, int recLen) {
+        int limit = Math.min(recLen, MaxPrefix);
+        int i = 0;
+        while ( i < limit && bytes1[off1+i] == bytes2[off2+i] )
+            i++;
+        return i;
+    }
+
+    /** Encoded length of the record at {@code idx} in the array of records. */
+    static int encodedLengthAt(byte[] bytes, int idx, int recLen) {
+        if ( idx == 0 )
+            return 1 + recLen;
+        int off = idx*recLen;
+        return 1 + recLen - prefix(bytes, off-recLen, bytes, off, recLen);
+    }
+
+    /** Encoded length of {@code record} when it follows {@code previous} (which may be null). */
+    static int encodedLength(Record previous, Record record) {
+        byte[] key = record.getKey();
+        byte[] value = record.getValue();
+        int recLen = key.length + ( value == null ? 0 : value.length );
+        if ( previous == null )
+            return 1 + recLen;
+        int p = prefix(previous.getKey(), 0, key, 0, key.length);
+        if ( p == key.length && value != null )
+            p = Math.min(MaxPrefix, p + prefix(previous.getValue(), 0, value, 0, value.length));
+        return 1 + recLen - p;
+    }
+
+    /** Encoded length of the first {@code count} records in the array. */
+    static int encodedLength(byte[] bytes, int count, int recLen) {
+        int x = 0;
+        for ( int i = 0 ; i < count ; i++ )
+            x += encodedLengthAt(bytes, i, recLen);
+        return x;
+    }
+
+    /**
+     * Encode {@code count} records into {@code dst} starting at byte {@code start}.
+     * Return the number of bytes written or -1 if the records do not fit.
+     */
+    static int encode(byte[] bytes, int count, int recLen, ByteBuffer dst, int start) {
+        int pos = start;
+        int limit = dst.capacity();
+        for ( int i = 0 ; i < count ; i++ ) {
+            int off = i*recLen;
+            int p = ( i == 0 ) ? 0 : prefix(bytes, off-recLen, bytes, off, recLen);
+            int len = recLen - p;
+            if ( pos + 1 + len > limit )
+                return -1;
+            dst.put(pos, (byte)p);
+            dst.put(pos+1, bytes, off+p, len);
+            pos = pos + 1 + len;
+        }
+        return pos - start;
+    }
+
+    /** Decode {@code count} records from {@code src}, starting at byte {@code start}, into the array. */
+    static void decode(ByteBuffer src, int start, int count, int recLen, byte[] bytes) {
+        int pos = start;
+        for ( int i = 0 ; i < count ; i++ ) {
+            int off = i*recLen;
+            int p = src.get(pos) & 0xFF;
+            if ( p > 0 )
+                System.arraycopy(bytes, off-recLen, bytes, off, p);
+            int len = recLen - p;
+            src.get(pos+1, bytes, off+p, len);
+            pos = pos + 1 + len;
+        }
+    }
+
+    /**
+     * The index of the last record of the lower half when splitting the
+     * records into two by encoded size.
+     */
+    static int splitIndex(byte[] bytes, int count, int recLen) {
+        int half = encodedLength(bytes, count, recLen) / 2;
+        int x = 0;
+        int idx = 0;
+        for ( ; idx < count - 2 ; idx++ ) {
+            x += encodedLengthAt(bytes, idx, recLen);
+            if ( x >= half )
+                break;
+        }
+        return idx;
+    }
+}
@@ -18,14 +18,25 @@
 
 package org.apache.jena.dboe.base.recordbuffer;
 
+import java.nio.ByteBuffer;
+
 import org.apache.jena.dboe.base.block.Block;
+import org.apache.jena.dboe.base.buffer.RecordBuffer;
 import org.apache.jena.dboe.base.page.Page;
+import org.apache.jena.dboe.base.record.Record;
+import org.apache.jena.dboe.base.record.RecordException;
 import org.apache.jena.dboe.base.record.RecordFactory;
 import org.apache.jena.dboe.sys.SysDB;
 
 /**
  * B+Tree records nodes and hash buckets.
  * Add link field to a RecordBufferPageBase
+ * <p>
+ * A page may be prefix compressed (see {@link PrefixEncoding}). The records of a
+ * compressed page are decoded into a separate buffer when the page is made from
+ * a block and encoded back into the block by {@link RecordBufferPageMgr}. A
+ * compressed page holds a variable number of records so {@link #isFull},
+ * {@link #isMinSize} and {@link #splitIndex} take the encoded size into account.
  */
 
 public final class RecordBufferPage extends RecordBufferPageBase
@@ -40,8 +51,19 @@ public final class RecordBufferPage extends RecordBufferPageBase
     // Adds this field over RecordBufferPageBase
     final public static int LINK            = 4;
     final private static int FIELD_LENGTH   = SysDB.SizeOfInt; // Length of the space needed here (not count)
+    // Start of the records.
+    final private static int RECORDS        = LINK + FIELD_LENGTH;
+
+    /** Bit set in the count field of a compressed page. */
+    final public static int COMPRESSED      = 0x80000000;
+
+    /** Maximum number of records in a compressed page, as a multiple of the uncompressed maximum. */
+    final public static int CompressedCapacityFactor = 4;
 
     private int link = Page.NO_ID;
+    // Compressed pages only : the decoded records. The RecordBuffer is over this array.
+    private final byte[] records;
+    private final int recordLength;
 
     public final int getLink() { return link; }
 
@@ -50,12 +72,76 @@ public final class RecordBufferPage extends RecordBufferPageBase
         getBackingBlock().getByteBuffer().putInt(LINK, link);
     }
 
+    public boolean isCompressed() { return records != null; }
+
     @Override
     protected void _reset(Block block) {
+        // Compressed: keep the decoded records. The new block is written by toBlock.
+        if ( isCompressed() )
+            return;
         // Print this
         super.rebuild(block, this.getCount());
     }
 
+    /** Bytes available for records in the block. */
+    public int getSpace() {
+        return getBackingBlock().getByteBuffer().capacity() - RECORDS;
+    }
+
+    /** Whether the page can not take another record. */
+    public boolean isFull() {
+        if ( ! isCompressed() )
+            return recBuff.isFull();
+        return isFull(encodedLength());
+    }
+
+    /** Whether a compressed page with {@code encodedLength} bytes of records can not take another record. */
+    public boolean isFull(int encodedLength) {
+        if ( recBuff.isFull() )
+            return true;
+        // Adding or replacing a record changes the encoding of that record and the one after it.
+        return encodedLength + 2 * (1 + recordLength) > getSpace();
+    }
+
+    /** Whether the page is at or below the minimum size (50% packing). */
+    public boolean isMinSize() {
+        // If of max length 5 (i.e. odd), min size is 2. Integer division works.
+        boolean b = ( recBuff.size() <= recBuff.maxSize() / 2 );
+        if ( !b || !isCompressed() )
+            return b;
+        return encodedLength() <= getSpace() / 2;
+    }
+
+    /** Index of the last record to stay in this page when the page is split. */
+    public int splitIndex() {
+        if ( ! isCompressed() )
+            return recBuff.size() / 2 - 1;
+        return PrefixEncoding.splitIndex(records, recBuff.size(), recordLength);
+    }
+
+    /** Size of the records when written to the block. */
+    public int encodedLength() {
+        if ( ! isCompressed() )
+            return recBuff.size() * recordLength;
+        return PrefixEncoding.encodedLength(records, recBuff.size(), recordLength);
+    }
+
+    /** Size of a record in a compressed page when it follows {@code previous} (null for the first record). */
+    public static int encodedLength(Record previous, Record record) {
+        return PrefixEncoding.encodedLength(previous, record);
+    }
+
+    /** Write the header and the encoded records to the block. */
+    /*package*/ void encode() {
+        ByteBuffer bb = getBackingBlock().getByteBuffer();
+        int count = getCount();
+        int x = PrefixEncoding.encode(records, count, recordLength, bb, RECORDS);
+        if ( x < 0 )
+            throw new RecordException("Compressed records do not fit in the block: "+this);
+        bb.putInt(COUNT, count | COMPRESSED);
+        bb.putInt(LINK, link);
+    }
+
     public static int calcRecordSize(RecordFactory factory, int blkSize)
     { return RecordBufferPageBase.calcRecordSize(factory, blkSize, FIELD_LENGTH); }
 
@@ -64,25 +150,69 @@ public final class RecordBufferPage extends RecordBufferPageBase
 
     /** The construction methods */
     public static RecordBufferPage createBlank(Block block,RecordFactory factory) {
+        return createBlank(block, factory, false);
+    }
+
+    public static RecordBufferPage createBlank(Block block, RecordFactory factory, boolean compressed) {
         int count = 0;
         int linkId = NO_ID;
+        if ( compressed && canCompress(block, factory) )
+            return new RecordBufferPage(block, factory, allocRecords(block, factory, count), count, linkId);
         return new RecordBufferPage(block, factory, count, linkId);
     }
 
     public static RecordBufferPage format(Block block, RecordFactory factory) {
-        int count = block.getByteBuffer().getInt(COUNT);
-        int linkId = block.getByteBuffer().getInt(LINK);
-        return new RecordBufferPage(block, factory, count, linkId);
+        return format(block, factory, false);
+    }
+
+    /**
+     * Page for an existing block. A compressed block always gives a compressed page.
+     * An uncompressed block gives a compressed page, written compressed next time, if {@code compressed} is true.
+     */
+    public static RecordBufferPage format(Block block, RecordFactory factory, boolean compressed) {
+        ByteBuffer bb = block.getByteBuffer();
+        int x = bb.getInt(COUNT);
+        int linkId = bb.getInt(LINK);
+        boolean compressedBlock = ( x & COMPRESSED ) != 0;
+        int count = x & ~COMPRESSED;
+        if ( !compressedBlock && !( compressed && canCompress(block, factory) ) )
+            return new RecordBufferPage(block, factory, count, linkId);
+        int recLen = factory.recordLength();
+        byte[] records = allocRecords(block, factory, count);
+        if ( compressedBlock )
+            PrefixEncoding.decode(bb, RECORDS, count, recLen, records);
+        else
+            bb.get(RECORDS, records, 0, count * recLen);
+        return new RecordBufferPage(block, factory, records, count, linkId);
+    }
+
+    // A full compressed page must have at least two records to split.
+    private static boolean canCompress(Block block, RecordFactory factory) {
+        return block.getByteBuffer().capacity() - RECORDS >= 4 * (1 + factory.recordLength());
+    }
+
+    private static byte[] allocRecords(Block block, RecordFactory factory, int count) {
+        int maxRec = calcRecordSize(factory, block.getByteBuffer().capacity());
+        return new byte[Math.max(count, CompressedCapacityFactor * maxRec) * factory.recordLength()];
     }
 
     private RecordBufferPage(Block block, RecordFactory factory, int count, int linkId) {
         super(block, FIELD_LENGTH, factory, count);
         this.link = linkId;
+        this.records = null;
+        this.recordLength = factory.recordLength();
+    }
+
+    private RecordBufferPage(Block block, RecordFactory factory, byte[] records, int count, int linkId) {
+        super(block, FIELD_LENGTH, factory, new RecordBuffer(ByteBuffer.wrap(records), factory, count));
+        this.link = linkId;
+        this.records = records;
+        this.recordLength = factory.recordLength();
     }
 
     @Override
     public String toString()
-    { return String.format("RecordBufferPage[id=%d,link=%d]: %s", getBackingBlock().getId(), getLink(), recBuff); }
+    { return String.format("RecordBufferPage[id=%d,link=%d%s]: %s", getBackingBlock().getId(), getLink(), isCompressed() ? ",compressed" : "", recBuff); }
 
     @Override
     public String getRefStr() {
@@ -38,23 +38,38 @@ final
 public class RecordBufferPageMgr extends PageBlockMgr<RecordBufferPage>
 {
     private final RecordFactory factory;
+    private final boolean compressed;
 
     public RecordBufferPageMgr(RecordFactory factory, BlockMgr blockMgr) {
-        super(new Block2RecordBufferPage(factory), blockMgr);
+        this(factory, blockMgr, false);
+    }
+
+    /** Manager that writes pages prefix compressed if {@code compressed} is true. */
+    public RecordBufferPageMgr(RecordFactory factory, BlockMgr blockMgr, boolean compressed) {
+        super(new Block2RecordBufferPage(factory, compressed), blockMgr);
         this.factory = factory;
+        this.compressed = compressed;
     }
 
     public RecordFactory getRecordFactory() { return factory; }
 
+    public boolean isCompressed()           { return compressed; }
+
     public RecordBufferPage create() {
         return super.create(BlockType.RECORD_BLOCK);
     }
 
     public static class Block2RecordBufferPage implements BlockConverter<RecordBufferPage> {
         private RecordFactory factory;
+        private boolean compressed;
 
         public Block2RecordBufferPage(RecordFactory factory) {
+            this(factory, false);
+        }
+
+        public Block2RecordBufferPage(RecordFactory factory, boolean compressed) {
             this.factory = factory;
+            this.compressed = compressed;
         }
 
         @Override
@@ -62,14 +77,14 @@ public class RecordBufferPageMgr extends PageBlockMgr<RecordBufferPage>
             if ( blkType != BlockType.RECORD_BLOCK )
                 throw new RecordException("Not RECORD_BLOCK: " + blkType);
             // Initially empty
-            RecordBufferPage rb = RecordBufferPage.createBlank(block, factory);
+            RecordBufferPage rb = RecordBufferPage.createBlank(block, factory, compressed);
             return rb;
         }
 
         @Override
         public RecordBufferPage fromBlock(Block block) {
             synchronized (block) {
-                RecordBufferPage rb = RecordBufferPage.format(block, factory);
+                RecordBufferPage rb = RecordBufferPage.format(block, factory, compressed);
                 // int count = block.getByteBuffer().getInt(COUNT);
                 // int linkId = block.getByteBuffer().getInt(LINK);
                 // RecordBufferPage rb = new RecordBufferPage(block, linkId,
@@ -80,7 +95,10 @@ public class RecordBufferPageMgr extends PageBlockMgr<RecordBufferPage>
 
         @Override
         public Block toBlock(RecordBufferPage rbp) {
-            int count = rbp.getRecordBuffer().size();
+            if ( rbp.isCompressed() ) {
+                rbp.encode();
+                return rbp.getBackingBlock();
+            }
             ByteBuffer bb = rbp.getBackingBlock().getByteBuffer();
             bb.putInt(COUNT, rbp.getCount());
             bb.putInt(LINK, rbp.getLink());
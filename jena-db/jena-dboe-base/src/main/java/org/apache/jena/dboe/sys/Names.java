@@ -66,11 +66,19 @@ public class Names
     public static final String extObjNodeData           = "obj";
     public static final String nodeTableBaseName        = "nodes";         // Node table
 
+    /* Tuple index bloom filter */
+    public static final String extBloomFilter           = "bfl";
+
+    /* Statistics maintained by write transactions */
+    public static final String liveStatsBaseName        = "stats";
+    public static final String extLiveStats             = "sse";
+
     /** Prefixes file */
     public static final String prefixTableBaseName      = "prefixes";      // Prefix node table
 
     /** Optimizer / stats */
     public static final String optStats                 = "stats.opt";
+    public static final String optCardinality           = "cardinality.opt";
     public static final String optFixed                 = "fixed.opt";
     public static final String optNone                  = "none.opt";
     public static final String optDefault               = optFixed;
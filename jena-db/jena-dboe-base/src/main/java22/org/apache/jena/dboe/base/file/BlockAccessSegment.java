@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.dboe.base.file;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jena.dboe.base.block.Block;
+import org.apache.jena.dboe.sys.FileLib;
+import org.apache.jena.dboe.sys.SystemIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * FileAccess for a file, using memory mapped I/O with {@code java.lang.foreign}.
+ * <p>
+ * The file is mapped as one {@link MemorySegment}, addressed by long offsets. When the
+ * file grows, it is mapped again, larger. Blocks already handed out are views of the
+ * earlier mapping so it is kept; all the mappings belong to one {@link Arena} and are
+ * unmapped when the file is closed. {@link BlockAccessMapped} can not unmap.
+ * <p>
+ * The mapping can be given an access {@link Advice} ({@code madvise(2)}). This needs
+ * native access to be enabled ({@code --enable-native-access}); otherwise it is skipped.
+ */
+final
+public class BlockAccessSegment extends BlockAccessBase
+{
+    private static Logger log = LoggerFactory.getLogger(BlockAccessSegment.class);
+    private enum CopyContents { Overwrite, NoCopy }
+
+    /** Advice to the OS on the access pattern to the file. */
+    public enum Advice { NORMAL, SEQUENTIAL, RANDOM }
+
+    // The mapping is a multiple of this size.
+    private static final long MapUnit = SystemIndex.SegmentSize;
+    // Remapping doubles the size, up to this much at a time.
+    private static final long MaxGrowth = 1024L*1024*1024;
+
+    private final Advice advice;
+    private final Arena arena = Arena.ofShared();
+    // The current mapping - null until first used.
+    private volatile MemorySegment mapping = null;
+    // All the mappings, current and earlier.
+    private final List<MemorySegment> mappings = new ArrayList<>();
+    private boolean dirty = false;
+
+    public BlockAccessSegment(String filename, int blockSize, Advice advice) {
+        super(filename, blockSize);
+        this.advice = advice;
+        if ( MapUnit%blockSize != 0 )
+            getLog().warn(format("%s: Segment size(%d) not a multiple of blocksize (%d)", filename, MapUnit, blockSize));
+    }
+
+    @Override
+    public Block allocate(int blkSize) {
+        if ( blkSize > 0 && blkSize != this.blockSize )
+            throw new FileException("Fixed blocksize only: request= "+blkSize+" fixed size="+this.blockSize);
+        int id = allocateId();
+        ByteBuffer bb = getByteBuffer(id);
+        bb.position(0);
+        Block block = new Block(id, bb);
+        return block;
+    }
+
+    @Override
+    public Block read(long id) {
+        check(id);
+        checkIfClosed();
+        ByteBuffer bb = getByteBuffer(id);
+        bb.position(0);
+        Block block = new Block(id, bb);
+        return block;
+    }
+
+    @Override
+    public void write(Block block) {
+        write(block, CopyContents.NoCopy);
+    }
+
+    @Override
+    public void overwrite(Block block) {
+        overwriteNotification(block);
+        write(block, CopyContents.Overwrite);
+    }
+
+    private void write(Block block, CopyContents copyContents) {
+        check(block);
+        checkIfClosed();
+        long id = block.getId();
+
+        if ( copyContents == CopyContents.Overwrite ) {
+            ByteBuffer bbDst = getByteBuffer(id);
+            bbDst.position(0);
+            ByteBuffer bbSrc = block.getByteBuffer();
+            bbSrc.rewind();
+            bbDst.put(bbSrc);
+        }
+        // Assumed MRSW - no need to sync as we are the only Writer
+        dirty = true;
+        writeNotification(block);
+    }
+
+    @Override
+    public void sync() {
+        checkIfClosed();
+        force();
+    }
+
+    private ByteBuffer getByteBuffer(long id) {
+        if ( id < 0 ) {
+            String msg = String.format("%s: ByteBuffer index is negative: %d", label, id);
+            getLog().error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        long offset = id*blockSize;
+        MemorySegment segment = mapping;
+        if ( segment == null || offset+blockSize > segment.byteSize() )
+            segment = remap(offset+blockSize);
+        ByteBuffer dst = segment.asSlice(offset, blockSize).asByteBuffer();
+        synchronized (this) {
+            // Extend block count when we allocate above end.
+            numFileBlocks = Math.max(numFileBlocks, id+1);
+        }
+        return dst;
+    }
+
+    /** Map the file so that the mapping is at least {@code minSize} bytes. */
+    private synchronized MemorySegment remap(long minSize) {
+        MemorySegment segment = mapping;
+        if ( segment != null && minSize <= segment.byteSize() )
+            return segment;
+        long current = ( segment == null ) ? 0 : segment.byteSize();
+        long size = Math.max(minSize, current+Math.min(current, MaxGrowth));
+        // First mapping: all the existing file.
+        size = Math.max(size, FileLib.size(file));
+        size = ((size+MapUnit-1)/MapUnit)*MapUnit;
+        try {
+            segment = file.map(MapMode.READ_WRITE, 0, size, arena);
+        } catch (IOException ex) {
+            if ( ex.getCause() instanceof java.lang.OutOfMemoryError )
+                throw new FileException("BlockAccessSegment.remap: Size = "+size, ex);
+            throw new FileException("BlockAccessSegment.remap: "+label, ex);
+        }
+        if ( getLog().isDebugEnabled() )
+            getLog().debug(format("%s: Mapping: %,d bytes", label, size));
+        advise(segment, advice);
+        mappings.add(segment);
+        mapping = segment;
+        return segment;
+    }
+
+    private synchronized void flushMappings() {
+        if ( dirty ) {
+            // Earlier mappings may have been written through blocks from before a remap.
+            for ( MemorySegment segment : mappings )
+                segment.force();
+            dirty = false;
+        }
+        // This on its own does not force dirty pages to disk.
+        super.force();
+    }
+
+    @Override
+    protected void _resetAllocBoundary(long boundary) {
+
+    }
+
+    @Override
+    protected void _close() {
+        force();
+        synchronized (this) {
+            mapping = null;
+            mappings.clear();
+            // Unmap.
+            arena.close();
+        }
+    }
+
+    @Override
+    protected void force() {
+        flushMappings();
+    }
+
+    @Override
+    protected Logger getLog() {
+        return log;
+    }
+
+    @Override
+    public String toString() {
+        return super.getLabel();
+    }
+
+    // ---- madvise
+
+    // Linux and BSD/macOS values.
+    private static final int MADV_RANDOM     = 1;
+    private static final int MADV_SEQUENTIAL = 2;
+
+    private static final MethodHandle madvise = findMadvise();
+
+    private static MethodHandle findMadvise() {
+        try {
+            // Calling the native linker without native access enabled causes a warning.
+            if ( ! BlockAccessSegment.class.getModule().isNativeAccessEnabled() )
+                return null;
+            // size_t as JAVA_LONG.
+            if ( ValueLayout.ADDRESS.byteSize() != Long.BYTES )
+                return null;
+            Linker linker = Linker.nativeLinker();
+            FunctionDescriptor signature = FunctionDescriptor.of(ValueLayout.JAVA_INT,
+                                                                 ValueLayout.ADDRESS, ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT);
+            return linker.defaultLookup().find("madvise")
+                         .map(addr->linker.downcallHandle(addr, signature))
+                         .orElse(null);
+        } catch (Throwable th) {
+            log.debug("madvise not available: "+th.getMessage());
+            return null;
+        }
+    }
+
+    private void advise(MemorySegment segment, Advice advice) {
+        if ( madvise == null || advice == Advice.NORMAL )
+            return;
+        int adv = ( advice == Advice.SEQUENTIAL ) ? MADV_SEQUENTIAL : MADV_RANDOM;
+        try {
+            int rc = (int)madvise.invokeExact(segment, segment.byteSize(), adv);
+            if ( rc != 0 )
+                getLog().debug(format("%s: madvise(%s) failed", label, advice));
+        } catch (Throwable th) {
+            getLog().debug(format("%s: madvise(%s): %s", label, advice, th.getMessage()));
+        }
+    }
+}
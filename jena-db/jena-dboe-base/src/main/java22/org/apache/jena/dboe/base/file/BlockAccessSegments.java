@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.dboe.base.file;
+
+import org.apache.jena.dboe.base.block.FileMode;
+
+/**
+ * Create a {@link BlockAccess} for {@link FileMode#segment} and its variants.
+ * <p>
+ * This is the Java 22 version, in the multi-release jar.
+ * It uses {@link BlockAccessSegment}.
+ */
+public final class BlockAccessSegments {
+    private BlockAccessSegments() {}
+
+    /** Whether file mode "segment" uses {@code java.lang.foreign} in this JVM. */
+    public static boolean isAvailable() {
+        return true;
+    }
+
+    public static BlockAccess create(String filename, int blockSize, FileMode fileMode) {
+        return new BlockAccessSegment(filename, blockSize, advice(fileMode));
+    }
+
+    private static BlockAccessSegment.Advice advice(FileMode fileMode) {
+        if ( fileMode == null )
+            return BlockAccessSegment.Advice.NORMAL;
+        switch (fileMode) {
+            case segmentSequential :
+                return BlockAccessSegment.Advice.SEQUENTIAL;
+            case segmentRandom :
+                return BlockAccessSegment.Advice.RANDOM;
+            default :
+                return BlockAccessSegment.Advice.NORMAL;
+        }
+    }
+}
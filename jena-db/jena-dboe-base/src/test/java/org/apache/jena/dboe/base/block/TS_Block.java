@@ -26,7 +26,9 @@ import org.junit.platform.suite.api.Suite;
     TestBlockMgrMem.class
     , TestBlockMgrDirect.class
     , TestBlockMgrMapped.class
+    , TestBlockMgrSegment.class
     , TestBlockMgrTracked.class
+    , TestBlockMgrCache.class
 })
 
 public class TS_Block
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.dboe.base.block;
+
+import static org.apache.jena.atlas.lib.ByteBufferLib.fill;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.apache.jena.dboe.base.file.BlockAccessMem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Pinning and statistics of {@link BlockMgrCache}. */
+public class TestBlockMgrCache {
+    static final int BlkSize = 256;
+    static final int N = 100;
+    private BlockMgrCache cache;
+
+    @BeforeEach
+    public void before() {
+        BlockMgr blockMgr = new BlockMgrFileAccess(new BlockAccessMem("mem", BlkSize), BlkSize);
+        // 8 read slots, 2 pin slots, no write cache.
+        cache = (BlockMgrCache)BlockMgrCache.create(8, 0, blockMgr);
+        cache.beginUpdate();
+        for ( int i = 0 ; i < N ; i++ ) {
+            Block block = cache.allocate(BlkSize);
+            fill(block.getByteBuffer(), (byte)i);
+            cache.write(block);
+            cache.release(block);
+        }
+        cache.sync();
+        cache.resetStats();
+    }
+
+    @AfterEach
+    public void after() {
+        cache.endUpdate();
+        cache.close();
+    }
+
+    private void read(long id) {
+        Block block = cache.getRead(id);
+        cache.release(block);
+    }
+
+    @Test
+    public void cache_pin_scan() {
+        read(0);
+        cache.pin(0);
+        assertEquals(1, cache.getPinnedCount());
+        for ( int i = 1 ; i < N ; i++ )
+            read(i);
+        read(0);
+        assertEquals(1, cache.getPinHits());
+        assertEquals(N, cache.getMisses());
+    }
+
+    @Test
+    public void cache_pin_bounded() {
+        for ( int i = 0 ; i < 5 ; i++ ) {
+            read(i);
+            cache.pin(i);
+        }
+        assertEquals(2, cache.getPinnedCount());
+        // Not in the read cache: ignored.
+        cache.pin(50);
+        assertEquals(2, cache.getPinnedCount());
+    }
+
+    @Test
+    public void cache_pin_write() {
+        read(0);
+        cache.pin(0);
+        Block block = cache.getWrite(0);
+        assertEquals(0, cache.getPinnedCount());
+        cache.release(block);
+    }
+
+    @Test
+    public void cache_pin_overwrite() {
+        read(0);
+        cache.pin(0);
+        Block block = new Block(0, ByteBuffer.allocate(BlkSize));
+        fill(block.getByteBuffer(), (byte)99);
+        cache.overwrite(block);
+        Block block2 = cache.getRead(0);
+        assertEquals((byte)99, block2.getByteBuffer().get(0));
+        assertEquals(1, cache.getPinHits());
+        cache.release(block2);
+    }
+
+    @Test
+    public void cache_stats() {
+        assertEquals(-1, cache.getHitRate());
+        read(1);
+        read(1);
+        assertEquals(1, cache.getReadHits());
+        assertEquals(1, cache.getMisses());
+        assertTrue(cache.getHitRate() == 0.5);
+    }
+}
@@ -32,6 +32,7 @@ import org.junit.platform.suite.api.Suite;
     , TestBlockAccessByteArray.class
     , TestBlockAccessDirect.class
     , TestBlockAccessMapped.class
+    , TestBlockAccessSegments.class
 
     , TestBinaryDataMem.class
     , TestBinaryDataFileWriteBufferedMem.class
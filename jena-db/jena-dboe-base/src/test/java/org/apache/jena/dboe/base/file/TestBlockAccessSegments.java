@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.dboe.base.file;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import org.apache.jena.atlas.lib.FileOps;
+import org.apache.jena.dboe.ConfigTestDBOE;
+import org.apache.jena.dboe.base.block.FileMode;
+
+/**
+ * {@link BlockAccessSegments}: a {@code BlockAccessSegment} on Java 22 and later
+ * from the multi-release jar.
+ * <p>
+ * The classes for Java 22 are only used from the jar: the "java22" build profile runs
+ * this test again, on the jar, with system property {@code jena.test.java22} set.
+ * Otherwise, when the Java 22 classes are not in use, the tests are skipped.
+ */
+public class TestBlockAccessSegments extends AbstractTestBlockAccessFixedSize
+{
+    static String filename = ConfigTestDBOE.getTestingDir()+"/test-file-access-segment";
+
+    static final int BlockSize = 64;
+    public TestBlockAccessSegments() {
+        super(BlockSize);
+    }
+
+    @BeforeAll public static void available() {
+        if ( Boolean.getBoolean("jena.test.java22") )
+            assertTrue(BlockAccessSegments.isAvailable(), "Java 22 classes not in use");
+        assumeTrue(BlockAccessSegments.isAvailable());
+    }
+
+    @AfterAll public static void cleanup() { FileOps.deleteSilent(filename); }
+
+    static int counter = 0;
+
+    @Override
+    protected BlockAccess make() {
+        String fn = filename + "-"+(counter++);
+        FileOps.deleteSilent(fn);
+        return BlockAccessSegments.create(fn, BlockSize, FileMode.segmentRandom);
+    }
+
+    @Test public void segment_01() {
+        BlockAccess file = make();
+        try {
+            assertEquals("BlockAccessSegment", file.getClass().getSimpleName());
+        } finally { file.close(); }
+    }
+}
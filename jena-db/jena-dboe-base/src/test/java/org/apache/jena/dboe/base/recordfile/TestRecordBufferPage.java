@@ -19,6 +19,9 @@
 package org.apache.jena.dboe.base.recordfile;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -27,6 +30,7 @@ import org.junit.jupiter.api.Test;
 import org.apache.jena.dboe.base.block.BlockMgr;
 import org.apache.jena.dboe.base.block.BlockMgrFactory;
 import org.apache.jena.dboe.base.buffer.RecordBuffer;
+import org.apache.jena.atlas.lib.Bytes;
 import org.apache.jena.dboe.base.record.Record;
 import org.apache.jena.dboe.base.record.RecordFactory;
 import org.apache.jena.dboe.base.recordbuffer.RecordBufferPage;
@@ -86,6 +90,87 @@ public class TestRecordBufferPage
         blkMgr.endRead();
     }
 
+    // Compressed pages: records are 8 bytes (a long), 16 records per block uncompressed.
+    static RecordFactory factory8 = new RecordFactory(8, 0);
+    static final int TestNumRecord8 = 16;
+
+    @Test public void recBufferPageCompressed01() {
+        BlockMgr blkMgr = makeBlockMgr8();
+        blkMgr.beginUpdate();
+        RecordBufferPageMgr rpm = new RecordBufferPageMgr(factory8, blkMgr, true);
+        RecordBufferPage page1 = rpm.create();
+        assertTrue(page1.isCompressed());
+        // Consecutive longs share the high 7 bytes.
+        int N = 0;
+        while ( !page1.isFull() )
+            page1.getRecordBuffer().add(record8(1000+(N++)));
+        assertTrue(N > TestNumRecord8, "Count="+N);
+        int id = page1.getId();
+        rpm.put(page1);
+        blkMgr.endUpdate();
+
+        blkMgr.beginRead();
+        RecordBufferPage page2 = rpm.getRead(id);
+        assertTrue(page2.isCompressed());
+        assertNotEquals(0, page2.getBackingBlock().getByteBuffer().getInt(RecordBufferPage.COUNT) & RecordBufferPage.COMPRESSED);
+        assertEquals(N, page2.getCount());
+        for ( int i = 0 ; i < N ; i++ )
+            assertEquals(1000+i, get8(page2, i));
+        rpm.release(page2);
+        blkMgr.endRead();
+    }
+
+    @Test public void recBufferPageCompressed02() {
+        // Uncompressed block, read as a compressed page.
+        BlockMgr blkMgr = makeBlockMgr8();
+        blkMgr.beginUpdate();
+        RecordBufferPageMgr rpm1 = new RecordBufferPageMgr(factory8, blkMgr);
+        RecordBufferPage page1 = rpm1.create();
+        for ( int i = 0 ; i < TestNumRecord8 ; i++ )
+            page1.getRecordBuffer().add(record8(i*1000));
+        int id = page1.getId();
+        rpm1.put(page1);
+
+        RecordBufferPageMgr rpm2 = new RecordBufferPageMgr(factory8, blkMgr, true);
+        RecordBufferPage page2 = rpm2.getWrite(id);
+        assertTrue(page2.isCompressed());
+        assertEquals(TestNumRecord8, page2.getCount());
+        assertFalse(page2.isFull());
+        page2.getRecordBuffer().add(record8(TestNumRecord8*1000));
+        rpm2.put(page2);
+        blkMgr.endUpdate();
+
+        // Compressed block, read by an uncompressed page manager.
+        blkMgr.beginRead();
+        RecordBufferPage page3 = rpm1.getRead(id);
+        assertTrue(page3.isCompressed());
+        assertEquals(TestNumRecord8+1, page3.getCount());
+        for ( int i = 0 ; i <= TestNumRecord8 ; i++ )
+            assertEquals(i*1000, get8(page3, i));
+        rpm1.release(page3);
+        blkMgr.endRead();
+    }
+
+    @Test public void recBufferPageCompressed03() {
+        BlockMgr blkMgr = makeBlockMgr8();
+        blkMgr.beginUpdate();
+        RecordBufferPageMgr rpm = new RecordBufferPageMgr(factory8, blkMgr, true);
+        RecordBufferPage page = rpm.create();
+        assertTrue(page.isMinSize());
+        // First record is stored whole, then 20 records of 2 bytes and 10 records of 7 bytes.
+        page.getRecordBuffer().add(record8(0));
+        for ( int i = 1 ; i <= 20 ; i++ )
+            page.getRecordBuffer().add(record8(i));
+        for ( int i = 1 ; i <= 10 ; i++ )
+            page.getRecordBuffer().add(record8(((long)i)<<40));
+        assertEquals(9+20*2+10*7, page.encodedLength());
+        // Split by size, not count (which would be 14).
+        assertEquals(22, page.splitIndex());
+        assertFalse(page.isMinSize());
+        rpm.release(page);
+        blkMgr.endUpdate();
+    }
+
     private static void fill(RecordBuffer rb, int ... nums) {
         for ( int num : nums ) {
             Record rec = record( num );
@@ -109,6 +194,20 @@ public class TestRecordBufferPage
         return r;
     }
 
+    private static long get8(RecordBufferPage rbp, int idx) {
+        return Bytes.getLong(rbp.getRecordBuffer().get(idx).getKey());
+    }
+
+    private static Record record8(long i) {
+        byte b[] = new byte[8];
+        Bytes.setLong(i, b);
+        return factory8.create(b);
+    }
+
+    private static BlockMgr makeBlockMgr8() {
+        return BlockMgrFactory.createMem("RecordBuffer", RecordBufferPage.calcBlockSize(factory8, TestNumRecord8));
+    }
+
     private static BlockMgr makeBlockMgr() {
         return BlockMgrFactory.createMem("RecordBuffer", RecordBufferPage.calcBlockSize(factory, TestNumRecord));
     }
@@ -65,6 +65,9 @@ public final class BPTreeNodeMgr extends PageBlockMgr<BPTreeNode>
     public BPTreeNode getRead(int id, int parent) {
         BPTreeNode n = super.getRead$(id);
         n.setParent(parent);
+        // Nodes above the lowest level are few and on the path of every lookup.
+        if ( ! n.isLeaf() )
+            blockMgr.pin(id);
         return n;
     }
 
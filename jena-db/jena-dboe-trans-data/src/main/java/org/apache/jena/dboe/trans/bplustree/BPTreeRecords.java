@@ -92,7 +92,7 @@ public final class BPTreeRecords extends BPTreePage {
 
     @Override
     public boolean isFull() {
-        return (rBuff.size() >= rBuff.maxSize());
+        return rBuffPage.isFull();
     }
 
     @Override
@@ -102,9 +102,8 @@ public final class BPTreeRecords extends BPTreePage {
 
     @Override
     public boolean isMinSize() {
-        // 50% packing minimum.
-        // If of max length 5 (i.e. odd), min size is 2. Integer division works.
-        return (rBuff.size() <= rBuff.maxSize() / 2);
+        // 50% packing minimum, by count or, for compressed pages, by count and space.
+        return rBuffPage.isMinSize();
     }
 
     @Override
@@ -191,7 +190,7 @@ public final class BPTreeRecords extends BPTreePage {
 
     @Override
     public Record getSplitKey() {
-        int splitIdx = rBuff.size() / 2 - 1;
+        int splitIdx = rBuffPage.splitIndex();
         Record r = rBuff.get(splitIdx);
         return r;
     }
@@ -204,7 +203,7 @@ public final class BPTreeRecords extends BPTreePage {
     @Override
     public BPTreePage split() {
         BPTreeRecords other = insertNewPage();
-        int splitIdx = rBuff.size() / 2 - 1;
+        int splitIdx = rBuffPage.splitIndex();
         Record r = CheckingNode ? rBuff.get(splitIdx) : null;   // Only need key for checking later.
         int moveLen = rBuff.size() - (splitIdx + 1);            // Number to move.
         // Copy high end to new.
@@ -36,6 +36,7 @@ final public class BPlusTreeParams
     public static final String ParamKeyLength      = NS+".keyLength";
     public static final String ParamValueLength    = NS+".valueLength";
     public static final String ParamBlockSize      = NS+".blockSize";
+    public static final String ParamCompressLeaves = NS+".compressLeaves";
 
     /* The gap is extra space in a node - some books have node size as 2*N
      * (often for the classic insertion algorithm where it's easier to implement
@@ -61,6 +62,9 @@ final public class BPlusTreeParams
     /** Factory for key-only records */
     final RecordFactory keyFactory;
 
+    /** Write records (leaf) blocks prefix compressed */
+    final boolean compressLeaves;
+
     // ---- Derived constants.
 
     /** Maximum number of keys per non-leaf block */
@@ -91,13 +95,14 @@ final public class BPlusTreeParams
 
     @Override
     public String toString() {
-        return String.format("Order=%d : Records [key=%d, value=%d] : records=[%d,%d] : pointers=[%d,%d] : split=%d",
+        return String.format("Order=%d : Records [key=%d, value=%d] : records=[%d,%d] : pointers=[%d,%d] : split=%d%s",
                              order,
                              keyFactory.keyLength() ,
                              recordFactory.valueLength() ,
                              MinRec, MaxRec,
                              MinPtr, MaxPtr,
-                             SplitIndex
+                             SplitIndex,
+                             compressLeaves ? " : compressed" : ""
                              );
     }
 
@@ -106,7 +111,8 @@ final public class BPlusTreeParams
             int pOrder = mf.getPropertyAsInteger(ParamOrder);
             int pKeyLen = mf.getPropertyAsInteger(ParamKeyLength);
             int pRecLen = mf.getPropertyAsInteger(ParamValueLength);
-            return new BPlusTreeParams(pOrder, pKeyLen, pRecLen);
+            boolean pCompress = Boolean.parseBoolean(mf.getProperty(ParamCompressLeaves, "false"));
+            return new BPlusTreeParams(pOrder, new RecordFactory(pKeyLen, pRecLen), pCompress);
         } catch (NumberFormatException ex) {
             Log.error(BPlusTreeParams.class, "Badly formed metadata for B+Tree");
             throw new DBOpEnvException("Failed to read metadata");
@@ -117,6 +123,7 @@ final public class BPlusTreeParams
         mf.setProperty(ParamOrder, order);
         mf.setProperty(ParamKeyLength, recordFactory.keyLength());
         mf.setProperty(ParamValueLength, recordFactory.valueLength());
+        mf.setProperty(ParamCompressLeaves, Boolean.toString(compressLeaves));
         mf.flush();
     }
 
@@ -125,6 +132,17 @@ final public class BPlusTreeParams
     }
 
     public BPlusTreeParams(int order, RecordFactory factory) {
+        this(order, factory, false);
+    }
+
+    /**
+     * B+Tree parameters. If {@code compressLeaves} is true, records blocks are
+     * written prefix compressed and hold a variable number of records.
+     * Blocks are marked as compressed so a B+Tree can read both forms.
+     * A B+Tree with compressed blocks must not be updated with {@code compressLeaves}
+     * false: an uncompressed page can not take the records of a compressed page.
+     */
+    public BPlusTreeParams(int order, RecordFactory factory, boolean compressLeaves) {
         // BTrees of order one aren't strictly BTrees
         // Order 1 => Min size = 0 and max size = 2*N-1 = 1.
         // If there is a gap, then the code may be defensive enough
@@ -137,6 +155,7 @@ final public class BPlusTreeParams
         this.order = order;
         recordFactory = factory;
         keyFactory = factory.keyFactory();
+        this.compressLeaves = compressLeaves;
 
         // Derived constants.
         MaxRec  = 2*order-1 + Gap;
@@ -162,6 +181,10 @@ final public class BPlusTreeParams
         return recordFactory.recordLength();
     }
 
+    public boolean isCompressLeaves() {
+        return compressLeaves;
+    }
+
     public RecordFactory getRecordFactory(){
         return recordFactory;
     }
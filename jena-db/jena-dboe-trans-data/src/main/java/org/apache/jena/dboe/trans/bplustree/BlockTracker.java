@@ -237,6 +237,11 @@ public class BlockTracker implements BlockMgr {
         blockMgr.free(block);
     }
 
+    @Override
+    public void pin(long id) {
+        blockMgr.pin(id);
+    }
+
     @Override
     public void sync() {
         blockMgr.sync();
@@ -63,9 +63,21 @@ class RecordBufferPagePacker implements Iterator<RecordBufferPage> {
             recordBufferPage = rbMgr.create();
 
             RecordBuffer rb = recordBufferPage.getRecordBuffer();
-            while (!rb.isFull() && records.hasNext()) {
-                Record r = records.next();
-                rb.add(r);
+            if ( recordBufferPage.isCompressed() ) {
+                // Track the encoded size as records are added.
+                int encodedLength = 0;
+                Record prev = null;
+                while (!recordBufferPage.isFull(encodedLength) && records.hasNext()) {
+                    Record r = records.next();
+                    encodedLength += RecordBufferPage.encodedLength(prev, r);
+                    rb.add(r);
+                    prev = r;
+                }
+            } else {
+                while (!rb.isFull() && records.hasNext()) {
+                    Record r = records.next();
+                    rb.add(r);
+                }
             }
             if ( !records.hasNext() )
                 records = null;
@@ -28,6 +28,7 @@ import org.junit.platform.suite.api.Suite;
     TestBPTreeRecordsNonTxn.class,
     TestBPlusTreeIndexNonTxn.class,
     TestBPlusTreeNonTxn.class,
+    TestBPlusTreeCompressedNonTxn.class,
     TestBPTreeModes.class,
 
     // Transactional tests
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.dboe.trans.bplustree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.lib.Bytes;
+import org.apache.jena.dboe.base.file.Location;
+import org.apache.jena.dboe.base.record.Record;
+import org.apache.jena.dboe.base.record.RecordFactory;
+import org.apache.jena.dboe.base.recordbuffer.RecordBufferPage;
+import org.apache.jena.dboe.index.testlib.AbstractTestRangeIndex;
+import org.apache.jena.dboe.sys.SystemIndex;
+import org.apache.jena.dboe.test.RecordLib;
+import org.apache.jena.dboe.transaction.Transactional;
+import org.apache.jena.dboe.transaction.TransactionalFactory;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.system.Txn;
+
+/** Run the tests for a tree with prefix compressed records blocks in "non-transactional" mode */
+public class TestBPlusTreeCompressedNonTxn extends AbstractTestRangeIndex {
+
+    static boolean originalNullOut;
+    @BeforeAll
+    static public void beforeClass() {
+        BPT.CheckingNode = true;
+        originalNullOut = SystemIndex.getNullOut();
+        SystemIndex.setNullOut(true);
+    }
+
+    @AfterAll
+    static public void afterClass() {
+        SystemIndex.setNullOut(originalNullOut);
+    }
+
+    @Override
+    protected BPlusTree makeRangeIndex(int order, int minRecords) {
+        // Blocks must be large enough to hold several compressed records.
+        BPlusTree bpt = BPlusTreeFactory.makeMem(null, order, Math.max(4, minRecords), RecordLib.TestRecordLength, 0, true);
+        bpt.nonTransactional();
+        return bpt;
+    }
+
+    @Test public void compressed_fill_01() {
+        // 16 byte records (like a triple index record, 2 longs) and a 4K block.
+        RecordFactory factory = new RecordFactory(16, 0);
+        int order = BPlusTreeParams.calcOrder(4096, factory);
+        BPlusTree bpt = BPlusTreeFactory.makeMem(null, order, -1, 16, 0, true);
+        bpt.nonTransactional();
+        int N = 5000;
+        for ( int i = 0 ; i < N ; i++ )
+            bpt.insert(record(factory, i/10, i%10));
+        bpt.check();
+        assertEquals(N, bpt.size());
+        // Fewer compressed pages than completely full uncompressed pages.
+        int blockSize = BPlusTreeParams.calcBlockSize(order, factory);
+        int uncompressedPages = N / RecordBufferPage.calcRecordSize(factory, blockSize);
+        long pages = bpt.getRecordsMgr().getBlockMgr().allocLimit();
+        assertTrue(pages < uncompressedPages, "pages="+pages);
+        // Delete half, in a different order.
+        for ( int i = 0 ; i < N ; i += 2 )
+            bpt.delete(record(factory, i/10, i%10));
+        bpt.check();
+        assertEquals(N/2, Iter.count(bpt.iterator()));
+        for ( int i = 1 ; i < N ; i += 2 )
+            assertTrue(bpt.contains(record(factory, i/10, i%10)));
+    }
+
+    @Test public void compressed_txn_01() {
+        // Copy-on-write of compressed pages.
+        RecordFactory factory = new RecordFactory(16, 0);
+        BPlusTree bpt = BPlusTreeFactory.makeMem(null, 10, 8, 16, 0, true);
+        Transactional thing = TransactionalFactory.createTransactional(Location.mem(), bpt);
+        int N = 1000;
+        Txn.executeWrite(thing, ()->{
+            for ( int i = 0 ; i < N ; i++ )
+                bpt.insert(record(factory, i/10, i%10));
+        });
+        thing.begin(ReadWrite.WRITE);
+        for ( int i = 0 ; i < N ; i += 2 )
+            bpt.delete(record(factory, i/10, i%10));
+        thing.abort();
+        thing.end();
+        Txn.executeWrite(thing, ()->{
+            for ( int i = 1 ; i < N ; i += 2 )
+                bpt.delete(record(factory, i/10, i%10));
+        });
+        Txn.executeRead(thing, ()->{
+            bpt.check();
+            assertEquals(N/2, bpt.size());
+            for ( int i = 0 ; i < N ; i += 2 )
+                assertTrue(bpt.contains(record(factory, i/10, i%10)));
+        });
+    }
+
+    private static Record record(RecordFactory factory, long a, long b) {
+        byte[] key = new byte[16];
+        Bytes.setLong(a, key, 0);
+        Bytes.setLong(b, key, 8);
+        return factory.create(key);
+    }
+}
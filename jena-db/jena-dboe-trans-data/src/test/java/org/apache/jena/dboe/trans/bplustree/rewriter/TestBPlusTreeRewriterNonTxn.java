@@ -65,11 +65,24 @@ public class TestBPlusTreeRewriterNonTxn {
 
     @Test public void bpt_rewrite_99()  { runTest(5, 1000); }
 
+    // Compressed records blocks.
+    @Test public void bpt_rewrite_compressed_01()  { runTestCompressed(5, 0); }
+    @Test public void bpt_rewrite_compressed_02()  { runTestCompressed(5, 1); }
+    @Test public void bpt_rewrite_compressed_03()  { runTestCompressed(5, 100); }
+    @Test public void bpt_rewrite_compressed_04()  { runTestCompressed(10, 1000); }
+
     static void runTest(int order, int N)
     { runOneTest(order, N , recordFactory, false); }
 
+    static void runTestCompressed(int order, int N)
+    { runOneTest(order, N , recordFactory, true, false); }
+
     public static void runOneTest(int order, int N, RecordFactory recordFactory, boolean debug) {
-        BPlusTreeParams bptParams = new BPlusTreeParams(order, recordFactory);
+        runOneTest(order, N, recordFactory, false, debug);
+    }
+
+    public static void runOneTest(int order, int N, RecordFactory recordFactory, boolean compressLeaves, boolean debug) {
+        BPlusTreeParams bptParams = new BPlusTreeParams(order, recordFactory, compressLeaves);
         //BPlusTreeRewriter.debug = debug;
 
         // ---- Test data
@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.dboe.transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.jena.dboe.transaction.txn.TransactionException;
+import org.apache.jena.sparql.core.Transactional;
+
+/**
+ * Group commit for small write actions.
+ * <p>
+ * Each write transaction on a {@link Transactional} such as a TDB2 database
+ * forces the journal and the data files to disk when it commits, so the rate of
+ * small updates is limited by the time taken by {@code fsync}. The transaction
+ * coordinator allows only one writer at a time, so two writers never reach the
+ * commit point together and their syncs cannot be shared.
+ * <p>
+ * {@code GroupCommit} collects write actions submitted by different threads. An
+ * action waits up to the batching window, or until the batch is full, and then
+ * the whole batch is executed, in arrival order, inside one write transaction.
+ * That is one journal commit and one set of syncs for the batch.
+ * <p>
+ * {@link #execute} returns only after the transaction containing the action has
+ * committed, so each action is durable when the call returns. If an action
+ * throws an exception, the batch transaction is aborted and each action of the
+ * batch is then run again in its own write transaction. The failing action
+ * reports its exception to its caller and the other actions commit as if they
+ * had been submitted on their own. Actions may therefore be run more than once
+ * (the earlier run having been aborted); they must not have side effects
+ * outside the transactional storage. Actions may be run on a thread other than
+ * the caller's thread.
+ * <p>
+ * Do not call {@code execute} from inside a transaction.
+ */
+public class GroupCommit {
+    /** Default maximum number of actions in one commit. */
+    public static final int  DftMaxBatchSize = 100;
+    /** Default time to wait for more actions before committing, in milliseconds. */
+    public static final long DftWindowMillis = 2;
+
+    private final Transactional transactional;
+    private final int maxBatchSize;
+    private final long windowNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    // Waiting actions, in arrival order. Guarded by "lock".
+    private final List<Request> queue = new ArrayList<>();
+    // Whether a thread is currently collecting or running a batch. Guarded by "lock".
+    private boolean leaderActive = false;
+
+    private final AtomicLong countBatches       = new AtomicLong(0);
+    private final AtomicLong countActions       = new AtomicLong(0);
+    private final AtomicLong countFailed        = new AtomicLong(0);
+    private final AtomicLong countBatchRetries  = new AtomicLong(0);
+    private final AtomicLong largestBatch       = new AtomicLong(0);
+
+    private static class Request {
+        final Runnable action;
+        boolean done = false;
+        RuntimeException failure = null;
+        Error error = null;
+        Request(Runnable action) { this.action = action; }
+    }
+
+    /** Group commit with the default batch size and window. */
+    public static GroupCommit create(Transactional transactional) {
+        return new GroupCommit(transactional, DftMaxBatchSize, DftWindowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Group commit that commits when {@code maxBatchSize} actions are waiting
+     * or when the first waiting action has waited for {@code window}.
+     * A window of zero commits whatever has arrived while the previous batch
+     * was being written.
+     */
+    public static GroupCommit create(Transactional transactional, int maxBatchSize, long window, TimeUnit unit) {
+        return new GroupCommit(transactional, maxBatchSize, window, unit);
+    }
+
+    private GroupCommit(Transactional transactional, int maxBatchSize, long window, TimeUnit unit) {
+        Objects.requireNonNull(transactional);
+        if ( maxBatchSize < 1 )
+            throw new IllegalArgumentException("Batch size must be at least 1: "+maxBatchSize);
+        if ( window < 0 )
+            throw new IllegalArgumentException("Negative window: "+window);
+        this.transactional = transactional;
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = unit.toNanos(window);
+    }
+
+    /**
+     * Execute a write action as part of a group commit.
+     * Returns when the action has been committed; throws the exception
+     * of the action if it failed, in which case it has no effect.
+     */
+    public void execute(Runnable action) {
+        Objects.requireNonNull(action);
+        if ( transactional.isInTransaction() )
+            throw new TransactionException("GroupCommit.execute called inside a transaction");
+        Request request = new Request(action);
+        boolean interrupted = false;
+        lock.lock();
+        try {
+            queue.add(request);
+            if ( queue.size() >= maxBatchSize )
+                changed.signalAll();
+            while ( ! request.done ) {
+                if ( leaderActive ) {
+                    changed.awaitUninterruptibly();
+                    continue;
+                }
+                // This thread collects and writes the next batch.
+                leaderActive = true;
+                List<Request> batch;
+                try {
+                    interrupted |= awaitBatch();
+                    int n = Math.min(queue.size(), maxBatchSize);
+                    List<Request> head = queue.subList(0, n);
+                    batch = new ArrayList<>(head);
+                    head.clear();
+                } catch (RuntimeException | Error ex) {
+                    leaderActive = false;
+                    changed.signalAll();
+                    throw ex;
+                }
+                lock.unlock();
+                try {
+                    runBatch(batch);
+                } finally {
+                    lock.lock();
+                    batch.forEach(r -> r.done = true);
+                    leaderActive = false;
+                    changed.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+            if ( interrupted )
+                Thread.currentThread().interrupt();
+        }
+        if ( request.error != null )
+            throw request.error;
+        if ( request.failure != null )
+            throw request.failure;
+    }
+
+    // Called holding the lock. Wait until the batch is full or the window has passed.
+    // An interrupt ends the wait; the interrupt status is kept clear while the
+    // batch runs (the transaction coordinator aborts on interrupt) and is
+    // restored when the caller returns.
+    private boolean awaitBatch() {
+        long remaining = windowNanos;
+        while ( queue.size() < maxBatchSize && remaining > 0 ) {
+            try {
+                remaining = changed.awaitNanos(remaining);
+            } catch (InterruptedException ex) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void runBatch(List<Request> batch) {
+        try {
+            transactional.executeWrite(()->batch.forEach(r -> r.action.run()));
+            countBatches.incrementAndGet();
+            countActions.addAndGet(batch.size());
+            largestBatch.accumulateAndGet(batch.size(), Math::max);
+        } catch (RuntimeException ex) {
+            failed(batch, ex, null);
+        } catch (Error err) {
+            failed(batch, null, err);
+        }
+    }
+
+    private void failed(List<Request> batch, RuntimeException ex, Error err) {
+        if ( batch.size() == 1 ) {
+            Request r = batch.get(0);
+            r.failure = ex;
+            r.error = err;
+            countFailed.incrementAndGet();
+            return;
+        }
+        // Find the failing action by running each one on its own.
+        countBatchRetries.incrementAndGet();
+        for ( Request r : batch )
+            runBatch(List.of(r));
+    }
+
+    /** Maximum number of actions in one commit. */
+    public int getMaxBatchSize()        { return maxBatchSize; }
+
+    /** Time to wait for more actions before committing, in milliseconds. */
+    public long getWindowMillis()       { return TimeUnit.NANOSECONDS.toMillis(windowNanos); }
+
+    /** Number of write transactions committed (one per batch). */
+    public long countBatches()          { return countBatches.get(); }
+
+    /** Number of actions committed. */
+    public long countActions()          { return countActions.get(); }
+
+    /** Number of actions that failed and were not committed. */
+    public long countFailed()           { return countFailed.get(); }
+
+    /** Number of batches that were aborted and rerun one action at a time. */
+    public long countBatchRetries()     { return countBatchRetries.get(); }
+
+    /** Size of the largest batch committed. */
+    public long largestBatch()          { return largestBatch.get(); }
+
+    /** Average number of actions per commit. */
+    public double averageBatchSize() {
+        long b = countBatches.get();
+        return b == 0 ? 0 : (double)countActions.get() / b;
+    }
+}
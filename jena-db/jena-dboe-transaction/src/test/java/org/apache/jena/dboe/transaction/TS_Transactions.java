@@ -34,6 +34,7 @@ import org.junit.platform.suite.api.Suite;
     , TestTxnLib2.class
     , TestThreadingTransactions.class
     , TestTxnSwitching.class
+    , TestGroupCommit.class
 
 })
 public class TS_Transactions {
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.dboe.transaction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.apache.jena.dboe.base.file.Location;
+import org.apache.jena.dboe.transaction.txn.TransactionCoordinator;
+import org.apache.jena.dboe.transaction.txn.TransactionException;
+import org.apache.jena.system.Txn;
+
+public class TestGroupCommit {
+    private final long InitValue = 0;
+    private TransactionalInteger integer;
+
+    @BeforeEach public void setup() {
+        TransactionCoordinator coord = TransactionCoordinator.create(Location.mem());
+        integer = new TransactionalInteger(coord, InitValue);
+        coord.start();
+    }
+
+    @AfterEach public void clearup() {
+        integer.shutdown();
+    }
+
+    @Test public void groupCommit_1() {
+        GroupCommit groupCommit = GroupCommit.create(integer, 10, 0, TimeUnit.MILLISECONDS);
+        groupCommit.execute(integer::inc);
+        groupCommit.execute(integer::inc);
+        assertEquals(InitValue+2, Txn.calculateRead(integer, integer::get));
+        assertEquals(2, groupCommit.countBatches());
+        assertEquals(2, groupCommit.countActions());
+        assertEquals(1, groupCommit.largestBatch());
+    }
+
+    @Test public void groupCommit_failure() {
+        GroupCommit groupCommit = GroupCommit.create(integer);
+        groupCommit.execute(integer::inc);
+        assertThrows(IllegalStateException.class,
+                     ()->groupCommit.execute(()->{ integer.inc(); throw new IllegalStateException(); }));
+        assertEquals(InitValue+1, Txn.calculateRead(integer, integer::get));
+        assertEquals(1, groupCommit.countFailed());
+    }
+
+    @Test public void groupCommit_inTransaction() {
+        GroupCommit groupCommit = GroupCommit.create(integer);
+        Txn.executeWrite(integer, ()->
+            assertThrows(TransactionException.class, ()->groupCommit.execute(integer::inc))
+        );
+    }
+
+    @Test public void groupCommit_concurrent() throws Exception {
+        int threads = 8;
+        int perThread = 25;
+        // Long window, batch full when every thread is waiting.
+        GroupCommit groupCommit = GroupCommit.create(integer, threads, 1, TimeUnit.SECONDS);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch startLine = new CountDownLatch(threads);
+            List<Future<?>> results = new ArrayList<>();
+            for ( int i = 0 ; i < threads ; i++ ) {
+                results.add(executor.submit(()->{
+                    startLine.countDown();
+                    startLine.await();
+                    for ( int j = 0 ; j < perThread ; j++ )
+                        groupCommit.execute(integer::inc);
+                    return null;
+                }));
+            }
+            for ( Future<?> f : results )
+                f.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        long total = threads*perThread;
+        assertEquals(InitValue+total, Txn.calculateRead(integer, integer::get));
+        assertEquals(total, groupCommit.countActions());
+        assertTrue(groupCommit.countBatches() < total, "No batching: "+groupCommit.countBatches());
+        assertTrue(groupCommit.largestBatch() > 1);
+    }
+
+    @Test public void groupCommit_concurrentFailure() throws Exception {
+        int threads = 4;
+        GroupCommit groupCommit = GroupCommit.create(integer, threads, 1, TimeUnit.SECONDS);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<>();
+        try {
+            CountDownLatch startLine = new CountDownLatch(threads);
+            for ( int i = 0 ; i < threads ; i++ ) {
+                boolean bad = ( i == 0 );
+                results.add(executor.submit(()->{
+                    startLine.countDown();
+                    startLine.await();
+                    groupCommit.execute(()->{
+                        integer.inc();
+                        if ( bad )
+                            throw new IllegalStateException();
+                    });
+                    return null;
+                }));
+            }
+            int failures = 0;
+            for ( Future<?> f : results ) {
+                try { f.get(60, TimeUnit.SECONDS); }
+                catch (ExecutionException ex) {
+                    assertTrue(ex.getCause() instanceof IllegalStateException);
+                    failures++;
+                }
+            }
+            assertEquals(1, failures);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(InitValue+threads-1, Txn.calculateRead(integer, integer::get));
+        assertEquals(threads-1, groupCommit.countActions());
+        assertEquals(1, groupCommit.countFailed());
+    }
+}
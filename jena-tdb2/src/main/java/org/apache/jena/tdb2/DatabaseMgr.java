@@ -22,6 +22,7 @@ import org.apache.jena.dboe.base.file.Location;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.tdb2.params.StoreParams;
+import org.apache.jena.tdb2.store.DatasetGraphMultiWriter;
 import org.apache.jena.tdb2.store.DatasetGraphSwitchable;
 import org.apache.jena.tdb2.store.DatasetGraphTDB;
 import org.apache.jena.tdb2.sys.DatabaseConnection;
@@ -92,6 +93,21 @@ public class DatabaseMgr {
         DatabaseOps.compact(dsg, shouldDeleteOld);
     }
 
+    /**
+     * Compact a dataset which must be a switchable TDB database, allowing writers to
+     * continue during the copy. Writers are held up only while the final changes are
+     * applied to the compacted database and it becomes the active database.
+     *
+     * Deletes old database after successful compaction if {@code shouldDeleteOld} is {@code true}.
+     *
+     * @param container
+     * @param shouldDeleteOld
+     */
+    public static void compactOnline(DatasetGraph container, boolean shouldDeleteOld) {
+        DatasetGraphSwitchable dsg = requireSwitchable(container);
+        DatabaseOps.compactOnline(dsg, shouldDeleteOld);
+    }
+
     /**
      * Create a backup for a switchable TDB database. This is the normal dataset type for
      * on-disk TDB2 databases.
@@ -109,6 +125,18 @@ public class DatabaseMgr {
         return DatabaseOps.backup(dsg);
     }
 
+    /**
+     * Return a {@code DatasetGraph} over a TDB2 database in which write transactions
+     * that touch different graphs can run, and commit, at the same time.
+     * Conflicting transactions are detected at commit and aborted.
+     * See {@link DatasetGraphMultiWriter}.
+     */
+    public static DatasetGraph multiWriter(DatasetGraph datasetGraph) {
+        if ( ! isTDB2(datasetGraph) )
+            throw new TDBException("Not a TDB database");
+        return new DatasetGraphMultiWriter(datasetGraph);
+    }
+
     /** Create an in-memory TDB2-backed dataset (for testing) */
     public static DatasetGraph createDatasetGraph() {
         return connectDatasetGraph(Location.mem());
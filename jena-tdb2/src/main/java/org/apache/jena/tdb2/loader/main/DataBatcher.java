@@ -21,6 +21,7 @@ package org.apache.jena.tdb2.loader.main;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 
 import org.apache.jena.graph.Triple;
 import org.apache.jena.riot.lang.StreamRDFCounting;
@@ -43,6 +44,10 @@ public class DataBatcher implements StreamRDFCounting, BulkStartFinish {
     private final MonitorOutput output;
     private final PrefixHandler prefixHandler;
     private Consumer<DataBlock> batchDestination;
+    // Checkpointing.
+    private long checkpointInterval = 0;
+    private LongSupplier checkpointMark = null;
+    private long lastCheckpoint = 0;
 
     public DataBatcher(Consumer<DataBlock> batchDestination,
                        PrefixHandler prefixHandler,
@@ -57,6 +62,15 @@ public class DataBatcher implements StreamRDFCounting, BulkStartFinish {
         this.prefixHandler = prefixHandler;
     }
 
+    /**
+     * Send a checkpoint marker after every {@code interval} triples and quads.
+     * {@code mark} is called, on the parser thread, to create the checkpoint and return its id.
+     */
+    public void setCheckpoints(long interval, LongSupplier mark) {
+        this.checkpointInterval = interval;
+        this.checkpointMark = mark;
+    }
+
     @Override
     public void startBulk() {}
 
@@ -93,6 +107,7 @@ public class DataBatcher implements StreamRDFCounting, BulkStartFinish {
         triples.add(triple);
         countTriples++;
         maybeDispatch();
+        maybeCheckpoint();
     }
 
     @Override
@@ -107,6 +122,7 @@ public class DataBatcher implements StreamRDFCounting, BulkStartFinish {
         quads.add(quad);
         countQuads++;
         maybeDispatch();
+        maybeCheckpoint();
     }
 
     private void maybeDispatch() {
@@ -125,6 +141,18 @@ public class DataBatcher implements StreamRDFCounting, BulkStartFinish {
         quads = null;
     }
 
+    private void maybeCheckpoint() {
+        if ( checkpointMark == null || count() - lastCheckpoint < checkpointInterval )
+            return;
+        lastCheckpoint = count();
+        if ( ! isEmpty(triples) || ! isEmpty(quads) )
+            dispatch(new DataBlock(triples, quads));
+        triples = null;
+        quads = null;
+        long id = checkpointMark.getAsLong();
+        dispatch(DataBlock.checkpoint(id));
+    }
+
     private void dispatch(DataBlock datablock) {
         batchDestination.accept(datablock);
     }
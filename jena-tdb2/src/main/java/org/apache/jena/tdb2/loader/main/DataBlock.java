@@ -30,8 +30,17 @@ public class DataBlock {
 
     List<Triple> triples = null;
     List<Quad> quads = null;
+    /** Checkpoint id if this is a checkpoint marker, else -1 */
+    long checkpoint = -1;
     DataBlock( List<Triple> triples, List<Quad> quads) {
         this.triples = triples;
         this.quads = quads;
     }
+
+    /** Checkpoint marker : data sent before this block is committed when the marker is seen. */
+    static DataBlock checkpoint(long id) {
+        DataBlock block = new DataBlock(null, null);
+        block.checkpoint = id;
+        return block;
+    }
 }
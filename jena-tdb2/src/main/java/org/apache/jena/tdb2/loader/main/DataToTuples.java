@@ -40,6 +40,7 @@ import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.tdb2.loader.BulkLoaderException;
 import org.apache.jena.tdb2.loader.base.BulkStartFinish;
 import org.apache.jena.tdb2.loader.base.CoLib;
+import org.apache.jena.tdb2.loader.base.LoaderOps;
 import org.apache.jena.system.progress.MonitorOutput;
 import org.apache.jena.tdb2.store.DatasetGraphTDB;
 import org.apache.jena.tdb2.store.NodeId;
@@ -92,6 +93,12 @@ public class DataToTuples implements BulkStartFinish {
 
     private TransactionCoordinator coordinator;
     private Transaction transaction;
+    private LoaderCheckpoint checkpoints = null;
+
+    /** Take part in checkpoints: commit the node table at each checkpoint marker. */
+    public void setCheckpoints(LoaderCheckpoint checkpoints) {
+        this.checkpoints = checkpoints;
+    }
 
     public Consumer<DataBlock> data() {
         return this::index;
@@ -131,6 +138,10 @@ public class DataToTuples implements BulkStartFinish {
                 DataBlock data = input.take();
                 if ( data == DataBlock.END )
                     break;
+                if ( data.checkpoint >= 0 ) {
+                    checkpoint(data.checkpoint);
+                    continue;
+                }
                 if ( data.triples != null ) {
                     List<Tuple<NodeId>> tuples = new ArrayList<>(data.triples.size());
                     for ( Triple t : data.triples ) {
@@ -160,6 +171,24 @@ public class DataToTuples implements BulkStartFinish {
         termination.release();
     }
 
+    /**
+     * Commit the node table, so the terms of all tuples sent so far are durable,
+     * then pass the checkpoint on to the indexers.
+     */
+    private void checkpoint(long id) {
+        long length = LoaderOps.ntDataFile(nodeTable).length();
+        transaction.commit();
+        transaction.end();
+        transaction = coordinator.begin(TxnType.WRITE);
+        if ( checkpoints != null ) {
+            checkpoints.nodeTableCommitted(id, length);
+            checkpoints.committed(id);
+        }
+        List<Tuple<NodeId>> marker = new LoaderConst.CheckpointTuples(id);
+        dispatchTuples3(marker);
+        dispatchTuples4(marker);
+    }
+
     //@Override
     public long getCountTriples()   { return countTriples; }
     //@Override
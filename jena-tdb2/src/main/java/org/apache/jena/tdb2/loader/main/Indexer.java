@@ -53,6 +53,7 @@ public class Indexer implements BulkStartFinish {
     private final MonitorOutput output;
     private TupleIndex[] indexes;
     private final Semaphore termination = new Semaphore(0);
+    private LoaderCheckpoint checkpoints = null;
 
     @SuppressWarnings("unchecked")
     public Indexer(MonitorOutput output, TupleIndex... idxTriples) {
@@ -66,6 +67,11 @@ public class Indexer implements BulkStartFinish {
         }
     }
 
+    /** Take part in checkpoints: commit each index at each checkpoint marker. */
+    public void setCheckpoints(LoaderCheckpoint checkpoints) {
+        this.checkpoints = checkpoints;
+    }
+
     /** Return a function that delivers multiple {@code List<Tuple<NodeId>>>} to this indexer */
     public Destination<Tuple<NodeId>> index() {
         return this::index;
@@ -111,6 +117,14 @@ public class Indexer implements BulkStartFinish {
             Destination<Tuple<NodeId>> loader = loadTuples(idx);
             for (;;) {
                 List<Tuple<NodeId>> tuples = pipe.take();
+                if ( tuples instanceof LoaderConst.CheckpointTuples marker ) {
+                    transaction.commit();
+                    transaction.end();
+                    transaction = coordinator.begin(TxnType.WRITE);
+                    if ( checkpoints != null )
+                        checkpoints.committed(marker.id);
+                    continue;
+                }
                 if ( tuples.isEmpty() )
                     break;
                 loader.deliver(tuples);
@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.loader.main;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+import org.apache.jena.atlas.io.IO;
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonArray;
+import org.apache.jena.atlas.json.JsonObject;
+import org.apache.jena.atlas.lib.DateTimeUtils;
+import org.apache.jena.dboe.base.file.Location;
+import org.apache.jena.system.progress.MonitorOutput;
+import org.apache.jena.tdb2.loader.BulkLoaderException;
+
+/**
+ * Checkpoint record for {@link LoaderMain}, kept in a file in the storage
+ * directory so that a load that did not finish can be restarted.
+ * <p>
+ * A checkpoint is a point in the input (file number and number of triples and
+ * quads read from that file) at which the node table and all the data phase
+ * indexes have committed. Each data phase component commits on its own
+ * transaction when the checkpoint marker reaches it, and the file is
+ * written when the last one reports. Loading is idempotent (the node table finds
+ * existing terms; indexes are sets) so components that have committed further
+ * than the recorded checkpoint do not matter when the load restarts.
+ * <p>
+ * The record also has the node table data file length at the checkpoint (the
+ * high-water mark), used to check the database is the one the checkpoint was
+ * made for, whether the data phase is complete and which secondary indexes
+ * have been built.
+ * <p>
+ * The length and last-modified time of each input file are recorded so that a
+ * restart is refused if a file has changed since the load started: the
+ * position in the input would not be the same triples and quads.
+ */
+public class LoaderCheckpoint {
+    public static final String FileName = "loader-checkpoint.json";
+
+    // Persistent state.
+    private List<String> files = List.of();
+    private List<FileStamp> fileStamps = List.of();
+    private final String plan;
+    private long triples = 0;
+    private long quads = 0;
+    private int fileIndex = 0;
+    private long fileItems = 0;
+    private long nodeTableLength = 0;
+    private boolean dataPhaseDone = false;
+    private final Set<String> indexesDone = new LinkedHashSet<>();
+
+    // Runtime state.
+    private final Path path;
+    private MonitorOutput output = null;
+    private int participants = 0;
+    private long nextId = 1;
+    private final Map<Long, Pending> pending = new HashMap<>();
+
+    private static class Pending {
+        final int fileIndex;
+        final long fileItems;
+        final long triples;
+        final long quads;
+        long nodeTableLength = -1;
+        int reports = 0;
+        Pending(int fileIndex, long fileItems, long triples, long quads) {
+            this.fileIndex = fileIndex;
+            this.fileItems = fileItems;
+            this.triples = triples;
+            this.quads = quads;
+        }
+    }
+
+    /** Length and last-modified time of an input file; -1 if the file can not be read. */
+    private record FileStamp(long length, long modified) {
+        static FileStamp of(String filename) {
+            Path p = Path.of(filename);
+            try {
+                return new FileStamp(Files.size(p), Files.getLastModifiedTime(p).toMillis());
+            } catch (IOException ex) {
+                return new FileStamp(-1, -1);
+            }
+        }
+    }
+
+    /** The checkpoint file for a storage location, or null for an in-memory location. */
+    public static Path checkpointFile(Location location) {
+        if ( location.isMem() )
+            return null;
+        return Path.of(location.getPath(FileName));
+    }
+
+    /**
+     * Start a new checkpoint record for a loader plan. Nothing is written until
+     * the first checkpoint.
+     */
+    public static LoaderCheckpoint create(Path path, String plan) {
+        return new LoaderCheckpoint(path, List.of(), plan);
+    }
+
+    /** Read a checkpoint record. Returns null if there is no checkpoint file. */
+    public static LoaderCheckpoint read(Path path) {
+        if ( path == null || !Files.exists(path) )
+            return null;
+        try {
+            JsonObject obj = JSON.read(path.toString());
+            List<String> files = new ArrayList<>();
+            obj.getArray("files").forEach(v->files.add(v.getAsString().value()));
+            LoaderCheckpoint checkpoint = new LoaderCheckpoint(path, files, obj.getString("plan"));
+            if ( obj.hasKey("fileLengths") && obj.hasKey("fileModified") ) {
+                List<FileStamp> stamps = new ArrayList<>();
+                JsonArray lengths = obj.get("fileLengths").getAsArray();
+                JsonArray modified = obj.get("fileModified").getAsArray();
+                for ( int i = 0 ; i < lengths.size() ; i++ )
+                    stamps.add(new FileStamp(lengths.get(i).getAsNumber().value().longValue(),
+                                             modified.get(i).getAsNumber().value().longValue()));
+                checkpoint.fileStamps = List.copyOf(stamps);
+            }
+            checkpoint.triples = obj.getNumber("triples").longValue();
+            checkpoint.quads = obj.getNumber("quads").longValue();
+            checkpoint.fileIndex = obj.getNumber("fileIndex").intValue();
+            checkpoint.fileItems = obj.getNumber("fileItems").longValue();
+            checkpoint.nodeTableLength = obj.getNumber("nodeTableLength").longValue();
+            checkpoint.dataPhaseDone = obj.getBoolean("dataPhaseDone");
+            obj.getArray("indexesDone").forEach(v->checkpoint.indexesDone.add(v.getAsString().value()));
+            return checkpoint;
+        } catch (RuntimeException ex) {
+            throw new BulkLoaderException("Bad checkpoint file: "+path, ex);
+        }
+    }
+
+    private LoaderCheckpoint(Path path, List<String> files, String plan) {
+        this.path = path;
+        this.files = files;
+        this.plan = plan;
+    }
+
+    /** Label for a {@link LoaderPlan}: a checkpoint only applies to a load using the same plan. */
+    public static String planLabel(LoaderPlan loaderPlan) {
+        StringJoiner sj = new StringJoiner(" ");
+        sj.add(loaderPlan.dataInputType().name());
+        sj.add(String.join(",", loaderPlan.primaryLoad3()));
+        sj.add(String.join(",", loaderPlan.primaryLoad4()));
+        for ( String[] group : loaderPlan.secondaryIndex3() )
+            sj.add(String.join(",", group));
+        for ( String[] group : loaderPlan.secondaryIndex4() )
+            sj.add(String.join(",", group));
+        return sj.toString();
+    }
+
+    private static List<String> normalize(List<String> files) {
+        List<String> x = new ArrayList<>(files.size());
+        files.forEach(fn->x.add(Path.of(fn).toAbsolutePath().normalize().toString()));
+        return List.copyOf(x);
+    }
+
+    /** Whether this checkpoint was made by a load of the same files with the same plan. */
+    public boolean matches(List<String> files, String plan) {
+        return this.files.equals(normalize(files)) && this.plan.equals(plan);
+    }
+
+    /**
+     * The first of the files of this checkpoint whose length or last-modified time
+     * is not the one recorded, or null if none has changed.
+     */
+    public String changedFile() {
+        for ( int i = 0 ; i < files.size() ; i++ ) {
+            String fn = files.get(i);
+            if ( i >= fileStamps.size() || ! fileStamps.get(i).equals(FileStamp.of(fn)) )
+                return fn;
+        }
+        return null;
+    }
+
+    public List<String> getFiles()          { return files; }
+    public String getPlan()                 { return plan; }
+    /** Triples read from all the files up to the checkpoint. */
+    public long getTriples()                { return triples; }
+    /** Quads read from all the files up to the checkpoint. */
+    public long getQuads()                  { return quads; }
+    /** The input file, as an index into the list of files, where the load will restart. */
+    public int getFileIndex()               { return fileIndex; }
+    /** Triples and quads read from the restart file up to the checkpoint. */
+    public long getFileItems()              { return fileItems; }
+    /** Length of the node table data file at the checkpoint. */
+    public long getNodeTableLength()        { return nodeTableLength; }
+    public boolean isDataPhaseDone()        { return dataPhaseDone; }
+    public Set<String> getIndexesDone()     { return Collections.unmodifiableSet(indexesDone); }
+
+    /*package*/ void setOutput(MonitorOutput output) {
+        this.output = output;
+    }
+
+    /** Set the files of the load being recorded. */
+    public synchronized void setFiles(List<String> files) {
+        this.files = normalize(files);
+        List<FileStamp> stamps = new ArrayList<>(this.files.size());
+        this.files.forEach(fn->stamps.add(FileStamp.of(fn)));
+        this.fileStamps = List.copyOf(stamps);
+    }
+
+    /** Continue from an earlier checkpoint of the same load. */
+    /*package*/ synchronized void restart(LoaderCheckpoint previous) {
+        this.files = previous.files;
+        this.fileStamps = previous.fileStamps;
+        this.triples = previous.triples;
+        this.quads = previous.quads;
+        this.fileIndex = previous.fileIndex;
+        this.fileItems = previous.fileItems;
+        this.nodeTableLength = previous.nodeTableLength;
+        this.dataPhaseDone = previous.dataPhaseDone;
+        this.indexesDone.addAll(previous.indexesDone);
+    }
+
+    /**
+     * Set the number of components that must report a checkpoint as committed
+     * before it is recorded.
+     */
+    /*package*/ synchronized void setParticipants(int participants) {
+        this.participants = participants;
+    }
+
+    /** Create a checkpoint at the current input position. Returns the checkpoint id. */
+    /*package*/ synchronized long mark(int fileIndex, long fileItems, long triples, long quads) {
+        long id = nextId++;
+        pending.put(id, new Pending(fileIndex, fileItems, triples, quads));
+        return id;
+    }
+
+    /** Record the node table data file length as committed for a checkpoint. */
+    /*package*/ synchronized void nodeTableCommitted(long id, long length) {
+        Pending p = pending.get(id);
+        if ( p != null )
+            p.nodeTableLength = length;
+    }
+
+    /**
+     * A component has committed all the work before the checkpoint.
+     * When all have done so, the checkpoint is written.
+     */
+    /*package*/ synchronized void committed(long id) {
+        Pending p = pending.get(id);
+        if ( p == null )
+            return;
+        p.reports++;
+        if ( p.reports < participants )
+            return;
+        pending.remove(id);
+        this.fileIndex = p.fileIndex;
+        this.fileItems = p.fileItems;
+        this.triples = p.triples;
+        this.quads = p.quads;
+        if ( p.nodeTableLength >= 0 )
+            this.nodeTableLength = p.nodeTableLength;
+        record();
+        if ( output != null && ! files.isEmpty() )
+            output.print("Checkpoint: %,d triples/quads", triples+quads);
+    }
+
+    /** Record the end of the data phase. */
+    /*package*/ synchronized void dataPhaseDone(long triples, long quads, long nodeTableLength) {
+        this.dataPhaseDone = true;
+        this.triples = triples;
+        this.quads = quads;
+        this.nodeTableLength = nodeTableLength;
+        pending.clear();
+        record();
+    }
+
+    /** Record that secondary indexes have been built and committed. */
+    /*package*/ synchronized void indexesDone(Collection<String> indexNames) {
+        indexesDone.addAll(indexNames);
+        record();
+    }
+
+    // Only a load from files can be restarted.
+    private void record() {
+        if ( ! files.isEmpty() )
+            write();
+    }
+
+    private JsonObject asJson() {
+        return JSON.buildObject(b->{
+            b.pair("written", DateTimeUtils.nowAsXSDDateTimeString());
+            b.key("files").startArray();
+            files.forEach(fn->b.value(fn));
+            b.finishArray();
+            b.key("fileLengths").startArray();
+            fileStamps.forEach(st->b.value(st.length()));
+            b.finishArray();
+            b.key("fileModified").startArray();
+            fileStamps.forEach(st->b.value(st.modified()));
+            b.finishArray();
+            b.pair("plan", plan);
+            b.pair("triples", triples);
+            b.pair("quads", quads);
+            b.pair("fileIndex", fileIndex);
+            b.pair("fileItems", fileItems);
+            b.pair("nodeTableLength", nodeTableLength);
+            b.pair("dataPhaseDone", dataPhaseDone);
+            b.key("indexesDone").startArray();
+            indexesDone.forEach(idx->b.value(idx));
+            b.finishArray();
+        });
+    }
+
+    /** Write the checkpoint file. The file is replaced atomically. */
+    public synchronized void write() {
+        Path tmp = path.resolveSibling(path.getFileName()+".tmp");
+        try {
+            try ( OutputStream out = Files.newOutputStream(tmp) ) {
+                JSON.write(out, asJson());
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            IO.exception(ex);
+        }
+    }
+
+    /** Remove the checkpoint file. */
+    public void delete() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            IO.exception(ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return JSON.toStringFlat(asJson());
+    }
+}
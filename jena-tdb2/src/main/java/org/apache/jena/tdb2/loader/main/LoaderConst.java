@@ -18,6 +18,7 @@
 
 package org.apache.jena.tdb2.loader.main;
 
+import java.util.AbstractList;
 import java.util.Collections;
 import java.util.List;
 
@@ -36,6 +37,17 @@ public class LoaderConst {
 
     /* package */ static final List<Tuple<NodeId>> END_TUPLES      = Collections.emptyList();
 
+    /**
+     * Checkpoint marker in a stream of chunks of tuples. It is an empty list so
+     * test for it before testing for the end of the stream.
+     */
+    /* package */ static final class CheckpointTuples extends AbstractList<Tuple<NodeId>> {
+        final long id;
+        CheckpointTuples(long id) { this.id = id; }
+        @Override public Tuple<NodeId> get(int index) { throw new IndexOutOfBoundsException(index); }
+        @Override public int size() { return 0; }
+    }
+
     /*package*/ static final int QueueSizeData = 10;
 
 }
@@ -18,28 +18,39 @@
 
 package org.apache.jena.tdb2.loader.main;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 
 import org.apache.jena.atlas.lib.tuple.Tuple;
 import org.apache.jena.dboe.transaction.txn.Transaction;
 import org.apache.jena.dboe.transaction.txn.TransactionCoordinator;
 import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.ARQ;
 import org.apache.jena.query.TxnType;
 import org.apache.jena.riot.lang.StreamRDFCounting;
 import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWrapper;
 import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.tdb2.loader.BulkLoaderException;
 import org.apache.jena.tdb2.loader.DataLoader;
 import org.apache.jena.tdb2.loader.base.*;
 import org.apache.jena.system.progress.MonitorOutput;
 import org.apache.jena.system.progress.ProgressMonitor;
 import org.apache.jena.system.progress.ProgressMonitorOutput;
+import org.apache.jena.system.Txn;
 import org.apache.jena.tdb2.store.DatasetGraphTDB;
 import org.apache.jena.tdb2.store.NodeId;
 import org.apache.jena.tdb2.store.StoragePrefixesTDB;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
 import org.apache.jena.tdb2.store.tupletable.TupleIndex;
+import org.apache.jena.tdb2.sys.SystemTDB;
 import org.apache.jena.tdb2.sys.TDBInternal;
 
 /**
@@ -92,6 +103,17 @@ import org.apache.jena.tdb2.sys.TDBInternal;
  * Additional indexes are built in a number of later phases. Each phase copies the primary index for triples
  * to other indexes in controllable groups.  This happens for triples and for quads. See {@code executeSecondary}.
  * </p>
+ * <p><b>Checkpoints</b></p>
+ * <p>
+ * If {@link SystemTDB#symLoaderCheckpoint} is set in the dataset or global context to a
+ * number of triples/quads, a load from files records progress in a {@link LoaderCheckpoint}
+ * file in the database storage directory. For {@link InputStage#MULTI}, a checkpoint
+ * marker flows through the data phase pipeline every interval and each component commits
+ * its work on seeing it. The end of the data phase and each group of secondary
+ * indexes are also recorded. If the same files are loaded with the same plan after a
+ * load did not finish, loading restarts from the last checkpoint. The file is removed
+ * when the load finishes.
+ * </p>
  * @see LoaderPlans
  */
 public class LoaderMain extends LoaderBase implements DataLoader {
@@ -109,6 +131,16 @@ public class LoaderMain extends LoaderBase implements DataLoader {
     private final StreamRDFCounting dataInput;
     private final List<BulkStartFinish> dataProcess = new ArrayList<>();
 
+    // Checkpointing : null for no checkpoints.
+    private final LoaderCheckpoint checkpoint;
+    // The checkpoint this load restarts from, if any.
+    private LoaderCheckpoint restart = null;
+    // A restart was refused: keep the checkpoint file.
+    private boolean keepCheckpoint = false;
+    // Parser thread: position in the list of files.
+    private int fileIndex = -1;
+    private long fileOffsetBase = 0;
+
     public LoaderMain(LoaderPlan loaderPlan, DatasetGraph dsg, MonitorOutput output) {
         this(loaderPlan, dsg, null, output);
     }
@@ -118,10 +150,18 @@ public class LoaderMain extends LoaderBase implements DataLoader {
         this.loaderPlan = loaderPlan;
         dsgtdb = TDBInternal.getDatasetGraphTDB(dsg);
         indexMap = PhasedOps.indexMap(dsgtdb);
+        long checkpointInterval = checkpointInterval(dsg);
+        Path checkpointFile = LoaderCheckpoint.checkpointFile(dsgtdb.getLocation());
+        if ( checkpointInterval > 0 && checkpointFile != null ) {
+            checkpoint = LoaderCheckpoint.create(checkpointFile, LoaderCheckpoint.planLabel(loaderPlan));
+            checkpoint.setOutput(output);
+        } else
+            checkpoint = null;
         // Phase 1.
         switch ( loaderPlan.dataInputType() ) {
             case MULTI :
-                dataInput = executeData(loaderPlan, dsgtdb, indexMap, dataProcess, output);
+                dataInput = executeData(loaderPlan, dsgtdb, indexMap, dataProcess, output,
+                                        checkpoint, checkpointInterval, this::markCheckpoint);
                 break;
             case PARSE_NODE :
                 dataInput = executeDataParseId(loaderPlan, dsgtdb, indexMap, dataProcess, output);
@@ -141,7 +181,8 @@ public class LoaderMain extends LoaderBase implements DataLoader {
      *
      * Used by {@link InputStage#MULTI}.
      */
-    private static StreamRDFCounting executeData(LoaderPlan loaderPlan, DatasetGraphTDB dsgtdb, Map<String, TupleIndex> indexMap, List<BulkStartFinish> dataProcess, MonitorOutput output) {
+    private static StreamRDFCounting executeData(LoaderPlan loaderPlan, DatasetGraphTDB dsgtdb, Map<String, TupleIndex> indexMap, List<BulkStartFinish> dataProcess, MonitorOutput output,
+                                                 LoaderCheckpoint checkpoint, long checkpointInterval, LongSupplier checkpointMark) {
         StoragePrefixesTDB dps = (StoragePrefixesTDB)dsgtdb.getStoragePrefixes();
         PrefixHandlerBulk prefixHandler = new PrefixHandlerBulk(dps, output);
         dataProcess.add(prefixHandler);
@@ -167,6 +208,18 @@ public class LoaderMain extends LoaderBase implements DataLoader {
         DataToTuples dtt = new DataToTuples(dsgtdb, functionIndexer3, functionIndexer4, output);
         DataBatcher dataBatcher = new DataBatcher(dtt.data(), prefixHandler.handler(), output);
 
+        if ( checkpoint != null ) {
+            // The node table and each index commit at a checkpoint.
+            checkpoint.setParticipants(1 + idx3.length + idx4.length);
+            dtt.setCheckpoints(checkpoint);
+            indexer3.setCheckpoints(checkpoint);
+            indexer4.setCheckpoints(checkpoint);
+            dataBatcher.setCheckpoints(checkpointInterval, ()->{
+                prefixHandler.checkpoint();
+                return checkpointMark.getAsLong();
+            });
+        }
+
         dataProcess.add(dtt);
         dataProcess.add(dataBatcher);
         return dataBatcher;
@@ -227,11 +280,127 @@ public class LoaderMain extends LoaderBase implements DataLoader {
         return dataToTuples;
     }
 
+    private static long checkpointInterval(DatasetGraph dsg) {
+        long dft = ARQ.getContext().getLong(SystemTDB.symLoaderCheckpoint, 0);
+        if ( dsg.getContext() == null )
+            return dft;
+        return dsg.getContext().getLong(SystemTDB.symLoaderCheckpoint, dft);
+    }
+
+    /** Called on the parser thread. */
+    private long markCheckpoint() {
+        long triples = dataInput.countTriples();
+        long quads = dataInput.countQuads();
+        long fileItems = triples + quads + fileOffsetBase;
+        if ( restart != null ) {
+            triples += restart.getTriples();
+            quads += restart.getQuads();
+        }
+        return checkpoint.mark(fileIndex, fileItems, triples, quads);
+    }
+
     @Override
     public StreamRDF stream() {
         return stream;
     }
 
+    @Override
+    public void load(List<String> filenames) {
+        if ( checkpoint != null && fileIndex >= 0 ) {
+            // A second call of load: the input position can not be described
+            // by one list of files. Only the phases are recorded.
+            checkpoint.setFiles(List.of());
+        } else if ( checkpoint != null && ! filenames.contains("-") ) {
+            LoaderCheckpoint previous = LoaderCheckpoint.read(LoaderCheckpoint.checkpointFile(dsgtdb.getLocation()));
+            String plan = checkpoint.getPlan();
+            if ( previous != null && previous.matches(filenames, plan) ) {
+                String changed = previous.changedFile();
+                long length = nodeTableLength(nodeTable());
+                if ( changed != null || length < previous.getNodeTableLength() ) {
+                    // Do not restart, and leave the checkpoint file in place.
+                    keepCheckpoint = true;
+                    if ( changed != null )
+                        throw new BulkLoaderException("Input file has changed since the checkpoint: "+changed
+                                                      +" (remove "+LoaderCheckpoint.FileName+" to load from the start)");
+                    throw new BulkLoaderException("Checkpoint does not match the database: node table length "
+                                                  +length+" < "+previous.getNodeTableLength());
+                }
+                output.print("Restart from checkpoint: %,d triples/quads", previous.getTriples()+previous.getQuads());
+                restart = previous;
+                checkpoint.restart(previous);
+            } else {
+                if ( previous != null )
+                    output.print("Checkpoint file is for a different load: ignored");
+                checkpoint.setFiles(filenames);
+            }
+        }
+        super.load(filenames);
+    }
+
+    @Override
+    protected void loadOne(String filename, ProgressMonitor monitor) {
+        fileIndex++;
+        long skip = 0;
+        if ( restart != null ) {
+            if ( restart.isDataPhaseDone() || fileIndex < restart.getFileIndex() ) {
+                output.print("Skip %s : loaded before the checkpoint", filename);
+                return;
+            }
+            if ( fileIndex == restart.getFileIndex() )
+                skip = restart.getFileItems();
+        }
+        fileOffsetBase = skip - dataInput.count();
+        StreamRDF dest = ( skip > 0 ) ? new StreamRDFSkip(stream, skip) : stream;
+        String label = LoaderOps.label(filename);
+        monitor.setLabel(label);
+        LoaderOps.inputFile(dest, filename, monitor);
+    }
+
+    /** Drop the first N triples and quads: they were loaded before the checkpoint. */
+    private static class StreamRDFSkip extends StreamRDFWrapper {
+        private long skip;
+
+        StreamRDFSkip(StreamRDF other, long skip) {
+            super(other);
+            this.skip = skip;
+        }
+
+        @Override
+        public void triple(Triple triple) {
+            if ( skip > 0 ) {
+                skip--;
+                return;
+            }
+            super.triple(triple);
+        }
+
+        @Override
+        public void quad(Quad quad) {
+            if ( skip > 0 ) {
+                skip--;
+                return;
+            }
+            super.quad(quad);
+        }
+    }
+
+    private NodeTable nodeTable() {
+        return dsgtdb.getTripleTable().getNodeTupleTable().getNodeTable();
+    }
+
+    /** Committed length of the node table data file. */
+    private static long nodeTableLength(NodeTable nodeTable) {
+        TransactionCoordinator coordinator = CoLib.newCoordinator();
+        CoLib.add(coordinator, nodeTable);
+        CoLib.start(coordinator);
+        Transaction transaction = coordinator.begin(TxnType.READ);
+        try {
+            return LoaderOps.ntDataFile(nodeTable).length();
+        } finally {
+            transaction.end();
+        }
+    }
+
     @Override
     public boolean bulkUseTransaction() {
         // Manipulate the transactions directly by component.
@@ -251,23 +420,55 @@ public class LoaderMain extends LoaderBase implements DataLoader {
     public void finishBulk() {
         // Close off the data pipeline
         BulkProcesses.finish(dataProcess);
+        if ( checkpoint != null && ! checkpoint.isDataPhaseDone() )
+            checkpoint.dataPhaseDone(countTriples(), countQuads(), nodeTableLength(nodeTable()));
 
         boolean doTriples = countTriples() != 0;
         boolean doQuads = countQuads() != 0;
 
         if ( doTriples ) {
             TupleIndex srcIdx3 = PhasedOps.findInIndexMap(loaderPlan.primaryLoad3()[0], indexMap);
-            TupleIndex[][] indexSets3 = PhasedOps.indexSetsFromNames(loaderPlan.secondaryIndex3(), indexMap);
+            TupleIndex[][] indexSets3 = remaining(PhasedOps.indexSetsFromNames(loaderPlan.secondaryIndex3(), indexMap));
             executeSecondary(srcIdx3, indexSets3, dsgtdb, output);
+            recordIndexes(indexSets3);
         }
 
         if ( doQuads ) {
             TupleIndex srcIdx4 = PhasedOps.findInIndexMap(loaderPlan.primaryLoad4()[0], indexMap);
-            TupleIndex[][] indexSets4 = PhasedOps.indexSetsFromNames(loaderPlan.secondaryIndex4(), indexMap);
+            TupleIndex[][] indexSets4 = remaining(PhasedOps.indexSetsFromNames(loaderPlan.secondaryIndex4(), indexMap));
             executeSecondary(srcIdx4, indexSets4, dsgtdb, output);
+            recordIndexes(indexSets4);
         }
         super.finishBulk();
         dsgtdb.getTxnSystem().getTxnMgr().finishExclusiveMode();
+        // The indexes were written outside the database transactions.
+        if ( dsgtdb.getLiveStats() != null )
+            Txn.executeWrite(dsgtdb, dsgtdb.getLiveStats()::rebuildOnCommit);
+        if ( checkpoint != null && ! keepCheckpoint )
+            checkpoint.delete();
+    }
+
+    /** Remove indexes already built according to the checkpoint. */
+    private TupleIndex[][] remaining(TupleIndex[][] indexSets) {
+        if ( checkpoint == null || checkpoint.getIndexesDone().isEmpty() )
+            return indexSets;
+        TupleIndex[][] x = new TupleIndex[indexSets.length][];
+        for ( int i = 0 ; i < indexSets.length ; i++ )
+            x[i] = Arrays.stream(indexSets[i])
+                         .filter(idx->!checkpoint.getIndexesDone().contains(idx.getName()))
+                         .toArray(TupleIndex[]::new);
+        return x;
+    }
+
+    private void recordIndexes(TupleIndex[][] indexSets) {
+        if ( checkpoint == null )
+            return;
+        List<String> names = new ArrayList<>();
+        for ( TupleIndex[] indexes : indexSets )
+            for ( TupleIndex idx : indexes )
+                names.add(idx.getName());
+        if ( !names.isEmpty() )
+            checkpoint.indexesDone(names);
     }
 
     /** Execute secondary index building of a {@link LoaderPlan} */
@@ -323,14 +524,18 @@ public class LoaderMain extends LoaderBase implements DataLoader {
         }
     }
 
+    /** Triples loaded, including those loaded before a restart checkpoint. */
     @Override
     public long countTriples() {
-        return dataInput.countTriples();
+        long x = dataInput.countTriples();
+        return ( restart == null ) ? x : x + restart.getTriples();
     }
 
+    /** Quads loaded, including those loaded before a restart checkpoint. */
     @Override
     public long countQuads() {
-        return dataInput.countQuads();
+        long x = dataInput.countQuads();
+        return ( restart == null ) ? x : x + restart.getQuads();
     }
 
     @Override
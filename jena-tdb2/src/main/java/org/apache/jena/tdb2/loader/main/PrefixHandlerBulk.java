@@ -65,6 +65,13 @@ public class PrefixHandlerBulk implements BulkStartFinish {
         // Do not coordinator.shutdown() - that will close/shut the components.
     }
 
+    /** Commit the prefixes so far and continue in a new transaction. */
+    public void checkpoint() {
+        transaction.commit();
+        transaction.end();
+        transaction = coordinator.begin(TxnType.WRITE);
+    }
+
     public PrefixHandler handler() {
         return (prefix, uriStr) -> {
             Node p = NodeFactory.createLiteralString(prefix);
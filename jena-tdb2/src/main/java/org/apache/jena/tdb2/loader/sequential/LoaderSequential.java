@@ -93,6 +93,9 @@ public class LoaderSequential extends LoaderBase {
     public void finishBulk() {
         triplesLoader.loadDataFinish();
         quadsLoader.loadDataFinish();
+        // The indexes were written directly.
+        if ( dsgtdb.getLiveStats() != null )
+            dsgtdb.getLiveStats().rebuildOnCommit();
         super.finishBulk();
         //dsgtdb.getTxnSystem().getTxnMgr().finishExclusiveMode();
     }
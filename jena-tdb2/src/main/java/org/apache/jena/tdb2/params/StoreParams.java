@@ -57,6 +57,11 @@ public class StoreParams implements IndexParams, BlockParams, StoreParamsDynamic
     /*package*/ final Item<Integer>            prefixNodeId2NodeCacheSize;
     /*package*/ final Item<Integer>            prefixNodeMissCacheSize;
     /*package*/ final Item<Double>             nodeCacheInitialCapacityFactor;
+    /*package*/ final Item<Integer>            nodeCacheShards;
+    /*package*/ final Item<Integer>            nodeCacheOffHeapSizeMB;
+    /*package*/ final Item<Boolean>            indexCompression;
+    /*package*/ final Item<Boolean>            indexBloomFilter;
+    /*package*/ final Item<Boolean>            liveStats;
 
     /*
      * These are items affect database layout and
@@ -67,6 +72,8 @@ public class StoreParams implements IndexParams, BlockParams, StoreParamsDynamic
      */
     /*package*/ final Item<Integer>            blockSize;
 
+    /*package*/ final Item<Boolean>            inlineStrings;
+
     /*package*/ final Item<String>             nodeTableBaseName;
 
     /*package*/ final Item<String>             primaryIndexTriples;
@@ -114,7 +121,13 @@ public class StoreParams implements IndexParams, BlockParams, StoreParamsDynamic
                             Item<Integer> prefixNodeMissCacheSize,
 
                             Item<Double> nodeCacheInitialCapacityFactor,
+                            Item<Integer> nodeCacheShards,
+                            Item<Integer> nodeCacheOffHeapSizeMB,
+                            Item<Boolean> indexCompression,
+                            Item<Boolean> indexBloomFilter,
+                            Item<Boolean> liveStats,
 
+                            Item<Boolean> inlineStrings,
                             Item<String> nodeTableBaseName,
                             Item<String> primaryIndexTriples, Item<String[]> tripleIndexes,
                             Item<String> primaryIndexQuads, Item<String[]> quadIndexes,
@@ -136,7 +149,13 @@ public class StoreParams implements IndexParams, BlockParams, StoreParamsDynamic
         this.prefixNodeMissCacheSize      = prefixNodeMissCacheSize;
 
         this.nodeCacheInitialCapacityFactor = nodeCacheInitialCapacityFactor;
+        this.nodeCacheShards        = nodeCacheShards;
+        this.nodeCacheOffHeapSizeMB = nodeCacheOffHeapSizeMB;
+        this.indexCompression       = indexCompression;
+        this.indexBloomFilter       = indexBloomFilter;
+        this.liveStats              = liveStats;
 
+        this.inlineStrings          = inlineStrings;
         this.nodeTableBaseName      = nodeTableBaseName;
 
         this.primaryIndexTriples    = primaryIndexTriples;
@@ -284,6 +303,71 @@ public class StoreParams implements IndexParams, BlockParams, StoreParamsDynamic
         return nodeCacheInitialCapacityFactor.isSet;
     }
 
+    @Override
+    public Integer getNodeCacheShards() {
+        return nodeCacheShards.value;
+    }
+
+    @Override
+    public boolean isSetNodeCacheShards() {
+        return nodeCacheShards.isSet;
+    }
+
+    @Override
+    public Integer getNodeCacheOffHeapSizeMB() {
+        return nodeCacheOffHeapSizeMB.value;
+    }
+
+    @Override
+    public boolean isSetNodeCacheOffHeapSizeMB() {
+        return nodeCacheOffHeapSizeMB.isSet;
+    }
+
+    @Override
+    public Boolean getIndexBloomFilter() {
+        return indexBloomFilter.value;
+    }
+
+    @Override
+    public boolean isSetIndexBloomFilter() {
+        return indexBloomFilter.isSet;
+    }
+
+    @Override
+    public Boolean getLiveStats() {
+        return liveStats.value;
+    }
+
+    @Override
+    public boolean isSetLiveStats() {
+        return liveStats.isSet;
+    }
+
+    /**
+     * Whether short strings are inlined into NodeIds in this database.
+     * This must match {@link org.apache.jena.tdb2.sys.SystemTDB#enableInlineStrings}.
+     */
+    public boolean getInlineStrings() {
+        return inlineStrings.value;
+    }
+
+    public boolean isSetInlineStrings() {
+        return inlineStrings.isSet;
+    }
+
+    /**
+     * Whether B+Tree records blocks of the triple, quad and prefix indexes are written prefix compressed.
+     * This is fixed when the database is created: an uncompressed page can not take
+     * the records of a compressed page when pages are split or merged.
+     */
+    public boolean getIndexCompression() {
+        return indexCompression.value;
+    }
+
+    public boolean isSetIndexCompression() {
+        return indexCompression.isSet;
+    }
+
     public String getNodeTableBaseName() {
         return nodeTableBaseName.value;
     }
@@ -343,7 +427,13 @@ public class StoreParams implements IndexParams, BlockParams, StoreParamsDynamic
         fmt(buff, "prefixNodeId2NodeCacheSize", getPrefixNodeId2NodeCacheSize(), prefixNodeId2NodeCacheSize.isSet);
         fmt(buff, "prefixNodeMissCacheSize", getPrefixNodeMissCacheSize(), prefixNodeMissCacheSize.isSet);
         fmt(buff, "nodeCacheInitialCapacityFactor", getNodeCacheInitialCapacityFactor(), nodeCacheInitialCapacityFactor.isSet);
+        fmt(buff, "nodeCacheShards", getNodeCacheShards(), nodeCacheShards.isSet);
+        fmt(buff, "nodeCacheOffHeapSizeMB", getNodeCacheOffHeapSizeMB(), nodeCacheOffHeapSizeMB.isSet);
+        fmt(buff, "indexCompression", getIndexCompression(), indexCompression.isSet);
+        fmt(buff, "indexBloomFilter", getIndexBloomFilter(), indexBloomFilter.isSet);
+        fmt(buff, "liveStats", getLiveStats(), liveStats.isSet);
 
+        fmt(buff, "inlineStrings", getInlineStrings(), inlineStrings.isSet);
         fmt(buff, "nodeTableBaseName", getNodeTableBaseName(), nodeTableBaseName.isSet);
         fmt(buff, "primaryIndexTriples", getPrimaryIndexTriples(), primaryIndexTriples.isSet);
         fmt(buff, "tripleIndexes", getTripleIndexes(), tripleIndexes.isSet);
@@ -378,6 +468,13 @@ public class StoreParams implements IndexParams, BlockParams, StoreParamsDynamic
         buff.append(String.format("%-20s   %s%s\n", name, dftStr, value));
     }
 
+    private void fmt(StringBuilder buff, String name, boolean value, boolean isSet) {
+        String dftStr = "";
+        if ( ! isSet )
+            dftStr = "dft:";
+        buff.append(String.format("%-20s   %s%s\n", name, dftStr, value));
+    }
+
     private void fmt(StringBuilder buff, String name, double value, boolean isSet) {
         String dftStr = "";
         if ( ! isSet )
@@ -415,6 +512,18 @@ public class StoreParams implements IndexParams, BlockParams, StoreParamsDynamic
             return false;
         if ( !sameValues(params1.nodeCacheInitialCapacityFactor, params2.nodeCacheInitialCapacityFactor) )
             return false;
+        if ( !sameValues(params1.nodeCacheShards, params2.nodeCacheShards) )
+            return false;
+        if ( !sameValues(params1.nodeCacheOffHeapSizeMB, params2.nodeCacheOffHeapSizeMB) )
+            return false;
+        if ( !sameValues(params1.indexCompression, params2.indexCompression) )
+            return false;
+        if ( !sameValues(params1.indexBloomFilter, params2.indexBloomFilter) )
+            return false;
+        if ( !sameValues(params1.liveStats, params2.liveStats) )
+            return false;
+        if ( !sameValues(params1.inlineStrings, params2.inlineStrings) )
+            return false;
         if ( !sameValues(params1.nodeTableBaseName, params2.nodeTableBaseName) )
             return false;
         if ( !sameValues(params1.primaryIndexTriples, params2.primaryIndexTriples) )
@@ -449,10 +558,16 @@ public class StoreParams implements IndexParams, BlockParams, StoreParamsDynamic
         result = prime * result + ((prefixNodeId2NodeCacheSize == null) ? 0 : prefixNodeId2NodeCacheSize.hashCode());
         result = prime * result + ((prefixNodeMissCacheSize == null) ? 0 : prefixNodeMissCacheSize.hashCode());
         result = prime * result + ((nodeCacheInitialCapacityFactor == null) ? 0 : nodeCacheInitialCapacityFactor.hashCode());
+        result = prime * result + ((nodeCacheShards == null) ? 0 : nodeCacheShards.hashCode());
+        result = prime * result + ((nodeCacheOffHeapSizeMB == null) ? 0 : nodeCacheOffHeapSizeMB.hashCode());
+        result = prime * result + ((indexCompression == null) ? 0 : indexCompression.hashCode());
+        result = prime * result + ((indexBloomFilter == null) ? 0 : indexBloomFilter.hashCode());
+        result = prime * result + ((liveStats == null) ? 0 : liveStats.hashCode());
         result = prime * result + ((blockReadCacheSize == null) ? 0 : blockReadCacheSize.hashCode());
         result = prime * result + ((blockSize == null) ? 0 : blockSize.hashCode());
         result = prime * result + ((blockWriteCacheSize == null) ? 0 : blockWriteCacheSize.hashCode());
         result = prime * result + ((fileMode == null) ? 0 : fileMode.hashCode());
+        result = prime * result + ((inlineStrings == null) ? 0 : inlineStrings.hashCode());
         result = prime * result + ((nodeTableBaseName == null) ? 0 : nodeTableBaseName.hashCode());
         result = prime * result + ((prefixTableBaseName == null) ? 0 : prefixTableBaseName.hashCode());
         result = prime * result + ((prefixIndexes == null) ? 0 : prefixIndexes.hashCode());
@@ -508,6 +623,31 @@ public class StoreParams implements IndexParams, BlockParams, StoreParamsDynamic
                 return false;
         } else if ( !nodeCacheInitialCapacityFactor.equals(other.nodeCacheInitialCapacityFactor) )
             return false;
+        if ( nodeCacheShards == null ) {
+            if ( other.nodeCacheShards != null )
+                return false;
+        } else if ( !nodeCacheShards.equals(other.nodeCacheShards) )
+            return false;
+        if ( nodeCacheOffHeapSizeMB == null ) {
+            if ( other.nodeCacheOffHeapSizeMB != null )
+                return false;
+        } else if ( !nodeCacheOffHeapSizeMB.equals(other.nodeCacheOffHeapSizeMB) )
+            return false;
+        if ( indexCompression == null ) {
+            if ( other.indexCompression != null )
+                return false;
+        } else if ( !indexCompression.equals(other.indexCompression) )
+            return false;
+        if ( indexBloomFilter == null ) {
+            if ( other.indexBloomFilter != null )
+                return false;
+        } else if ( !indexBloomFilter.equals(other.indexBloomFilter) )
+            return false;
+        if ( liveStats == null ) {
+            if ( other.liveStats != null )
+                return false;
+        } else if ( !liveStats.equals(other.liveStats) )
+            return false;
         if ( blockReadCacheSize == null ) {
             if ( other.blockReadCacheSize != null )
                 return false;
@@ -528,6 +668,11 @@ public class StoreParams implements IndexParams, BlockParams, StoreParamsDynamic
                 return false;
         } else if ( !fileMode.equals(other.fileMode) )
             return false;
+        if ( inlineStrings == null ) {
+            if ( other.inlineStrings != null )
+                return false;
+        } else if ( !inlineStrings.equals(other.inlineStrings) )
+            return false;
         if ( nodeTableBaseName == null ) {
             if ( other.nodeTableBaseName != null )
                 return false;
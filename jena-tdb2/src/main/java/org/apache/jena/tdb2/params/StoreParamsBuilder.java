@@ -85,10 +85,22 @@ public class StoreParamsBuilder {
 
     private Item<Double>             nodeCacheInitialCapacityFactor = new Item<>(StoreParamsConst.NodeCacheInitialCapacityFactor, false);
 
+    private Item<Integer>            nodeCacheShards       = new Item<>(StoreParamsConst.NodeCacheShards, false);
+
+    private Item<Integer>            nodeCacheOffHeapSizeMB = new Item<>(StoreParamsConst.NodeCacheOffHeapSizeMB, false);
+
+    private Item<Boolean>            indexCompression      = new Item<>(StoreParamsConst.IndexCompression, false);
+
+    private Item<Boolean>            indexBloomFilter      = new Item<>(StoreParamsConst.IndexBloomFilter, false);
+
+    private Item<Boolean>            liveStats             = new Item<>(StoreParamsConst.LiveStats, false);
+
     /** Database layout - ignored after a database is created */
 
     private Item<Integer>            blockSize             = new Item<>(StoreParamsConst.blockSize, false);
 
+    private Item<Boolean>            inlineStrings         = new Item<>(StoreParamsConst.inlineStrings, false);
+
     private Item<String>             nodeTableBaseName     = new Item<>(StoreParamsConst.nodeTableBaseName, false);
 
     private Item<String>             primaryIndexTriples   = new Item<>(StoreParamsConst.primaryIndexTriples, false);
@@ -164,6 +176,18 @@ public class StoreParamsBuilder {
         if ( additionalParams.isSetNodeCacheInitialCapacityFactor() )
             b.nodeCacheInitialCapacityFactor(additionalParams.getNodeCacheInitialCapacityFactor());
 
+        if ( additionalParams.isSetNodeCacheShards() )
+            b.nodeCacheShards(additionalParams.getNodeCacheShards());
+
+        if ( additionalParams.isSetNodeCacheOffHeapSizeMB() )
+            b.nodeCacheOffHeapSizeMB(additionalParams.getNodeCacheOffHeapSizeMB());
+
+        if ( additionalParams.isSetIndexBloomFilter() )
+            b.indexBloomFilter(additionalParams.getIndexBloomFilter());
+
+        if ( additionalParams.isSetLiveStats() )
+            b.liveStats(additionalParams.getLiveStats());
+
         return b.build();
     }
 
@@ -186,7 +210,13 @@ public class StoreParamsBuilder {
         this.prefixNodeMissCacheSize      = other.prefixNodeMissCacheSize;
 
         this.nodeCacheInitialCapacityFactor = other.nodeCacheInitialCapacityFactor;
+        this.nodeCacheShards        = other.nodeCacheShards;
+        this.nodeCacheOffHeapSizeMB = other.nodeCacheOffHeapSizeMB;
+        this.indexCompression       = other.indexCompression;
+        this.indexBloomFilter       = other.indexBloomFilter;
+        this.liveStats              = other.liveStats;
 
+        this.inlineStrings          = other.inlineStrings;
         this.nodeTableBaseName      = other.nodeTableBaseName;
 
         this.primaryIndexTriples    = other.primaryIndexTriples;
@@ -205,7 +235,11 @@ public class StoreParamsBuilder {
                  label, fileMode, blockSize, blockReadCacheSize, blockWriteCacheSize,
                  Node2NodeIdCacheSize, NodeId2NodeCacheSize, NodeMissCacheSize,
                  prefixNode2NodeIdCacheSize, prefixNodeId2NodeCacheSize, prefixNodeMissCacheSize,
-                 nodeCacheInitialCapacityFactor,
+                 nodeCacheInitialCapacityFactor, nodeCacheShards, nodeCacheOffHeapSizeMB,
+                 indexCompression,
+                 indexBloomFilter,
+                 liveStats,
+                 inlineStrings,
                  nodeTableBaseName,
                  primaryIndexTriples, tripleIndexes,
                  primaryIndexQuads, quadIndexes,
@@ -321,6 +355,60 @@ public class StoreParamsBuilder {
         return this;
     }
 
+    public int getNodeCacheShards() {
+        return nodeCacheShards.value;
+    }
+
+    public StoreParamsBuilder nodeCacheShards(int nodeCacheShards) {
+        this.nodeCacheShards = new Item<>(nodeCacheShards, true);
+        return this;
+    }
+
+    public int getNodeCacheOffHeapSizeMB() {
+        return nodeCacheOffHeapSizeMB.value;
+    }
+
+    public StoreParamsBuilder nodeCacheOffHeapSizeMB(int nodeCacheOffHeapSizeMB) {
+        this.nodeCacheOffHeapSizeMB = new Item<>(nodeCacheOffHeapSizeMB, true);
+        return this;
+    }
+
+    public boolean getIndexCompression() {
+        return indexCompression.value;
+    }
+
+    public StoreParamsBuilder indexCompression(boolean indexCompression) {
+        this.indexCompression = new Item<>(indexCompression, true);
+        return this;
+    }
+
+    public boolean getIndexBloomFilter() {
+        return indexBloomFilter.value;
+    }
+
+    public StoreParamsBuilder indexBloomFilter(boolean indexBloomFilter) {
+        this.indexBloomFilter = new Item<>(indexBloomFilter, true);
+        return this;
+    }
+
+    public boolean getLiveStats() {
+        return liveStats.value;
+    }
+
+    public StoreParamsBuilder liveStats(boolean liveStats) {
+        this.liveStats = new Item<>(liveStats, true);
+        return this;
+    }
+
+    public boolean getInlineStrings() {
+        return inlineStrings.value;
+    }
+
+    public StoreParamsBuilder inlineStrings(boolean inlineStrings) {
+        this.inlineStrings = new Item<>(inlineStrings, true);
+        return this;
+    }
+
     public String getNodeTableBaseName() {
         return nodeTableBaseName.value;
     }
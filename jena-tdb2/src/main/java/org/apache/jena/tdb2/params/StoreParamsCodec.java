@@ -98,6 +98,12 @@ public class StoreParamsCodec {
         encode(builder, key(fPrefixNodeId2NodeCacheSize),     params.getPrefixNodeId2NodeCacheSize());
         encode(builder, key(fPrefixNodeMissCacheSize),        params.getPrefixNodeMissCacheSize());
         encode(builder, key(fNodeCacheInitialCapacityFactor), params.getNodeCacheInitialCapacityFactor());
+        encode(builder, key(fNodeCacheShards),                params.getNodeCacheShards());
+        encode(builder, key(fNodeCacheOffHeapSizeMB),         params.getNodeCacheOffHeapSizeMB());
+        encode(builder, key(fIndexCompression),               params.getIndexCompression());
+        encode(builder, key(fIndexBloomFilter),               params.getIndexBloomFilter());
+        encode(builder, key(fLiveStats),                      params.getLiveStats());
+        encode(builder, key(fInlineStrings),                  params.getInlineStrings());
         encode(builder, key(fNodeTableBaseName),              params.getNodeTableBaseName());
         encode(builder, key(fPrimaryIndexTriples),            params.getPrimaryIndexTriples());
         encode(builder, key(fTripleIndexes),                  params.getTripleIndexes());
@@ -145,7 +151,13 @@ public class StoreParamsCodec {
                 case fPrefixNodeId2NodeCacheSize:     builder.prefixNodeId2NodeCacheSize(getInt(json, key));        break ;
                 case fPrefixNodeMissCacheSize:        builder.prefixNodeMissCacheSize(getInt(json, key));           break ;
                 case fNodeCacheInitialCapacityFactor: builder.nodeCacheInitialCapacityFactor(getDouble(json, key)); break ;
+                case fNodeCacheShards:                builder.nodeCacheShards(getInt(json, key));                   break ;
+                case fNodeCacheOffHeapSizeMB:         builder.nodeCacheOffHeapSizeMB(getInt(json, key));            break ;
+                case fIndexCompression:               builder.indexCompression(getBoolean(json, key));              break ;
+                case fIndexBloomFilter:               builder.indexBloomFilter(getBoolean(json, key));              break ;
+                case fLiveStats:                      builder.liveStats(getBoolean(json, key));                     break ;
 
+                case fInlineStrings:                  builder.inlineStrings(getBoolean(json, key));                 break ;
                 case fNodeTableBaseName:              builder.nodeTableBaseName(getString(json, key));              break ;
                 case fPrimaryIndexTriples:            builder.primaryIndexTriples(getString(json, key));            break ;
                 case fTripleIndexes:                  builder.tripleIndexes(getStringArray(json, key));             break ;
@@ -179,6 +191,13 @@ public class StoreParamsCodec {
         return x;
     }
 
+    private static Boolean getBoolean(JsonObject json, String key) {
+        if ( ! json.hasKey(key) )
+            throw new TDBException("StoreParamsCodec.getBoolean: no such key: "+key);
+        Boolean x = json.get(key).getAsBoolean().value();
+        return x;
+    }
+
     private static Double getDouble(JsonObject json, String key) {
         if ( ! json.hasKey(key) )
             throw new TDBException("StoreParamsCodec.getDouble: no such key: "+key);
@@ -212,6 +231,10 @@ public class StoreParamsCodec {
             builder.key(name).value(str);
             return;
         }
+        if ( value instanceof Boolean bool ) {
+            builder.key(name).value(bool.booleanValue());
+            return;
+        }
         if ( value instanceof String[] strArray ) {
             builder.key(name);
             builder.startArray();
@@ -61,10 +61,29 @@ public class StoreParamsConst {
     public static final String  fNodeCacheInitialCapacityFactor = "node_cache_initial_capacity_factor";
     public static final double  NodeCacheInitialCapacityFactor  = SystemTDB.NodeCacheInitialCapacityFactor;
 
+    public static final String  fNodeCacheShards = "node_cache_shards";
+    public static final int     NodeCacheShards  = SystemTDB.NodeCacheShards;
+
+    public static final String  fNodeCacheOffHeapSizeMB = "node_cache_offheap_size_mb";
+    public static final int     NodeCacheOffHeapSizeMB  = SystemTDB.NodeCacheOffHeapSizeMB;
+
+    public static final String  fIndexCompression = "index_compression";
+    public static final boolean IndexCompression  = false;
+
+    public static final String  fIndexBloomFilter = "index_bloom_filter";
+    public static final boolean IndexBloomFilter  = SystemTDB.IndexBloomFilter;
+
+    public static final String  fLiveStats        = "live_stats";
+    public static final boolean LiveStats         = SystemTDB.LiveStats;
+
     /** Database layout - ignored after a database is created */
     public static final String   fBlockSize            = "block_size";
     public static final int      blockSize             = SystemTDB.BlockSize;
 
+    // Databases without the setting recorded do not inline strings.
+    public static final String   fInlineStrings        = "inline_strings";
+    public static final boolean  inlineStrings         = false;
+
     public static final String   fNodeTableBaseName    = "nodetable";
     public static final String   nodeTableBaseName     = Names.nodeTableBaseName;
 
@@ -77,4 +77,34 @@ public interface StoreParamsDynamic {
      */
     public Double getNodeCacheInitialCapacityFactor();
     public boolean isSetNodeCacheInitialCapacityFactor();
+
+    /**
+     * Number of independent shards for each node cache.
+     * Each shard holds an equal part of the cache size and has its own eviction.
+     * 0 means choose from the number of processors.
+     */
+    public Integer getNodeCacheShards();
+    public boolean isSetNodeCacheShards();
+
+    /**
+     * Size, in megabytes of direct memory, of the off-heap node cache used
+     * behind the on-heap node caches. 0 means no off-heap cache.
+     */
+    public Integer getNodeCacheOffHeapSizeMB();
+    public boolean isSetNodeCacheOffHeapSizeMB();
+
+    /**
+     * Whether the triple, quad and prefix indexes keep a bloom filter of their keys
+     * and key prefixes to answer lookups for tuples that are not in the index
+     * without a B+Tree access.
+     */
+    public Boolean getIndexBloomFilter();
+    public boolean isSetIndexBloomFilter();
+
+    /**
+     * Whether the database keeps statistics, updated by each write transaction,
+     * for the cardinality-based BGP optimizer.
+     */
+    public Boolean getLiveStats();
+    public boolean isSetLiveStats();
 }
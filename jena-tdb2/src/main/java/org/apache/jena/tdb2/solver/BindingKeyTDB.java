@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.NodeIdFactory;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+
+/**
+ * Keys for comparing terms in bindings without turning NodeIds into Nodes.
+ * <p>
+ * The key for a term is its NodeId if the term is in the node table, and the
+ * Node itself if not. A node table maps each term to one NodeId so two terms
+ * are the same term exactly when their keys are equal. A NodeId key is the
+ * 64 bit form of the NodeId ({@link NodeIdFactory#asLong}), which includes the
+ * type, because an inline NodeId and a node table NodeId can have the same
+ * value bits. Inline NodeIds hold the value, not the lexical form, so a Node
+ * that does not come from the database is only given an inline NodeId as key
+ * when it is the term the NodeId decodes to.
+ * <p>
+ * A key of a binding, made with {@link #create}, is the set of (variable, key)
+ * pairs for the named variables of the binding, or for a given list of
+ * variables.
+ */
+public final class BindingKeyTDB
+{
+    /** The key for the term bound to a variable, or null if the variable is not bound. */
+    public static Object nodeKey(Binding binding, Var var, NodeTable nodeTable) {
+        Binding b = binding;
+        for (;;) {
+            if ( b instanceof BindingProjectTDB bp ) {
+                if ( ! bp.projects(var) )
+                    return null;
+                b = bp.getProjected();
+                continue;
+            }
+            if ( b instanceof BindingTDB bTDB && bTDB.getNodeTable() == nodeTable ) {
+                NodeId id = bTDB.getNodeId(var);
+                if ( id != null && ! NodeId.isDoesNotExist(id) )
+                    return idKey(id);
+            }
+            break;
+        }
+        Node n = binding.get(var);
+        if ( n == null )
+            return null;
+        return nodeKey(n, nodeTable);
+    }
+
+    /** The key for a Node. */
+    public static Object nodeKey(Node node, NodeTable nodeTable) {
+        NodeId id = NodeId.inline(node);
+        if ( id != null )
+            // Only if it is exactly this term.
+            return node.equals(NodeId.extract(id)) ? idKey(id) : node;
+        id = nodeTable.getNodeIdForNode(node);
+        if ( id == null || NodeId.isDoesNotExist(id) )
+            return node;
+        return idKey(id);
+    }
+
+    private static Object idKey(NodeId id) {
+        return NodeIdFactory.asLong(id);
+    }
+
+    /** The key for the named variables of a binding. */
+    public static BindingKeyTDB create(Binding binding, NodeTable nodeTable) {
+        List<Var> vars = new ArrayList<>();
+        for ( Iterator<Var> iter = binding.vars() ; iter.hasNext() ; ) {
+            Var v = iter.next();
+            if ( v.isNamedVar() )
+                vars.add(v);
+        }
+        Var[] varArray = vars.toArray(new Var[vars.size()]);
+        if ( varArray.length > 1 )
+            Arrays.sort(varArray, (v1, v2) -> v1.getVarName().compareTo(v2.getVarName()));
+        Object[] keys = new Object[varArray.length];
+        for ( int i = 0 ; i < varArray.length ; i++ )
+            keys[i] = nodeKey(binding, varArray[i], nodeTable);
+        return new BindingKeyTDB(varArray, keys);
+    }
+
+    /**
+     * The key for the given variables of a binding, in the order given.
+     * Unbound variables have key null.
+     */
+    public static BindingKeyTDB create(Binding binding, List<Var> vars, NodeTable nodeTable) {
+        Var[] varArray = vars.toArray(new Var[vars.size()]);
+        Object[] keys = new Object[varArray.length];
+        for ( int i = 0 ; i < varArray.length ; i++ )
+            keys[i] = nodeKey(binding, varArray[i], nodeTable);
+        return new BindingKeyTDB(varArray, keys);
+    }
+
+    private final Var[] vars;
+    private final Object[] keys;
+    private final int hash;
+
+    private BindingKeyTDB(Var[] vars, Object[] keys) {
+        this.vars = vars;
+        this.keys = keys;
+        this.hash = 31 * Arrays.hashCode(vars) + Arrays.hashCode(keys);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if ( this == obj )
+            return true;
+        if ( !(obj instanceof BindingKeyTDB other) )
+            return false;
+        return hash == other.hash && Arrays.equals(vars, other.vars) && Arrays.equals(keys, other.keys);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for ( int i = 0 ; i < vars.length ; i++ ) {
+            if ( i > 0 )
+                sb.append(" ");
+            sb.append(vars[i]).append("=").append(keys[i]);
+        }
+        return sb.toString();
+    }
+}
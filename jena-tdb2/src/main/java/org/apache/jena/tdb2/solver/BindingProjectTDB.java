@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import java.util.Collection;
+
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingProject;
+
+/**
+ * A {@link BindingProject} that gives access to the binding being projected so
+ * that NodeIds can be found without turning them into Nodes.
+ * See {@link BindingKeyTDB}.
+ */
+public class BindingProjectTDB extends BindingProject
+{
+    public BindingProjectTDB(Collection<Var> vars, Binding bind) {
+        super(vars, bind);
+    }
+
+    /** The binding being projected. */
+    public Binding getProjected() {
+        return binding;
+    }
+
+    /** Whether the variable is in the projection. */
+    public boolean projects(Var var) {
+        return accept(var);
+    }
+}
@@ -37,6 +37,9 @@ public class BindingTDB extends BindingBase
 {
     private final NodeTable nodeTable;
     private final BindingNodeId idBinding;
+    // Optional: the block of bindings this binding was converted with.
+    private final BindingTDBBatch batch;
+    private final int batchIndex;
 
     private static final boolean caching = false;
     // Whether the cache is worthwhile is unclear - the NodeTable keeps a cache.
@@ -48,6 +51,18 @@ public class BindingTDB extends BindingBase
         super(idBinding.getParentBinding());
         this.idBinding = idBinding;
         this.nodeTable = nodeTable;
+        this.batch = null;
+        this.batchIndex = -1;
+    }
+
+    /** Binding that resolves its NodeIds as part of a block of bindings. */
+    BindingTDB(BindingNodeId idBinding, NodeTable nodeTable, BindingTDBBatch batch, int batchIndex)
+    {
+        super(idBinding.getParentBinding());
+        this.idBinding = idBinding;
+        this.nodeTable = nodeTable;
+        this.batch = batch;
+        this.batchIndex = batchIndex;
     }
 
     @Override
@@ -95,6 +110,8 @@ public class BindingTDB extends BindingBase
 
     public BindingNodeId getBindingId() { return idBinding; }
 
+    public NodeTable getNodeTable() { return nodeTable; }
+
     public NodeId getNodeId(Var var)
     {
         NodeId id = idBinding.get(var);
@@ -124,7 +141,7 @@ public class BindingTDB extends BindingBase
                 return null;
             if ( NodeId.isDoesNotExist(id) )
                 return null;
-            n = nodeTable.getNodeForNodeId(id);
+            n = ( batch != null ) ? batch.getNode(batchIndex, var) : nodeTable.getNodeForNodeId(id);
             if ( n == null )
                 // But there was to put it in the BindingNodeId.
                 throw new TDBException("No node in NodeTable for NodeId "+id);
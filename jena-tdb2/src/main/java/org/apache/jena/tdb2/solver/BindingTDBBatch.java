@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import java.util.*;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.iterator.IteratorSlotted;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+
+/**
+ * Conversion of {@link BindingNodeId} to {@link Binding} in blocks.
+ * <p>
+ * The bindings of a block share the work of turning NodeIds into Nodes.
+ * The first time a variable is needed from any binding of the block, the
+ * NodeIds for that variable in all the bindings of the block are resolved with
+ * one call of {@link NodeTable#bulkNodeIdToNode}, which reads the node table in
+ * file order. Variables that are never used are not resolved, as with
+ * {@link BindingTDB} on its own.
+ */
+class BindingTDBBatch {
+
+    /** Iterator that reads ahead {@code batchSize} bindings and converts them as a block. */
+    static Iterator<Binding> convertToNodes(Iterator<BindingNodeId> iterBindingIds, NodeTable nodeTable, int batchSize) {
+        return new IteratorSlotted<>() {
+            private final Deque<Binding> pending = new ArrayDeque<>(batchSize);
+
+            @Override
+            protected Binding moveToNext() {
+                if ( pending.isEmpty() )
+                    fill();
+                return pending.poll();
+            }
+
+            @Override
+            protected boolean hasMore() {
+                return ! pending.isEmpty() || iterBindingIds.hasNext();
+            }
+
+            @Override
+            protected void closeIterator() {
+                Iter.close(iterBindingIds);
+            }
+
+            private void fill() {
+                List<BindingNodeId> block = new ArrayList<>(batchSize);
+                while ( block.size() < batchSize && iterBindingIds.hasNext() )
+                    block.add(iterBindingIds.next());
+                if ( block.isEmpty() )
+                    return;
+                BindingTDBBatch batch = new BindingTDBBatch(block, nodeTable);
+                for ( int i = 0 ; i < block.size() ; i++ )
+                    pending.add(new BindingTDB(block.get(i), nodeTable, batch, i));
+            }
+        };
+    }
+
+    private final List<BindingNodeId> bindings;
+    private final NodeTable nodeTable;
+    private final Map<Var, Node[]> resolved = new HashMap<>();
+
+    private BindingTDBBatch(List<BindingNodeId> bindings, NodeTable nodeTable) {
+        this.bindings = bindings;
+        this.nodeTable = nodeTable;
+    }
+
+    /** Get the node for variable {@code var} in the binding at {@code index} of the block. */
+    synchronized Node getNode(int index, Var var) {
+        Node[] nodes = resolved.get(var);
+        if ( nodes == null ) {
+            nodes = resolve(var);
+            resolved.put(var, nodes);
+        }
+        return nodes[index];
+    }
+
+    private Node[] resolve(Var var) {
+        int N = bindings.size();
+        Node[] nodes = new Node[N];
+        List<NodeId> ids = new ArrayList<>(N);
+        int[] slots = new int[N];
+        for ( int i = 0 ; i < N ; i++ ) {
+            NodeId id = bindings.get(i).get(var);
+            if ( id == null || NodeId.isDoesNotExist(id) )
+                continue;
+            slots[ids.size()] = i;
+            ids.add(id);
+        }
+        if ( ids.isEmpty() )
+            return nodes;
+        List<Node> found = nodeTable.bulkNodeIdToNode(ids);
+        for ( int j = 0 ; j < ids.size() ; j++ )
+            nodes[slots[j]] = found.get(j);
+        return nodes;
+    }
+}
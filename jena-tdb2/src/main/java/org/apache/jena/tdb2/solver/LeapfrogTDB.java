@@ -0,0 +1,684 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import java.util.*;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.iterator.IteratorSlotted;
+import org.apache.jena.atlas.lib.tuple.Tuple;
+import org.apache.jena.atlas.lib.tuple.TupleFactory;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.NodeIdFactory;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+import org.apache.jena.tdb2.store.nodetupletable.NodeTupleTable;
+import org.apache.jena.tdb2.store.tupletable.TupleIndex;
+import org.apache.jena.tdb2.store.tupletable.TupleIndexRecord;
+
+/**
+ * Leapfrog triejoin of all the triple (or quad) patterns of a cyclic basic graph
+ * pattern.
+ * <p>
+ * Nested loop evaluation of a cyclic pattern, such as a triangle
+ * {@code ?a :knows ?b . ?b :knows ?c . ?c :knows ?a}, can produce far more
+ * intermediate results than there are answers. Leapfrog triejoin is
+ * worst-case optimal: it binds one variable at a time, in a fixed global order,
+ * and finds the values of that variable by intersecting the sorted values from
+ * every pattern that uses it, seeking forward in each scan past values that
+ * cannot match.
+ * <p>
+ * Each pattern is accessed as a trie with one level per variable, in the global
+ * variable order. That needs an index where the constant slots come first,
+ * followed by the variable slots in the variable order. The variable order is
+ * chosen so that as many patterns as possible have such an index; a pattern
+ * without one is read once and sorted in memory, up to a limit on the number of
+ * matches. With the default triple indexes (SPO, POS, OSP), a triangle needs one
+ * pattern sorted in memory; with a PSO index (see {@code StoreParams}), none.
+ */
+class LeapfrogTDB
+{
+    /** Number of entries to step before restarting a scan at a later key. */
+    private static final int StepsBeforeSeek = 16;
+
+    /** Do not search for a variable order when there are more variables than this. */
+    private static final int MaxVars = 7;
+
+    /** A leapfrog triejoin of all the triple patterns of a basic graph pattern. */
+    static class Plan {
+        final BasicPattern pattern;
+        /** The order variables are bound. */
+        final List<Var> varOrder;
+        final List<Relation> relations;
+
+        private Plan(BasicPattern pattern, List<Var> varOrder, List<Relation> relations) {
+            this.pattern = pattern;
+            this.varOrder = varOrder;
+            this.relations = relations;
+        }
+
+        /** The number of patterns that are sorted in memory. */
+        int countSorted() {
+            return (int)relations.stream().filter(r->r.index == null).count();
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner sj = new StringJoiner(", ", "Leapfrog("+varOrder+": ", ")");
+            relations.forEach(r->sj.add((r.index == null ? "sort" : r.index.getName())+" "+r.triple));
+            return sj.toString();
+        }
+    }
+
+    /** A triple pattern and how it is accessed. */
+    static class Relation {
+        final Triple triple;
+        /** The index to scan, or null if the pattern is sorted in memory. */
+        final TupleIndexRecord index;
+        /** The variables of the triple pattern, in variable order. */
+        final Var[] vars;
+
+        private Relation(Triple triple, TupleIndexRecord index, Var[] vars) {
+            this.triple = triple;
+            this.index = index;
+            this.vars = vars;
+        }
+    }
+
+    /**
+     * Find a leapfrog triejoin for a basic graph pattern. Returns null if the
+     * pattern is not cyclic or is not suitable.
+     * The graph node is null for the default graph or a concrete graph name;
+     * other graph nodes (variables, the union graph) are not supported.
+     */
+    static Plan plan(NodeTupleTable nodeTupleTable, Node graphNode, BasicPattern bgp) {
+        if ( bgp.size() < 3 )
+            return null;
+        if ( graphNode != null && ! graphNode.isConcrete() )
+            return null;
+        int tupleLen = nodeTupleTable.getTupleTable().getTupleLen();
+        if ( tupleLen != (graphNode == null ? 3 : 4) )
+            return null;
+        List<Triple> triples = bgp.getList();
+        List<Var> vars = new ArrayList<>();
+        for ( Triple triple : triples ) {
+            if ( ! MergeJoinTDB.suitable(triple) )
+                return null;
+            List<Var> tVars = MergeJoinTDB.vars(triple);
+            if ( tVars.isEmpty() )
+                return null;
+            tVars.forEach(v-> { if ( ! vars.contains(v) ) vars.add(v); });
+        }
+        if ( vars.size() > MaxVars )
+            return null;
+        if ( ! isCyclic(triples) )
+            return null;
+
+        // Choose the variable order with fewest patterns sorted in memory.
+        Plan best = null;
+        for ( List<Var> order : permutations(vars) ) {
+            List<Relation> relations = new ArrayList<>(triples.size());
+            for ( Triple triple : triples ) {
+                Var[] tVars = MergeJoinTDB.vars(triple).stream()
+                        .sorted(Comparator.comparingInt(order::indexOf))
+                        .toArray(Var[]::new);
+                TupleIndexRecord index = chooseIndex(nodeTupleTable, graphNode, triple, tVars);
+                relations.add(new Relation(triple, index, tVars));
+            }
+            Plan plan = new Plan(bgp, order, relations);
+            if ( best == null || plan.countSorted() < best.countSorted() )
+                best = plan;
+            if ( best.countSorted() == 0 )
+                break;
+        }
+        return best;
+    }
+
+    /**
+     * Test whether the variables of the triple patterns form a cyclic
+     * hypergraph, using GYO reduction: repeatedly remove variables that occur in
+     * only one pattern and patterns whose variables are all in another pattern.
+     * The hypergraph is acyclic if nothing is left.
+     */
+    static boolean isCyclic(List<Triple> triples) {
+        List<Set<Var>> edges = new ArrayList<>();
+        for ( Triple triple : triples )
+            edges.add(new HashSet<>(MergeJoinTDB.vars(triple)));
+        boolean changed = true;
+        while ( changed ) {
+            changed = false;
+            Map<Var, Integer> counts = new HashMap<>();
+            edges.forEach(e->e.forEach(v->counts.merge(v, 1, Integer::sum)));
+            for ( Set<Var> e : edges ) {
+                if ( e.removeIf(v->counts.get(v) == 1) )
+                    changed = true;
+            }
+            for ( int i = 0 ; i < edges.size() ; i++ ) {
+                Set<Var> e = edges.get(i);
+                boolean contained = e.isEmpty();
+                for ( int j = 0 ; ! contained && j < edges.size() ; j++ )
+                    contained = ( j != i && edges.get(j).containsAll(e) );
+                if ( contained ) {
+                    edges.remove(i);
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        return ! edges.isEmpty();
+    }
+
+    private static List<List<Var>> permutations(List<Var> vars) {
+        List<List<Var>> results = new ArrayList<>();
+        permutations(new ArrayList<>(), new ArrayList<>(vars), results);
+        return results;
+    }
+
+    private static void permutations(List<Var> prefix, List<Var> rest, List<List<Var>> results) {
+        if ( rest.isEmpty() ) {
+            results.add(List.copyOf(prefix));
+            return;
+        }
+        for ( int i = 0 ; i < rest.size() ; i++ ) {
+            Var v = rest.remove(i);
+            prefix.add(v);
+            permutations(prefix, rest, results);
+            prefix.remove(prefix.size()-1);
+            rest.add(i, v);
+        }
+    }
+
+    /**
+     * Find an index where the constant slots come first, then the slots of the
+     * variables in the given order.
+     */
+    private static TupleIndexRecord chooseIndex(NodeTupleTable nodeTupleTable, Node graphNode, Triple triple, Var[] vars) {
+        String slots = ( graphNode == null ) ? MergeJoinTDB.TripleSlots : MergeJoinTDB.QuadSlots;
+        Node[] nodes = MergeJoinTDB.nodes(triple);
+        StringBuilder constants = new StringBuilder();
+        if ( graphNode != null )
+            constants.append('G');
+        StringBuilder varSlots = new StringBuilder();
+        for ( Var v : vars ) {
+            for ( int i = 0 ; i < 3 ; i++ ) {
+                if ( v.equals(nodes[i]) )
+                    varSlots.append(slots.charAt(slots.length()-3+i));
+            }
+        }
+        for ( int i = 0 ; i < 3 ; i++ ) {
+            if ( ! Var.isVar(nodes[i]) )
+                constants.append(slots.charAt(slots.length()-3+i));
+        }
+        int prefixLen = constants.length();
+        for ( TupleIndex idx : nodeTupleTable.getTupleTable().getIndexes() ) {
+            if ( ! ( idx.baseTupleIndex() instanceof TupleIndexRecord index ) )
+                continue;
+            String order = MergeJoinTDB.indexOrder(index, slots);
+            if ( ! order.substring(prefixLen).equals(varSlots.toString()) )
+                continue;
+            boolean prefixMatches = true;
+            for ( int i = 0 ; i < prefixLen ; i++ ) {
+                if ( constants.indexOf(String.valueOf(order.charAt(i))) < 0 ) {
+                    prefixMatches = false;
+                    break;
+                }
+            }
+            if ( prefixMatches )
+                return index;
+        }
+        return null;
+    }
+
+    /**
+     * Execute the leapfrog triejoin of a plan, giving bindings of all the
+     * variables of the basic graph pattern. The parent binding is the binding to
+     * extend (it does not bind any of the variables).
+     * <p>
+     * Patterns without an index are read and sorted now. Returns null if one of
+     * them has more than {@code sortLimit} matches.
+     */
+    static Iterator<BindingNodeId> execute(Plan plan, NodeTupleTable nodeTupleTable, Node graphNode, Binding parent, long sortLimit) {
+        NodeTable nodeTable = nodeTupleTable.getNodeTable();
+        NodeId graphId = null;
+        if ( graphNode != null ) {
+            graphId = nodeTable.getNodeIdForNode(graphNode);
+            if ( NodeId.isDoesNotExist(graphId) )
+                return Iter.nullIterator();
+        }
+        List<Var> varOrder = plan.varOrder;
+        List<List<Trie>> levels = new ArrayList<>();
+        varOrder.forEach(v->levels.add(new ArrayList<>()));
+        for ( Relation relation : plan.relations ) {
+            Trie trie = trie(nodeTupleTable, relation, graphId);
+            if ( trie == null )
+                return Iter.nullIterator();
+            if ( trie instanceof TrieSorted trieSorted && ! trieSorted.load(sortLimit) )
+                return null;
+            for ( Var v : relation.vars )
+                levels.get(varOrder.indexOf(v)).add(trie);
+        }
+        Trie[][] tries = new Trie[levels.size()][];
+        for ( int i = 0 ; i < tries.length ; i++ )
+            tries[i] = levels.get(i).toArray(Trie[]::new);
+        return new LeapfrogIterator(varOrder.toArray(Var[]::new), tries, parent);
+    }
+
+    private static Trie trie(NodeTupleTable nodeTupleTable, Relation relation, NodeId graphId) {
+        NodeTable nodeTable = nodeTupleTable.getNodeTable();
+        Node[] nodes = MergeJoinTDB.nodes(relation.triple);
+        int offset = ( graphId == null ) ? 0 : 1;
+        NodeId[] ids = new NodeId[3+offset];
+        if ( graphId != null )
+            ids[0] = graphId;
+        for ( int i = 0 ; i < 3 ; i++ ) {
+            Node n = nodes[i];
+            if ( Var.isVar(n) ) {
+                ids[i+offset] = NodeId.NodeIdAny;
+            } else {
+                NodeId id = nodeTable.getNodeIdForNode(n);
+                if ( NodeId.isDoesNotExist(id) )
+                    return null;
+                ids[i+offset] = id;
+            }
+        }
+        int[] slots = new int[relation.vars.length];
+        for ( int j = 0 ; j < slots.length ; j++ ) {
+            for ( int i = 0 ; i < 3 ; i++ ) {
+                if ( relation.vars[j].equals(nodes[i]) )
+                    slots[j] = i+offset;
+            }
+        }
+        if ( relation.index != null )
+            return new TrieIndex(relation.index, ids, slots);
+        return new TrieSorted(nodeTupleTable, TupleFactory.create(ids), slots);
+    }
+
+    /**
+     * Access to the matches of one pattern as a trie, one level per variable.
+     * Keys at each level are in index order.
+     */
+    private static abstract class Trie {
+        /** Go down to the first key of the next level, below the current key. */
+        abstract void open();
+        /** Return to the parent level. */
+        abstract void up();
+        abstract boolean atEnd();
+        abstract NodeId key();
+        /** Move to the next key at this level. */
+        abstract void next();
+        /** Move forward to the first key equal to or greater than {@code target}. */
+        abstract void seek(NodeId target);
+        abstract void close();
+    }
+
+    private static int compare(NodeId nodeId1, NodeId nodeId2) {
+        return NodeIdFactory.compareIndexOrder(nodeId1, nodeId2);
+    }
+
+    /** A trie over scans of an index in the order of the variables. */
+    private static class TrieIndex extends Trie {
+        private final TupleIndexRecord index;
+        /** Natural order pattern: constants, then the keys of the levels above the current one. */
+        private final NodeId[] pattern;
+        private final int[] slots;
+        private final List<Iterator<Tuple<NodeId>>> iters;
+        private final List<Tuple<NodeId>> current;
+        private int depth = -1;
+
+        TrieIndex(TupleIndexRecord index, NodeId[] pattern, int[] slots) {
+            this.index = index;
+            this.pattern = pattern;
+            this.slots = slots;
+            this.iters = new ArrayList<>(Collections.nCopies(slots.length, null));
+            this.current = new ArrayList<>(Collections.nCopies(slots.length, null));
+        }
+
+        @Override
+        void open() {
+            if ( depth >= 0 )
+                pattern[slots[depth]] = key();
+            depth++;
+            position(null);
+        }
+
+        @Override
+        void up() {
+            closeLevel(depth);
+            depth--;
+            if ( depth >= 0 )
+                pattern[slots[depth]] = NodeId.NodeIdAny;
+        }
+
+        @Override
+        boolean atEnd() {
+            return current.get(depth) == null;
+        }
+
+        @Override
+        NodeId key() {
+            return current.get(depth).get(slots[depth]);
+        }
+
+        @Override
+        void next() {
+            NodeId key = key();
+            for ( int i = 0 ; i < StepsBeforeSeek ; i++ ) {
+                if ( ! advance() || ! key().equals(key) )
+                    return;
+            }
+            NodeId start = successor(key);
+            if ( start != null ) {
+                position(start);
+                return;
+            }
+            while ( advance() && key().equals(key) ) {}
+        }
+
+        @Override
+        void seek(NodeId target) {
+            for ( int i = 0 ; i < StepsBeforeSeek ; i++ ) {
+                if ( atEnd() || compare(key(), target) >= 0 )
+                    return;
+                advance();
+            }
+            if ( ! atEnd() && compare(key(), target) < 0 )
+                position(target);
+        }
+
+        private void position(NodeId start) {
+            closeLevel(depth);
+            iters.set(depth, index.findFrom(TupleFactory.create(pattern), start));
+            advance();
+        }
+
+        private boolean advance() {
+            Iterator<Tuple<NodeId>> iter = iters.get(depth);
+            Tuple<NodeId> t = iter.hasNext() ? iter.next() : null;
+            current.set(depth, t);
+            return t != null;
+        }
+
+        private void closeLevel(int level) {
+            Iterator<Tuple<NodeId>> iter = iters.get(level);
+            if ( iter != null )
+                Iter.close(iter);
+            iters.set(level, null);
+            current.set(level, null);
+        }
+
+        @Override
+        void close() {
+            for ( int i = 0 ; i < iters.size() ; i++ )
+                closeLevel(i);
+        }
+    }
+
+    /**
+     * The next NodeId in index order, or null if it is not a valid NodeId
+     * (e.g. the next value is a type that does not exist).
+     */
+    private static NodeId successor(NodeId nodeId) {
+        byte[] b = new byte[NodeId.SIZE];
+        NodeIdFactory.setNext(nodeId, b, 0);
+        try {
+            NodeId next = NodeIdFactory.get(b, 0);
+            return compare(next, nodeId) > 0 ? next : null;
+        } catch (RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * A trie over the matches of a pattern that has no index in the order of the
+     * variables. The matches are read and sorted before use.
+     */
+    private static class TrieSorted extends Trie {
+        private final NodeTupleTable nodeTupleTable;
+        private final Tuple<NodeId> pattern;
+        private final int[] slots;
+        private NodeId[][] rows = null;
+        // Per level: the range of rows below the key of the level above, and the current row.
+        private final int[] hi;
+        private final int[] pos;
+        private int depth = -1;
+
+        TrieSorted(NodeTupleTable nodeTupleTable, Tuple<NodeId> pattern, int[] slots) {
+            this.nodeTupleTable = nodeTupleTable;
+            this.pattern = pattern;
+            this.slots = slots;
+            this.hi = new int[slots.length];
+            this.pos = new int[slots.length];
+        }
+
+        /** Read and sort the matches. Returns false, with nothing loaded, if there are more than {@code limit}. */
+        boolean load(long limit) {
+            List<NodeId[]> x = new ArrayList<>();
+            Iterator<Tuple<NodeId>> iter = nodeTupleTable.find(pattern);
+            try {
+                while ( iter.hasNext() ) {
+                    if ( x.size() >= limit )
+                        return false;
+                    Tuple<NodeId> t = iter.next();
+                    NodeId[] row = new NodeId[slots.length];
+                    for ( int j = 0 ; j < slots.length ; j++ )
+                        row[j] = t.get(slots[j]);
+                    x.add(row);
+                }
+            } finally { Iter.close(iter); }
+            x.sort((row1, row2) -> {
+                for ( int j = 0 ; j < row1.length ; j++ ) {
+                    int c = compare(row1[j], row2[j]);
+                    if ( c != 0 )
+                        return c;
+                }
+                return 0;
+            });
+            rows = x.toArray(NodeId[][]::new);
+            return true;
+        }
+
+        @Override
+        void open() {
+            if ( depth < 0 ) {
+                pos[0] = 0;
+                hi[0] = rows.length;
+            } else {
+                int start = pos[depth];
+                int end = endOfKey();
+                pos[depth+1] = start;
+                hi[depth+1] = end;
+            }
+            depth++;
+        }
+
+        @Override
+        void up() {
+            depth--;
+        }
+
+        @Override
+        boolean atEnd() {
+            return pos[depth] >= hi[depth];
+        }
+
+        @Override
+        NodeId key() {
+            return rows[pos[depth]][depth];
+        }
+
+        @Override
+        void next() {
+            pos[depth] = endOfKey();
+        }
+
+        @Override
+        void seek(NodeId target) {
+            pos[depth] = lowerBound(pos[depth], hi[depth], target, false);
+        }
+
+        /** The row after the last row with the current key. */
+        private int endOfKey() {
+            return lowerBound(pos[depth], hi[depth], key(), true);
+        }
+
+        /** First row in the range with a key greater than or equal to (or, if strict, greater than) the target. */
+        private int lowerBound(int lo, int hi, NodeId target, boolean strict) {
+            while ( lo < hi ) {
+                int mid = (lo + hi) >>> 1;
+                int c = compare(rows[mid][depth], target);
+                if ( c < 0 || ( strict && c == 0 ) )
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+
+        @Override
+        void close() {
+            rows = null;
+        }
+    }
+
+    /** Bind the variables in order, intersecting the keys of the tries at each level. */
+    private static class LeapfrogIterator extends IteratorSlotted<BindingNodeId> {
+        private final Var[] vars;
+        private final Trie[][] levels;
+        private final Binding parent;
+        private final NodeId[] values;
+        // Per level: the trie to move next.
+        private final int[] p;
+        private boolean started = false;
+
+        LeapfrogIterator(Var[] vars, Trie[][] levels, Binding parent) {
+            this.vars = vars;
+            this.levels = levels;
+            this.parent = parent;
+            this.values = new NodeId[vars.length];
+            this.p = new int[vars.length];
+        }
+
+        @Override
+        protected boolean hasMore() {
+            return true;
+        }
+
+        @Override
+        protected BindingNodeId moveToNext() {
+            int n = vars.length;
+            int i;
+            boolean found;
+            if ( ! started ) {
+                started = true;
+                i = 0;
+                found = descend(0);
+            } else {
+                i = n-1;
+                found = advance(n-1);
+            }
+            for (;;) {
+                if ( found ) {
+                    if ( i == n-1 )
+                        return binding();
+                    i++;
+                    found = descend(i);
+                } else {
+                    if ( i == 0 )
+                        return null;
+                    i--;
+                    found = advance(i);
+                }
+            }
+        }
+
+        private BindingNodeId binding() {
+            BindingNodeId b = new BindingNodeId(parent);
+            for ( int i = 0 ; i < vars.length ; i++ )
+                b.put(vars[i], values[i]);
+            return b;
+        }
+
+        /** Start level i: find the first key common to all the tries at that level. */
+        private boolean descend(int i) {
+            Trie[] tries = levels[i];
+            for ( Trie t : tries )
+                t.open();
+            for ( Trie t : tries ) {
+                if ( t.atEnd() ) {
+                    up(i);
+                    return false;
+                }
+            }
+            Arrays.sort(tries, (t1, t2) -> compare(t1.key(), t2.key()));
+            p[i] = 0;
+            return search(i);
+        }
+
+        /** Move to the next key at level i common to all the tries. */
+        private boolean advance(int i) {
+            Trie[] tries = levels[i];
+            Trie t = tries[p[i]];
+            t.next();
+            if ( t.atEnd() ) {
+                up(i);
+                return false;
+            }
+            p[i] = (p[i]+1) % tries.length;
+            return search(i);
+        }
+
+        private boolean search(int i) {
+            Trie[] tries = levels[i];
+            int k = tries.length;
+            NodeId max = tries[(p[i]+k-1) % k].key();
+            for (;;) {
+                Trie t = tries[p[i]];
+                NodeId key = t.key();
+                if ( key.equals(max) ) {
+                    values[i] = key;
+                    return true;
+                }
+                t.seek(max);
+                if ( t.atEnd() ) {
+                    up(i);
+                    return false;
+                }
+                max = t.key();
+                p[i] = (p[i]+1) % k;
+            }
+        }
+
+        private void up(int i) {
+            for ( Trie t : levels[i] )
+                t.up();
+        }
+
+        @Override
+        protected void closeIterator() {
+            for ( Trie[] tries : levels ) {
+                for ( Trie t : tries )
+                    t.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,414 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.iterator.IteratorSlotted;
+import org.apache.jena.atlas.lib.tuple.Tuple;
+import org.apache.jena.atlas.lib.tuple.TupleFactory;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.NodeIdFactory;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+import org.apache.jena.tdb2.store.nodetupletable.NodeTupleTable;
+import org.apache.jena.tdb2.store.tupletable.TupleIndex;
+import org.apache.jena.tdb2.store.tupletable.TupleIndexRecord;
+
+/**
+ * Merge join of two triple (or quad) patterns that share a variable, using two
+ * index scans that are both sorted by that variable.
+ * <p>
+ * A pattern can be scanned in the order of a variable when there is an index
+ * where the constant slots of the pattern come first, followed by the slot of the
+ * variable. For example, {@code ?s :p :o} is sorted by {@code ?s} in a POS index
+ * and {@code ?x :q ?s} is sorted by {@code ?s} in a POS index.
+ * <p>
+ * The join steps through the two scans together. When one scan is behind
+ * the other, it moves forward a few entries; if that is not enough, it
+ * restarts the scan at the other scan's key. This skips over long runs of
+ * entries that cannot join, so the join is not worse than nested loops when
+ * one side is much smaller than the other.
+ */
+class MergeJoinTDB
+{
+    /** Number of entries to step before restarting a scan at a later key. */
+    private static final int StepsBeforeSeek = 16;
+
+    /** Slot names, natural order. */
+    static final String TripleSlots = "SPO";
+    static final String QuadSlots   = "GSPO";
+
+    /** A merge join of the first two triple patterns of a basic graph pattern. */
+    static class Plan {
+        final Triple triple1;
+        final Triple triple2;
+        final Var joinVar;
+        final TupleIndexRecord index1;
+        final TupleIndexRecord index2;
+        /** The basic graph pattern, with the merge join triples first. */
+        final BasicPattern pattern;
+
+        private Plan(Triple triple1, Triple triple2, Var joinVar, TupleIndexRecord index1, TupleIndexRecord index2,
+                     BasicPattern pattern) {
+            this.triple1 = triple1;
+            this.triple2 = triple2;
+            this.joinVar = joinVar;
+            this.index1 = index1;
+            this.index2 = index2;
+            this.pattern = pattern;
+        }
+
+        @Override
+        public String toString() {
+            return "MergeJoin("+joinVar+": "+index1.getName()+" "+triple1+", "+index2.getName()+" "+triple2+")";
+        }
+    }
+
+    /**
+     * Find a merge join for the first triple pattern of a basic graph pattern and
+     * a later triple pattern. Returns null if there isn't one.
+     * The graph node is null for the default graph or a concrete graph name;
+     * other graph nodes (variables, the union graph) are not supported.
+     */
+    static Plan plan(NodeTupleTable nodeTupleTable, Node graphNode, BasicPattern bgp) {
+        if ( bgp.size() < 2 )
+            return null;
+        if ( graphNode != null && ! graphNode.isConcrete() )
+            return null;
+        int tupleLen = nodeTupleTable.getTupleTable().getTupleLen();
+        if ( tupleLen != (graphNode == null ? 3 : 4) )
+            return null;
+        List<Triple> triples = bgp.getList();
+        Triple triple1 = triples.get(0);
+        if ( ! suitable(triple1) )
+            return null;
+        for ( int j = 1 ; j < triples.size() ; j++ ) {
+            Triple triple2 = triples.get(j);
+            if ( ! suitable(triple2) )
+                continue;
+            for ( Var v : vars(triple1) ) {
+                if ( ! vars(triple2).contains(v) )
+                    continue;
+                TupleIndexRecord index1 = chooseIndex(nodeTupleTable, graphNode, triple1, v);
+                if ( index1 == null )
+                    continue;
+                TupleIndexRecord index2 = chooseIndex(nodeTupleTable, graphNode, triple2, v);
+                if ( index2 == null )
+                    continue;
+                BasicPattern pattern = new BasicPattern();
+                pattern.add(triple1);
+                pattern.add(triple2);
+                for ( int k = 1 ; k < triples.size() ; k++ ) {
+                    if ( k != j )
+                        pattern.add(triples.get(k));
+                }
+                return new Plan(triple1, triple2, v, index1, index2, pattern);
+            }
+        }
+        return null;
+    }
+
+    /** Concrete terms and variables, no repeated variables, no triple terms. */
+    static boolean suitable(Triple triple) {
+        Set<Var> seen = new HashSet<>();
+        for ( Node n : nodes(triple) ) {
+            if ( Var.isVar(n) ) {
+                if ( ! Var.isNamedVar(n) || ! seen.add(Var.alloc(n)) )
+                    return false;
+            } else if ( ! n.isConcrete() || n.isTripleTerm() )
+                return false;
+        }
+        return true;
+    }
+
+    static Node[] nodes(Triple triple) {
+        return new Node[] {triple.getSubject(), triple.getPredicate(), triple.getObject()};
+    }
+
+    static List<Var> vars(Triple triple) {
+        List<Var> vars = new ArrayList<>(3);
+        for ( Node n : nodes(triple) ) {
+            if ( Var.isVar(n) )
+                vars.add(Var.alloc(n));
+        }
+        return vars;
+    }
+
+    /**
+     * Find an index where the constant slots come first, then the slot for
+     * the join variable.
+     */
+    private static TupleIndexRecord chooseIndex(NodeTupleTable nodeTupleTable, Node graphNode, Triple triple, Var joinVar) {
+        String slots = ( graphNode == null ) ? TripleSlots : QuadSlots;
+        Node[] nodes = nodes(triple);
+        StringBuilder constants = new StringBuilder();
+        if ( graphNode != null )
+            constants.append('G');
+        char joinSlot = 0;
+        for ( int i = 0 ; i < 3 ; i++ ) {
+            char slot = slots.charAt(slots.length()-3+i);
+            if ( ! Var.isVar(nodes[i]) )
+                constants.append(slot);
+            else if ( joinVar.equals(nodes[i]) )
+                joinSlot = slot;
+        }
+        int prefixLen = constants.length();
+        for ( TupleIndex idx : nodeTupleTable.getTupleTable().getIndexes() ) {
+            if ( ! ( idx.baseTupleIndex() instanceof TupleIndexRecord index ) )
+                continue;
+            String order = indexOrder(index, slots);
+            if ( order.length() <= prefixLen || order.charAt(prefixLen) != joinSlot )
+                continue;
+            boolean prefixMatches = true;
+            for ( int i = 0 ; i < prefixLen ; i++ ) {
+                if ( constants.indexOf(String.valueOf(order.charAt(i))) < 0 ) {
+                    prefixMatches = false;
+                    break;
+                }
+            }
+            if ( prefixMatches )
+                return index;
+        }
+        return null;
+    }
+
+    /** The slot names in the order of the index. */
+    static String indexOrder(TupleIndex index, String slots) {
+        Character[] natural = new Character[slots.length()];
+        for ( int i = 0 ; i < natural.length ; i++ )
+            natural[i] = slots.charAt(i);
+        Tuple<Character> order = index.getMapping().map(TupleFactory.create(natural));
+        StringBuilder sb = new StringBuilder();
+        order.forEach(sb::append);
+        return sb.toString();
+    }
+
+    /**
+     * Execute the merge join of a plan, giving bindings of the variables of the
+     * two triple patterns. The parent binding is the binding to extend (it does
+     * not bind any of the variables).
+     */
+    static Iterator<BindingNodeId> execute(Plan plan, NodeTupleTable nodeTupleTable, Node graphNode,
+                                           Binding parent, Predicate<Tuple<NodeId>> filter) {
+        NodeTable nodeTable = nodeTupleTable.getNodeTable();
+        NodeId graphId = null;
+        if ( graphNode != null ) {
+            graphId = nodeTable.getNodeIdForNode(graphNode);
+            if ( NodeId.isDoesNotExist(graphId) )
+                return Iter.nullIterator();
+        }
+        Cursor cursor1 = cursor(plan.index1, plan.triple1, plan.joinVar, graphId, nodeTable, filter);
+        Cursor cursor2 = cursor(plan.index2, plan.triple2, plan.joinVar, graphId, nodeTable, filter);
+        if ( cursor1 == null || cursor2 == null )
+            return Iter.nullIterator();
+        return new MergeIterator(cursor1, cursor2, parent);
+    }
+
+    private static Cursor cursor(TupleIndexRecord index, Triple triple, Var joinVar, NodeId graphId,
+                                 NodeTable nodeTable, Predicate<Tuple<NodeId>> filter) {
+        Node[] nodes = nodes(triple);
+        int offset = ( graphId == null ) ? 0 : 1;
+        NodeId[] ids = new NodeId[3+offset];
+        Var[] vars = new Var[3+offset];
+        if ( graphId != null )
+            ids[0] = graphId;
+        int joinSlot = -1;
+        for ( int i = 0 ; i < 3 ; i++ ) {
+            Node n = nodes[i];
+            if ( Var.isVar(n) ) {
+                ids[i+offset] = NodeId.NodeIdAny;
+                vars[i+offset] = Var.alloc(n);
+                if ( joinVar.equals(n) )
+                    joinSlot = i+offset;
+            } else {
+                NodeId id = nodeTable.getNodeIdForNode(n);
+                if ( NodeId.isDoesNotExist(id) )
+                    return null;
+                ids[i+offset] = id;
+            }
+        }
+        return new Cursor(index, TupleFactory.create(ids), joinSlot, vars, filter);
+    }
+
+    /** A sorted scan of one pattern that can move forward to a later key. */
+    private static class Cursor {
+        private final TupleIndexRecord index;
+        private final Tuple<NodeId> pattern;
+        private final int joinSlot;
+        private final Var[] vars;
+        private final Predicate<Tuple<NodeId>> filter;
+        private Iterator<Tuple<NodeId>> iter = null;
+        private Tuple<NodeId> current = null;
+
+        Cursor(TupleIndexRecord index, Tuple<NodeId> pattern, int joinSlot, Var[] vars, Predicate<Tuple<NodeId>> filter) {
+            this.index = index;
+            this.pattern = pattern;
+            this.joinSlot = joinSlot;
+            this.vars = vars;
+            this.filter = filter;
+        }
+
+        void open(NodeId start) {
+            close();
+            iter = index.findFrom(pattern, start);
+            advance();
+        }
+
+        boolean advance() {
+            while ( iter.hasNext() ) {
+                Tuple<NodeId> t = iter.next();
+                if ( filter == null || filter.test(t) ) {
+                    current = t;
+                    return true;
+                }
+            }
+            current = null;
+            return false;
+        }
+
+        boolean atEnd() {
+            return current == null;
+        }
+
+        NodeId key() {
+            return current.get(joinSlot);
+        }
+
+        /** Move forward to the first entry with a key equal to or greater than {@code target}. */
+        void seek(NodeId target) {
+            for ( int i = 0 ; i < StepsBeforeSeek ; i++ ) {
+                if ( current == null || NodeIdFactory.compareIndexOrder(key(), target) >= 0 )
+                    return;
+                advance();
+            }
+            if ( current != null && NodeIdFactory.compareIndexOrder(key(), target) < 0 )
+                open(target);
+        }
+
+        /**
+         * Add the variables of this pattern to the binding. Returns false if a
+         * variable is already bound to a different term: the two patterns can share
+         * variables other than the join variable.
+         */
+        boolean bind(BindingNodeId b, Tuple<NodeId> tuple) {
+            for ( int i = 0 ; i < vars.length ; i++ ) {
+                if ( vars[i] == null )
+                    continue;
+                NodeId x = b.get(vars[i]);
+                if ( x != null ) {
+                    if ( NodeIdFactory.compareIndexOrder(x, tuple.get(i)) != 0 )
+                        return false;
+                    continue;
+                }
+                b.put(vars[i], tuple.get(i));
+            }
+            return true;
+        }
+
+        void close() {
+            if ( iter != null )
+                Iter.close(iter);
+            iter = null;
+            current = null;
+        }
+    }
+
+    private static class MergeIterator extends IteratorSlotted<BindingNodeId> {
+        private final Cursor cursor1;
+        private final Cursor cursor2;
+        private final Binding parent;
+        private final Deque<BindingNodeId> pending = new ArrayDeque<>();
+        private boolean started = false;
+
+        MergeIterator(Cursor cursor1, Cursor cursor2, Binding parent) {
+            this.cursor1 = cursor1;
+            this.cursor2 = cursor2;
+            this.parent = parent;
+        }
+
+        @Override
+        protected boolean hasMore() {
+            return true;
+        }
+
+        @Override
+        protected BindingNodeId moveToNext() {
+            while ( pending.isEmpty() ) {
+                if ( ! fill() )
+                    return null;
+            }
+            return pending.poll();
+        }
+
+        /**
+         * Find the next key in both scans and add the compatible pairs of the
+         * matches to pending. Returns false at the end of either scan.
+         */
+        private boolean fill() {
+            if ( ! started ) {
+                started = true;
+                cursor1.open(null);
+                cursor2.open(null);
+            }
+            while ( ! cursor1.atEnd() && ! cursor2.atEnd() ) {
+                int x = NodeIdFactory.compareIndexOrder(cursor1.key(), cursor2.key());
+                if ( x < 0 ) {
+                    cursor1.seek(cursor2.key());
+                    continue;
+                }
+                if ( x > 0 ) {
+                    cursor2.seek(cursor1.key());
+                    continue;
+                }
+                NodeId key = cursor1.key();
+                List<Tuple<NodeId>> group2 = new ArrayList<>();
+                do {
+                    group2.add(cursor2.current);
+                } while ( cursor2.advance() && sameKey(cursor2.key(), key) );
+                do {
+                    for ( Tuple<NodeId> t2 : group2 ) {
+                        BindingNodeId b = new BindingNodeId(parent);
+                        cursor1.bind(b, cursor1.current);
+                        if ( cursor2.bind(b, t2) )
+                            pending.add(b);
+                    }
+                } while ( cursor1.advance() && sameKey(cursor1.key(), key) );
+                return true;
+            }
+            return false;
+        }
+
+        private static boolean sameKey(NodeId nodeId1, NodeId nodeId2) {
+            return NodeIdFactory.compareIndexOrder(nodeId1, nodeId2) == 0;
+        }
+
+        @Override
+        protected void closeIterator() {
+            cursor1.close();
+            cursor2.close();
+        }
+    }
+}
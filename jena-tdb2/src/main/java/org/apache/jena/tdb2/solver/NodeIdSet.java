@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import org.apache.jena.tdb2.store.NodeIdFactory;
+
+/**
+ * A set of NodeIds, held as their 64 bit form ({@link NodeIdFactory#asLong}) in an
+ * open addressing hash table of {@code long}s. There is no object per member.
+ */
+class NodeIdSet {
+    // Zero is a NodeId (the first in the node table) so it is recorded separately
+    // and the table uses zero for an empty slot.
+    private static final long EMPTY = 0L;
+    private long[] table;
+    private int shift;
+    private int size = 0;
+    private boolean hasZero = false;
+
+    NodeIdSet() {
+        this(64);
+    }
+
+    /** A set that does not need to grow to hold {@code capacity} members. */
+    NodeIdSet(int capacity) {
+        int bits = 4;
+        while ( (1 << bits) < 2L * capacity )
+            bits++;
+        table = new long[1 << bits];
+        shift = 64 - bits;
+    }
+
+    /** Add a member; return true if it was not already in the set. */
+    boolean add(long x) {
+        if ( x == EMPTY ) {
+            if ( hasZero )
+                return false;
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int mask = table.length - 1;
+        for ( int i = index(x) ; ; i = (i + 1) & mask ) {
+            long v = table[i];
+            if ( v == x )
+                return false;
+            if ( v == EMPTY ) {
+                table[i] = x;
+                size++;
+                // Keep the load factor at most one half.
+                if ( 2 * size > table.length )
+                    grow();
+                return true;
+            }
+        }
+    }
+
+    boolean contains(long x) {
+        if ( x == EMPTY )
+            return hasZero;
+        int mask = table.length - 1;
+        for ( int i = index(x) ; ; i = (i + 1) & mask ) {
+            long v = table[i];
+            if ( v == x )
+                return true;
+            if ( v == EMPTY )
+                return false;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int index(long x) {
+        // Fibonacci hashing: the high bits of the product.
+        return (int)((x * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    private void grow() {
+        long[] old = table;
+        table = new long[2 * old.length];
+        shift--;
+        int mask = table.length - 1;
+        for ( long x : old ) {
+            if ( x == EMPTY )
+                continue;
+            int i = index(x);
+            while ( table[i] != EMPTY )
+                i = (i + 1) & mask;
+            table[i] = x;
+        }
+    }
+}
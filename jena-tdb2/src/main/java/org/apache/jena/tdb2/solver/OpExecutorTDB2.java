@@ -18,12 +18,14 @@
 
 package org.apache.jena.tdb2.solver;
 
+import java.util.List;
 import java.util.function.Predicate;
 
 import org.apache.jena.atlas.lib.tuple.Tuple;
 import org.apache.jena.atlas.logging.Log;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
+import org.apache.jena.query.ARQ;
 import org.apache.jena.sparql.ARQInternalErrorException;
 import org.apache.jena.sparql.algebra.Op;
 import org.apache.jena.sparql.algebra.op.*;
@@ -32,20 +34,28 @@ import org.apache.jena.sparql.core.BasicPattern;
 import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.sparql.core.Substitute;
 import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.core.VarExprList;
 import org.apache.jena.sparql.engine.ExecutionContext;
 import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.iterator.QueryIterConvert;
+import org.apache.jena.sparql.engine.iterator.QueryIterGroup;
+import org.apache.jena.sparql.engine.iterator.QueryIterParallel;
 import org.apache.jena.sparql.engine.iterator.QueryIterPeek;
+import org.apache.jena.sparql.engine.iterator.QueryIterRoot;
 import org.apache.jena.sparql.engine.main.OpExecutor;
 import org.apache.jena.sparql.engine.main.OpExecutorFactory;
 import org.apache.jena.sparql.engine.main.QC;
 import org.apache.jena.sparql.engine.main.iterator.QueryIterGraph;
 import org.apache.jena.sparql.engine.optimizer.reorder.ReorderProc;
 import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
+import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.sparql.expr.ExprList;
 import org.apache.jena.sparql.mgt.Explain;
 import org.apache.jena.tdb2.store.DatasetGraphTDB;
 import org.apache.jena.tdb2.store.GraphTDB;
 import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+import org.apache.jena.tdb2.sys.SystemTDB;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -87,20 +97,53 @@ public class OpExecutorTDB2 extends OpExecutor
         return super.exec(op, input);
     }
 
-    // Retrieving nodes isn't so bad because they will be needed anyway.
-    // And if their duplicates, likely to be cached.
-    // Need to work with SolverLib which wraps the NodeId bindgins with a converter.
+    // Late materialization: projection, DISTINCT, REDUCED, GROUP BY and some filters
+    // work on the NodeIds of results from basic graph patterns (BindingTDB)
+    // so Nodes are only retrieved for the results actually returned.
+
+    @Override
+    protected QueryIterator execute(OpProject opProject, QueryIterator input)
+    {
+        if ( ! isForTDB || ! ( input instanceof QueryIterRoot ) )
+            return super.execute(opProject, input);
+        // Projection that keeps access to the NodeIds.
+        List<Var> vars = opProject.getVars();
+        QueryIterator qIter = exec(opProject.getSubOp(), input);
+        return new QueryIterConvert(qIter, b -> new BindingProjectTDB(vars, b), execCxt);
+    }
 
     @Override
     protected QueryIterator execute(OpDistinct opDistinct, QueryIterator input)
     {
-        return super.execute(opDistinct, input);
+        // NodeId-based DISTINCT is in-memory only; spilling needs the general version.
+        if ( ! isForTDB || execCxt.getContext().isDefined(ARQ.spillToDiskThreshold) )
+            return super.execute(opDistinct, input);
+        QueryIterator qIter = exec(opDistinct.getSubOp(), input);
+        return QueryIterDistinctTDB.distinct(qIter, SolverLibTDB.nodeTable(execCxt), execCxt);
+    }
+
+    @Override
+    protected QueryIterator execute(OpGroup opGroup, QueryIterator input)
+    {
+        // Group by NodeIds when the group keys are all variables.
+        // Keys that are expressions need the Nodes to evaluate them.
+        VarExprList groupVars = opGroup.getGroupVars();
+        if ( ! isForTDB || groupVars.isEmpty() || ! groupVars.getExprs().isEmpty() )
+            return super.execute(opGroup, input);
+        List<Var> vars = groupVars.getVars();
+        NodeTable nodeTable = SolverLibTDB.nodeTable(execCxt);
+        QueryIterator qIter = exec(opGroup.getSubOp(), input);
+        return new QueryIterGroup(qIter, groupVars, opGroup.getAggregators(),
+                                  b -> BindingKeyTDB.create(b, vars, nodeTable), execCxt);
     }
 
     @Override
     protected QueryIterator execute(OpReduced opReduced, QueryIterator input)
     {
-        return super.execute(opReduced, input);
+        if ( ! isForTDB )
+            return super.execute(opReduced, input);
+        QueryIterator qIter = exec(opReduced.getSubOp(), input);
+        return QueryIterDistinctTDB.reduced(qIter, SolverLibTDB.nodeTable(execCxt), execCxt);
     }
 
     @Override
@@ -131,8 +174,17 @@ public class OpExecutorTDB2 extends OpExecutor
         }
 
         // (filter (anything else))
-        return super.execute(opFilter, input);
-        }
+        return filter(exec(opFilter.getSubOp(), input), opFilter.getExprs(), execCxt);
+    }
+
+    /** Filter, testing terms by NodeId where possible. */
+    private static QueryIterator filter(QueryIterator qIter, ExprList exprs, ExecutionContext execCxt)
+    {
+        NodeTable nodeTable = SolverLibTDB.nodeTable(execCxt);
+        for ( Expr expr : exprs )
+            qIter = QueryIterFilterNodeId.create(qIter, expr, nodeTable, execCxt);
+        return qIter;
+    }
 
     // ---- Triple patterns
 
@@ -163,6 +215,15 @@ public class OpExecutorTDB2 extends OpExecutor
         return optimizeExecuteQuads(ds, input, gn, bgp, null, execCxt);
     }
 
+    @Override
+    protected QueryIterator execute(OpPath opPath, QueryIterator input)
+    {
+        if ( ! isForTDB || ! execCxt.getContext().isTrueOrUndef(SystemTDB.symPathNodeId) )
+            return super.execute(opPath, input);
+        GraphTDB graph = (GraphTDB)execCxt.getActiveGraph();
+        return QueryIterPathTDB.create(opPath.getTriplePath(), graph, input, execCxt);
+    }
+
     @Override
     protected QueryIterator execute(OpGraph opGraph, QueryIterator input)
     {
@@ -193,6 +254,7 @@ public class OpExecutorTDB2 extends OpExecutor
     {
         if ( !input.hasNext() )
             return input;
+        boolean rootInput = isRootInput(input);
 
         // -- Input
         // Must pass this iterator into the next stage.
@@ -207,8 +269,20 @@ public class OpExecutorTDB2 extends OpExecutor
         }
 
         if ( exprs == null ) {
-            Explain.explain("Execute", pattern, execCxt.getContext());
             Predicate<Tuple<NodeId>> filter = QC2.getFilter(execCxt.getContext());
+            if ( rootInput && useLeapfrog(execCxt) ) {
+                QueryIterator qIter = PatternMatchTDB2.executeLeapfrog(dsgtdb, Quad.defaultGraphNodeGenerated, pattern, input, filter, execCxt);
+                if ( qIter != null )
+                    return qIter;
+            }
+            if ( rootInput && pattern.size() >= 2 && QueryIterParallel.isEnabled(execCxt) )
+                return executeParallel(dsgtdb, Quad.defaultGraphNodeGenerated, pattern, input, filter, execCxt);
+            if ( rootInput && useMergeJoin(execCxt) ) {
+                QueryIterator qIter = PatternMatchTDB2.executeMergeJoin(dsgtdb, Quad.defaultGraphNodeGenerated, pattern, input, filter, execCxt);
+                if ( qIter != null )
+                    return qIter;
+            }
+            Explain.explain("Execute", pattern, execCxt.getContext());
             return PatternMatchTDB2.execute(dsgtdb, Quad.defaultGraphNodeGenerated, pattern, input, filter, execCxt);
         }
         // -- Filter placement
@@ -231,6 +305,7 @@ public class OpExecutorTDB2 extends OpExecutor
         gn = decideGraphNode(gn, execCxt);
         if ( gn == null )
             return optimizeExecuteTriples(dsgtdb, input, bgp, exprs, execCxt);
+        boolean rootInput = isRootInput(input);
 
         // ---- Execute quads+filters
         if ( bgp.size() >= 2 ) {
@@ -245,8 +320,20 @@ public class OpExecutorTDB2 extends OpExecutor
 
         if ( exprs == null ) {
             // Triple-backed (but may be named as explicit default graph).
-            Explain.explain("Execute", bgp, execCxt.getContext());
             Predicate<Tuple<NodeId>> filter = QC2.getFilter(execCxt.getContext());
+            if ( rootInput && useLeapfrog(execCxt) ) {
+                QueryIterator qIter = PatternMatchTDB2.executeLeapfrog(dsgtdb, gn, bgp, input, filter, execCxt);
+                if ( qIter != null )
+                    return qIter;
+            }
+            if ( rootInput && bgp.size() >= 2 && QueryIterParallel.isEnabled(execCxt) )
+                return executeParallel(dsgtdb, gn, bgp, input, filter, execCxt);
+            if ( rootInput && useMergeJoin(execCxt) ) {
+                QueryIterator qIter = PatternMatchTDB2.executeMergeJoin(dsgtdb, gn, bgp, input, filter, execCxt);
+                if ( qIter != null )
+                    return qIter;
+            }
+            Explain.explain("Execute", bgp, execCxt.getContext());
             return PatternMatchTDB2.execute(dsgtdb, gn, bgp, input, filter, execCxt);
         }
 
@@ -255,6 +342,45 @@ public class OpExecutorTDB2 extends OpExecutor
         return plainExecute(op, input, execCxt);
     }
 
+    /**
+     * Whether the input is the start of execution: a single binding with no
+     * variables. A basic graph pattern with this input can start with a merge join
+     * or, if it is cyclic, be executed as a leapfrog triejoin.
+     */
+    private static boolean isRootInput(QueryIterator input)
+    {
+        return input instanceof QueryIterRoot root && root.isJoinIdentity();
+    }
+
+    /**
+     * Execute a basic graph pattern, already reordered, by scanning the first triple
+     * pattern and partitioning the matches between worker threads, each executing the
+     * rest of the pattern (see {@link QueryIterParallel}).
+     */
+    private static QueryIterator executeParallel(DatasetGraphTDB dsgtdb, Node gn, BasicPattern pattern,
+                                                 QueryIterator input, Predicate<Tuple<NodeId>> filter,
+                                                 ExecutionContext execCxt)
+    {
+        BasicPattern first = new BasicPattern();
+        first.add(pattern.get(0));
+        BasicPattern rest = new BasicPattern();
+        for ( int i = 1 ; i < pattern.size() ; i++ )
+            rest.add(pattern.get(i));
+        Explain.explain("Execute/parallel", pattern, execCxt.getContext());
+        QueryIterator scan = PatternMatchTDB2.execute(dsgtdb, gn, first, input, filter, execCxt);
+        return QueryIterParallel.partition(scan, in -> PatternMatchTDB2.execute(dsgtdb, gn, rest, in, filter, execCxt), execCxt);
+    }
+
+    private static boolean useMergeJoin(ExecutionContext execCxt)
+    {
+        return execCxt.getContext().isTrueOrUndef(SystemTDB.symMergeJoin);
+    }
+
+    private static boolean useLeapfrog(ExecutionContext execCxt)
+    {
+        return execCxt.getContext().isTrueOrUndef(SystemTDB.symLeapfrogJoin);
+    }
+
     /** Execute without modification of the op - does <b>not</b> apply special graph name translations */
     private static QueryIterator plainExecute(Op op, QueryIterator input, ExecutionContext execCxt)
     {
@@ -419,5 +545,12 @@ public class OpExecutorTDB2 extends OpExecutor
             Log.warn(this, "Non-DatasetGraphTDB passed to OpExecutorPlainTDB");
             return super.execute(opQuadPattern, input);
         }
+
+        @Override
+        public QueryIterator execute(OpFilter opFilter, QueryIterator input)
+        {
+            // Filters placed within a basic graph pattern.
+            return filter(exec(opFilter.getSubOp(), input), opFilter.getExprs(), execCxt);
+        }
     }
 }
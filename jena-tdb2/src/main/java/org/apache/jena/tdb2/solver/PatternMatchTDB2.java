@@ -35,14 +35,18 @@ import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.sparql.engine.ExecutionContext;
 import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
 import org.apache.jena.sparql.engine.iterator.Abortable;
 import org.apache.jena.sparql.engine.iterator.QueryIterAbortable;
+import org.apache.jena.sparql.engine.main.solver.SolverAdaptive;
+import org.apache.jena.sparql.mgt.Explain;
 import org.apache.jena.tdb2.TDBException;
 import org.apache.jena.tdb2.store.DatasetGraphTDB;
 import org.apache.jena.tdb2.store.GraphTDB;
 import org.apache.jena.tdb2.store.NodeId;
 import org.apache.jena.tdb2.store.nodetable.NodeTable;
 import org.apache.jena.tdb2.store.nodetupletable.NodeTupleTable;
+import org.apache.jena.tdb2.sys.SystemTDB;
 
 /**
  * Entry to the basic pattern solver for TDB2.
@@ -73,6 +77,71 @@ public class PatternMatchTDB2 {
         return execute(ntt, graphNode, pattern, input, filter, execCxt);
     }
 
+    /**
+     * Execute a basic graph pattern starting with a merge join of the first triple
+     * pattern with another triple pattern ({@link MergeJoinTDB}). The input must be
+     * the single, empty binding at the start of query execution. Returns null if
+     * there is no suitable merge join, in which case the input has not been used.
+     */
+    public static QueryIterator executeMergeJoin(DatasetGraphTDB ds, Node graphNode, BasicPattern pattern,
+                                                 QueryIterator input, Predicate<Tuple<NodeId>> filter,
+                                                 ExecutionContext execCxt)
+    {
+        if ( Quad.isDefaultGraph(graphNode) )
+            graphNode = null;
+        if ( Quad.isUnionGraph(graphNode) )
+            return null;
+        NodeTupleTable ntt = ds.chooseNodeTupleTable(graphNode);
+        MergeJoinTDB.Plan plan = MergeJoinTDB.plan(ntt, graphNode, pattern);
+        if ( plan == null )
+            return null;
+        Explain.explain(execCxt.getContext(), "Execute: %s", plan);
+        Binding parent = input.next();
+        Iterator<BindingNodeId> chain = MergeJoinTDB.execute(plan, ntt, graphNode, parent, filter);
+        List<Triple> rest = plan.pattern.getList().subList(2, plan.pattern.size());
+        return solve(ntt, graphNode, rest, chain, input, filter, execCxt);
+    }
+
+    /**
+     * Execute a cyclic basic graph pattern as a leapfrog triejoin ({@link LeapfrogTDB}).
+     * The input must be the single, empty binding at the start of query execution.
+     * Returns null if the pattern is not cyclic or not suitable, or a pattern that
+     * is sorted in memory has more matches than the limit set by
+     * {@link SystemTDB#symLeapfrogSortLimit}, in which case the input has not been used.
+     */
+    public static QueryIterator executeLeapfrog(DatasetGraphTDB ds, Node graphNode, BasicPattern pattern,
+                                                QueryIterator input, Predicate<Tuple<NodeId>> filter,
+                                                ExecutionContext execCxt)
+    {
+        // The join works on partial tuples; tuple filters are not supported.
+        if ( filter != null )
+            return null;
+        if ( Quad.isDefaultGraph(graphNode) )
+            graphNode = null;
+        if ( Quad.isUnionGraph(graphNode) )
+            return null;
+        NodeTupleTable ntt = ds.chooseNodeTupleTable(graphNode);
+        LeapfrogTDB.Plan plan = LeapfrogTDB.plan(ntt, graphNode, pattern);
+        if ( plan == null )
+            return null;
+        // The input binding is empty so it is only taken when the leapfrog triejoin is used.
+        Binding parent = BindingFactory.root();
+        Iterator<BindingNodeId> chain = LeapfrogTDB.execute(plan, ntt, graphNode, parent, leapfrogSortLimit(execCxt));
+        if ( chain == null ) {
+            Explain.explain(execCxt.getContext(), "Too many matches to sort: %s", plan);
+            return null;
+        }
+        Explain.explain(execCxt.getContext(), "Execute: %s", plan);
+        input.next();
+        return solve(ntt, graphNode, List.of(), chain, input, filter, execCxt);
+    }
+
+    private static long leapfrogSortLimit(ExecutionContext execCxt) {
+        if ( execCxt == null || execCxt.getContext() == null )
+            return SystemTDB.LeapfrogSortLimit;
+        return execCxt.getContext().getLong(SystemTDB.symLeapfrogSortLimit, SystemTDB.LeapfrogSortLimit);
+    }
+
     // The worker.  Callers choose the NodeTupleTable.
     //     graphNode may be Node.ANY, meaning we should make triples unique.
     //     graphNode may be null, meaning default graph
@@ -87,7 +156,6 @@ public class PatternMatchTDB2 {
             graphNode = null;
 
         List<Triple> triples = pattern.getList();
-        boolean anyGraph = (graphNode == null ? false : (Node.ANY.equals(graphNode)));
 
         int tupleLen = nodeTupleTable.getTupleTable().getTupleLen();
         if ( graphNode == null ) {
@@ -101,32 +169,53 @@ public class PatternMatchTDB2 {
         // Convert from a QueryIterator (Bindings of Var/Node) to BindingNodeId
         NodeTable nodeTable = nodeTupleTable.getNodeTable();
         Iterator<BindingNodeId> chain = Iter.map(input, SolverLibTDB.convFromBinding(nodeTable));
-        List<Abortable> killList = new ArrayList<>();
+        return solve(nodeTupleTable, graphNode, triples, chain, input, filter, execCxt);
+    }
 
-        for ( Triple triple : triples ) {
-            Tuple<Node> patternTuple = null;
-            if ( graphNode == null )
-                // 3-tuples
-                patternTuple = TupleFactory.create3(triple.getSubject(), triple.getPredicate(), triple.getObject());
-            else
-                // 4-tuples.
-                patternTuple = TupleFactory.create4(graphNode, triple.getSubject(), triple.getPredicate(), triple.getObject());
-            // Plain RDF, no RDF-star
-            // chain = solve(nodeTupleTable, tuple, anyGraph, chain, filter, execCxt)
-            // ;
-            // RDF-star SA
-            chain = matchQuadPattern(chain, graphNode, triple, nodeTupleTable, patternTuple, anyGraph, filter, execCxt);
-
-            chain = makeAbortable(chain, killList);
+    /** Add the triple patterns to the chain of BindingNodeId and convert to bindings at the end. */
+    private static QueryIterator solve(NodeTupleTable nodeTupleTable, Node graphNode, List<Triple> triples,
+                                       Iterator<BindingNodeId> chain, QueryIterator input,
+                                       Predicate<Tuple<NodeId>> filter, ExecutionContext execCxt)
+    {
+        boolean anyGraph = (graphNode == null ? false : (Node.ANY.equals(graphNode)));
+        NodeTable nodeTable = nodeTupleTable.getNodeTable();
+        List<Abortable> killList = new ArrayList<>();
+        chain = makeAbortable(chain, killList);
+
+        if ( SolverAdaptive.isEnabled(execCxt) ) {
+            // Join order chosen at runtime by sampling the partial results.
+            chain = SolverAdaptive.execute(chain, triples,
+                                           (iter, triple) -> matchQuadPattern(iter, graphNode, triple, nodeTupleTable,
+                                                                              patternTuple(graphNode, triple), anyGraph, filter, execCxt),
+                                           iter -> makeAbortable(iter, killList));
+        } else {
+            for ( Triple triple : triples ) {
+                Tuple<Node> patternTuple = patternTuple(graphNode, triple);
+                // Plain RDF, no RDF-star
+                // chain = solve(nodeTupleTable, tuple, anyGraph, chain, filter, execCxt)
+                // ;
+                // RDF-star SA
+                chain = matchQuadPattern(chain, graphNode, triple, nodeTupleTable, patternTuple, anyGraph, filter, execCxt);
+
+                chain = makeAbortable(chain, killList);
+            }
         }
 
-        Iterator<Binding> iterBinding = SolverLibTDB.convertToNodes(chain, nodeTable);
+        Iterator<Binding> iterBinding = SolverLibTDB.convertToNodes(chain, nodeTable, SolverLibTDB.resolveBatchSize(execCxt));
 
         // "input" will be closed by QueryIterAbortable but is otherwise unused.
         // "killList" will be aborted on timeout.
         return new QueryIterAbortable(iterBinding, killList, input, execCxt);
     }
 
+    private static Tuple<Node> patternTuple(Node graphNode, Triple triple) {
+        if ( graphNode == null )
+            // 3-tuples
+            return TupleFactory.create3(triple.getSubject(), triple.getPredicate(), triple.getObject());
+        // 4-tuples.
+        return TupleFactory.create4(graphNode, triple.getSubject(), triple.getPredicate(), triple.getObject());
+    }
+
     private static Iterator<BindingNodeId> matchQuadPattern(Iterator<BindingNodeId> chain, Node graphNode, Triple tPattern,
                                                             NodeTupleTable nodeTupleTable, Tuple<Node> patternTuple, boolean anyGraph,
                                                             Predicate<Tuple<NodeId>> filter, ExecutionContext execCxt) {
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.jena.atlas.io.IndentedWriter;
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingProjectNamed;
+import org.apache.jena.sparql.engine.iterator.QueryIter1;
+import org.apache.jena.sparql.serializer.SerializationContext;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+
+/**
+ * DISTINCT and REDUCED, comparing bindings by NodeId (see {@link BindingKeyTDB})
+ * so results are not turned into Nodes to test whether they have been seen.
+ * <p>
+ * All keys for DISTINCT are kept in memory; it does not spill to disk.
+ * For REDUCED, only the previous binding is remembered.
+ */
+public class QueryIterDistinctTDB extends QueryIter1
+{
+    private final NodeTable nodeTable;
+    private final boolean reduced;
+    private Set<BindingKeyTDB> seen = new HashSet<>();
+    private BindingKeyTDB previous = null;
+    private Binding slot = null;
+
+    public static QueryIterator distinct(QueryIterator input, NodeTable nodeTable, ExecutionContext execCxt) {
+        return new QueryIterDistinctTDB(input, nodeTable, false, execCxt);
+    }
+
+    public static QueryIterator reduced(QueryIterator input, NodeTable nodeTable, ExecutionContext execCxt) {
+        return new QueryIterDistinctTDB(input, nodeTable, true, execCxt);
+    }
+
+    private QueryIterDistinctTDB(QueryIterator input, NodeTable nodeTable, boolean reduced, ExecutionContext execCxt) {
+        super(input, execCxt);
+        this.nodeTable = nodeTable;
+        this.reduced = reduced;
+    }
+
+    @Override
+    protected boolean hasNextBinding() {
+        if ( slot != null )
+            return true;
+        while ( getInput().hasNext() ) {
+            Binding b = getInput().nextBinding();
+            BindingKeyTDB key = BindingKeyTDB.create(b, nodeTable);
+            if ( isFreshSighting(key) ) {
+                // Hide unnamed and internal variables, as QueryIterDistinct does.
+                slot = new BindingProjectNamed(b);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isFreshSighting(BindingKeyTDB key) {
+        if ( reduced ) {
+            if ( key.equals(previous) )
+                return false;
+            previous = key;
+            return true;
+        }
+        return seen.add(key);
+    }
+
+    @Override
+    protected Binding moveToNextBinding() {
+        Binding b = slot;
+        slot = null;
+        return b;
+    }
+
+    @Override
+    protected void closeSubIterator() {
+        seen = null;
+        previous = null;
+        slot = null;
+    }
+
+    @Override
+    protected void requestSubCancel() {}
+
+    @Override
+    protected void details(IndentedWriter out, SerializationContext sCxt) {
+        out.print(Lib.className(this));
+        out.print(reduced ? " reduced" : " distinct");
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import java.util.Objects;
+
+import org.apache.jena.atlas.io.IndentedWriter;
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.iterator.QueryIterFilterExpr;
+import org.apache.jena.sparql.engine.iterator.QueryIterProcessBinding;
+import org.apache.jena.sparql.expr.*;
+import org.apache.jena.sparql.serializer.SerializationContext;
+import org.apache.jena.sparql.util.ExprUtils;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+
+/**
+ * Filter by a term test that can be done on NodeIds, without turning them into Nodes.
+ * <ul>
+ * <li>{@code sameTerm(?x, ?y)}, {@code sameTerm(?x, term)}</li>
+ * <li>{@code ?x = <iri>}, {@code ?x != <iri>}: for an IRI, equality is the same as sameTerm.</li>
+ * </ul>
+ * Use {@link #create} which returns a general {@link QueryIterFilterExpr} for other expressions.
+ */
+public class QueryIterFilterNodeId extends QueryIterProcessBinding
+{
+    /** Filter by the expression, using NodeIds if possible. */
+    public static QueryIterator create(QueryIterator input, Expr expr, NodeTable nodeTable, ExecutionContext execCxt) {
+        if ( nodeTable != null && expr instanceof ExprFunction2 func ) {
+            boolean sameTerm = func instanceof E_SameTerm;
+            boolean equals = func instanceof E_Equals;
+            boolean notEquals = func instanceof E_NotEquals;
+            if ( sameTerm || equals || notEquals ) {
+                Expr arg1 = func.getArg1();
+                Expr arg2 = func.getArg2();
+                if ( arg2.isVariable() && ! arg1.isVariable() ) {
+                    Expr x = arg1;
+                    arg1 = arg2;
+                    arg2 = x;
+                }
+                if ( arg1.isVariable() ) {
+                    Var var1 = arg1.asVar();
+                    if ( sameTerm && arg2.isVariable() )
+                        return new QueryIterFilterNodeId(input, expr, var1, arg2.asVar(), null, false, nodeTable, execCxt);
+                    if ( arg2.isConstant() ) {
+                        Node n = arg2.getConstant().asNode();
+                        if ( sameTerm || n.isURI() )
+                            return new QueryIterFilterNodeId(input, expr, var1, null, n, notEquals, nodeTable, execCxt);
+                    }
+                }
+            }
+        }
+        return new QueryIterFilterExpr(input, expr, execCxt);
+    }
+
+    private final Expr expr;
+    private final Var var1;
+    private final Var var2;
+    private final Object constantKey;
+    private final boolean negate;
+    private final NodeTable nodeTable;
+
+    private QueryIterFilterNodeId(QueryIterator input, Expr expr, Var var1, Var var2, Node constant, boolean negate,
+                                  NodeTable nodeTable, ExecutionContext execCxt) {
+        super(input, execCxt);
+        this.expr = expr;
+        this.var1 = var1;
+        this.var2 = var2;
+        this.constantKey = ( constant == null ) ? null : BindingKeyTDB.nodeKey(constant, nodeTable);
+        this.negate = negate;
+        this.nodeTable = nodeTable;
+    }
+
+    @Override
+    public Binding accept(Binding binding) {
+        Object key1 = BindingKeyTDB.nodeKey(binding, var1, nodeTable);
+        if ( key1 == null )
+            // Unbound: evaluation error.
+            return null;
+        Object key2 = ( var2 != null ) ? BindingKeyTDB.nodeKey(binding, var2, nodeTable) : constantKey;
+        if ( key2 == null )
+            return null;
+        boolean same = Objects.equals(key1, key2);
+        return ( same != negate ) ? binding : null;
+    }
+
+    @Override
+    protected void details(IndentedWriter out, SerializationContext cxt) {
+        out.print(Lib.className(this));
+        out.print(" ");
+        ExprUtils.fmtSPARQL(out, expr, cxt);
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.jena.atlas.io.IndentedWriter;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.atlas.lib.tuple.Tuple;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.TriplePath;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.iterator.*;
+import org.apache.jena.sparql.mgt.Explain;
+import org.apache.jena.sparql.path.*;
+import org.apache.jena.sparql.pfunction.PropertyFunctionRegistry;
+import org.apache.jena.sparql.serializer.SerializationContext;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.tdb2.store.GraphTDB;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.NodeIdFactory;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+import org.apache.jena.tdb2.store.nodetupletable.NodeTupleTable;
+
+/**
+ * Evaluation of {@code :p*} and {@code :p+}, and their inverses, on NodeIds.
+ * <p>
+ * The search is breadth-first: each round looks up the links of every node of the
+ * frontier, in index order, and the nodes not seen before become the next
+ * frontier. Nodes already seen are recorded in a {@link NodeIdSet} of
+ * {@code long}s. When both ends of the path are bound, the search goes forwards
+ * from the subject and backwards from the object, expanding the smaller frontier
+ * each round, until the two meet. Results are {@link BindingTDB}s so nodes are
+ * only retrieved from the node table if they are used.
+ * <p>
+ * A path with neither end bound, or with a literal at a bound end (literals are
+ * matched by value), is evaluated by {@link PathLib}.
+ * <p>
+ * Use {@link #create} which returns a general {@link QueryIterPath} for other paths.
+ */
+public class QueryIterPathTDB extends QueryIterRepeatApply
+{
+    /** Evaluate the path, using NodeIds if possible. */
+    public static QueryIterator create(TriplePath triplePath, GraphTDB graph, QueryIterator input, ExecutionContext execCxt) {
+        Path path = triplePath.getPath();
+        // Tuple filters and the union graph are not supported.
+        if ( path != null && QC2.getFilter(execCxt.getContext()) == null && ! Quad.isUnionGraph(graph.getGraphName()) ) {
+            boolean forwards = true;
+            if ( path instanceof P_Inverse pInv ) {
+                path = pInv.getSubPath();
+                forwards = false;
+            }
+            if ( path instanceof P_ZeroOrMore1 || path instanceof P_OneOrMore1 ) {
+                boolean zeroLength = ( path instanceof P_ZeroOrMore1 );
+                Path step = ((P_Path1)path).getSubPath();
+                if ( step instanceof P_Inverse pInv ) {
+                    step = pInv.getSubPath();
+                    forwards = !forwards;
+                }
+                if ( step instanceof P_Link pLink && ! isPropertyFunction(pLink.getNode(), execCxt.getContext()) )
+                    return new QueryIterPathTDB(triplePath, graph, pLink.getNode(), forwards, zeroLength, input, execCxt);
+            }
+        }
+        return new QueryIterPath(triplePath, input, execCxt);
+    }
+
+    private static boolean isPropertyFunction(Node node, Context context) {
+        if ( ! node.isURI() )
+            return false;
+        return PropertyFunctionRegistry.chooseRegistry(context).isRegistered(node.getURI());
+    }
+
+    private final TriplePath triplePath;
+    private final NodeTupleTable nodeTupleTable;
+    private final NodeTable nodeTable;
+    private final Node graphNode;
+    private final Node property;
+    private final boolean forwards;
+    private final boolean zeroLength;
+    // Resolved on first use. Null means the property or the graph is not in the node table.
+    private NodeId[] pattern = null;
+    private boolean resolved = false;
+
+    private QueryIterPathTDB(TriplePath triplePath, GraphTDB graph, Node property, boolean forwards, boolean zeroLength,
+                             QueryIterator input, ExecutionContext execCxt) {
+        super(input, execCxt);
+        this.triplePath = triplePath;
+        this.nodeTupleTable = graph.getNodeTupleTable();
+        this.nodeTable = nodeTupleTable.getNodeTable();
+        this.graphNode = graph.getGraphName();
+        this.property = property;
+        this.forwards = forwards;
+        this.zeroLength = zeroLength;
+    }
+
+    @Override
+    protected QueryIterator nextStage(Binding binding) {
+        ExecutionContext execCxt = getExecContext();
+        Node s = Var.lookup(binding, triplePath.getSubject());
+        Node o = Var.lookup(binding, triplePath.getObject());
+        boolean sVar = Var.isVar(s);
+        boolean oVar = Var.isVar(o);
+        if ( ( sVar && oVar ) || ( !sVar && s.isLiteral() ) || ( !oVar && o.isLiteral() ) )
+            return PathLib.execTriplePath(binding, triplePath, execCxt);
+        Explain.explain(s, triplePath.getPath(), o, execCxt.getContext());
+
+        if ( !sVar && !oVar ) {
+            boolean b = connects(s, o);
+            return b ? QueryIterSingleton.create(binding, execCxt) : QueryIterNullIterator.create(execCxt);
+        }
+
+        // One end bound.
+        Node start = sVar ? o : s;
+        Var var = Var.alloc(sVar ? s : o);
+        boolean direction = sVar ? !forwards : forwards;
+        NodeId startId = nodeTable.getNodeIdForNode(start);
+        if ( NodeId.isDoesNotExist(startId) ) {
+            // Only the zero length path.
+            if ( zeroLength )
+                return QueryIterSingleton.create(binding, var, start, execCxt);
+            return QueryIterNullIterator.create(execCxt);
+        }
+        Frontier results = reach(NodeIdFactory.asLong(startId), direction);
+        Iterator<Binding> iter = Iter.map(results.iterator(), x -> {
+            BindingNodeId b = new BindingNodeId(binding);
+            b.put(var, NodeIdFactory.fromLong(x));
+            return new BindingTDB(b, nodeTable);
+        });
+        return QueryIterPlainWrapper.create(iter, execCxt);
+    }
+
+    /** The nodes reached from the start node, each once. */
+    private Frontier reach(long start, boolean direction) {
+        NodeIdSet visited = new NodeIdSet();
+        Frontier results = new Frontier();
+        Frontier frontier = Frontier.of(start);
+        if ( zeroLength )
+            visited.add(start);
+        else
+            frontier = expand(frontier, direction, visited, null);
+        while ( frontier.size > 0 ) {
+            results.addAll(frontier);
+            frontier = expand(frontier, direction, visited, null);
+        }
+        return results;
+    }
+
+    /** Test whether there is a path from {@code s} to {@code o}, searching from both ends. */
+    private boolean connects(Node s, Node o) {
+        if ( zeroLength && s.equals(o) )
+            return true;
+        NodeId sId = nodeTable.getNodeIdForNode(s);
+        NodeId oId = nodeTable.getNodeIdForNode(o);
+        if ( NodeId.isDoesNotExist(sId) || NodeId.isDoesNotExist(oId) )
+            return false;
+        long start = NodeIdFactory.asLong(sId);
+        long end = NodeIdFactory.asLong(oId);
+
+        NodeIdSet visitedFwd = new NodeIdSet();
+        NodeIdSet visitedBwd = new NodeIdSet();
+        visitedBwd.add(end);
+        Frontier frontierBwd = Frontier.of(end);
+        Frontier frontierFwd = Frontier.of(start);
+        if ( zeroLength )
+            visitedFwd.add(start);
+        else {
+            // path+ : the forward search starts one step out.
+            frontierFwd = expand(frontierFwd, forwards, visitedFwd, visitedBwd);
+            if ( frontierFwd == null )
+                return true;
+        }
+        while ( frontierFwd.size > 0 && frontierBwd.size > 0 ) {
+            if ( frontierFwd.size <= frontierBwd.size ) {
+                frontierFwd = expand(frontierFwd, forwards, visitedFwd, visitedBwd);
+                if ( frontierFwd == null )
+                    return true;
+            } else {
+                frontierBwd = expand(frontierBwd, !forwards, visitedBwd, visitedFwd);
+                if ( frontierBwd == null )
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * One step, in the given direction, from every node of the frontier. The nodes
+     * are looked up in index order. Returns the nodes not visited before, or null
+     * if a node in {@code other} has been reached.
+     */
+    private Frontier expand(Frontier frontier, boolean direction, NodeIdSet visited, NodeIdSet other) {
+        Frontier next = new Frontier();
+        NodeId[] pattern = pattern();
+        if ( pattern == null )
+            return next;
+        int offset = pattern.length - 3;
+        int slotFrom = offset + ( direction ? 0 : 2 );
+        int slotTo = offset + ( direction ? 2 : 0 );
+        frontier.sort();
+        for ( int i = 0 ; i < frontier.size ; i++ ) {
+            pattern[slotFrom] = NodeIdFactory.fromLong(frontier.items[i]);
+            pattern[slotTo] = NodeId.NodeIdAny;
+            Iterator<Tuple<NodeId>> iter = nodeTupleTable.find(pattern);
+            while ( iter.hasNext() ) {
+                long x = NodeIdFactory.asLong(iter.next().get(slotTo));
+                if ( other != null && other.contains(x) ) {
+                    Iter.close(iter);
+                    return null;
+                }
+                if ( visited.add(x) )
+                    next.add(x);
+            }
+        }
+        return next;
+    }
+
+    /** The lookup pattern with the graph and the property set, or null if they are not in the node table. */
+    private NodeId[] pattern() {
+        if ( ! resolved ) {
+            resolved = true;
+            NodeId propertyId = nodeTable.getNodeIdForNode(property);
+            NodeId graphId = ( graphNode == null ) ? null : nodeTable.getNodeIdForNode(graphNode);
+            if ( NodeId.isDoesNotExist(propertyId) || NodeId.isDoesNotExist(graphId) )
+                return null;
+            int offset = ( graphNode == null ) ? 0 : 1;
+            pattern = new NodeId[3+offset];
+            if ( graphNode != null )
+                pattern[0] = graphId;
+            pattern[offset+1] = propertyId;
+        }
+        return pattern;
+    }
+
+    /** A growable array of NodeIds in their 64 bit form. */
+    private static class Frontier {
+        long[] items = new long[16];
+        int size = 0;
+
+        static Frontier of(long x) {
+            Frontier f = new Frontier();
+            f.add(x);
+            return f;
+        }
+
+        void add(long x) {
+            if ( size == items.length )
+                items = Arrays.copyOf(items, 2 * size);
+            items[size++] = x;
+        }
+
+        void addAll(Frontier other) {
+            for ( int i = 0 ; i < other.size ; i++ )
+                add(other.items[i]);
+        }
+
+        /** Sort into index order (unsigned). */
+        void sort() {
+            for ( int i = 0 ; i < size ; i++ )
+                items[i] ^= Long.MIN_VALUE;
+            Arrays.sort(items, 0, size);
+            for ( int i = 0 ; i < size ; i++ )
+                items[i] ^= Long.MIN_VALUE;
+        }
+
+        Iterator<Long> iterator() {
+            return Arrays.stream(items, 0, size).iterator();
+        }
+    }
+
+    @Override
+    protected void details(IndentedWriter out, SerializationContext sCxt) {
+        out.print(Lib.className(this));
+        out.println();
+        out.incIndent();
+        out.print(triplePath.toString());
+        out.decIndent();
+    }
+}
@@ -40,12 +40,14 @@ import org.apache.jena.sparql.engine.iterator.QueryIterAbortable;
 import org.apache.jena.sparql.engine.iterator.QueryIterNullIterator;
 import org.apache.jena.tdb2.lib.NodeLib;
 import org.apache.jena.tdb2.store.DatasetGraphTDB;
+import org.apache.jena.tdb2.store.GraphTDB;
 import org.apache.jena.tdb2.store.NodeId;
 import org.apache.jena.tdb2.store.NodeIdFactory;
 import org.apache.jena.tdb2.store.nodetable.NodeTable;
 import org.apache.jena.tdb2.store.nodetupletable.NodeTupleTable;
 import org.apache.jena.tdb2.store.tupletable.TupleIndex;
 import org.apache.jena.tdb2.store.tupletable.TupleIndexRecord;
+import org.apache.jena.tdb2.sys.SystemTDB;
 import org.apache.jena.tdb2.sys.TDBInternal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,6 +66,25 @@ public class SolverLibTDB
     static Iterator<Binding> convertToNodes(Iterator<BindingNodeId> iterBindingIds, NodeTable nodeTable)
     { return Iter.map(iterBindingIds, bindingNodeIds -> convToBinding(bindingNodeIds, nodeTable)); }
 
+    /**
+     * Convert from Iterator<BindingNodeId> to Iterator<Binding>.
+     * If {@code batchSize} is greater than one, bindings are read ahead in blocks
+     * of that size and NodeIds are turned into Nodes for the whole block at once
+     * (see {@link BindingTDBBatch}); otherwise conversion is "on demand".
+     */
+    static Iterator<Binding> convertToNodes(Iterator<BindingNodeId> iterBindingIds, NodeTable nodeTable, int batchSize) {
+        if ( batchSize <= 1 )
+            return convertToNodes(iterBindingIds, nodeTable);
+        return BindingTDBBatch.convertToNodes(iterBindingIds, nodeTable, batchSize);
+    }
+
+    /** The batch size for converting bindings to nodes for this execution. */
+    static int resolveBatchSize(ExecutionContext execCxt) {
+        if ( execCxt == null || execCxt.getContext() == null )
+            return SystemTDB.BindingResolveBatchSize;
+        return execCxt.getContext().getInt(SystemTDB.symBindingResolveBatchSize, SystemTDB.BindingResolveBatchSize);
+    }
+
     static Binding convToBinding(BindingNodeId bindingNodeIds, NodeTable nodeTable) {
         if ( true )
             return new BindingTDB(bindingNodeIds, nodeTable);
@@ -80,6 +101,16 @@ public class SolverLibTDB
         }
     }
 
+    /**
+     * The node table for the TDB2 storage of the execution,
+     * or null if the active graph is not a TDB2 graph.
+     */
+    static NodeTable nodeTable(ExecutionContext execCxt) {
+        if ( execCxt.getActiveGraph() instanceof GraphTDB graphTDB )
+            return graphTDB.getDSG().getTripleTable().getNodeTupleTable().getNodeTable();
+        return null;
+    }
+
     // Transform : Binding ==> BindingNodeId
     static Iterator<BindingNodeId> convFromBinding(Iterator<Binding> input, NodeTable nodeTable) {
         return Iter.map(input, SolverLibTDB.convFromBinding(nodeTable));
@@ -26,6 +26,7 @@ import org.apache.jena.sparql.core.BasicPattern;
 import org.apache.jena.sparql.engine.ExecutionContext;
 import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.main.StageGenerator;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
 import org.apache.jena.tdb2.store.GraphTDB;
 import org.apache.jena.tdb2.store.GraphViewSwitchable;
 import org.apache.jena.tdb2.store.NodeId;
@@ -55,4 +56,15 @@ public class StageGeneratorDirectTDB implements StageGenerator {
         Predicate<Tuple<NodeId>> filter = QC2.getFilter(execCxt.getContext());
         return PatternMatchTDB2.execute(graph, pattern, input, filter, execCxt);
     }
+
+    @Override
+    public ReorderTransformation getReorderTransformation(ExecutionContext execCxt) {
+        Graph g = execCxt.getActiveGraph();
+        if ( g instanceof GraphViewSwitchable gvs )
+            g = gvs.getBaseGraph();
+        if ( !(g instanceof GraphTDB) )
+            return above.getReorderTransformation(execCxt);
+        // No reordering.
+        return null;
+    }
 }
@@ -0,0 +1,421 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver.stats;
+
+import static org.apache.jena.sparql.sse.Item.addPair;
+import static org.apache.jena.sparql.sse.Item.createTagged;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+
+import org.apache.jena.atlas.lib.DateTimeUtils;
+import org.apache.jena.atlas.logging.Log;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.ARQException;
+import org.apache.jena.sparql.engine.optimizer.StatsMatcher;
+import org.apache.jena.sparql.graph.NodeConst;
+import org.apache.jena.sparql.sse.Item;
+import org.apache.jena.sparql.sse.ItemList;
+import org.apache.jena.sparql.sse.ItemWriter;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.sparql.util.NodeFactoryExtra;
+
+/**
+ * Statistics for cardinality estimation: per predicate counts with the number of
+ * distinct subjects and objects, HyperLogLog sketches of the subjects and objects,
+ * {@code rdf:type} counts and the characteristic sets (the sets of predicates used
+ * together by a subject, with the number of such subjects and the number of triples
+ * for each predicate).
+ * <p>
+ * Pair-wise predicate co-occurrence is derived from these: for subject-subject
+ * ("star") joins from the characteristic sets and for other joins from the
+ * intersection of the sketches.
+ * <p>
+ * The file form is an SSE tagged "{@code cardinality}". See {@link ReorderCardinality}.
+ */
+public class CardinalityStats {
+    public static final String CARDINALITY  = "cardinality";
+    public static final String PREDICATE    = "predicate";
+    public static final String TYPE         = "type";
+    public static final String CHARSET      = "charset";
+    private static final String SUBJECTS    = "subjects";
+    private static final String OBJECTS     = "objects";
+    private static final String SKETCH_S    = "subjectSketch";
+    private static final String SKETCH_O    = "objectSketch";
+
+    /** Statistics for one predicate. */
+    public static class PredicateStats {
+        public long count;
+        /** Number of distinct subjects. */
+        public long subjects;
+        /** Estimate of the number of distinct objects. */
+        public long objects;
+        public final HyperLogLog subjectSketch;
+        public final HyperLogLog objectSketch;
+
+        public PredicateStats(long count, long subjects, long objects, HyperLogLog subjectSketch, HyperLogLog objectSketch) {
+            this.count = count;
+            this.subjects = subjects;
+            this.objects = objects;
+            this.subjectSketch = subjectSketch;
+            this.objectSketch = objectSketch;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[count=%d, subjects=%d, objects=%d]", count, subjects, objects);
+        }
+    }
+
+    /** A characteristic set: the number of subjects with exactly these predicates, and the number of triples for each predicate. */
+    public static class CharacteristicSet {
+        public long subjects;
+        public final Map<Node, Long> occurrences;
+
+        public CharacteristicSet(long subjects, Map<Node, Long> occurrences) {
+            this.subjects = subjects;
+            this.occurrences = occurrences;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[subjects=%d, %s]", subjects, occurrences);
+        }
+    }
+
+    /** Which position of a triple pattern. */
+    public enum Slot { SUBJECT, OBJECT }
+
+    private long count;
+    private final HyperLogLog subjectSketch;
+    private final HyperLogLog objectSketch;
+    private final Map<Node, PredicateStats> predicates;
+    private final Map<Node, Long> types;
+    private final List<CharacteristicSet> charSets;
+
+    public CardinalityStats(long count, HyperLogLog subjectSketch, HyperLogLog objectSketch,
+                            Map<Node, PredicateStats> predicates, Map<Node, Long> types,
+                            List<CharacteristicSet> charSets) {
+        this.count = count;
+        this.subjectSketch = subjectSketch;
+        this.objectSketch = objectSketch;
+        this.predicates = predicates;
+        this.types = types;
+        this.charSets = charSets;
+    }
+
+    /** Number of triples. */
+    public long getCount() {
+        return count;
+    }
+
+    /** Estimate of the number of distinct subjects. */
+    public long getSubjects() {
+        return subjectSketch.estimate();
+    }
+
+    /** Estimate of the number of distinct objects. */
+    public long getObjects() {
+        return objectSketch.estimate();
+    }
+
+    public HyperLogLog getSubjectSketch() {
+        return subjectSketch;
+    }
+
+    public HyperLogLog getObjectSketch() {
+        return objectSketch;
+    }
+
+    public Map<Node, PredicateStats> getPredicates() {
+        return predicates;
+    }
+
+    /** Statistics for a predicate or null if it is not known. */
+    public PredicateStats getPredicate(Node predicate) {
+        return predicates.get(predicate);
+    }
+
+    public Map<Node, Long> getTypes() {
+        return types;
+    }
+
+    /** Number of subjects of a type, or -1 if not recorded. */
+    public long getTypeCount(Node type) {
+        return types.getOrDefault(type, -1L);
+    }
+
+    public List<CharacteristicSet> getCharacteristicSets() {
+        return charSets;
+    }
+
+    /**
+     * Estimate of the number of solutions of a star of triple patterns with the same
+     * subject variable, the given predicates and distinct object variables.
+     * Returns -1 if there are no characteristic sets.
+     */
+    public double estimateStar(Collection<Node> starPredicates) {
+        if ( charSets.isEmpty() )
+            return -1;
+        double total = 0;
+        for ( CharacteristicSet cs : charSets ) {
+            if ( ! cs.occurrences.keySet().containsAll(starPredicates) )
+                continue;
+            // Subjects times the average number of triples per subject for each predicate.
+            double x = cs.subjects;
+            for ( Node p : starPredicates )
+                x = x * cs.occurrences.get(p) / cs.subjects;
+            total += x;
+        }
+        return total;
+    }
+
+    /**
+     * Estimate of the number of distinct terms that occur in {@code slot1} of triples
+     * with predicate {@code p1} and in {@code slot2} of triples with predicate
+     * {@code p2}. A null predicate means any predicate. Returns -1 if not known.
+     */
+    public long estimateOverlap(Node p1, Slot slot1, Node p2, Slot slot2) {
+        HyperLogLog sketch1 = sketch(p1, slot1);
+        HyperLogLog sketch2 = sketch(p2, slot2);
+        if ( sketch1 == null || sketch2 == null )
+            return -1;
+        return HyperLogLog.estimateIntersection(sketch1, sketch2);
+    }
+
+    private HyperLogLog sketch(Node p, Slot slot) {
+        if ( p == null )
+            return slot == Slot.SUBJECT ? subjectSketch : objectSketch;
+        PredicateStats ps = predicates.get(p);
+        if ( ps == null )
+            return null;
+        return slot == Slot.SUBJECT ? ps.subjectSketch : ps.objectSketch;
+    }
+
+    // ---- Changes
+
+    /**
+     * Record the addition of a triple.
+     * The distinct subject and object counts are updated from the sketches.
+     */
+    public void add(Node s, Node p, Node o) {
+        count++;
+        long hashSubject = hash(s);
+        long hashObject = hash(o);
+        subjectSketch.add(hashSubject);
+        objectSketch.add(hashObject);
+        PredicateStats ps = predicates.computeIfAbsent(p, x -> new PredicateStats(0, 0, 0, new HyperLogLog(), new HyperLogLog()));
+        ps.count++;
+        ps.subjectSketch.add(hashSubject);
+        ps.objectSketch.add(hashObject);
+        if ( NodeConst.nodeRDFType.equals(p) )
+            types.merge(o, 1L, Long::sum);
+    }
+
+    /**
+     * Record the deletion of a triple. Sketches can not remove items so, after
+     * deletes, the distinct subject and object counts are overestimates.
+     */
+    public void delete(Node s, Node p, Node o) {
+        count--;
+        PredicateStats ps = predicates.computeIfAbsent(p, x -> new PredicateStats(0, 0, 0, new HyperLogLog(), new HyperLogLog()));
+        ps.count--;
+        if ( NodeConst.nodeRDFType.equals(p) )
+            types.merge(o, -1L, Long::sum);
+    }
+
+    /**
+     * Apply the changes, recorded by {@link #add} and {@link #delete} on statistics
+     * starting from {@link #empty}, to these statistics.
+     */
+    public void apply(CardinalityStats delta) {
+        count = Math.max(0, count + delta.count);
+        subjectSketch.merge(delta.subjectSketch);
+        objectSketch.merge(delta.objectSketch);
+        delta.predicates.forEach((p, change) -> {
+            PredicateStats ps = predicates.computeIfAbsent(p, x -> new PredicateStats(0, 0, 0, new HyperLogLog(), new HyperLogLog()));
+            ps.count += change.count;
+            if ( ps.count <= 0 ) {
+                predicates.remove(p);
+                return;
+            }
+            ps.subjectSketch.merge(change.subjectSketch);
+            ps.objectSketch.merge(change.objectSketch);
+            ps.subjects = Math.min(ps.count, Math.max(ps.subjects, ps.subjectSketch.estimate()));
+            ps.objects = Math.min(ps.count, Math.max(ps.objects, ps.objectSketch.estimate()));
+        });
+        delta.types.forEach((t, change) -> {
+            long n = types.getOrDefault(t, 0L) + change;
+            if ( n <= 0 )
+                types.remove(t);
+            else
+                types.put(t, n);
+        });
+    }
+
+    /** Return a copy of these statistics. */
+    public CardinalityStats copy() {
+        Map<Node, PredicateStats> predicates2 = new HashMap<>();
+        predicates.forEach((p, ps) -> predicates2.put(p, new PredicateStats(ps.count, ps.subjects, ps.objects,
+                                                                          ps.subjectSketch.copy(), ps.objectSketch.copy())));
+        List<CharacteristicSet> charSets2 = new ArrayList<>();
+        charSets.forEach(cs -> charSets2.add(new CharacteristicSet(cs.subjects, new HashMap<>(cs.occurrences))));
+        return new CardinalityStats(count, subjectSketch.copy(), objectSketch.copy(), predicates2, new HashMap<>(types), charSets2);
+    }
+
+    /** Hash of a node for the sketches. */
+    public static long hash(Node node) {
+        return HyperLogLog.hash(node.hashCode());
+    }
+
+    // ---- Read and write
+
+    /** Read statistics from a file. */
+    public static CardinalityStats read(String filename) {
+        Item item = SSE.readFile(filename);
+        if ( ! item.isTagged(CARDINALITY) )
+            throw new ARQException("Not a cardinality stats file: " + filename);
+        return parse(item);
+    }
+
+    /** Parse statistics from a string. */
+    public static CardinalityStats parse(String string) {
+        Item item = SSE.parse(string);
+        if ( ! item.isTagged(CARDINALITY) )
+            throw new ARQException("Not cardinality stats: " + item.shortString());
+        return parse(item);
+    }
+
+    /** Write statistics to a file. */
+    public void write(String filename) {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(filename))) {
+            write(out);
+        } catch (IOException ex) {
+            Log.warn(CardinalityStats.class, "Problem when writing stats file", ex);
+        }
+    }
+
+    /** Write statistics. */
+    public void write(OutputStream output) {
+        ItemWriter.write(output, format());
+    }
+
+    public Item format() {
+        Item stats = Item.createList();
+        ItemList statsList = stats.getList();
+        statsList.add(CARDINALITY);
+
+        Item meta = createTagged(StatsMatcher.META);
+        addPair(meta.getList(), "timestamp", NodeFactoryExtra.nowAsDateTime());
+        addPair(meta.getList(), "run@", DateTimeUtils.nowAsString());
+        addPair(meta.getList(), StatsMatcher.COUNT, NodeFactoryExtra.intToNode(count));
+        addPair(meta.getList(), SKETCH_S, subjectSketch.encode());
+        addPair(meta.getList(), SKETCH_O, objectSketch.encode());
+        statsList.add(meta);
+
+        for ( Map.Entry<Node, PredicateStats> e : predicates.entrySet() ) {
+            PredicateStats ps = e.getValue();
+            Item x = createTagged(PREDICATE);
+            x.getList().add(e.getKey());
+            addPair(x.getList(), StatsMatcher.COUNT, NodeFactoryExtra.intToNode(ps.count));
+            addPair(x.getList(), SUBJECTS, NodeFactoryExtra.intToNode(ps.subjects));
+            addPair(x.getList(), OBJECTS, NodeFactoryExtra.intToNode(ps.objects));
+            addPair(x.getList(), SKETCH_S, ps.subjectSketch.encode());
+            addPair(x.getList(), SKETCH_O, ps.objectSketch.encode());
+            statsList.add(x);
+        }
+
+        for ( Map.Entry<Node, Long> e : types.entrySet() ) {
+            Item x = createTagged(TYPE);
+            x.getList().add(e.getKey());
+            x.getList().add(NodeFactoryExtra.intToNode(e.getValue()));
+            statsList.add(x);
+        }
+
+        for ( CharacteristicSet cs : charSets ) {
+            Item x = createTagged(CHARSET);
+            addPair(x.getList(), SUBJECTS, NodeFactoryExtra.intToNode(cs.subjects));
+            for ( Map.Entry<Node, Long> e : cs.occurrences.entrySet() )
+                addPair(x.getList(), e.getKey(), NodeFactoryExtra.intToNode(e.getValue()));
+            statsList.add(x);
+        }
+        return stats;
+    }
+
+    private static CardinalityStats parse(Item stats) {
+        ItemList list = stats.getList().cdr();
+        long count = 0;
+        HyperLogLog subjectSketch = new HyperLogLog();
+        HyperLogLog objectSketch = new HyperLogLog();
+        Map<Node, PredicateStats> predicates = new HashMap<>();
+        Map<Node, Long> types = new HashMap<>();
+        List<CharacteristicSet> charSets = new ArrayList<>();
+
+        for ( Item elt : list ) {
+            ItemList x = elt.getList();
+            if ( elt.isTagged(StatsMatcher.META) ) {
+                count = value(x, StatsMatcher.COUNT).asLong();
+                subjectSketch = HyperLogLog.decode(value(x, SKETCH_S).getNode().getLiteralLexicalForm());
+                objectSketch = HyperLogLog.decode(value(x, SKETCH_O).getNode().getLiteralLexicalForm());
+            } else if ( elt.isTagged(PREDICATE) ) {
+                Node p = x.get(1).getNode();
+                PredicateStats ps = new PredicateStats(value(x, StatsMatcher.COUNT).asLong(),
+                                                       value(x, SUBJECTS).asLong(),
+                                                       value(x, OBJECTS).asLong(),
+                                                       HyperLogLog.decode(value(x, SKETCH_S).getNode().getLiteralLexicalForm()),
+                                                       HyperLogLog.decode(value(x, SKETCH_O).getNode().getLiteralLexicalForm()));
+                predicates.put(p, ps);
+            } else if ( elt.isTagged(TYPE) ) {
+                types.put(x.get(1).getNode(), x.get(2).asLong());
+            } else if ( elt.isTagged(CHARSET) ) {
+                long subjects = value(x, SUBJECTS).asLong();
+                Map<Node, Long> occurrences = new HashMap<>();
+                for ( int i = 1 ; i < x.size() ; i++ ) {
+                    ItemList pair = x.get(i).getList();
+                    if ( pair.get(0).isNode() )
+                        occurrences.put(pair.get(0).getNode(), pair.get(1).asLong());
+                }
+                charSets.add(new CharacteristicSet(subjects, occurrences));
+            } else
+                throw new ARQException("Unrecognized: " + elt);
+        }
+        return new CardinalityStats(count, subjectSketch, objectSketch, predicates, types, charSets);
+    }
+
+    private static Item value(ItemList list, String key) {
+        Item x = Item.find(list, key);
+        if ( x == null )
+            throw new ARQException("Missing: " + key);
+        return x.getList().get(1);
+    }
+
+    /** Statistics for no data. */
+    public static CardinalityStats empty() {
+        return new CardinalityStats(0, new HyperLogLog(), new HyperLogLog(), new HashMap<>(), new HashMap<>(), new ArrayList<>());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CardinalityStats[count=%d, predicates=%d, types=%d, charsets=%d]",
+                             count, predicates.size(), types.size(), charSets.size());
+    }
+}
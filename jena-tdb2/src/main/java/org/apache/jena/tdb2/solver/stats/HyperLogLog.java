@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver.stats;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * A HyperLogLog sketch for estimating the number of distinct items.
+ * The caller supplies a 64 bit hash of each item.
+ * Sketches of the same precision can be merged, which gives the estimate for the union.
+ */
+public class HyperLogLog {
+    /** Default precision: 2^10 registers, about 3% standard error. */
+    public static final int DftPrecision = 10;
+
+    private final int p;
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DftPrecision);
+    }
+
+    public HyperLogLog(int precision) {
+        if ( precision < 4 || precision > 16 )
+            throw new IllegalArgumentException("Precision out of range [4,16]: "+precision);
+        this.p = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    private HyperLogLog(int precision, byte[] registers) {
+        this.p = precision;
+        this.registers = registers;
+    }
+
+    public int getPrecision() {
+        return p;
+    }
+
+    /** Add an item, given its 64 bit hash. */
+    public void add(long hash) {
+        int idx = (int)(hash >>> (64 - p));
+        // Position of the first 1 bit in the remaining bits, counting from 1.
+        long w = (hash << p) | (1L << (p - 1));
+        byte rank = (byte)(Long.numberOfLeadingZeros(w) + 1);
+        if ( rank > registers[idx] )
+            registers[idx] = rank;
+    }
+
+    /** Estimate of the number of distinct items added. */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for ( byte r : registers ) {
+            sum += 1.0 / (1L << r);
+            if ( r == 0 )
+                zeros++;
+        }
+        double alpha = switch (m) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / m);
+        };
+        double est = alpha * m * m / sum;
+        // Small range correction: linear counting.
+        if ( est <= 2.5 * m && zeros > 0 )
+            est = m * Math.log((double)m / zeros);
+        return Math.round(est);
+    }
+
+    /** Merge another sketch into this one. */
+    public void merge(HyperLogLog other) {
+        if ( other.p != p )
+            throw new IllegalArgumentException("Different precisions: "+p+" and "+other.p);
+        for ( int i = 0 ; i < registers.length ; i++ ) {
+            if ( other.registers[i] > registers[i] )
+                registers[i] = other.registers[i];
+        }
+    }
+
+    public HyperLogLog copy() {
+        return new HyperLogLog(p, Arrays.copyOf(registers, registers.length));
+    }
+
+    /**
+     * Estimate of the number of distinct items in both sketches, by inclusion-exclusion.
+     */
+    public static long estimateIntersection(HyperLogLog sketch1, HyperLogLog sketch2) {
+        HyperLogLog union = sketch1.copy();
+        union.merge(sketch2);
+        long x = sketch1.estimate() + sketch2.estimate() - union.estimate();
+        return Math.max(0, Math.min(x, Math.min(sketch1.estimate(), sketch2.estimate())));
+    }
+
+    /** Encode as a string: the precision then the registers in base64. */
+    public String encode() {
+        return p + ":" + Base64.getEncoder().encodeToString(registers);
+    }
+
+    /** Decode a string from {@link #encode}. */
+    public static HyperLogLog decode(String string) {
+        int idx = string.indexOf(':');
+        if ( idx < 0 )
+            throw new IllegalArgumentException("Bad HyperLogLog encoding");
+        int precision = Integer.parseInt(string.substring(0, idx));
+        byte[] registers = Base64.getDecoder().decode(string.substring(idx+1));
+        if ( registers.length != (1 << precision) )
+            throw new IllegalArgumentException("Bad HyperLogLog encoding: wrong number of registers");
+        return new HyperLogLog(precision, registers);
+    }
+
+    /** A 64 bit hash of a long value (MurmurHash3 finalizer). */
+    public static long hash(long x) {
+        x ^= x >>> 33;
+        x *= 0xFF51AFD7ED558CCDL;
+        x ^= x >>> 33;
+        x *= 0xC4CEB9FE1A85EC53L;
+        x ^= x >>> 33;
+        return x;
+    }
+
+    @Override
+    public String toString() {
+        return "HyperLogLog[p="+p+", estimate="+estimate()+"]";
+    }
+}
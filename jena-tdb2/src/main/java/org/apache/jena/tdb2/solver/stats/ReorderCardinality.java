@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver.stats;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderLib;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderProc;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderProcIndexes;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
+import org.apache.jena.sparql.graph.NodeConst;
+import org.apache.jena.tdb2.solver.stats.CardinalityStats.PredicateStats;
+import org.apache.jena.tdb2.solver.stats.CardinalityStats.Slot;
+
+/**
+ * Cost-based reordering of a basic graph pattern using {@link CardinalityStats}.
+ * <p>
+ * The order is built greedily: at each step, the triple pattern that gives the
+ * smallest estimated number of intermediate results is chosen next. The estimate
+ * for a pattern, given the variables already bound, uses the predicate count
+ * and the number of distinct subjects and objects. Correlations are taken into
+ * account for star joins (same subject variable) from the characteristic sets
+ * and for other joins from the overlap of the subject and object sketches.
+ * <p>
+ * Ties keep the original order.
+ */
+public class ReorderCardinality implements ReorderTransformation {
+    // Estimate for a predicate that is not in the statistics. Less than any recorded predicate.
+    private static final double UnknownPredicate = 0.5;
+
+    private final Supplier<CardinalityStats> source;
+
+    public ReorderCardinality(CardinalityStats stats) {
+        this(() -> stats);
+    }
+
+    /**
+     * Reorder using the statistics provided by {@code source} at the time of each call;
+     * the statistics may change between calls but must not be changed once returned.
+     */
+    public ReorderCardinality(Supplier<CardinalityStats> source) {
+        this.source = source;
+    }
+
+    /** Create from a statistics file. */
+    public static ReorderCardinality create(String filename) {
+        return new ReorderCardinality(CardinalityStats.read(filename));
+    }
+
+    public CardinalityStats getStats() {
+        return source.get();
+    }
+
+    @Override
+    public BasicPattern reorder(BasicPattern pattern) {
+        if ( pattern.size() <= 1 )
+            return pattern;
+        return reorderIndexes(pattern).reorder(pattern);
+    }
+
+    @Override
+    public ReorderProc reorderIndexes(BasicPattern pattern) {
+        if ( pattern.size() <= 1 )
+            return ReorderLib.identityProc();
+        CardinalityStats stats = source.get();
+        List<Triple> triples = pattern.getList();
+        int N = triples.size();
+        boolean[] used = new boolean[N];
+        int[] indexes = new int[N];
+        State state = new State();
+        double rows = 1;
+        for ( int i = 0 ; i < N ; i++ ) {
+            int choice = -1;
+            double best = Double.MAX_VALUE;
+            for ( int j = 0 ; j < N ; j++ ) {
+                if ( used[j] )
+                    continue;
+                double x = rows * fanout(stats, triples.get(j), state);
+                if ( x < best ) {
+                    best = x;
+                    choice = j;
+                }
+            }
+            used[choice] = true;
+            indexes[i] = choice;
+            rows = best;
+            state.bind(triples.get(choice));
+        }
+        return new ReorderProcIndexes(indexes);
+    }
+
+    /** Estimated cardinality of the whole pattern, in the given order. */
+    public double estimate(BasicPattern pattern) {
+        CardinalityStats stats = source.get();
+        State state = new State();
+        double rows = 1;
+        for ( Triple t : pattern ) {
+            rows = rows * fanout(stats, t, state);
+            state.bind(t);
+        }
+        return rows;
+    }
+
+    /** Variables bound so far and how they were first bound. */
+    private static class State {
+        // Variable -> (predicate, slot) of the pattern that first bound it.
+        final Map<Node, Node> boundByPredicate = new HashMap<>();
+        final Map<Node, Slot> boundBySlot = new HashMap<>();
+        // Subject variable -> predicates of the star so far.
+        final Map<Node, Set<Node>> stars = new HashMap<>();
+
+        boolean isBound(Node n) {
+            return ! n.isVariable() || boundBySlot.containsKey(n);
+        }
+
+        void bind(Triple t) {
+            Node p = t.getPredicate();
+            Node pred = p.isConcrete() ? p : null;
+            bindVar(t.getSubject(), pred, Slot.SUBJECT);
+            bindVar(t.getObject(), pred, Slot.OBJECT);
+            if ( p.isVariable() )
+                boundBySlot.putIfAbsent(p, Slot.OBJECT);
+            if ( t.getSubject().isVariable() && pred != null )
+                stars.computeIfAbsent(t.getSubject(), x -> new HashSet<>()).add(pred);
+        }
+
+        private void bindVar(Node n, Node predicate, Slot slot) {
+            if ( ! n.isVariable() || boundBySlot.containsKey(n) )
+                return;
+            boundBySlot.put(n, slot);
+            if ( predicate != null )
+                boundByPredicate.put(n, predicate);
+        }
+    }
+
+    /** Estimated number of results of the pattern for one row of the bindings so far. */
+    private static double fanout(CardinalityStats stats, Triple t, State state) {
+        Node s = t.getSubject();
+        Node p = t.getPredicate();
+        Node o = t.getObject();
+        boolean sBound = state.isBound(s);
+        boolean oBound = state.isBound(o);
+
+        double count;
+        double subjects;
+        double objects;
+        PredicateStats ps = null;
+        if ( p.isConcrete() ) {
+            ps = stats.getPredicate(p);
+            if ( ps == null )
+                return UnknownPredicate;
+            count = ps.count;
+            subjects = Math.max(1, ps.subjects);
+            objects = Math.max(1, ps.objects);
+        } else {
+            count = stats.getCount();
+            subjects = Math.max(1, stats.getSubjects());
+            objects = Math.max(1, stats.getObjects());
+            if ( state.isBound(p) )
+                count = count / Math.max(1, stats.getPredicates().size());
+        }
+
+        if ( ps != null && NodeConst.nodeRDFType.equals(p) && o.isConcrete() ) {
+            long typeCount = stats.getTypeCount(o);
+            if ( typeCount >= 0 ) {
+                // Fraction of the subjects of rdf:type with this type.
+                if ( sBound )
+                    return typeCount / subjects * correction(stats, s, p, Slot.SUBJECT, state);
+                return typeCount;
+            }
+        }
+
+        double x = count;
+        if ( sBound ) {
+            double star = starFanout(stats, s, p, state);
+            if ( star >= 0 )
+                x = star;
+            else
+                x = x / subjects * correction(stats, s, p, Slot.SUBJECT, state);
+        }
+        if ( oBound )
+            x = x / objects * correction(stats, o, p, Slot.OBJECT, state);
+        return x;
+    }
+
+    /**
+     * Fanout of adding predicate {@code p} to the star for subject variable {@code s},
+     * from the characteristic sets. Returns -1 if not applicable.
+     */
+    private static double starFanout(CardinalityStats stats, Node s, Node p, State state) {
+        if ( ! s.isVariable() || ! p.isConcrete() )
+            return -1;
+        Set<Node> star = state.stars.get(s);
+        if ( star == null || star.isEmpty() || star.contains(p) )
+            return -1;
+        double before = stats.estimateStar(star);
+        if ( before <= 0 )
+            return -1;
+        Set<Node> extended = new HashSet<>(star);
+        extended.add(p);
+        double after = stats.estimateStar(extended);
+        if ( after < 0 )
+            return -1;
+        return after / before;
+    }
+
+    /**
+     * The fraction of the values of a bound variable that can occur in {@code slot}
+     * for predicate {@code p}, from the overlap of the sketches of the pattern that
+     * bound the variable and this pattern. 1 when not known.
+     */
+    private static double correction(CardinalityStats stats, Node var, Node p, Slot slot, State state) {
+        if ( ! var.isVariable() || ! p.isConcrete() )
+            return 1;
+        Node p1 = state.boundByPredicate.get(var);
+        Slot slot1 = state.boundBySlot.get(var);
+        if ( p1 == null || slot1 == null )
+            return 1;
+        PredicateStats ps1 = stats.getPredicate(p1);
+        if ( ps1 == null )
+            return 1;
+        long overlap = stats.estimateOverlap(p1, slot1, p, slot);
+        if ( overlap < 0 )
+            return 1;
+        double distinct1 = Math.max(1, slot1 == Slot.SUBJECT ? ps1.subjects : ps1.objects);
+        // Independence assumes each binding matches; scale by the fraction that can.
+        return Math.min(1.0, Math.max(overlap, 1) / distinct1);
+    }
+
+    @Override
+    public String toString() {
+        return "ReorderCardinality[" + source.get() + "]";
+    }
+}
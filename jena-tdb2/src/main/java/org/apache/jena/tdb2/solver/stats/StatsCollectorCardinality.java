@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver.stats;
+
+import java.util.*;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.graph.NodeConst;
+import org.apache.jena.tdb2.solver.stats.CardinalityStats.CharacteristicSet;
+import org.apache.jena.tdb2.solver.stats.CardinalityStats.PredicateStats;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+
+/**
+ * Statistics collector for {@link CardinalityStats}.
+ * <p>
+ * The input is expected to be grouped by subject (e.g. from an SPO or GSPO index).
+ * If it isn't, the distinct subject counts and the characteristic sets are
+ * overestimates.
+ */
+public abstract class StatsCollectorCardinality<T> {
+    /** Upper bound on the number of different characteristic sets tracked while collecting. */
+    public static int MaxCharSetsCollect = 100_000;
+    /** Number of characteristic sets, the ones with the most subjects, kept in the results. */
+    public static int MaxCharSetsResults = 10_000;
+
+    private static class PredicateAcc {
+        long count = 0;
+        long subjects = 0;
+        final HyperLogLog subjectSketch = new HyperLogLog();
+        final HyperLogLog objectSketch = new HyperLogLog();
+    }
+
+    private class CharSetAcc {
+        long subjects = 0;
+        final Map<T, Long> occurrences = new HashMap<>();
+    }
+
+    private long                      count         = 0;
+    private final HyperLogLog         subjectSketch = new HyperLogLog();
+    private final HyperLogLog         objectSketch  = new HyperLogLog();
+    private final Map<T, PredicateAcc> predicates   = new HashMap<>(1000);
+    private final Map<T, Long>        types         = new HashMap<>(1000);
+    private final Map<Set<T>, CharSetAcc> charSets  = new HashMap<>(10000);
+    private final T                   typeTrigger;
+
+    // The current subject group.
+    private T                         currentSubject = null;
+    private final Map<T, Long>        currentPredicates = new HashMap<>();
+
+    protected StatsCollectorCardinality(T typeTrigger) {
+        this.typeTrigger = typeTrigger;
+    }
+
+    /** Collector for {@link NodeId NodeIds}, using the node table to produce the results. */
+    public static StatsCollectorCardinality<NodeId> create(NodeTable nodeTable) {
+        NodeId rdfType = nodeTable.getNodeIdForNode(NodeConst.nodeRDFType);
+        if ( NodeId.isDoesNotExist(rdfType) )
+            rdfType = null;
+        return new StatsCollectorCardinality<>(rdfType) {
+            @Override
+            protected long hash(NodeId nodeId) {
+                return HyperLogLog.hash(nodeId.getPtrLocation() ^ ((long)nodeId.getTypeValue() << 56));
+            }
+
+            @Override
+            protected Node toNode(NodeId nodeId) {
+                return nodeTable.getNodeForNodeId(nodeId);
+            }
+        };
+    }
+
+    /** Collector for {@link Node Nodes}. */
+    public static StatsCollectorCardinality<Node> create() {
+        return new StatsCollectorCardinality<>(NodeConst.nodeRDFType) {
+            @Override
+            protected long hash(Node node) {
+                return CardinalityStats.hash(node);
+            }
+
+            @Override
+            protected Node toNode(Node node) {
+                return node;
+            }
+        };
+    }
+
+    protected abstract long hash(T item);
+
+    protected abstract Node toNode(T item);
+
+    public void record(T g, T s, T p, T o) {
+        if ( ! Objects.equals(s, currentSubject) ) {
+            flushSubject();
+            currentSubject = s;
+            subjectSketch.add(hash(s));
+        }
+        count++;
+        long hashObject = hash(o);
+        objectSketch.add(hashObject);
+
+        PredicateAcc acc = predicates.computeIfAbsent(p, x -> new PredicateAcc());
+        acc.count++;
+        acc.objectSketch.add(hashObject);
+        long n = currentPredicates.getOrDefault(p, 0L);
+        if ( n == 0 ) {
+            acc.subjects++;
+            acc.subjectSketch.add(hash(s));
+        }
+        currentPredicates.put(p, n + 1);
+
+        if ( typeTrigger != null && typeTrigger.equals(p) )
+            types.put(o, types.getOrDefault(o, 0L) + 1);
+    }
+
+    private void flushSubject() {
+        if ( currentPredicates.isEmpty() )
+            return;
+        CharSetAcc acc = charSets.get(currentPredicates.keySet());
+        if ( acc == null ) {
+            if ( charSets.size() >= MaxCharSetsCollect ) {
+                currentPredicates.clear();
+                return;
+            }
+            acc = new CharSetAcc();
+            charSets.put(new HashSet<>(currentPredicates.keySet()), acc);
+        }
+        acc.subjects++;
+        for ( Map.Entry<T, Long> e : currentPredicates.entrySet() )
+            acc.occurrences.merge(e.getKey(), e.getValue(), Long::sum);
+        currentPredicates.clear();
+    }
+
+    public CardinalityStats results() {
+        flushSubject();
+        currentSubject = null;
+
+        Map<Node, PredicateStats> predicateStats = new HashMap<>();
+        predicates.forEach((p, acc) -> {
+            PredicateStats ps = new PredicateStats(acc.count, acc.subjects, acc.objectSketch.estimate(),
+                                                   acc.subjectSketch.copy(), acc.objectSketch.copy());
+            predicateStats.put(toNode(p), ps);
+        });
+
+        Map<Node, Long> typeStats = new HashMap<>();
+        types.forEach((t, n) -> typeStats.put(toNode(t), n));
+
+        List<CharSetAcc> sets = new ArrayList<>(charSets.values());
+        sets.sort((a, b) -> Long.compare(b.subjects, a.subjects));
+        List<CharacteristicSet> charSetStats = new ArrayList<>();
+        for ( CharSetAcc acc : sets ) {
+            if ( charSetStats.size() >= MaxCharSetsResults )
+                break;
+            Map<Node, Long> occurrences = new HashMap<>();
+            acc.occurrences.forEach((p, n) -> occurrences.put(toNode(p), n));
+            charSetStats.add(new CharacteristicSet(acc.subjects, occurrences));
+        }
+        return new CardinalityStats(count, subjectSketch.copy(), objectSketch.copy(), predicateStats, typeStats, charSetStats);
+    }
+}
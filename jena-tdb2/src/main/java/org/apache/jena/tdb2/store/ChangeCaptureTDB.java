@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.jena.dboe.storage.StorageRDF;
+import org.apache.jena.dboe.transaction.txn.Transaction;
+import org.apache.jena.dboe.transaction.txn.TransactionListener;
+import org.apache.jena.dboe.transaction.txn.TransactionalSystem;
+import org.apache.jena.graph.Node;
+
+/**
+ * Capture of the changes made to a {@link StorageTDB} by committed write transactions.
+ * <p>
+ * Capture is normally off and costs nothing. When switched on (by online compaction),
+ * each change is held against its transaction and is added to the log of committed
+ * changes when that transaction commits. Changes of aborted transactions are dropped.
+ * <p>
+ * Each change acts on each quad independently (add, delete, remove by pattern) so
+ * replaying the log onto a copy that already includes some of the changes
+ * results in the same state.
+ * <p>
+ * The log is held in memory. Bulk loaders that write directly to the indexes are
+ * not captured.
+ */
+public class ChangeCaptureTDB implements TransactionListener {
+
+    public enum Action { ADD, DELETE, REMOVE_ALL }
+
+    /**
+     * A change to the storage.
+     * {@code g} is null for the triple table.
+     * Slots may be null or {@code Node.ANY} for {@link Action#REMOVE_ALL}.
+     */
+    public record Change(Action action, Node g, Node s, Node p, Node o) {
+        private boolean isTriple() { return g == null; }
+
+        /** Perform this change on some storage. */
+        public void applyTo(StorageRDF storage) {
+            switch (action) {
+                case ADD -> {
+                    if ( isTriple() ) storage.add(s, p, o); else storage.add(g, s, p, o);
+                }
+                case DELETE -> {
+                    if ( isTriple() ) storage.delete(s, p, o); else storage.delete(g, s, p, o);
+                }
+                case REMOVE_ALL -> {
+                    if ( isTriple() ) storage.removeAll(s, p, o); else storage.removeAll(g, s, p, o);
+                }
+            }
+        }
+    }
+
+    private final TransactionalSystem txnSystem;
+    private volatile boolean active = false;
+    // Changes of transactions that have not finished.
+    private final Map<Transaction, List<Change>> pending = new ConcurrentHashMap<>();
+    // Changes of committed transactions, in commit order.
+    private List<Change> committed = new ArrayList<>();
+
+    /*package*/ ChangeCaptureTDB(TransactionalSystem txnSystem) {
+        this.txnSystem = txnSystem;
+    }
+
+    /**
+     * Start capturing changes.
+     * The caller must ensure there are no active writers.
+     */
+    public synchronized void start() {
+        pending.clear();
+        committed = new ArrayList<>();
+        active = true;
+    }
+
+    /** Stop capturing changes and discard any changes not yet taken by {@link #drain}. */
+    public synchronized void stop() {
+        active = false;
+        pending.clear();
+        committed = new ArrayList<>();
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /** Return the changes committed since the last call, in commit order. */
+    public synchronized List<Change> drain() {
+        List<Change> x = committed;
+        committed = new ArrayList<>();
+        return x;
+    }
+
+    /*package*/ void record(Action action, Node g, Node s, Node p, Node o) {
+        if ( ! active )
+            return;
+        Transaction txn = txnSystem.getThreadTransaction();
+        if ( txn == null )
+            return;
+        pending.computeIfAbsent(txn, t->new ArrayList<>()).add(new Change(action, g, s, p, o));
+    }
+
+    // -- TransactionListener
+
+    @Override
+    public void notifyCommitFinish(Transaction transaction) {
+        List<Change> changes = pending.remove(transaction);
+        if ( changes == null )
+            return;
+        synchronized(this) {
+            if ( active )
+                committed.addAll(changes);
+        }
+    }
+
+    @Override
+    public void notifyTxnFinish(Transaction transaction) {
+        // Abort or end without commit.
+        pending.remove(transaction);
+    }
+}
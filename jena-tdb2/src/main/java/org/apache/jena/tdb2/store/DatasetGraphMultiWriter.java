@@ -0,0 +1,491 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.store;
+
+import static org.apache.jena.sparql.core.Match.match;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.dboe.transaction.txn.TransactionException;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.riot.system.PrefixMap;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphTriplesQuads;
+import org.apache.jena.sparql.core.GraphView;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.system.buffering.BufferingPrefixMap;
+
+/**
+ * A {@link DatasetGraph} over a TDB2 database that allows write transactions to run
+ * at the same time.
+ * <p>
+ * A write transaction reads from a snapshot of the database (a read transaction on
+ * the underlying database) and keeps its changes in memory. At commit, the transaction
+ * is checked against the transactions that committed since it started: if any of
+ * those wrote to a graph this transaction read or wrote, this transaction is aborted
+ * with a {@link TransactionException}. Reading with a wildcard for the graph, or from
+ * the union graph, counts as reading all graphs. The check is the "prepare" step.
+ * <p>
+ * Transactions that pass the check are written to the database. Transactions that
+ * are waiting to be written when a database write transaction starts are written
+ * together, as one database transaction, so they share one journal commit.
+ * Commit returns once the changes are durable.
+ * <p>
+ * Writers touching disjoint graphs do not conflict. Prefix changes are not checked
+ * for conflicts - the last transaction to commit wins.
+ * Read transactions go directly to the database.
+ */
+public class DatasetGraphMultiWriter extends DatasetGraphTriplesQuads {
+
+    /** Changes and read/write graph sets of one transaction. */
+    private static class TxnMW {
+        final TxnType txnType;
+        ReadWrite mode;
+        // The last commit included in this transaction's snapshot.
+        long start = -1;
+        boolean baseActive = false;
+        final Set<Quad> added = new LinkedHashSet<>();
+        final Set<Quad> deleted = new LinkedHashSet<>();
+        final Set<Node> readGraphs = new HashSet<>();
+        final Set<Node> writeGraphs = new HashSet<>();
+        boolean readAllGraphs = false;
+        BufferingPrefixMap prefixes = null;
+
+        TxnMW(TxnType txnType, ReadWrite mode) {
+            this.txnType = txnType;
+            this.mode = mode;
+        }
+    }
+
+    /** A transaction that passed the check and is waiting, or has been, written to the database. */
+    private static class CommitRecord {
+        final long seq;
+        final TxnMW txn;
+        // Protected by the apply lock.
+        boolean applied = false;
+        RuntimeException failure = null;
+
+        CommitRecord(long seq, TxnMW txn) {
+            this.seq = seq;
+            this.txn = txn;
+        }
+    }
+
+    private final DatasetGraph base;
+    private final ThreadLocal<TxnMW> threadTxn = new ThreadLocal<>();
+
+    // Protected by commitLock.
+    private final Object commitLock = new Object();
+    private long commitSeq = 0;
+    // Committed transactions that active transactions may need to be checked against.
+    private final List<CommitRecord> committed = new ArrayList<>();
+    // Checked transactions not yet written to the database.
+    private final List<CommitRecord> pending = new ArrayList<>();
+    // Start points of active write transactions.
+    private final TreeMap<Long, Integer> activeStarts = new TreeMap<>();
+
+    // The last commit written to the database.
+    private volatile long appliedSeq = 0;
+    // One database write transaction at a time.
+    private final ReentrantLock applyLock = new ReentrantLock();
+
+    public DatasetGraphMultiWriter(DatasetGraph base) {
+        this.base = Objects.requireNonNull(base);
+    }
+
+    public DatasetGraph getBase() {
+        return base;
+    }
+
+    private TxnMW writeTxn() {
+        TxnMW txn = threadTxn.get();
+        if ( txn == null )
+            return null;
+        return txn.mode == ReadWrite.WRITE ? txn : null;
+    }
+
+    private TxnMW requireWriteTxn() {
+        TxnMW txn = threadTxn.get();
+        if ( txn == null )
+            throw new TransactionException("Not in a transaction");
+        if ( txn.mode != ReadWrite.WRITE )
+            throw new TransactionException("Not in a write transaction");
+        return txn;
+    }
+
+    private static Node graphKey(Node g) {
+        return Quad.isDefaultGraph(g) ? Quad.defaultGraphIRI : g;
+    }
+
+    // ---- Transactional
+
+    @Override
+    public void begin(TxnType txnType) {
+        Objects.requireNonNull(txnType);
+        if ( threadTxn.get() != null )
+            throw new TransactionException("Currently in an active transaction");
+        if ( txnType == TxnType.READ ) {
+            base.begin(TxnType.READ);
+            threadTxn.set(new TxnMW(txnType, ReadWrite.READ));
+            return;
+        }
+        ReadWrite mode = ( txnType == TxnType.WRITE ) ? ReadWrite.WRITE : ReadWrite.READ;
+        TxnMW txn = new TxnMW(txnType, mode);
+        synchronized(commitLock) {
+            // Read the commit point before starting the snapshot so that the
+            // snapshot includes at least the commits up to this point.
+            txn.start = appliedSeq;
+            activeStarts.merge(txn.start, 1, Integer::sum);
+        }
+        try {
+            base.begin(TxnType.READ);
+            txn.baseActive = true;
+        } catch (RuntimeException ex) {
+            finishActive(txn);
+            throw ex;
+        }
+        threadTxn.set(txn);
+    }
+
+    @Override
+    public void begin(ReadWrite readWrite) {
+        begin(TxnType.convert(readWrite));
+    }
+
+    @Override
+    public boolean promote(Promote promoteMode) {
+        TxnMW txn = threadTxn.get();
+        if ( txn == null )
+            throw new TransactionException("Not in a transaction");
+        if ( txn.mode == ReadWrite.WRITE )
+            return true;
+        if ( txn.txnType == TxnType.READ )
+            return false;
+        // Changes made by others since the start are detected at commit.
+        txn.mode = ReadWrite.WRITE;
+        return true;
+    }
+
+    @Override
+    public void commit() {
+        TxnMW txn = threadTxn.get();
+        if ( txn == null )
+            throw new TransactionException("Not in a transaction");
+        if ( txn.txnType == TxnType.READ ) {
+            base.commit();
+            return;
+        }
+        try {
+            // Finished with the snapshot.
+            endBase(txn);
+            if ( txn.mode == ReadWrite.WRITE )
+                commitWrite(txn);
+        } finally {
+            finishActive(txn);
+            threadTxn.remove();
+        }
+    }
+
+    @Override
+    public void abort() {
+        TxnMW txn = threadTxn.get();
+        if ( txn == null )
+            throw new TransactionException("Not in a transaction");
+        if ( txn.txnType == TxnType.READ ) {
+            base.abort();
+            return;
+        }
+        endBase(txn);
+        finishActive(txn);
+        threadTxn.remove();
+    }
+
+    @Override
+    public void end() {
+        TxnMW txn = threadTxn.get();
+        if ( txn == null )
+            return;
+        if ( txn.txnType == TxnType.READ ) {
+            base.end();
+            threadTxn.remove();
+            return;
+        }
+        // Write transaction without commit or abort: abort it.
+        endBase(txn);
+        finishActive(txn);
+        threadTxn.remove();
+    }
+
+    @Override
+    public boolean isInTransaction() {
+        return threadTxn.get() != null;
+    }
+
+    @Override
+    public ReadWrite transactionMode() {
+        TxnMW txn = threadTxn.get();
+        return txn == null ? null : txn.mode;
+    }
+
+    @Override
+    public TxnType transactionType() {
+        TxnMW txn = threadTxn.get();
+        return txn == null ? null : txn.txnType;
+    }
+
+    @Override
+    public boolean supportsTransactions() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsTransactionAbort() {
+        return true;
+    }
+
+    private void endBase(TxnMW txn) {
+        if ( txn.baseActive ) {
+            txn.baseActive = false;
+            base.end();
+        }
+    }
+
+    private void finishActive(TxnMW txn) {
+        synchronized(commitLock) {
+            activeStarts.computeIfPresent(txn.start, (k, v) -> (v == 1) ? null : v-1);
+            pruneCommitted();
+        }
+    }
+
+    // Call with commitLock held.
+    private void pruneCommitted() {
+        // Oldest snapshot still in use.
+        long oldest = activeStarts.isEmpty() ? appliedSeq : activeStarts.firstKey();
+        committed.removeIf(r -> r.seq <= oldest && r.applied);
+    }
+
+    // ---- Commit
+
+    private void commitWrite(TxnMW txn) {
+        if ( txn.added.isEmpty() && txn.deleted.isEmpty() && txn.prefixes == null )
+            return;
+        CommitRecord record;
+        synchronized(commitLock) {
+            // Prepare: check for conflicts.
+            for ( CommitRecord r : committed ) {
+                if ( r.seq <= txn.start )
+                    continue;
+                if ( conflicts(txn, r.txn) )
+                    throw new TransactionException("Conflict with a transaction that committed after this transaction started");
+            }
+            record = new CommitRecord(++commitSeq, txn);
+            committed.add(record);
+            pending.add(record);
+        }
+        apply(record);
+    }
+
+    private static boolean conflicts(TxnMW txn, TxnMW other) {
+        if ( other.writeGraphs.isEmpty() )
+            return false;
+        if ( txn.readAllGraphs )
+            return true;
+        for ( Node g : other.writeGraphs ) {
+            if ( txn.readGraphs.contains(g) || txn.writeGraphs.contains(g) )
+                return true;
+        }
+        return false;
+    }
+
+    /** Write pending transactions to the database; return when {@code record} is durable. */
+    private void apply(CommitRecord record) {
+        applyLock.lock();
+        try {
+            if ( ! record.applied && record.failure == null ) {
+                // This thread writes every transaction waiting at this point.
+                List<CommitRecord> batch;
+                synchronized(commitLock) {
+                    batch = new ArrayList<>(pending);
+                    pending.clear();
+                }
+                try {
+                    base.executeWrite(()->batch.forEach(r->applyChanges(r.txn)));
+                    batch.forEach(r->r.applied = true);
+                } catch (RuntimeException ex) {
+                    batch.forEach(r->r.failure = ex);
+                }
+                synchronized(commitLock) {
+                    long last = batch.get(batch.size()-1).seq;
+                    if ( batch.get(0).failure == null )
+                        appliedSeq = last;
+                    else
+                        committed.removeAll(batch);
+                    pruneCommitted();
+                }
+            }
+        } finally {
+            applyLock.unlock();
+        }
+        if ( record.failure != null )
+            throw new TransactionException("Failed to commit", record.failure);
+    }
+
+    private void applyChanges(TxnMW txn) {
+        txn.deleted.forEach(base::delete);
+        txn.added.forEach(base::add);
+        if ( txn.prefixes != null )
+            txn.prefixes.flush();
+    }
+
+    // ---- Updates
+
+    @Override
+    protected void addToDftGraph(Node s, Node p, Node o) {
+        addQuad(Quad.create(Quad.defaultGraphIRI, s, p, o));
+    }
+
+    @Override
+    protected void addToNamedGraph(Node g, Node s, Node p, Node o) {
+        addQuad(Quad.create(g, s, p, o));
+    }
+
+    @Override
+    protected void deleteFromDftGraph(Node s, Node p, Node o) {
+        deleteQuad(Quad.create(Quad.defaultGraphIRI, s, p, o));
+    }
+
+    @Override
+    protected void deleteFromNamedGraph(Node g, Node s, Node p, Node o) {
+        deleteQuad(Quad.create(g, s, p, o));
+    }
+
+    private void addQuad(Quad quad) {
+        TxnMW txn = requireWriteTxn();
+        txn.writeGraphs.add(quad.getGraph());
+        txn.deleted.remove(quad);
+        if ( base.contains(quad) )
+            return;
+        txn.added.add(quad);
+    }
+
+    private void deleteQuad(Quad quad) {
+        TxnMW txn = requireWriteTxn();
+        txn.writeGraphs.add(quad.getGraph());
+        txn.added.remove(quad);
+        if ( ! base.contains(quad) )
+            return;
+        txn.deleted.add(quad);
+    }
+
+    // ---- Find
+
+    @Override
+    protected Iterator<Quad> findInDftGraph(Node s, Node p, Node o) {
+        TxnMW txn = writeTxn();
+        if ( txn == null )
+            return base.find(Quad.defaultGraphIRI, s, p, o);
+        txn.readGraphs.add(Quad.defaultGraphIRI);
+        return findWithChanges(txn, Quad.defaultGraphIRI, s, p, o);
+    }
+
+    @Override
+    protected Iterator<Quad> findInSpecificNamedGraph(Node g, Node s, Node p, Node o) {
+        TxnMW txn = writeTxn();
+        if ( txn == null )
+            return base.find(g, s, p, o);
+        txn.readGraphs.add(graphKey(g));
+        return findWithChanges(txn, g, s, p, o);
+    }
+
+    @Override
+    protected Iterator<Quad> findInAnyNamedGraphs(Node s, Node p, Node o) {
+        TxnMW txn = writeTxn();
+        if ( txn == null )
+            return base.find(Node.ANY, s, p, o);
+        txn.readAllGraphs = true;
+        // Named graphs only.
+        Iterator<Quad> iter = findWithChanges(txn, Node.ANY, s, p, o);
+        return Iter.filter(iter, q -> ! Quad.isDefaultGraph(q.getGraph()));
+    }
+
+    private Iterator<Quad> findWithChanges(TxnMW txn, Node g, Node s, Node p, Node o) {
+        // Copy the added quads so that the caller may update during iteration.
+        List<Quad> extra = Iter.toList(Iter.filter(txn.added.iterator(), q -> match(q, g, s, p, o)));
+        return Iter.iter(base.find(g, s, p, o))
+                   .filter(q -> ! txn.deleted.contains(q))
+                   .append(extra.iterator());
+    }
+
+    @Override
+    public Iterator<Node> listGraphNodes() {
+        TxnMW txn = writeTxn();
+        if ( txn == null )
+            return base.listGraphNodes();
+        txn.readAllGraphs = true;
+        Set<Node> graphs = new LinkedHashSet<>();
+        base.listGraphNodes().forEachRemaining(graphs::add);
+        txn.added.forEach(q -> { if ( ! Quad.isDefaultGraph(q.getGraph()) ) graphs.add(q.getGraph()); });
+        // Remove graphs that have become empty.
+        graphs.removeIf(g -> ! findWithChanges(txn, g, Node.ANY, Node.ANY, Node.ANY).hasNext());
+        return graphs.iterator();
+    }
+
+    // ---- Graphs and prefixes
+
+    @Override
+    public Graph getDefaultGraph() {
+        return GraphView.createDefaultGraph(this);
+    }
+
+    @Override
+    public Graph getGraph(Node graphNode) {
+        return GraphView.createNamedGraph(this, graphNode);
+    }
+
+    @Override
+    public PrefixMap prefixes() {
+        TxnMW txn = writeTxn();
+        if ( txn == null )
+            return base.prefixes();
+        if ( txn.prefixes == null )
+            txn.prefixes = new BufferingPrefixMap(base.prefixes());
+        return txn.prefixes;
+    }
+
+    @Override
+    public long size() {
+        return Iter.count(listGraphNodes());
+    }
+
+    @Override
+    public Context getContext() {
+        return base.getContext();
+    }
+
+    @Override
+    public void close() {
+        base.close();
+    }
+}
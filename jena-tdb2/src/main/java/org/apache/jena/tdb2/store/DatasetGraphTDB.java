@@ -26,10 +26,13 @@ import org.apache.jena.atlas.lib.tuple.Tuple;
 import org.apache.jena.dboe.base.file.Location;
 import org.apache.jena.dboe.storage.system.DatasetGraphStorage;
 import org.apache.jena.dboe.trans.bplustree.BPlusTree;
+import org.apache.jena.dboe.transaction.txn.TransactionInfo;
 import org.apache.jena.dboe.transaction.txn.TransactionalSystem;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.JenaTransactionException;
 import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.TransactionalDataVersion;
 import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
 import org.apache.jena.tdb2.TDBException;
 import org.apache.jena.tdb2.lib.NodeLib;
@@ -38,7 +41,7 @@ import org.apache.jena.tdb2.store.nodetupletable.NodeTupleTable;
 import org.apache.jena.tdb2.store.tupletable.TupleIndexRecord;
 
 final
-public class DatasetGraphTDB extends DatasetGraphStorage
+public class DatasetGraphTDB extends DatasetGraphStorage implements TransactionalDataVersion
 {
     private final StorageTDB storageTDB;
     private final StoragePrefixesTDB storagePrefixes;
@@ -69,6 +72,14 @@ public class DatasetGraphTDB extends DatasetGraphStorage
         return true;
     }
 
+    @Override
+    public long getDataVersion() {
+        TransactionInfo info = txnSystem.getTransactionInfo();
+        if ( info == null )
+            throw new JenaTransactionException("Not in a transaction");
+        return info.getDataVersion();
+    }
+
     public Location getLocation() {
         return location;
     }
@@ -83,6 +94,16 @@ public class DatasetGraphTDB extends DatasetGraphStorage
         return storageTDB.getTripleTable();
     }
 
+    /** Capture of changes made by write transactions, used by online compaction. */
+    public ChangeCaptureTDB getChangeCapture() {
+        return storageTDB.getChangeCapture();
+    }
+
+    /** Statistics maintained by write transactions, or null if not enabled for this database. */
+    public LiveStatsTDB getLiveStats() {
+        return storageTDB.getLiveStats();
+    }
+
     public TransactionalSystem getTxnSystem() {
         return txnSystem;
     }
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.store;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.jena.atlas.lib.tuple.Tuple;
+import org.apache.jena.atlas.logging.Log;
+import org.apache.jena.dboe.trans.data.TransBlob;
+import org.apache.jena.dboe.transaction.txn.Transaction;
+import org.apache.jena.dboe.transaction.txn.TransactionException;
+import org.apache.jena.dboe.transaction.txn.TransactionListener;
+import org.apache.jena.dboe.transaction.txn.TransactionalSystem;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.ARQException;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.lib.TupleLib;
+import org.apache.jena.tdb2.solver.stats.CardinalityStats;
+import org.apache.jena.tdb2.solver.stats.StatsCollectorCardinality;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+
+/**
+ * Statistics for the cardinality-based BGP optimizer, kept up-to-date by each write
+ * transaction.
+ * <p>
+ * Changes made through {@link StorageTDB} are recorded against their transaction.
+ * During prepare of a commit, the changes are applied to a copy of the last committed
+ * statistics and the result is written to a {@link TransBlob}, which is a transactional
+ * component of the database, so the statistics commit (and are recovered) with the data.
+ * The new statistics are visible when the commit finishes.
+ * <p>
+ * The counts are exact. The distinct subject and object counts come from sketches
+ * which do not support deletion, so they become overestimates after deletes.
+ * Characteristic sets are not kept; they require the data grouped by subject.
+ * <p>
+ * Triples and quads are counted together.
+ * <p>
+ * Bulk loaders and copies that write to the indexes directly call {@link #rebuildOnCommit},
+ * which recalculates the statistics with a scan of the database.
+ */
+public class LiveStatsTDB implements TransactionListener {
+
+    private final TransactionalSystem txnSystem;
+    private final TransBlob blob;
+    private StorageTDB storage;
+
+    // The last committed statistics. Not modified once published.
+    private volatile CardinalityStats committed;
+    // Changes by transactions that have not finished.
+    private final Map<Transaction, CardinalityStats> pending = new ConcurrentHashMap<>();
+    // Transactions to recalculate the statistics at commit.
+    private final Set<Transaction> rebuild = ConcurrentHashMap.newKeySet();
+    // Statistics written by prepare, published by commit.
+    private final Map<Transaction, CardinalityStats> prepared = new ConcurrentHashMap<>();
+
+    /*package*/ LiveStatsTDB(TransactionalSystem txnSystem, TransBlob blob) {
+        this.txnSystem = txnSystem;
+        this.blob = blob;
+        this.committed = CardinalityStats.empty();
+    }
+
+    /*package*/ void setStorage(StorageTDB storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Read the committed statistics. This must be called after the transaction
+     * coordinator has started (and so after journal recovery). If there are no
+     * statistics and the database is not empty, calculate them.
+     */
+    /*package*/ void start() {
+        String string = blob.getString();
+        if ( string != null && ! string.isBlank() ) {
+            try {
+                committed = CardinalityStats.parse(string);
+                return;
+            } catch (ARQException ex) {
+                Log.warn(LiveStatsTDB.class, "Bad statistics: recalculating : " + ex.getMessage());
+            }
+        }
+        boolean isEmpty = Txn.calculateRead(txnSystem, ()->isEmpty(storage));
+        if ( ! isEmpty )
+            Txn.executeWrite(txnSystem, this::rebuildOnCommit);
+    }
+
+    private static boolean isEmpty(StorageTDB storage) {
+        return storage.getTripleTable().getNodeTupleTable().isEmpty()
+            && storage.getQuadTable().getNodeTupleTable().isEmpty();
+    }
+
+    /**
+     * The statistics as of the last commit.
+     * The returned object must not be modified.
+     */
+    public CardinalityStats getStats() {
+        return committed;
+    }
+
+    /**
+     * Recalculate the statistics, with a scan of the database, when the current write
+     * transaction commits.
+     */
+    public void rebuildOnCommit() {
+        Transaction txn = txnSystem.getThreadTransaction();
+        if ( txn == null || ! txn.isWriteTxn() )
+            throw new TransactionException("Not in a write transaction");
+        rebuild.add(txn);
+    }
+
+    /*package*/ void recordAdd(Node s, Node p, Node o) {
+        CardinalityStats delta = delta();
+        if ( delta != null )
+            delta.add(s, p, o);
+    }
+
+    /*package*/ void recordDelete(Node s, Node p, Node o) {
+        CardinalityStats delta = delta();
+        if ( delta != null )
+            delta.delete(s, p, o);
+    }
+
+    private CardinalityStats delta() {
+        Transaction txn = txnSystem.getThreadTransaction();
+        if ( txn == null || rebuild.contains(txn) )
+            return null;
+        return pending.computeIfAbsent(txn, t->CardinalityStats.empty());
+    }
+
+    /** Calculate statistics from the data visible to the current transaction. */
+    private CardinalityStats scan() {
+        NodeTable nodeTable = storage.getTripleTable().getNodeTupleTable().getNodeTable();
+        StatsCollectorCardinality<Node> collector = StatsCollectorCardinality.create();
+        // Triples then quads; both are grouped by subject.
+        Iterator<Tuple<NodeId>> iter3 = storage.getTripleTable().getNodeTupleTable().findAll();
+        iter3.forEachRemaining(t -> {
+            Tuple<Node> x = TupleLib.tupleNodes(nodeTable, t);
+            collector.record(null, x.get(0), x.get(1), x.get(2));
+        });
+        Iterator<Tuple<NodeId>> iter4 = storage.getQuadTable().getNodeTupleTable().findAll();
+        iter4.forEachRemaining(t -> {
+            Tuple<Node> x = TupleLib.tupleNodes(nodeTable, t);
+            collector.record(x.get(0), x.get(1), x.get(2), x.get(3));
+        });
+        CardinalityStats stats = collector.results();
+        // Characteristic sets can not be maintained by changes.
+        stats.getCharacteristicSets().clear();
+        return stats;
+    }
+
+    // -- TransactionListener
+
+    @Override
+    public void notifyPrepareStart(Transaction transaction) {
+        CardinalityStats next;
+        if ( rebuild.contains(transaction) ) {
+            next = scan();
+        } else {
+            CardinalityStats delta = pending.get(transaction);
+            if ( delta == null )
+                return;
+            next = committed.copy();
+            next.apply(delta);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        next.write(out);
+        blob.setString(out.toString(StandardCharsets.UTF_8));
+        prepared.put(transaction, next);
+    }
+
+    @Override
+    public void notifyCommitFinish(Transaction transaction) {
+        CardinalityStats next = prepared.remove(transaction);
+        if ( next != null )
+            committed = next;
+        pending.remove(transaction);
+        rebuild.remove(transaction);
+    }
+
+    @Override
+    public void notifyTxnFinish(Transaction transaction) {
+        // Abort or end without commit.
+        pending.remove(transaction);
+        rebuild.remove(transaction);
+        prepared.remove(transaction);
+    }
+}
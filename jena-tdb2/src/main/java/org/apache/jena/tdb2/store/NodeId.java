@@ -159,21 +159,24 @@ public class NodeId implements Comparable<NodeId>
     @Override
     public int hashCode() {
         // Ensure all parts have an effect on the 32 bit hash value.
-        return value1 ^ ((int)value2) ^ ((int)(value2 >> 32));
+        return value1 ^ ((int)value2) ^ ((int)(value2 >> 32)) ^ (type.type() << 24);
     }
 
+    // The type is part of equality: an inline NodeId and a pointer NodeId
+    // can have the same value bits (e.g. integer 0 and the first node in the node table).
+
     @Override
     public boolean equals(Object other) {
         if ( this == other ) return true;
         if ( other == null ) return false;
         if ( !(other instanceof NodeId nOther) ) return false;
-        return equals(nOther, value1, value2);
+        return type == nOther.type && equals(nOther, value1, value2);
     }
 
     public boolean equals(NodeId nodeIdOther) {
         if ( nodeIdOther == null ) return false;
         if ( this == nodeIdOther ) return true;
-        return equals(nodeIdOther, value1, value2);
+        return type == nodeIdOther.type && equals(nodeIdOther, value1, value2);
     }
 
     /*package*/ static boolean equals(NodeId nodeId, int v1, long v2) {
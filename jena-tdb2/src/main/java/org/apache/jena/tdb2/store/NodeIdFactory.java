@@ -137,6 +137,24 @@ public class NodeIdFactory
         Bytes.setLong(v2, b, 0);
     }
 
+    /**
+     * The 64 bit form of a NodeId, as used in index keys. Unsigned comparison of
+     * these values is the order of NodeIds in indexes.
+     */
+    public static long asLong(NodeId nodeId) {
+        return encode(nodeId);
+    }
+
+    /** The NodeId of a 64 bit value from {@link #asLong}. */
+    public static NodeId fromLong(long value) {
+        return decode(value);
+    }
+
+    /** Compare two NodeIds in the order they have in index keys. */
+    public static int compareIndexOrder(NodeId nodeId1, NodeId nodeId2) {
+        return Long.compareUnsigned(encode(nodeId1), encode(nodeId2));
+    }
+
     private static long encode(NodeId nodeId) {
         long x = nodeId.value2;
         switch(nodeId.type()) {
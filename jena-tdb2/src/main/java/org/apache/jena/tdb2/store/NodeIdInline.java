@@ -36,6 +36,7 @@ import org.apache.jena.sparql.graph.NodeConst;
 import org.apache.jena.sparql.util.NodeUtils;
 import org.apache.jena.sparql.util.XSDNumUtils;
 import org.apache.jena.tdb2.TDBException;
+import org.apache.jena.tdb2.sys.SystemTDB;
 import org.apache.jena.tdb2.store.value.*;
 
 /** Encoding values in a {@link NodeId}.
@@ -56,6 +57,8 @@ import org.apache.jena.tdb2.store.value.*;
  * <li>Date and DateTime
  * <li>Boolean
  * <li>Float
+ * <li>Short strings, and short strings with a two letter language tag,
+ *     if {@link SystemTDB#enableInlineStrings} is set. See {@link ShortStringNode}.
  * </ul>
  *
  * @see IntegerNode
@@ -63,6 +66,7 @@ import org.apache.jena.tdb2.store.value.*;
  * @see DoubleNode62
  * @see DateTimeNode DateTimeNode for xsd:date and xsd:DateTime
  * @see FloatNode
+ * @see ShortStringNode
  */
 public class NodeIdInline {
     /** Datatypes that are candidates for inlining */
@@ -125,8 +129,11 @@ public class NodeIdInline {
         if ( !node.isLiteral() )
             return null;
 
-        if ( NodeUtils.isSimpleString(node) || NodeUtils.isLangString(node) )
-            return null;
+        if ( NodeUtils.isSimpleString(node) || NodeUtils.isLangString(node) ) {
+            if ( ! SystemTDB.enableInlineStrings )
+                return null;
+            return inlineString(node);
+        }
 
         try { return inline$(node); }
         catch (Throwable th) {
@@ -135,6 +142,27 @@ public class NodeIdInline {
         }
     }
 
+    /**
+     * The inline NodeId for a simple string or a language tagged string, or null
+     * if it is too long. This does not check {@link SystemTDB#enableInlineStrings}.
+     */
+    public static NodeId inlineString(Node node) {
+        String lex = node.getLiteralLexicalForm();
+        String lang = node.getLiteralLanguage();
+        if ( lang == null || lang.isEmpty() ) {
+            long v = ShortStringNode.packString(lex);
+            if ( v == ShortStringNode.NO_ENCODING )
+                return null;
+            return NodeId.createRaw(XSD_SHORTSTRING, v);
+        }
+        if ( node.getLiteralBaseDirection() != null )
+            return null;
+        long v = ShortStringNode.packLangString(lex, lang);
+        if ( v == ShortStringNode.NO_ENCODING )
+            return null;
+        return NodeId.createRaw(XSD_SHORTLANGSTRING, v);
+    }
+
     /** Return true if this node has a datatype that look like it is inlineable.
      * The node may still be out of range (e.g. very large integer).
      * Only inline(Node){@literal ->}NodeId can determine that.
@@ -317,6 +345,16 @@ public class NodeIdInline {
                     return NodeConst.nodeTrue;
                 throw new TDBException("Unrecognized boolean node id : " + val);
             }
+            case XSD_SHORTSTRING : {
+                String lex = ShortStringNode.unpackString(nodeId.getValue2());
+                return NodeFactory.createLiteralString(lex);
+            }
+            case XSD_SHORTLANGSTRING : {
+                long val = nodeId.getValue2();
+                String lex = ShortStringNode.unpackLangString(val);
+                String lang = ShortStringNode.unpackLang(val);
+                return NodeFactory.createLiteralLang(lex, lang);
+            }
             default :
                 throw new TDBException("Unrecognized node id type: " + type);
         }
@@ -58,6 +58,8 @@ public enum NodeIdType {
     XSD_UNSIGNEDINT(T_UNSIGNEDINT, "UnsignedInt"),
     XSD_UNSIGNEDSHORT(T_UNSIGNEDSHORT, "UnsignedShort"),
     XSD_UNSIGNEDBYTE(T_UNSIGNEDBYTE, "UnsignedByte"),
+    // Short string with a two letter language tag.
+    XSD_SHORTLANGSTRING(T_SHORTLANGSTRING, "ShortLangString"),
 
     // Never stored.
     SPECIAL(T_SPECIAL, "Special"),
@@ -108,6 +110,7 @@ public enum NodeIdType {
         public static final int T_UNSIGNEDSHORT = enc(20);
         public static final int T_UNSIGNEDBYTE = enc(21);
         // 21 is 00010101
+        public static final int T_SHORTLANGSTRING = enc(22);
 
         // Never stored : bits 1011 0000 so as not to look like a double.
         public static final int T_SPECIAL = enc(0x30);
@@ -195,6 +198,7 @@ public enum NodeIdType {
             case XSD_UNSIGNEDINT:
             case XSD_UNSIGNEDSHORT:
             case XSD_UNSIGNEDBYTE:
+            case XSD_SHORTLANGSTRING:
                 return true;
             default:
                 return false;
@@ -257,6 +261,7 @@ public enum NodeIdType {
         if (x == XSD_UNSIGNEDINT.value )            return XSD_UNSIGNEDINT;
         if (x == XSD_UNSIGNEDSHORT.value )          return XSD_UNSIGNEDSHORT;
         if (x == XSD_UNSIGNEDBYTE.value )           return XSD_UNSIGNEDBYTE;
+        if (x == XSD_SHORTLANGSTRING.value )        return XSD_SHORTLANGSTRING;
         //if (x == EXTENSION.value )                  return EXTENSION;
         return INVALID$;
     }
@@ -30,12 +30,16 @@ import org.apache.jena.dboe.transaction.txn.TransactionalSystem;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.Triple;
 import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+import org.apache.jena.tdb2.store.nodetupletable.NodeTupleTable;
 
 /** {@link StorageRDF} for TDB2 */
 public class StorageTDB implements StorageRDF {
     private TripleTable                 tripleTable;
     private QuadTable                   quadTable;
     private TransactionalSystem         txnSystem;
+    private final ChangeCaptureTDB      changeCapture;
+    private LiveStatsTDB                liveStats      = null;
 
     // In notifyAdd and notifyDelete,  check whether the change is a real change or not.
     // e.g. Adding a quad already present is not a real change.
@@ -48,6 +52,25 @@ public class StorageTDB implements StorageRDF {
         this.txnSystem = txnSystem;
         this.tripleTable = tripleTable;
         this.quadTable = quadTable;
+        this.changeCapture = new ChangeCaptureTDB(txnSystem);
+    }
+
+    /**
+     * The {@link ChangeCaptureTDB} for this storage.
+     * It must be registered as a listener with the transaction coordinator.
+     */
+    public ChangeCaptureTDB getChangeCapture() {
+        return changeCapture;
+    }
+
+    /** The {@link LiveStatsTDB} for this storage, or null if statistics are not maintained. */
+    public LiveStatsTDB getLiveStats() {
+        return liveStats;
+    }
+
+    /*package*/ void setLiveStats(LiveStatsTDB liveStats) {
+        this.liveStats = liveStats;
+        liveStats.setStorage(this);
     }
 
     public QuadTable getQuadTable() {
@@ -62,15 +85,25 @@ public class StorageTDB implements StorageRDF {
 
     private void checkActive() {}
 
-    private final void notifyAdd(Node g, Node s, Node p, Node o) { }
+    private final void notifyAdd(Node g, Node s, Node p, Node o) {
+        changeCapture.record(ChangeCaptureTDB.Action.ADD, g, s, p, o);
+    }
 
-    private final void notifyDelete(Node g, Node s, Node p, Node o) { }
+    private final void notifyDelete(Node g, Node s, Node p, Node o) {
+        changeCapture.record(ChangeCaptureTDB.Action.DELETE, g, s, p, o);
+    }
+
+    private final void notifyRemoveAll(Node g, Node s, Node p, Node o) {
+        changeCapture.record(ChangeCaptureTDB.Action.REMOVE_ALL, g, s, p, o);
+    }
 
     @Override
     public void add(Node s, Node p, Node o) {
         checkActive();
         ensureWriteTxn();
         notifyAdd(null, s, p, o);
+        if ( liveStats != null && ! contains(s, p, o) )
+            liveStats.recordAdd(s, p, o);
         getTripleTable().add(s, p, o);
     }
 
@@ -79,6 +112,8 @@ public class StorageTDB implements StorageRDF {
         checkActive();
         ensureWriteTxn();
         notifyAdd(g, s, p, o);
+        if ( liveStats != null && ! contains(g, s, p, o) )
+            liveStats.recordAdd(s, p, o);
         getQuadTable().add(g, s, p, o);
     }
 
@@ -87,6 +122,8 @@ public class StorageTDB implements StorageRDF {
         checkActive();
         ensureWriteTxn();
         notifyDelete(null, s, p, o);
+        if ( liveStats != null && contains(s, p, o) )
+            liveStats.recordDelete(s, p, o);
         getTripleTable().delete(s, p, o);
     }
 
@@ -95,6 +132,8 @@ public class StorageTDB implements StorageRDF {
         checkActive();
         ensureWriteTxn();
         notifyDelete(g, s, p, o);
+        if ( liveStats != null && contains(g, s, p, o) )
+            liveStats.recordDelete(s, p, o);
         getQuadTable().delete(g, s, p, o);
     }
 
@@ -102,16 +141,31 @@ public class StorageTDB implements StorageRDF {
     public void removeAll(Node s, Node p, Node o) {
         checkActive();
         ensureWriteTxn();
-        removeWorker(() -> tripleTable.getNodeTupleTable().findAsNodeIds(s,p,o),
-                     x  -> tripleTable.getNodeTupleTable().getTupleTable().delete(x) );
+        notifyRemoveAll(null, s, p, o);
+        NodeTupleTable table = tripleTable.getNodeTupleTable();
+        removeWorker(() -> table.findAsNodeIds(s,p,o),
+                     x  -> { recordRemove(table, x); table.getTupleTable().delete(x); } );
     }
 
     @Override
     public void removeAll(Node g, Node s, Node p, Node o) {
         checkActive();
         ensureWriteTxn();
-        removeWorker(() -> quadTable.getNodeTupleTable().findAsNodeIds(g,s,p,o),
-                     x  -> quadTable.getNodeTupleTable().getTupleTable().delete(x) );
+        notifyRemoveAll(g, s, p, o);
+        NodeTupleTable table = quadTable.getNodeTupleTable();
+        removeWorker(() -> table.findAsNodeIds(g,s,p,o),
+                     x  -> { recordRemove(table, x); table.getTupleTable().delete(x); } );
+    }
+
+    private void recordRemove(NodeTupleTable table, Tuple<NodeId> tuple) {
+        if ( liveStats == null )
+            return;
+        // Triple (S,P,O) or quad (G,S,P,O)
+        int i = tuple.len() - 3;
+        NodeTable nodeTable = table.getNodeTable();
+        liveStats.recordDelete(nodeTable.getNodeForNodeId(tuple.get(i)),
+                               nodeTable.getNodeForNodeId(tuple.get(i+1)),
+                               nodeTable.getNodeForNodeId(tuple.get(i+2)));
     }
 
     private static final int DeleteBufferSize = 1000;
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.UUID;
 
+import org.apache.jena.atlas.lib.FileOps;
 import org.apache.jena.atlas.lib.tuple.TupleMap;
 import org.apache.jena.dboe.DBOpEnvException;
 import org.apache.jena.dboe.base.file.*;
@@ -35,12 +36,14 @@ import org.apache.jena.dboe.sys.Names;
 import org.apache.jena.dboe.trans.bplustree.BPlusTree;
 import org.apache.jena.dboe.trans.bplustree.BPlusTreeFactory;
 import org.apache.jena.dboe.trans.data.TransBinaryDataFile;
+import org.apache.jena.dboe.trans.data.TransBlob;
 import org.apache.jena.dboe.transaction.txn.*;
 import org.apache.jena.dboe.transaction.txn.journal.Journal;
 import org.apache.jena.sparql.engine.main.QC;
 import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
 import org.apache.jena.tdb2.TDBException;
 import org.apache.jena.tdb2.params.StoreParams;
+import org.apache.jena.tdb2.params.StoreParamsCodec;
 import org.apache.jena.tdb2.solver.OpExecutorTDB2;
 import org.apache.jena.tdb2.store.nodetable.NodeTable;
 import org.apache.jena.tdb2.store.nodetable.NodeTableCache;
@@ -49,6 +52,7 @@ import org.apache.jena.tdb2.store.nodetable.NodeTableTRDF;
 import org.apache.jena.tdb2.store.nodetupletable.NodeTupleTable;
 import org.apache.jena.tdb2.store.nodetupletable.NodeTupleTableConcrete;
 import org.apache.jena.tdb2.store.tupletable.TupleIndex;
+import org.apache.jena.tdb2.store.tupletable.TupleIndexBloomFilter;
 import org.apache.jena.tdb2.store.tupletable.TupleIndexRecord;
 import org.apache.jena.tdb2.sys.ComponentIdMgr;
 import org.apache.jena.tdb2.sys.DatabaseConnection;
@@ -84,9 +88,7 @@ public class TDB2StorageBuilder {
             else
                 params = StoreParams.getDftStoreParams();
         }
-
-        if ( reorderTransform == null )
-            reorderTransform = SystemTDB.getDefaultReorderTransform();
+        params = checkInlineStrings(location, params);
 
         // Builder pattern for adding components.
         TransactionCoordinator txnCoord = buildTransactionCoordinator(location);
@@ -101,6 +103,13 @@ public class TDB2StorageBuilder {
         builder.listeners.forEach(txnCoord::addListener);
         // Freezes the TransactionCoordinator components
         txnCoord.start();
+        if ( storage.getLiveStats() != null ) {
+            storage.getLiveStats().start();
+            if ( reorderTransform == null )
+                reorderTransform = DatabaseOps.chooseReorderTransformation(location, storage.getLiveStats());
+        }
+        if ( reorderTransform == null )
+            reorderTransform = SystemTDB.getDefaultReorderTransform();
         DatasetGraphTDB dsg = new DatasetGraphTDB(location, params, reorderTransform,
                                                   storage, prefixes, txnSystem);
 
@@ -109,6 +118,24 @@ public class TDB2StorageBuilder {
         return dsg;
     }
 
+    /**
+     * Inline short strings have different NodeIds from short strings in the node
+     * table so a database can only be used with the setting of
+     * {@link SystemTDB#enableInlineStrings} it was created with.
+     */
+    private static StoreParams checkInlineStrings(Location location, StoreParams params) {
+        if ( params.getInlineStrings() == SystemTDB.enableInlineStrings )
+            return params;
+        if ( ! params.isSetInlineStrings() && isNewDatabaseArea(location) ) {
+            params = StoreParams.builder(params.getLabel(), params).inlineStrings(SystemTDB.enableInlineStrings).build();
+            if ( ! location.isMem() )
+                StoreParamsCodec.write(location, params);
+            return params;
+        }
+        throw new TDBException("Database at "+location+" has inline_strings="+params.getInlineStrings()
+                               +" but SystemTDB.enableInlineStrings is "+SystemTDB.enableInlineStrings);
+    }
+
     private static TransactionCoordinator buildTransactionCoordinator(Location location) {
         Journal journal = Journal.create(location);
         TransactionCoordinator txnCoord = new TransactionCoordinator(journal);
@@ -189,9 +216,29 @@ public class TDB2StorageBuilder {
         TripleTable tripleTable = buildTripleTable(nodeTable);
         QuadTable quadTable = buildQuadTable(nodeTable);
         StorageTDB dsg = new StorageTDB(txnSystem, tripleTable, quadTable);
+        listeners.add(dsg.getChangeCapture());
+        buildLiveStats(dsg);
         return dsg;
     }
 
+    private void buildLiveStats(StorageTDB storage) {
+        String name = Names.liveStatsBaseName;
+        if ( ! params.getLiveStats() ) {
+            // Remove any statistics from when they were enabled; they are not up-to-date.
+            if ( ! location.isMem() && location.exists(name+"."+Names.extLiveStats) )
+                FileOps.delete(location.getPath(name, Names.extLiveStats));
+            return;
+        }
+        ComponentId cid = componentIdMgr.getComponentId(name);
+        FileSet fs = new FileSet(location, name);
+        BufferChannel file = FileFactory.createBufferChannel(fs, Names.extLiveStats);
+        TransBlob blob = new TransBlob(cid, file);
+        components.add(blob);
+        LiveStatsTDB liveStats = new LiveStatsTDB(txnSystem, blob);
+        storage.setLiveStats(liveStats);
+        listeners.add(liveStats);
+    }
+
     private StoragePrefixesTDB buildPrefixes() {
         NodeTable nodeTablePrefixes = buildNodeTable(params.getPrefixTableBaseName(), false);
         StoragePrefixesTDB prefixes = buildPrefixTable(nodeTablePrefixes);
@@ -202,8 +249,8 @@ public class TDB2StorageBuilder {
         String primary = params.getPrimaryIndexTriples();
         String[] indexes = params.getTripleIndexes();
 
-        // Validation checks - common index forms.
-        if ( indexes.length != 3 && indexes.length != 2 )
+        // Validation checks - common index forms, or extra orderings (e.g. PSO for leapfrog triejoin).
+        if ( indexes.length < 2 || indexes.length > 6 )
             error(log, "Wrong number of triple table indexes: "+String.join(",", indexes));
         log.debug("Triple table: "+primary+" :: "+String.join(",", indexes));
 
@@ -267,15 +314,25 @@ public class TDB2StorageBuilder {
     private TupleIndex makeTupleIndex(String primary, String index, String name) {
         TupleMap cmap = TupleMap.create(primary, index);
         RecordFactory rf = new RecordFactory(SystemTDB.SizeOfNodeId * cmap.length(), 0);
-        RangeIndex rIdx = makeRangeIndex(rf, index);
-        TupleIndex tIdx = new TupleIndexRecord(primary.length(), cmap, index, rf, rIdx);
+        RangeIndex rIdx = makeRangeIndex(rf, index, params.getIndexCompression());
+        TupleIndexBloomFilter filter = params.getIndexBloomFilter() ? makeBloomFilter(primary.length(), index, rIdx) : null;
+        TupleIndex tIdx = new TupleIndexRecord(primary.length(), cmap, index, rf, rIdx, filter);
         return tIdx;
     }
 
-    private RangeIndex makeRangeIndex(RecordFactory recordFactory, String name) {
+    private TupleIndexBloomFilter makeBloomFilter(int tupleLength, String name, RangeIndex rIdx) {
+        String filename = location.isMem() ? null : location.getPath(name, Names.extBloomFilter);
+        // Upper bound of the number of tuples.
+        long expected = 0;
+        if ( rIdx instanceof BPlusTree bpt )
+            expected = bpt.getStateManager().getRecordsBlocksLimit() * bpt.getParams().getMaxRec();
+        return TupleIndexBloomFilter.create(filename, tupleLength, expected, TupleIndexRecord.stamp(rIdx));
+    }
+
+    private RangeIndex makeRangeIndex(RecordFactory recordFactory, String name, boolean compressLeaves) {
         ComponentId cid = componentIdMgr.getComponentId(name);
         FileSet fs = new FileSet(location, name);
-        BPlusTree bpt = BPlusTreeFactory.createBPTree(cid, fs, recordFactory);
+        BPlusTree bpt = BPlusTreeFactory.createBPTree(cid, fs, recordFactory, compressLeaves);
         components.add(bpt);
         return bpt;
     }
@@ -297,14 +354,18 @@ public class TDB2StorageBuilder {
         int idToNodeCacheSize   = isData ? params.getNodeId2NodeCacheSize() : params.getPrefixNodeId2NodeCacheSize();
         int missCacheSize       = isData ? params.getNodeMissCacheSize()    : params.getPrefixNodeMissCacheSize();
         double nodeCacheInitialCapacityFactor = params.getNodeCacheInitialCapacityFactor();
+        int nodeCacheShards = params.getNodeCacheShards();
+        // The prefix node table is small; no off-heap tier.
+        int offHeapSizeMB       = isData ? params.getNodeCacheOffHeapSizeMB() : 0;
         nodeTable = NodeTableCache.create(nodeTable, nodeToIdCacheSize, idToNodeCacheSize, missCacheSize,
-                nodeCacheInitialCapacityFactor);
+                nodeCacheInitialCapacityFactor, nodeCacheShards, offHeapSizeMB);
         return nodeTable;
     }
 
     private NodeTable buildBaseNodeTable(String name) {
         RecordFactory recordFactory = new RecordFactory(SystemTDB.LenNodeHash, SystemTDB.SizeOfNodeId);
-        Index index = makeRangeIndex(recordFactory, name);
+        // Node hashes do not share prefixes.
+        Index index = makeRangeIndex(recordFactory, name, false);
 
         String dataname = name+"-data";
         TransBinaryDataFile transBinFile = makeBinaryDataFile(dataname);
@@ -0,0 +1,350 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.store.nodetable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.jena.atlas.lib.cache.CacheInfo;
+import org.apache.jena.graph.Node;
+import org.apache.jena.riot.thrift.TRDF;
+import org.apache.jena.riot.thrift.ThriftConvert;
+import org.apache.jena.riot.thrift.wire.RDF_Term;
+import org.apache.jena.tdb2.TDBException;
+import org.apache.jena.tdb2.lib.NodeLib;
+import org.apache.jena.tdb2.store.Hash;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.NodeIdFactory;
+import org.apache.jena.tdb2.store.NodeIdType;
+import org.apache.jena.tdb2.sys.SystemTDB;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocol;
+
+/**
+ * A node cache held in direct memory, used as a second tier behind the on-heap
+ * caches of {@link NodeTableCache}.
+ * <p>
+ * Nodes are stored in their node table encoding (RDF Thrift, as written by
+ * {@link NodeTableTRDF}) in a ring of direct {@link ByteBuffer} slabs. Each
+ * record holds the NodeId, the node hash (as used by the node table index,
+ * see {@link NodeLib#setHash}) and the encoded node. Two open-addressing indexes,
+ * also in direct memory, map NodeId to record and node hash to record.
+ * <p>
+ * Slabs are filled in turn; when all are full, the oldest slab is reused and
+ * its records are dropped. Index entries are not removed: an entry is checked
+ * against the record it points to when it is used, so entries for dropped or
+ * overwritten records are misses. An index entry may also be replaced when its
+ * probe sequence is full. This is a cache so losing entries is allowed.
+ * <p>
+ * Only committed Node/NodeId pairs may be added; see {@link NodeTableCache}.
+ */
+public class NodeCacheOffHeap {
+    // Record: NodeId pointer (8), hash (16), length (4), encoded node.
+    private static final int HashLen     = SystemTDB.LenNodeHash;
+    private static final int HeaderLen   = Long.BYTES + HashLen + Integer.BYTES;
+    // Assumed average record size, for sizing the indexes.
+    private static final int AvgRecordSize = 128;
+    private static final int MaxProbe = 8;
+    private static final int MaxSlabSize = 64*1024*1024;
+
+    private final ByteBuffer[] slabs;
+    private final int slabSize;
+    // Logical, ever-increasing, position of the next write.
+    // The physical place is (slab number modulo slabs.length, offset in slab).
+    private long writePosn = 0;
+    // Records before this logical position have been overwritten.
+    private long liveStart = 0;
+    // Largest node encoding stored.
+    private final int maxRecordSize;
+
+    // Index: pairs of (key, logical position + 1). Key 0 is "empty".
+    private final LongBuffer idIndex;
+    private final LongBuffer hashIndex;
+    private final int indexMask;
+
+    private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
+
+    private final LongAdder idHits = new LongAdder();
+    private final LongAdder idMisses = new LongAdder();
+    private final LongAdder nodeHits = new LongAdder();
+    private final LongAdder nodeMisses = new LongAdder();
+
+    /** Create an off-heap node cache of about this many bytes of node data. */
+    public static NodeCacheOffHeap create(long capacityBytes) {
+        return new NodeCacheOffHeap(capacityBytes);
+    }
+
+    private NodeCacheOffHeap(long capacityBytes) {
+        if ( capacityBytes < 1024*1024 )
+            throw new IllegalArgumentException("Off-heap node cache too small: "+capacityBytes);
+        // At least 4 slabs so that reusing a slab drops only part of the cache.
+        int size = (int)Math.min(MaxSlabSize, capacityBytes/4);
+        int numSlabs = (int)Math.min(Integer.MAX_VALUE-8, (capacityBytes + size - 1) / size);
+        this.slabSize = size;
+        this.slabs = new ByteBuffer[numSlabs];
+        this.maxRecordSize = slabSize / 16;
+        long entries = Math.max(1024, capacityBytes / AvgRecordSize);
+        int slots = (int)Math.min(1 << 26, Long.highestOneBit(entries - 1) << 1);
+        this.indexMask = slots - 1;
+        this.idIndex = ByteBuffer.allocateDirect(slots * 2 * Long.BYTES).asLongBuffer();
+        this.hashIndex = ByteBuffer.allocateDirect(slots * 2 * Long.BYTES).asLongBuffer();
+    }
+
+    /** Return the node for a NodeId or null if not cached. */
+    public Node getNode(NodeId nodeId) {
+        if ( ! cacheable(nodeId) )
+            return null;
+        long key = idKey(nodeId);
+        rwLock.readLock().lock();
+        try {
+            long posn = lookup(idIndex, key, nodeId, null);
+            if ( posn < 0 ) {
+                idMisses.increment();
+                return null;
+            }
+            idHits.increment();
+            return decode(posn);
+        } finally { rwLock.readLock().unlock(); }
+    }
+
+    /** Return the NodeId for a node or null if not cached. */
+    public NodeId getNodeId(Node node) {
+        Hash hash = NodeLib.hash(node);
+        return getNodeId(hash);
+    }
+
+    /** Return the NodeId for a node hash or null if not cached. */
+    public NodeId getNodeId(Hash hash) {
+        long key = hashKey(hash.getBytes());
+        rwLock.readLock().lock();
+        try {
+            long posn = lookup(hashIndex, key, null, hash.getBytes());
+            if ( posn < 0 ) {
+                nodeMisses.increment();
+                return null;
+            }
+            nodeHits.increment();
+            return NodeIdFactory.createPtr(slab(posn).getLong(offset(posn)));
+        } finally { rwLock.readLock().unlock(); }
+    }
+
+    /** Add a committed Node/NodeId pair. */
+    public void put(Node node, NodeId nodeId) {
+        if ( ! cacheable(nodeId) )
+            return;
+        byte[] encoded = encode(node);
+        int recordLen = HeaderLen + encoded.length;
+        if ( recordLen > maxRecordSize )
+            return;
+        Hash hash = NodeLib.hash(node);
+        byte[] hashBytes = hash.getBytes();
+        rwLock.writeLock().lock();
+        try {
+            // Already present?
+            if ( lookup(idIndex, idKey(nodeId), nodeId, null) >= 0 )
+                return;
+            long posn = allocate(recordLen);
+            ByteBuffer slab = slab(posn);
+            int off = offset(posn);
+            slab.putLong(off, nodeId.getPtrLocation());
+            slab.put(off+Long.BYTES, hashBytes);
+            slab.putInt(off+Long.BYTES+HashLen, encoded.length);
+            slab.put(off+HeaderLen, encoded);
+            insert(idIndex, idKey(nodeId), posn);
+            insert(hashIndex, hashKey(hashBytes), posn);
+        } finally { rwLock.writeLock().unlock(); }
+    }
+
+    /** Remove all entries. The direct memory is kept. */
+    public void clear() {
+        rwLock.writeLock().lock();
+        try {
+            // Make every existing record invalid.
+            writePosn = nextSlabStart(writePosn);
+            liveStart = writePosn;
+            for ( int i = 0 ; i < idIndex.capacity() ; i++ ) {
+                idIndex.put(i, 0);
+                hashIndex.put(i, 0);
+            }
+        } finally { rwLock.writeLock().unlock(); }
+    }
+
+    /** Release the memory. The cache must not be used afterwards. */
+    public void close() {
+        rwLock.writeLock().lock();
+        try {
+            Arrays.fill(slabs, null);
+            liveStart = writePosn = Long.MAX_VALUE/2;
+        } finally { rwLock.writeLock().unlock(); }
+    }
+
+    /** Lookups of NodeId to Node. */
+    public CacheInfo idToNodeCacheInfo() {
+        return cacheInfo(idHits.sum(), idMisses.sum());
+    }
+
+    /** Lookups of Node to NodeId. */
+    public CacheInfo nodeToIdCacheInfo() {
+        return cacheInfo(nodeHits.sum(), nodeMisses.sum());
+    }
+
+    private static CacheInfo cacheInfo(long hits, long misses) {
+        long requests = hits + misses;
+        double rate = ( requests == 0 ) ? 1.0 : (double)hits / requests;
+        return new CacheInfo(requests, hits, misses, rate);
+    }
+
+    // ---- Internal
+
+    private static boolean cacheable(NodeId nodeId) {
+        return nodeId != null && nodeId.type() == NodeIdType.PTR && ! NodeId.isDoesNotExist(nodeId);
+    }
+
+    private static long idKey(NodeId nodeId) {
+        // Never 0.
+        return nodeId.getPtrLocation() + 1;
+    }
+
+    private static long hashKey(byte[] hashBytes) {
+        long x = 0;
+        for ( int i = 0 ; i < Long.BYTES ; i++ )
+            x = (x << 8) | (hashBytes[i] & 0xFF);
+        return x == 0 ? 1 : x;
+    }
+
+    private static int slot(long key) {
+        // Mix the bits; NodeId pointers are file offsets and have regular low bits.
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+
+    // Return the logical position of a valid record for this key, or -1.
+    private long lookup(LongBuffer index, long key, NodeId nodeId, byte[] hashBytes) {
+        int s = slot(key);
+        for ( int i = 0 ; i < MaxProbe ; i++ ) {
+            int idx = ((s + i) & indexMask) * 2;
+            long k = index.get(idx);
+            if ( k == 0 )
+                return -1;
+            if ( k != key )
+                continue;
+            long posn = index.get(idx+1) - 1;
+            if ( posn < liveStart )
+                continue;
+            ByteBuffer slab = slab(posn);
+            int off = offset(posn);
+            if ( nodeId != null && slab.getLong(off) == nodeId.getPtrLocation() )
+                return posn;
+            if ( hashBytes != null && sameHash(slab, off+Long.BYTES, hashBytes) )
+                return posn;
+        }
+        return -1;
+    }
+
+    private void insert(LongBuffer index, long key, long posn) {
+        int s = slot(key);
+        // Use an empty, stale or same-key slot; else replace the first in the probe sequence.
+        int target = (s & indexMask) * 2;
+        for ( int i = 0 ; i < MaxProbe ; i++ ) {
+            int idx = ((s + i) & indexMask) * 2;
+            long k = index.get(idx);
+            if ( k == 0 || k == key || index.get(idx+1) - 1 < liveStart ) {
+                target = idx;
+                break;
+            }
+        }
+        index.put(target, key);
+        index.put(target+1, posn + 1);
+    }
+
+    private static boolean sameHash(ByteBuffer slab, int off, byte[] hashBytes) {
+        for ( int i = 0 ; i < hashBytes.length ; i++ ) {
+            if ( slab.get(off+i) != hashBytes[i] )
+                return false;
+        }
+        return true;
+    }
+
+    // Called with the write lock.
+    private long allocate(int len) {
+        long posn = writePosn;
+        if ( offset(posn) + len > slabSize ) {
+            // Move to the next slab.
+            posn = nextSlabStart(posn);
+        }
+        long slabNum = posn / slabSize;
+        if ( offset(posn) == 0 ) {
+            // Starting a slab: records of the slab being reused become invalid.
+            long start = (slabNum - slabs.length + 1) * slabSize;
+            liveStart = Math.max(liveStart, start);
+            int i = (int)(slabNum % slabs.length);
+            if ( slabs[i] == null )
+                slabs[i] = ByteBuffer.allocateDirect(slabSize);
+        }
+        writePosn = posn + len;
+        return posn;
+    }
+
+    private long nextSlabStart(long posn) {
+        return (posn / slabSize + 1) * slabSize;
+    }
+
+    private ByteBuffer slab(long posn) {
+        return slabs[(int)((posn / slabSize) % slabs.length)];
+    }
+
+    private int offset(long posn) {
+        return (int)(posn % slabSize);
+    }
+
+    private Node decode(long posn) {
+        ByteBuffer slab = slab(posn);
+        int off = offset(posn);
+        int len = slab.getInt(off+Long.BYTES+HashLen);
+        byte[] bytes = new byte[len];
+        slab.get(off+HeaderLen, bytes);
+        try {
+            TProtocol protocol = TRDF.protocol(new ByteArrayInputStream(bytes));
+            RDF_Term term = new RDF_Term();
+            term.read(protocol);
+            return ThriftConvert.convert(term);
+        } catch (TException ex) {
+            throw new TDBException("NodeCacheOffHeap/decode", ex);
+        }
+    }
+
+    private static byte[] encode(Node node) {
+        RDF_Term term = ThriftConvert.convert(node, true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        try {
+            TProtocol protocol = TRDF.protocol(out);
+            term.write(protocol);
+            TRDF.flush(protocol);
+        } catch (TException ex) {
+            throw new TDBException("NodeCacheOffHeap/encode", ex);
+        }
+        return out.toByteArray();
+    }
+}
@@ -19,13 +19,16 @@
 package org.apache.jena.tdb2.store.nodetable;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.jena.atlas.iterator.Iter;
 import org.apache.jena.atlas.lib.Cache;
-import org.apache.jena.atlas.lib.CacheFactory;
 import org.apache.jena.atlas.lib.Pair;
+import org.apache.jena.atlas.lib.cache.CacheInfo;
 import org.apache.jena.atlas.logging.Log;
 import org.apache.jena.dboe.transaction.txn.Transaction;
 import org.apache.jena.dboe.transaction.txn.TransactionListener;
@@ -33,16 +36,30 @@ import org.apache.jena.graph.Node;
 import org.apache.jena.tdb2.TDBException;
 import org.apache.jena.tdb2.params.StoreParams;
 import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.sys.SystemTDB;
 
 /**
  * Cache wrapper around a NodeTable. Assumes all access goes through this
  * wrapper. Read-cache - write caching is done via the object file used by the
  * base NodeTable.
+ * <p>
+ * The caches are {@link ShardedCache sharded} and cache misses are serialized
+ * per lock stripe, chosen by the key, not by one lock for the whole table, so
+ * that many reader threads can decode results at the same time.
+ * <p>
+ * Optionally, there is a second cache tier in direct memory, {@link NodeCacheOffHeap},
+ * which can be made much larger than the on-heap caches without adding to
+ * garbage collection work.
  */
 public class NodeTableCache implements NodeTable, TransactionListener {
     // These caches are updated together.
     // See synchronization in _retrieveNodeByNodeId and _idForNode.
     // The cache is assumed to be single operation-thread-safe.
+    // A cache miss takes the lock stripe for the key being looked up. The
+    // Node<->NodeId mapping never changes once allocated, so two threads filling
+    // the caches for different keys at the same time put consistent entries.
+    // A Node is always locked by its own stripe, so the "not present" handling
+    // for any one node is serialized as before.
     // The buffering is for updates so that if it aborts, the changes are not made;
     // the underlying node table, being transactional, also does not make the changes.
     //
@@ -67,10 +84,20 @@ public class NodeTableCache implements NodeTable, TransactionListener {
 
     // A small cache of "known unknowns" to speed up searching for impossible things.
     private Cache<Node, Object> notPresent    = null;
+    // Second tier, in direct memory. Only committed entries are added.
+    private NodeCacheOffHeap    offHeap       = null;
     private NodeTable           baseTable;
-    private final Object        lock          = new Object();
+    private static final int    LockStripes   = 64;
+    private final Object[]      locks         = new Object[LockStripes];
     private volatile Thread     writingThread;
 
+    // Metrics: a hit is a lookup answered without calling the base table.
+    private final LongAdder     nodeToIdHits        = new LongAdder();
+    private final LongAdder     nodeToIdMisses      = new LongAdder();
+    private final LongAdder     idToNodeHits        = new LongAdder();
+    private final LongAdder     idToNodeMisses      = new LongAdder();
+    private final LongAdder     notPresentHits      = new LongAdder();
+
     /** Build a node table cache, based on the node/nodeIds setting in params. */
     public static NodeTable create(NodeTable nodeTable, StoreParams params) {
         boolean isData = true;
@@ -78,34 +105,92 @@ public class NodeTableCache implements NodeTable, TransactionListener {
         int idToNodeCacheSize   = isData ? params.getNodeId2NodeCacheSize() : params.getPrefixNodeId2NodeCacheSize();
         int missCacheSize       = isData ? params.getNodeMissCacheSize()    : params.getPrefixNodeMissCacheSize();
         return create(nodeTable, nodeToIdCacheSize, idToNodeCacheSize, missCacheSize,
-                params.getNodeCacheInitialCapacityFactor());
+                params.getNodeCacheInitialCapacityFactor(), params.getNodeCacheShards(),
+                params.getNodeCacheOffHeapSizeMB());
     }
 
     /** Build a node table cache. */
     public static NodeTable create(NodeTable nodeTable, int nodeToIdCacheSize, int idToNodeCacheSize, int nodeMissesCacheSize,
                                    double nodeCacheInitialCapacityFactor) {
+        return create(nodeTable, nodeToIdCacheSize, idToNodeCacheSize, nodeMissesCacheSize,
+                      nodeCacheInitialCapacityFactor, SystemTDB.NodeCacheShards);
+    }
+
+    /** Build a node table cache, with caches split into shards (0 for a default choice). */
+    public static NodeTable create(NodeTable nodeTable, int nodeToIdCacheSize, int idToNodeCacheSize, int nodeMissesCacheSize,
+                                   double nodeCacheInitialCapacityFactor, int shards) {
+        return create(nodeTable, nodeToIdCacheSize, idToNodeCacheSize, nodeMissesCacheSize,
+                      nodeCacheInitialCapacityFactor, shards, 0);
+    }
+
+    /**
+     * Build a node table cache, with caches split into shards (0 for a default choice)
+     * and an off-heap cache of {@code offHeapSizeMB} megabytes (0 for none).
+     */
+    public static NodeTable create(NodeTable nodeTable, int nodeToIdCacheSize, int idToNodeCacheSize, int nodeMissesCacheSize,
+                                   double nodeCacheInitialCapacityFactor, int shards, int offHeapSizeMB) {
         if ( nodeToIdCacheSize <= 0 && idToNodeCacheSize <= 0 )
             return nodeTable;
-        return new NodeTableCache(nodeTable, nodeToIdCacheSize, idToNodeCacheSize, nodeMissesCacheSize, nodeCacheInitialCapacityFactor);
+        return new NodeTableCache(nodeTable, nodeToIdCacheSize, idToNodeCacheSize, nodeMissesCacheSize,
+                                  nodeCacheInitialCapacityFactor, shards, offHeapSizeMB);
     }
 
     private NodeTableCache(NodeTable baseTable, int nodeToIdCacheSize, int idToNodeCacheSize, int nodeMissesCacheSize,
-                           double nodeCacheInitialCapacityFactor) {
+                           double nodeCacheInitialCapacityFactor, int shards, int offHeapSizeMB) {
         this.baseTable = baseTable;
+        for ( int i = 0 ; i < locks.length ; i++ )
+            locks[i] = new Object();
         if ( nodeToIdCacheSize > 0 )
-            node2id_Cache = createCache("nodeToId", nodeToIdCacheSize, nodeCacheInitialCapacityFactor, 1000);
+            node2id_Cache = createCache("nodeToId", nodeToIdCacheSize, nodeCacheInitialCapacityFactor, shards, 1000);
         if ( idToNodeCacheSize > 0 )
-            id2node_Cache = createCache("idToNode", idToNodeCacheSize, nodeCacheInitialCapacityFactor, 1000);
+            id2node_Cache = createCache("idToNode", idToNodeCacheSize, nodeCacheInitialCapacityFactor, shards, 1000);
         if ( nodeMissesCacheSize > 0 )
-            notPresent = CacheFactory.createCache(nodeMissesCacheSize, nodeCacheInitialCapacityFactor);
+            notPresent = ShardedCache.create(nodeMissesCacheSize, nodeCacheInitialCapacityFactor, shards);
+        if ( offHeapSizeMB > 0 )
+            offHeap = NodeCacheOffHeap.create(offHeapSizeMB * 1024L * 1024L);
     }
 
     private static <Key, Value> ThreadBufferingCache<Key, Value> createCache(String label, int mainCachesize,
-                                                                             double initialCapacityFactor, int bufferSize) {
-        Cache<Key, Value> cache = CacheFactory.createCache(mainCachesize, initialCapacityFactor);
+                                                                             double initialCapacityFactor, int shards,
+                                                                             int bufferSize) {
+        Cache<Key, Value> cache = ShardedCache.create(mainCachesize, initialCapacityFactor, shards);
         return new ThreadBufferingCache<>(label, cache, bufferSize);
     }
 
+    private Object lockFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return locks[h & (LockStripes-1)];
+    }
+
+    // ---- Metrics
+
+    /** Lookups of Node to NodeId, with hits being those answered without the underlying table. */
+    public CacheInfo nodeToIdCacheInfo() {
+        return cacheInfo(nodeToIdHits.sum(), nodeToIdMisses.sum());
+    }
+
+    /** Lookups of NodeId to Node, with hits being those answered without the underlying table. */
+    public CacheInfo idToNodeCacheInfo() {
+        return cacheInfo(idToNodeHits.sum(), idToNodeMisses.sum());
+    }
+
+    /** Number of Node to NodeId lookups answered by the "not present" cache. */
+    public long notPresentHits() {
+        return notPresentHits.sum();
+    }
+
+    /** The off-heap cache tier, or null if there is none. */
+    public NodeCacheOffHeap getOffHeapCache() {
+        return offHeap;
+    }
+
+    private static CacheInfo cacheInfo(long hits, long misses) {
+        long requests = hits + misses;
+        double rate = ( requests == 0 ) ? 1.0 : (double)hits / requests;
+        return new CacheInfo(requests, hits, misses, rate);
+    }
+
     // ---- Cache access, no going to underlying table.
 
     public Node getNodeForNodeIdCache(NodeId id) {
@@ -166,27 +251,75 @@ public class NodeTableCache implements NodeTable, TransactionListener {
 
     @Override
     public List<NodeId> bulkNodeToNodeId(List<Node> required, boolean withAllocation) {
-        synchronized(lock) {
-            List<Node> nodes = new ArrayList<>();
-            for ( Node n : required ) {
-                //
-                if ( getNodeIdForNodeCache(n) == null )
-                    nodes.add(n);
-            }
-            // Check bulk access.
-            List<NodeId> x = baseTable.bulkNodeToNodeId(nodes, true);
-            for ( int i = 0; i < nodes.size() ; i++ ) {
-                Node n = nodes.get(i);
-                NodeId nid = x.get(i);
-                cacheUpdate(n ,nid);
-            }
-            return x;
+        // No lock: cache updates for a node are the same whichever thread makes them.
+        List<Node> nodes = new ArrayList<>();
+        for ( Node n : required ) {
+            //
+            if ( getNodeIdForNodeCache(n) == null )
+                nodes.add(n);
+        }
+        // Check bulk access.
+        List<NodeId> x = baseTable.bulkNodeToNodeId(nodes, true);
+        for ( int i = 0; i < nodes.size() ; i++ ) {
+            Node n = nodes.get(i);
+            NodeId nid = x.get(i);
+            cacheUpdate(n ,nid);
         }
+        return x;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * NodeIds that are not in the caches are passed to the underlying node
+     * table as one request.
+     */
     @Override
     public List<Node> bulkNodeIdToNode(List<NodeId> nodeIds) {
-        return NodeTableOps.bulkNodeIdToNodeImpl(this, nodeIds);
+        List<Node> nodes = new ArrayList<>(nodeIds.size());
+        List<NodeId> misses = null;
+        for ( NodeId id : nodeIds ) {
+            Node n = null;
+            if ( ! NodeId.isDoesNotExist(id) && ! NodeId.isAny(id) ) {
+                n = cacheLookup(id);
+                if ( n == null && offHeap != null ) {
+                    n = offHeap.getNode(id);
+                    if ( n != null )
+                        cacheUpdate(n, id);
+                }
+                if ( n != null )
+                    idToNodeHits.increment();
+                else {
+                    if ( misses == null )
+                        misses = new ArrayList<>();
+                    misses.add(id);
+                }
+            }
+            nodes.add(n);
+        }
+        if ( misses == null )
+            return nodes;
+
+        idToNodeMisses.add(misses.size());
+        List<Node> found = baseTable.bulkNodeIdToNode(misses);
+        Map<NodeId, Node> resolved = new HashMap<>();
+        for ( int i = 0 ; i < misses.size() ; i++ ) {
+            NodeId id = misses.get(i);
+            Node n = found.get(i);
+            if ( n != null && resolved.put(id, n) == null ) {
+                synchronized (lockFor(id)) {
+                    cacheUpdate(n, id);
+                    offHeapUpdate(n, id);
+                }
+            }
+        }
+        for ( int i = 0 ; i < nodes.size() ; i++ ) {
+            if ( nodes.get(i) == null ) {
+                NodeId id = nodeIds.get(i);
+                nodes.set(i, resolved.get(id));
+            }
+        }
+        return nodes;
     }
 
     // ---- The worker functions
@@ -199,18 +332,31 @@ public class NodeTableCache implements NodeTable, TransactionListener {
         // Try once outside the synchronized
         // (Cache access is thread-safe)
         Node n = cacheLookup(id);
-        if ( n != null )
+        if ( n != null ) {
+            idToNodeHits.increment();
             return n;
+        }
 
-        synchronized (lock) {
+        synchronized (lockFor(id)) {
             // Lock to update two caches consistently.
             // Verify cache miss
             n = cacheLookup(id);
-            if ( n != null )
+            if ( n != null ) {
+                idToNodeHits.increment();
                 return n;
-
+            }
+            if ( offHeap != null ) {
+                n = offHeap.getNode(id);
+                if ( n != null ) {
+                    idToNodeHits.increment();
+                    cacheUpdate(n, id);
+                    return n;
+                }
+            }
+            idToNodeMisses.increment();
             n = baseTable.getNodeForNodeId(id);
             cacheUpdate(n, id);
+            offHeapUpdate(n, id);
             return n;
         }
     }
@@ -222,26 +368,43 @@ public class NodeTableCache implements NodeTable, TransactionListener {
         // Try once outside the synchronized
         // (Cache access is thread-safe.)
         NodeId nodeId = cacheLookup(node);
-        if ( nodeId != null )
+        if ( nodeId != null ) {
+            nodeToIdHits.increment();
             return nodeId;
-        synchronized (lock) {
+        }
+        synchronized (lockFor(node)) {
             // Update two caches inside synchronized.
             // Check still valid.
             nodeId = cacheLookup(node);
-            if ( nodeId != null )
+            if ( nodeId != null ) {
+                nodeToIdHits.increment();
                 return nodeId;
+            }
+
+            if ( offHeap != null ) {
+                nodeId = offHeap.getNodeId(node);
+                if ( nodeId != null ) {
+                    nodeToIdHits.increment();
+                    cacheUpdate(node, nodeId);
+                    return nodeId;
+                }
+            }
 
             if ( allocate )
                 nodeId = baseTable.getAllocateNodeId(node);
             else {
-                if ( notPresent(node) )
+                if ( notPresent(node) ) {
                     // Known not be in the baseTable.
+                    notPresentHits.increment();
+                    nodeToIdHits.increment();
                     return NodeId.NodeDoesNotExist;
-                else
-                    nodeId = baseTable.getNodeIdForNode(node);
+                }
+                nodeId = baseTable.getNodeIdForNode(node);
             }
+            nodeToIdMisses.increment();
             // Ensure caches have it. Includes recording "no such node"
             cacheUpdate(node, nodeId);
+            offHeapUpdate(node, nodeId);
             return nodeId;
         }
     }
@@ -309,6 +472,19 @@ public class NodeTableCache implements NodeTable, TransactionListener {
             notPresent.remove(node);
     }
 
+    /**
+     * Add to the off-heap cache. The off-heap cache is shared and not buffered
+     * so only committed data goes in it: the writer thread may be allocating
+     * nodes that an abort will remove, so it does not add entries.
+     */
+    private void offHeapUpdate(Node node, NodeId id) {
+        if ( offHeap == null || node == null || NodeId.isDoesNotExist(id) )
+            return;
+        if ( writingThread == Thread.currentThread() )
+            return;
+        offHeap.put(node, id);
+    }
+
     // A top-level transaction can update the not-present cache.
     // It is either
     // - a write transaction or
@@ -375,14 +551,12 @@ public class NodeTableCache implements NodeTable, TransactionListener {
 
     @Override
     public boolean isEmpty() {
-        synchronized (lock) {
-            if ( node2id_Cache != null )
-                return node2id_Cache.isEmpty();
-            if ( id2node_Cache != null )
-                id2node_Cache.isEmpty();
-            // Write through.
-            return baseTable.isEmpty();
-        }
+        if ( node2id_Cache != null )
+            return node2id_Cache.isEmpty();
+        if ( id2node_Cache != null )
+            id2node_Cache.isEmpty();
+        // Write through.
+        return baseTable.isEmpty();
     }
 
     @Override
@@ -391,6 +565,9 @@ public class NodeTableCache implements NodeTable, TransactionListener {
             // Already closed
             return;
         baseTable.close();
+        if ( offHeap != null )
+            offHeap.close();
+        offHeap = null;
         node2id_Cache = null;
         id2node_Cache = null;
         notPresent = null;
@@ -18,6 +18,9 @@
 
 package org.apache.jena.tdb2.store.nodetable;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.jena.graph.Node;
 import org.apache.jena.tdb2.store.NodeId;
 
@@ -65,6 +68,29 @@ public class NodeTableInline extends NodeTableWrapper
         return super.getNodeForNodeId(id);
     }
 
+    @Override
+    public List<Node> bulkNodeIdToNode(List<NodeId> nodeIds)
+    {
+        // Decode inline NodeIds here; pass the rest down as one request.
+        List<Node> nodes = new ArrayList<>(nodeIds.size());
+        List<NodeId> lookup = new ArrayList<>();
+        for ( NodeId id : nodeIds ) {
+            Node n = NodeId.extract(id);
+            nodes.add(n);
+            if ( n == null )
+                lookup.add(id);
+        }
+        if ( lookup.isEmpty() )
+            return nodes;
+        List<Node> found = super.bulkNodeIdToNode(lookup);
+        int j = 0;
+        for ( int i = 0 ; i < nodes.size() ; i++ ) {
+            if ( nodes.get(i) == null )
+                nodes.set(i, found.get(j++));
+        }
+        return nodes;
+    }
+
     @Override
     public String toString() { return "Inline("+nodeTable.toString()+")"; }
 }
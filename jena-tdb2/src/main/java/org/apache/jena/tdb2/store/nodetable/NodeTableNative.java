@@ -18,6 +18,9 @@
 
 package org.apache.jena.tdb2.store.nodetable;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.function.Function;
@@ -77,9 +80,37 @@ public abstract class NodeTableNative implements NodeTable
         return NodeTableOps.bulkNodeToNodeIdImpl(this, nodes, withAllocation);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The NodeIds are read in order of their location in the node storage so the
+     * reads are one forward sweep over the file.
+     */
     @Override
     public List<Node> bulkNodeIdToNode(List<NodeId> nodeIds) {
-        return NodeTableOps.bulkNodeIdToNodeImpl(this, nodeIds);
+        int N = nodeIds.size();
+        Integer[] order = new Integer[N];
+        int count = 0;
+        for ( int i = 0 ; i < N ; i++ ) {
+            NodeId id = nodeIds.get(i);
+            if ( NodeId.isDoesNotExist(id) || NodeId.isAny(id) )
+                continue;
+            order[count++] = i;
+        }
+        Arrays.sort(order, 0, count, Comparator.comparingLong(i -> nodeIds.get(i).getPtrLocation()));
+        NodeId[] sortedIds = new NodeId[count];
+        for ( int i = 0 ; i < count ; i++ )
+            sortedIds[i] = nodeIds.get(order[i]);
+        Node[] sortedNodes = new Node[count];
+        synchronized (this) {
+            readNodesFromTable(sortedIds, sortedNodes);
+        }
+        List<Node> nodes = new ArrayList<>(N);
+        for ( int i = 0 ; i < N ; i++ )
+            nodes.add(null);
+        for ( int i = 0 ; i < count ; i++ )
+            nodes.set(order[i], sortedNodes[i]);
+        return nodes;
     }
 
     // ---- The worker functions
@@ -161,6 +192,20 @@ public abstract class NodeTableNative implements NodeTable
 
     abstract protected NodeId writeNodeToTable(Node node);
     abstract protected Node readNodeFromTable(NodeId id);
+
+    /**
+     * Read the nodes for an array of NodeIds, which are in increasing order of location.
+     * The same NodeId may appear more than once.
+     * Override to take advantage of the ordering.
+     */
+    protected void readNodesFromTable(NodeId[] ids, Node[] nodes) {
+        for ( int i = 0 ; i < ids.length ; i++ ) {
+            if ( i > 0 && ids[i].equals(ids[i-1]) )
+                nodes[i] = nodes[i-1];
+            else
+                nodes[i] = readNodeFromTable(ids[i]);
+        }
+    }
     abstract protected void syncSub();
     abstract protected void closeSub();
 
@@ -32,6 +32,7 @@ import org.apache.jena.tdb2.store.NodeId;
 import org.apache.jena.tdb2.store.NodeIdFactory;
 import org.apache.thrift.TException;
 import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TMemoryInputTransport;
 
 /** NodeTable using Thrift for the I/O and storage. */
 
@@ -40,6 +41,8 @@ public class NodeTableTRDF extends NodeTableNative {
     private final BinaryDataFile diskFile;
     private final TReadAppendFileTransport transport;
     private final TProtocol protocol;
+    // Size of the read buffer used by readNodesFromTable.
+    private static final int BulkReadBufferSize = 64*1024;
 
     public NodeTableTRDF(Index nodeToId, BinaryDataFile objectFile) {
         super(nodeToId);
@@ -92,6 +95,57 @@ public class NodeTableTRDF extends NodeTableNative {
         }
     }
 
+    /**
+     * Read nodes in increasing order of location. Nodes are decoded from a buffer
+     * filled by reading a large section of the file, so nodes close together in the
+     * file are read from the same buffer.
+     */
+    @Override
+    protected void readNodesFromTable(NodeId[] ids, Node[] nodes) {
+        byte[] buffer = new byte[BulkReadBufferSize];
+        long bufferStart = -1;
+        int bufferLen = 0;
+        try {
+            TMemoryInputTransport memTransport = new TMemoryInputTransport(buffer, 0, 0);
+            TProtocol memProtocol = TRDF.protocol(memTransport);
+            for ( int i = 0 ; i < ids.length ; i++ ) {
+                NodeId id = ids[i];
+                if ( i > 0 && id.equals(ids[i-1]) ) {
+                    nodes[i] = nodes[i-1];
+                    continue;
+                }
+                long x = id.getPtrLocation();
+                Node n = null;
+                if ( bufferStart >= 0 && x >= bufferStart && x < bufferStart+bufferLen )
+                    n = decode(memTransport, memProtocol, buffer, (int)(x-bufferStart), bufferLen);
+                if ( n == null ) {
+                    // Not in the buffer, or runs off the end of the buffer: refill at this node.
+                    bufferStart = x;
+                    bufferLen = Math.max(0, diskFile.read(x, buffer, 0, buffer.length));
+                    n = decode(memTransport, memProtocol, buffer, 0, bufferLen);
+                }
+                if ( n == null )
+                    // Larger than the buffer.
+                    n = readNodeFromTable(id);
+                nodes[i] = n;
+            }
+        } catch (TException ex) {
+            throw new TDBException("NodeTableTRDF/Read", ex);
+        }
+    }
+
+    /** Decode a node from the buffer, or return null if the buffer does not contain all of it. */
+    private static Node decode(TMemoryInputTransport memTransport, TProtocol memProtocol, byte[] buffer, int offset, int limit) {
+        memTransport.reset(buffer, offset, limit-offset);
+        RDF_Term term = new RDF_Term();
+        try {
+            term.read(memProtocol);
+        } catch (TException ex) {
+            return null;
+        }
+        return ThriftConvert.convert(term);
+    }
+
     @Override
     protected void syncSub() {
         try { transport.flush(); }
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.store.nodetable;
+
+import java.util.Iterator;
+import java.util.function.Function;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.lib.Cache;
+import org.apache.jena.atlas.lib.CacheFactory;
+
+/**
+ * A cache split into independent shards by the hash of the key.
+ * <p>
+ * Each shard is a {@link CacheFactory#createCache(int, double) standard cache}
+ * (W-TinyLFU eviction) with an equal part of the total size. Threads working
+ * on keys in different shards do not share any eviction state or locks, so
+ * concurrent access scales with the number of shards.
+ * <p>
+ * Eviction is per shard, so the cache as a whole is only approximately
+ * least-frequently-used.
+ */
+public class ShardedCache<Key, Value> implements Cache<Key, Value> {
+    // Keep each shard big enough for eviction to work well.
+    private static final int MinShardSize = 1024;
+    private static final int MaxShards = 64;
+
+    private final Cache<Key, Value>[] shards;
+    private final int mask;
+
+    /**
+     * Create a cache of the given total size.
+     * A shard count of 0 or less chooses the number of shards from the number
+     * of processors. The number is rounded to a power of two and reduced so
+     * that each shard holds at least 1024 entries.
+     */
+    public static <Key, Value> Cache<Key, Value> create(int maxSize, double initialCapacityFactor, int shards) {
+        int n = numShards(maxSize, shards);
+        if ( n == 1 )
+            return CacheFactory.createCache(maxSize, initialCapacityFactor);
+        return new ShardedCache<>(maxSize, initialCapacityFactor, n);
+    }
+
+    /*package*/ static int numShards(int maxSize, int shards) {
+        if ( shards <= 0 )
+            shards = Runtime.getRuntime().availableProcessors();
+        shards = Math.min(shards, MaxShards);
+        shards = Math.min(shards, Math.max(1, maxSize / MinShardSize));
+        // Round down to a power of two.
+        return Integer.highestOneBit(Math.max(1, shards));
+    }
+
+    @SuppressWarnings("unchecked")
+    private ShardedCache(int maxSize, double initialCapacityFactor, int numShards) {
+        this.shards = new Cache[numShards];
+        this.mask = numShards - 1;
+        int shardSize = (maxSize + numShards - 1) / numShards;
+        for ( int i = 0 ; i < numShards ; i++ )
+            shards[i] = CacheFactory.createCache(shardSize, initialCapacityFactor);
+    }
+
+    private Cache<Key, Value> shard(Key key) {
+        int h = key.hashCode();
+        // Spread the high bits down; hash codes of NodeIds and Nodes vary in the high bits.
+        h ^= (h >>> 16);
+        return shards[h & mask];
+    }
+
+    /*package*/ int numShards() {
+        return shards.length;
+    }
+
+    @Override
+    public boolean containsKey(Key key) {
+        return shard(key).containsKey(key);
+    }
+
+    @Override
+    public Value getIfPresent(Key key) {
+        return shard(key).getIfPresent(key);
+    }
+
+    @Override
+    public Value get(Key key, Function<Key, Value> function) {
+        return shard(key).get(key, function);
+    }
+
+    @Override
+    public void put(Key key, Value thing) {
+        shard(key).put(key, thing);
+    }
+
+    @Override
+    public void remove(Key key) {
+        shard(key).remove(key);
+    }
+
+    @Override
+    public Iterator<Key> keys() {
+        Iterator<Key> iter = Iter.nullIterator();
+        for ( Cache<Key, Value> c : shards )
+            iter = Iter.concat(iter, c.keys());
+        return iter;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for ( Cache<Key, Value> c : shards ) {
+            if ( ! c.isEmpty() )
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for ( Cache<Key, Value> c : shards )
+            c.clear();
+    }
+
+    @Override
+    public long size() {
+        long x = 0;
+        for ( Cache<Key, Value> c : shards )
+            x += c.size();
+        return x;
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.store.tupletable;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.jena.atlas.lib.Bytes;
+import org.apache.jena.atlas.logging.FmtLog;
+import org.apache.jena.dboe.base.record.Record;
+import org.apache.jena.tdb2.store.NodeId;
+
+/**
+ * A bloom filter of the keys of a {@link TupleIndexRecord}, and of every leading
+ * prefix of the keys, in index order. A lookup by a fully or partially bound
+ * leading prefix that the filter does not contain has no matches and needs no
+ * B+Tree access.
+ * <p>
+ * Bits are only ever set; deleting a tuple leaves it as a false positive. The
+ * filter is built on first use by scanning the index. From the creation of the
+ * filter, every tuple added or deleted through the {@link TupleIndexRecord} is
+ * also recorded so the filter covers every tuple that is visible to any
+ * transaction whenever the scan happens. Code that changes the B+Tree directly
+ * must call {@link #reset} when no other transactions are active.
+ * <p>
+ * The filter is written to a file when the index is closed and read back, and
+ * the file removed, when the index is next opened; after a crash there is no
+ * file and the filter is rebuilt. The file records a stamp of the state of the
+ * index when it was written and is not used if the index has changed since.
+ * <p>
+ * The filter is sized, at about 10 bits per entry, for twice the expected number
+ * of tuples. If it becomes overfull, lookups fall back to the B+Tree more often
+ * and it is resized when the database is next opened.
+ */
+public class TupleIndexBloomFilter {
+    private static final long   Magic       = 0x544442424C4F4F4DL;   // "TDBBLOOM"
+    private static final int    BitsPerKey  = 10;
+    private static final int    NumHashes   = 7;
+    private static final long   MinBits     = 1L << 16;
+    private static final long   MaxBits     = 1L << 33;
+    // Estimated entries per tuple. Leading prefixes are shared by many tuples.
+    private static final int    EntriesPerTuple = 2;
+
+    private final String filename;
+    private final int tupleLength;
+    private final long[] bits;
+    private final long mask;
+    private long entries = 0;
+    private volatile boolean ready = false;
+
+    /**
+     * Create a filter for an index of tuples of length {@code tupleLength}.
+     * If {@code filename} is not null, the filter is read from that file if
+     * possible and will be written there on {@link #close}.
+     * {@code stamp} identifies the current state of the index.
+     */
+    public static TupleIndexBloomFilter create(String filename, int tupleLength, long expectedTuples, long stamp) {
+        if ( filename != null ) {
+            TupleIndexBloomFilter filter = read(filename, tupleLength, stamp);
+            if ( filter != null ) {
+                if ( ! filter.isOverfull() )
+                    return filter;
+                expectedTuples = Math.max(expectedTuples, filter.entries / EntriesPerTuple);
+            }
+        }
+        return new TupleIndexBloomFilter(filename, tupleLength, numBits(expectedTuples));
+    }
+
+    private static long numBits(long expectedTuples) {
+        long x = Math.max(1, expectedTuples) * 2 * EntriesPerTuple * BitsPerKey;
+        long n = Long.highestOneBit(x);
+        if ( n < x )
+            n = n << 1;
+        return Math.min(MaxBits, Math.max(MinBits, n));
+    }
+
+    private TupleIndexBloomFilter(String filename, int tupleLength, long numBits) {
+        this.filename = filename;
+        this.tupleLength = tupleLength;
+        this.bits = new long[(int)(numBits >>> 6)];
+        this.mask = numBits - 1;
+    }
+
+    /** Whether the filter has been built and answers {@link #mightContain}. */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /** Whether the filter has more entries than it was sized for. */
+    public boolean isOverfull() {
+        return entries * BitsPerKey > bits.length * 64L;
+    }
+
+    /** Record the key of a tuple, in index order, and all its leading prefixes. */
+    public synchronized void add(byte[] key) {
+        long h = 0;
+        for ( int i = 0 ; i < tupleLength ; i++ ) {
+            h = mixSlot(h, key, i);
+            set(h, i+1);
+        }
+    }
+
+    /**
+     * Build the filter from the records of the index, as seen by the current transaction.
+     * Does nothing if the filter is already built.
+     */
+    public synchronized void build(Iterator<Record> records) {
+        if ( ready )
+            return;
+        byte[] previous = null;
+        while ( records.hasNext() ) {
+            byte[] key = records.next().getKey();
+            // Records are sorted so a prefix is new if it differs from the previous key's prefix.
+            int same = (previous == null) ? 0 : sameSlots(previous, key);
+            long h = 0;
+            for ( int i = 0 ; i < tupleLength ; i++ ) {
+                h = mixSlot(h, key, i);
+                if ( i >= same )
+                    set(h, i+1);
+            }
+            previous = key;
+        }
+        ready = true;
+    }
+
+    /**
+     * Return false if no tuple in the index has the given first {@code slots} slots
+     * of {@code key}, in index order. Return true if there may be such a tuple, or
+     * the filter is not built.
+     */
+    public boolean mightContain(byte[] key, int slots) {
+        if ( ! ready )
+            return true;
+        long h = 0;
+        for ( int i = 0 ; i < slots ; i++ )
+            h = mixSlot(h, key, i);
+        return test(h, slots);
+    }
+
+    /**
+     * Clear the filter, to be rebuilt on next use.
+     * Only call when there are no other active transactions on the index.
+     */
+    public synchronized void reset() {
+        ready = false;
+        entries = 0;
+        Arrays.fill(bits, 0L);
+    }
+
+    /**
+     * Write the filter to its file, if it has one and has been built.
+     * {@code stamp} identifies the state of the index at this point.
+     */
+    public synchronized void close(long stamp) {
+        if ( filename == null || ! ready )
+            return;
+        Path path = Path.of(filename);
+        if ( ! Files.isDirectory(path.getParent()) )
+            return;
+        try ( DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path))) ) {
+            out.writeLong(Magic);
+            out.writeLong(stamp);
+            out.writeInt(tupleLength);
+            out.writeLong(bits.length * 64L);
+            out.writeLong(entries);
+            for ( long x : bits )
+                out.writeLong(x);
+        } catch (IOException ex) {
+            FmtLog.warn(TupleIndexBloomFilter.class, "Failed to write %s: %s", filename, ex.getMessage());
+            try { Files.deleteIfExists(path); } catch (IOException ex2) {}
+        }
+    }
+
+    /** Read and remove the file. The file is written again on close. */
+    private static TupleIndexBloomFilter read(String filename, int tupleLength, long stamp) {
+        Path path = Path.of(filename);
+        if ( ! Files.exists(path) )
+            return null;
+        TupleIndexBloomFilter filter = null;
+        try ( DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path))) ) {
+            long magic = in.readLong();
+            long fileStamp = in.readLong();
+            int len = in.readInt();
+            long numBits = in.readLong();
+            if ( magic == Magic && fileStamp == stamp && len == tupleLength && Long.bitCount(numBits) == 1 && numBits >= MinBits && numBits <= MaxBits ) {
+                TupleIndexBloomFilter f = new TupleIndexBloomFilter(filename, tupleLength, numBits);
+                f.entries = in.readLong();
+                for ( int i = 0 ; i < f.bits.length ; i++ )
+                    f.bits[i] = in.readLong();
+                f.ready = true;
+                filter = f;
+            }
+        } catch (IOException ex) {
+            FmtLog.warn(TupleIndexBloomFilter.class, "Failed to read %s: %s", filename, ex.getMessage());
+        }
+        try { Files.deleteIfExists(path); }
+        catch (IOException ex) {
+            FmtLog.warn(TupleIndexBloomFilter.class, "Failed to remove %s: %s", filename, ex.getMessage());
+            return null;
+        }
+        return filter;
+    }
+
+    private void set(long h, int slots) {
+        long h1 = finish(h, slots);
+        long h2 = fmix64(h1) | 1;
+        for ( int i = 0 ; i < NumHashes ; i++ ) {
+            long idx = (h1 + i*h2) & mask;
+            bits[(int)(idx >>> 6)] |= (1L << idx);
+        }
+        entries++;
+    }
+
+    private boolean test(long h, int slots) {
+        long h1 = finish(h, slots);
+        long h2 = fmix64(h1) | 1;
+        for ( int i = 0 ; i < NumHashes ; i++ ) {
+            long idx = (h1 + i*h2) & mask;
+            if ( (bits[(int)(idx >>> 6)] & (1L << idx)) == 0 )
+                return false;
+        }
+        return true;
+    }
+
+    private int sameSlots(byte[] key1, byte[] key2) {
+        for ( int i = 0 ; i < tupleLength ; i++ ) {
+            if ( Bytes.getLong(key1, i*NodeId.SIZE) != Bytes.getLong(key2, i*NodeId.SIZE) )
+                return i;
+        }
+        return tupleLength;
+    }
+
+    private static long mixSlot(long h, byte[] key, int slot) {
+        return fmix64(h ^ Bytes.getLong(key, slot*NodeId.SIZE)) + 0x9E3779B97F4A7C15L;
+    }
+
+    // Distinguish a prefix from a longer key.
+    private static long finish(long h, int slots) {
+        return fmix64(h + slots * 0xC2B2AE3D27D4EB4FL);
+    }
+
+    // MurmurHash3 64 bit finalizer.
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xFF51AFD7ED558CCDL;
+        k ^= k >>> 33;
+        k *= 0xC4CEB9FE1A85EC53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TupleIndexBloomFilter[bits=%d, entries=%d, ready=%s]", bits.length * 64L, entries, ready);
+    }
+}
@@ -33,6 +33,8 @@ import org.apache.jena.dboe.base.record.Record;
 import org.apache.jena.dboe.base.record.RecordFactory;
 import org.apache.jena.dboe.base.record.RecordMapper;
 import org.apache.jena.dboe.index.RangeIndex;
+import org.apache.jena.dboe.trans.bplustree.BPTStateMgr;
+import org.apache.jena.dboe.trans.bplustree.BPlusTree;
 import org.apache.jena.tdb2.TDBException;
 import org.apache.jena.tdb2.lib.TupleLib;
 import org.apache.jena.tdb2.store.NodeId;
@@ -44,12 +46,20 @@ public class TupleIndexRecord extends TupleIndexBase
     private final RangeIndex index;
     private final RecordFactory factory;
     private final RecordMapper<Tuple<NodeId>> recordMapper;
+    private final TupleIndexBloomFilter filter;
 
     public TupleIndexRecord(int N,  TupleMap tupleMapping, String name, RecordFactory factory, RangeIndex index)
+    {
+        this(N, tupleMapping, name, factory, index, null);
+    }
+
+    /** A tuple index with an optional (may be null) bloom filter of keys and key prefixes. */
+    public TupleIndexRecord(int N,  TupleMap tupleMapping, String name, RecordFactory factory, RangeIndex index, TupleIndexBloomFilter filter)
     {
         super(N, tupleMapping, name);
         this.factory = factory;
         this.index = index;
+        this.filter = filter;
 
         if ( factory.keyLength() != N*SizeOfNodeId)
             throw new TDBException(format("Mismatch: TupleIndex of length %d is not comparative with a factory for key length %d", N, factory.keyLength()));
@@ -89,6 +99,8 @@ public class TupleIndexRecord extends TupleIndexBase
     @Override
     protected void performAdd(Tuple<NodeId> tuple) {
         Record r = TupleLib.record(factory, tuple, tupleMap);
+        if ( filter != null )
+            filter.add(r.getKey());
         index.insert(r);
     }
 
@@ -96,6 +108,10 @@ public class TupleIndexRecord extends TupleIndexBase
     @Override
     protected void performDelete(Tuple<NodeId> tuple) {
         Record r = TupleLib.record(factory, tuple, tupleMap);
+        // Until the filter is built, it must record deleted tuples which may
+        // still be visible to older transactions.
+        if ( filter != null && ! filter.isReady() )
+            filter.add(r.getKey());
         index.delete(r);
     }
 
@@ -174,6 +190,10 @@ public class TupleIndexRecord extends TupleIndexBase
             }
         }
 
+        // Leading prefix not in the index?
+        if ( leadingIdx >= 0 && ! mightContain(minRec.getKey(), leadingIdx+1) )
+            return Iter.nullIterator();
+
         // Is it a simple existence test?
         if ( numSlots == pattern.len() ) {
             if ( index.contains(minRec) )
@@ -241,6 +261,45 @@ public class TupleIndexRecord extends TupleIndexBase
         return tuples;
     }
 
+    /**
+     * Find tuples matching a pattern, in index order, starting from a given
+     * NodeId in the first unbound slot (in index order).
+     * <p>
+     * The defined slots of the pattern must be the leading slots of this index.
+     * The tuples are sorted, in the order of {@link NodeIdFactory#compareIndexOrder},
+     * by the first undefined slot, and only tuples where that slot is equal to or
+     * greater than {@code start} are returned. A {@code start} of null means from the
+     * beginning. Returns null if the defined slots are not a prefix of the index.
+     */
+    public Iterator<Tuple<NodeId>> findFrom(Tuple<NodeId> patternNaturalOrder, NodeId start) {
+        Tuple<NodeId> pattern = tupleMap.map(patternNaturalOrder);
+        int prefixLen = 0;
+        while ( prefixLen < pattern.len() && ! NodeId.isAny(pattern.get(prefixLen)) )
+            prefixLen++;
+        for ( int i = prefixLen ; i < pattern.len() ; i++ ) {
+            if ( ! NodeId.isAny(pattern.get(i)) )
+                return null;
+        }
+        if ( prefixLen == pattern.len() )
+            return null;
+
+        Record minRec = factory.createKeyOnly();
+        Record maxRec = null;
+        for ( int i = 0 ; i < prefixLen ; i++ )
+            NodeIdFactory.set(pattern.get(i), minRec.getKey(), i*SizeOfNodeId);
+        if ( prefixLen > 0 && ! mightContain(minRec.getKey(), prefixLen) )
+            return Iter.nullIterator();
+        if ( start != null )
+            NodeIdFactory.set(start, minRec.getKey(), prefixLen*SizeOfNodeId);
+        if ( prefixLen > 0 ) {
+            maxRec = factory.createKeyOnly();
+            for ( int i = 0 ; i < prefixLen-1 ; i++ )
+                NodeIdFactory.set(pattern.get(i), maxRec.getKey(), i*SizeOfNodeId);
+            NodeIdFactory.setNext(pattern.get(prefixLen-1), maxRec.getKey(), (prefixLen-1)*SizeOfNodeId);
+        }
+        return index.iterator(minRec, maxRec, recordMapper);
+    }
+
     @Override
     public Iterator<Tuple<NodeId>> all()
     {
@@ -268,8 +327,42 @@ public class TupleIndexRecord extends TupleIndexBase
         return Iter.filter(iter, filter);
     }
 
+    /** Test the bloom filter, if any, building it on first use. */
+    private boolean mightContain(byte[] key, int slots) {
+        if ( filter == null )
+            return true;
+        if ( ! filter.isReady() )
+            filter.build(index.iterator());
+        return filter.mightContain(key, slots);
+    }
+
+    /**
+     * Clear the bloom filter, if any, so that it is rebuilt on next use.
+     * Call this after changing the range index other than through this {@code TupleIndex},
+     * when there are no other transactions active on the index.
+     */
+    public void resetFilter() {
+        if ( filter != null )
+            filter.reset();
+    }
+
+    public final TupleIndexBloomFilter getBloomFilter() {
+        return filter;
+    }
+
+    /** A value that changes when the index is changed, used to validate a persisted bloom filter. */
+    public static long stamp(RangeIndex index) {
+        if ( index instanceof BPlusTree bpt ) {
+            BPTStateMgr state = bpt.getStateManager();
+            return (state.getRoot() * 31L + state.getNodeBlocksLimit()) * 31L + state.getRecordsBlocksLimit();
+        }
+        return 0;
+    }
+
     @Override
     public void close() {
+        if ( filter != null )
+            filter.close(stamp(index));
         index.close();
     }
 
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.store.value;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Short strings, packed into 56 bits.
+ * <p>
+ * A string (xsd:string) of up to 7 bytes of UTF-8 is packed as its bytes, left
+ * aligned and zero filled, so the numeric order of packed values is the byte
+ * order of the strings. A language tagged string with a tag of two lower case
+ * ASCII letters and up to 5 bytes of UTF-8 has the tag in bits 40 to 49 (5 bits
+ * a letter) and the string, packed the same way, in the low 40 bits.
+ * <p>
+ * Strings containing the character U+0000, or that are not well-formed UTF-16
+ * (an unpaired surrogate has no UTF-8 encoding), are not packed.
+ */
+public class ShortStringNode {
+    /** Maximum length in bytes of a string without language tag. */
+    public static final int MaxStringBytes      = 7;
+    /** Maximum length in bytes of a string with a language tag. */
+    public static final int MaxLangStringBytes  = 5;
+
+    /** Returned when the string can not be packed. */
+    public static final long NO_ENCODING = -1L;
+
+    private static final int LangShift = 8*MaxLangStringBytes;
+
+    /** Pack a string (without language tag); return {@link #NO_ENCODING} if it does not fit. */
+    public static long packString(String string) {
+        return packBytes(string, MaxStringBytes);
+    }
+
+    /** Unpack the string packed by {@link #packString}. */
+    public static String unpackString(long v) {
+        return unpackBytes(v, MaxStringBytes);
+    }
+
+    /** Pack a language tagged string; return {@link #NO_ENCODING} if it does not fit. */
+    public static long packLangString(String string, String lang) {
+        if ( lang.length() != 2 )
+            return NO_ENCODING;
+        int c1 = letter(lang.charAt(0));
+        int c2 = letter(lang.charAt(1));
+        if ( c1 < 0 || c2 < 0 )
+            return NO_ENCODING;
+        long x = packBytes(string, MaxLangStringBytes);
+        if ( x == NO_ENCODING )
+            return NO_ENCODING;
+        long tag = (c1 << 5) | c2;
+        return (tag << LangShift) | x;
+    }
+
+    /** Unpack the string part of {@link #packLangString}. */
+    public static String unpackLangString(long v) {
+        return unpackBytes(v & ((1L << LangShift) - 1), MaxLangStringBytes);
+    }
+
+    /** Unpack the language tag of {@link #packLangString}. */
+    public static String unpackLang(long v) {
+        int tag = (int)(v >>> LangShift);
+        char c1 = (char)('a' + (tag >>> 5) - 1);
+        char c2 = (char)('a' + (tag & 0x1F) - 1);
+        return new String(new char[] {c1, c2});
+    }
+
+    // 'a' to 'z' as 1 to 26 so a tag is never zero.
+    private static int letter(char ch) {
+        if ( ch < 'a' || ch > 'z' )
+            return -1;
+        return ch - 'a' + 1;
+    }
+
+    private static long packBytes(String string, int maxBytes) {
+        // Quick check: a UTF-8 encoding has at least one byte per char.
+        if ( string.length() > maxBytes )
+            return NO_ENCODING;
+        // String.getBytes would replace an unpaired surrogate by '?'.
+        if ( ! isWellFormed(string) )
+            return NO_ENCODING;
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        if ( bytes.length > maxBytes )
+            return NO_ENCODING;
+        long x = 0;
+        for ( int i = 0 ; i < maxBytes ; i++ ) {
+            int b = 0;
+            if ( i < bytes.length ) {
+                b = bytes[i] & 0xFF;
+                if ( b == 0 )
+                    return NO_ENCODING;
+            }
+            x = (x << 8) | b;
+        }
+        return x;
+    }
+
+    // Every high surrogate is followed by a low surrogate and every low surrogate follows a high surrogate.
+    private static boolean isWellFormed(String string) {
+        for ( int i = 0 ; i < string.length() ; i++ ) {
+            char ch = string.charAt(i);
+            if ( Character.isHighSurrogate(ch) ) {
+                if ( i+1 == string.length() || ! Character.isLowSurrogate(string.charAt(i+1)) )
+                    return false;
+                i++;
+            } else if ( Character.isLowSurrogate(ch) )
+                return false;
+        }
+        return true;
+    }
+
+    private static String unpackBytes(long v, int maxBytes) {
+        byte[] bytes = new byte[maxBytes];
+        int len = 0;
+        for ( int i = 0 ; i < maxBytes ; i++ ) {
+            byte b = (byte)(v >>> (8*(maxBytes-1-i)));
+            if ( b == 0 )
+                break;
+            bytes[len++] = b;
+        }
+        return new String(bytes, 0, len, StandardCharsets.UTF_8);
+    }
+}
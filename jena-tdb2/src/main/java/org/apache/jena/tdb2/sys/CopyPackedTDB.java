@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.sys;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.jena.atlas.logging.FmtLog;
+import org.apache.jena.dboe.base.record.Record;
+import org.apache.jena.dboe.trans.bplustree.BPlusTree;
+import org.apache.jena.dboe.trans.bplustree.rewriter.BPlusTreeRewriter;
+import org.apache.jena.dboe.trans.data.TransBinaryDataFile;
+import org.apache.jena.dboe.transaction.txn.Transaction;
+import org.apache.jena.dboe.transaction.txn.TransactionCoordinator;
+import org.apache.jena.dboe.transaction.txn.TransactionalComponent;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.tdb2.TDBException;
+import org.apache.jena.tdb2.loader.base.CoLib;
+import org.apache.jena.tdb2.loader.base.LoaderOps;
+import org.apache.jena.tdb2.store.DatasetGraphTDB;
+import org.apache.jena.tdb2.store.StoragePrefixesTDB;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+import org.apache.jena.tdb2.store.nodetupletable.NodeTupleTable;
+import org.apache.jena.tdb2.store.tupletable.TupleIndex;
+import org.apache.jena.tdb2.store.tupletable.TupleIndexRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copy a TDB2 storage database into a new, empty, storage database by rebuilding
+ * each index directly from the index in the source database.
+ * <p>
+ * NodeIds are preserved: the node table data files are copied byte-for-byte, so the
+ * source index order is also the destination index order and no sorting is needed.
+ * Each B+Tree is written with {@link BPlusTreeRewriter}, which produces fully packed
+ * trees. Indexes are built in parallel, one index per thread at a time.
+ * <p>
+ * Unlike {@link CopyDSG}, RDF terms that are no longer used in the source database
+ * are carried over to the copy.
+ * <p>
+ * The destination must have the same index layout as the source. It is updated
+ * outside its own transaction coordinator and must be reconnected before it is used
+ * (for example, by {@link StoreConnection#internalExpel}).
+ */
+public class CopyPackedTDB {
+    private static Logger LOG = LoggerFactory.getLogger(CopyPackedTDB.class);
+
+    /** Copy, waiting until the copy has finished. */
+    public static void copy(DatasetGraphTDB dsgSrc, DatasetGraphTDB dsgDst, int threads) {
+        CopyPackedTDB copier = new CopyPackedTDB(dsgSrc, dsgDst, threads);
+        copier.start();
+        copier.finish();
+    }
+
+    private final DatasetGraphTDB dsgSrc;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>(null);
+    private CountDownLatch readersStarted = null;
+
+    public CopyPackedTDB(DatasetGraphTDB dsgSrc, DatasetGraphTDB dsgDst, int threads) {
+        this.dsgSrc = dsgSrc;
+        NodeTupleTable triplesSrc = dsgSrc.getTripleTable().getNodeTupleTable();
+        NodeTupleTable quadsSrc = dsgSrc.getQuadTable().getNodeTupleTable();
+        NodeTupleTable prefixesSrc = ((StoragePrefixesTDB)dsgSrc.getStoragePrefixes()).getNodeTupleTable();
+        NodeTupleTable triplesDst = dsgDst.getTripleTable().getNodeTupleTable();
+        NodeTupleTable quadsDst = dsgDst.getQuadTable().getNodeTupleTable();
+        NodeTupleTable prefixesDst = ((StoragePrefixesTDB)dsgDst.getStoragePrefixes()).getNodeTupleTable();
+
+        // The triple and quad tables share a node table.
+        addNodeTableTask(triplesSrc.getNodeTable(), triplesDst.getNodeTable());
+        addNodeTableTask(prefixesSrc.getNodeTable(), prefixesDst.getNodeTable());
+        addIndexTasks(triplesSrc, triplesDst);
+        addIndexTasks(quadsSrc, quadsDst);
+        addIndexTasks(prefixesSrc, prefixesDst);
+
+        int N = Math.max(1, Math.min(threads, tasks.size()));
+        for ( int i = 0 ; i < N ; i++ ) {
+            Thread thread = new Thread(this::worker, "Compact-"+(i+1));
+            thread.setDaemon(true);
+            workers.add(thread);
+        }
+    }
+
+    /**
+     * Start the copy. On return, all the workers have a read transaction on the
+     * source database and so see the same state of the source.
+     */
+    public void start() {
+        readersStarted = new CountDownLatch(workers.size());
+        workers.forEach(Thread::start);
+        try {
+            readersStarted.await();
+        } catch (InterruptedException ex) {
+            throw new TDBException("Interrupted waiting for compaction workers to start", ex);
+        }
+    }
+
+    /** Wait for the copy to finish. */
+    public void finish() {
+        for ( Thread thread : workers ) {
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                throw new TDBException("Interrupted waiting for compaction workers to finish", ex);
+            }
+        }
+        Throwable th = failure.get();
+        if ( th instanceof RuntimeException ex )
+            throw ex;
+        if ( th instanceof Error err )
+            throw err;
+        if ( th != null )
+            throw new TDBException(th);
+    }
+
+    private void worker() {
+        boolean inTxn = false;
+        try {
+            dsgSrc.begin(TxnType.READ);
+            inTxn = true;
+        } catch (Throwable th) {
+            failure.compareAndSet(null, th);
+        } finally {
+            readersStarted.countDown();
+        }
+        if ( ! inTxn )
+            return;
+        try {
+            for ( ;; ) {
+                if ( failure.get() != null )
+                    break;
+                Runnable task = tasks.poll();
+                if ( task == null )
+                    break;
+                task.run();
+            }
+        } catch (Throwable th) {
+            failure.compareAndSet(null, th);
+        } finally {
+            dsgSrc.end();
+        }
+    }
+
+    private void addIndexTasks(NodeTupleTable ntSrc, NodeTupleTable ntDst) {
+        TupleIndex[] indexesDst = ntDst.getTupleTable().getIndexes();
+        TupleIndex[] indexesSrc = ntSrc.getTupleTable().getIndexes();
+        if ( indexesSrc.length != indexesDst.length )
+            throw new TDBException("Different number of indexes: "+indexesSrc.length+" : "+indexesDst.length);
+        for ( int i = 0 ; i < indexesSrc.length ; i++ ) {
+            TupleIndex idxSrc = indexesSrc[i];
+            TupleIndex idxDst = indexesDst[i];
+            if ( ! idxSrc.getName().equals(idxDst.getName()) )
+                throw new TDBException("Different index: "+idxSrc.getName()+" : "+idxDst.getName());
+            BPlusTree bptSrc = LoaderOps.idxBTree(idxSrc.baseTupleIndex());
+            BPlusTree bptDst = LoaderOps.idxBTree(idxDst.baseTupleIndex());
+            tasks.add(()->{
+                FmtLog.debug(LOG, "Index %s", idxSrc.getName());
+                executeWrite(()->packInto(bptSrc.iterator(), bptDst), bptDst);
+                // The records were written directly to the B+Tree.
+                ((TupleIndexRecord)idxDst.baseTupleIndex()).resetFilter();
+            });
+        }
+    }
+
+    private void addNodeTableTask(NodeTable ntSrc, NodeTable ntDst) {
+        TransBinaryDataFile dataSrc = LoaderOps.ntDataFile(ntSrc);
+        TransBinaryDataFile dataDst = LoaderOps.ntDataFile(ntDst);
+        BPlusTree bptSrc = LoaderOps.ntBPTree(ntSrc);
+        BPlusTree bptDst = LoaderOps.ntBPTree(ntDst);
+        tasks.add(()->{
+            FmtLog.debug(LOG, "Node table %s", ntSrc);
+            executeWrite(()->{
+                copyBytes(dataSrc, dataDst);
+                packInto(bptSrc.iterator(), bptDst);
+            }, dataDst, bptDst);
+        });
+    }
+
+    private static final int copyBufferSize = 128*1024;
+
+    /** Copy the data file so that the destination has the same byte offsets (NodeIds). */
+    private static void copyBytes(TransBinaryDataFile src, TransBinaryDataFile dst) {
+        if ( dst.length() != 0 )
+            throw new TDBException("Destination node data file is not empty");
+        long length = src.length();
+        byte[] buffer = new byte[copyBufferSize];
+        long posn = 0;
+        while ( posn < length ) {
+            int len = (int)Math.min(buffer.length, length-posn);
+            int x = src.read(posn, buffer, 0, len);
+            if ( x <= 0 )
+                throw new TDBException("Short read of node data file at "+posn);
+            long posnDst = dst.write(buffer, 0, x);
+            if ( posnDst != posn )
+                throw new TDBException("Node data file copy out of step: "+posn+" : "+posnDst);
+            posn += x;
+        }
+    }
+
+    private static void packInto(Iterator<Record> records, BPlusTree bptDst) {
+        BPlusTreeRewriter.packIntoBPlusTree(records, bptDst.getParams(), bptDst.getRecordFactory(),
+                                            bptDst.getStateManager().getBufferChannel(),
+                                            bptDst.getNodeManager().getBlockMgr(),
+                                            bptDst.getRecordsMgr().getBlockMgr());
+    }
+
+    /** Independent write transaction on just the given components. */
+    private static void executeWrite(Runnable action, TransactionalComponent... components) {
+        TransactionCoordinator txnCoord = CoLib.newCoordinator();
+        for ( TransactionalComponent c : components )
+            txnCoord.add(c);
+        CoLib.start(txnCoord);
+        Transaction txn = txnCoord.begin(TxnType.WRITE);
+        try {
+            action.run();
+            txn.commit();
+            txn.end();
+        } catch (RuntimeException ex) {
+            txn.abort();
+            txn.end();
+            throw ex;
+        }
+    }
+}
@@ -120,8 +120,16 @@ public class DatabaseConnection {
             lock.lockEx();
         }
         // c.f. StoreConnection.make
-        DatasetGraph dsg = DatabaseOps.create(location, params, reorderTransform);
-
+        DatasetGraph dsg;
+        try {
+            dsg = DatabaseOps.create(location, params, reorderTransform);
+        } catch (RuntimeException ex) {
+            if ( lock != null ) {
+                lock.unlock();
+                ProcessFileLock.release(lock);
+            }
+            throw ex;
+        }
         return new DatabaseConnection(dsg, location, lock);
     }
 
@@ -30,6 +30,7 @@ import java.util.zip.GZIPOutputStream;
 import org.apache.jena.atlas.RuntimeIOException;
 import org.apache.jena.atlas.io.IO;
 import org.apache.jena.atlas.io.IOX;
+import org.apache.jena.atlas.iterator.Iter;
 import org.apache.jena.atlas.lib.DateTimeUtils;
 import org.apache.jena.atlas.lib.InternalErrorException;
 import org.apache.jena.atlas.lib.Pair;
@@ -39,12 +40,15 @@ import org.apache.jena.atlas.logging.Log;
 import org.apache.jena.base.Sys;
 import org.apache.jena.dboe.DBOpEnvException;
 import org.apache.jena.dboe.base.file.Location;
+import org.apache.jena.dboe.storage.StoragePrefixes;
 import org.apache.jena.dboe.sys.IO_DB;
 import org.apache.jena.dboe.sys.Names;
 import org.apache.jena.dboe.transaction.txn.TransactionCoordinator;
 import org.apache.jena.query.ARQ;
+import org.apache.jena.query.TxnType;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.sparql.ARQException;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.engine.optimizer.reorder.ReorderLib;
 import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
@@ -55,8 +59,11 @@ import org.apache.jena.tdb2.params.StoreParams;
 import org.apache.jena.tdb2.params.StoreParamsBuilder;
 import org.apache.jena.tdb2.params.StoreParamsCodec;
 import org.apache.jena.tdb2.params.StoreParamsFactory;
+import org.apache.jena.tdb2.solver.stats.ReorderCardinality;
+import org.apache.jena.tdb2.store.ChangeCaptureTDB;
 import org.apache.jena.tdb2.store.DatasetGraphSwitchable;
 import org.apache.jena.tdb2.store.DatasetGraphTDB;
+import org.apache.jena.tdb2.store.LiveStatsTDB;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -117,7 +124,10 @@ public class DatabaseOps {
             // A memory store is create in the container directly - compact does not apply.
             Location storageLocation = containerLocation;
             StoreParams params = appParams != null ? appParams : StoreParams.getDftMemStoreParams();
-            ReorderTransformation reorderTransform = (appReorderTransform != null) ? appReorderTransform : ReorderLib.fixed();
+            ReorderTransformation reorderTransform = appReorderTransform;
+            // With live statistics, the storage builder chooses the reorder transformation.
+            if ( reorderTransform == null && ! params.getLiveStats() )
+                reorderTransform = ReorderLib.fixed();
             DatasetGraph dsg = StoreConnection.connectCreate(storageLocation, params, reorderTransform).getDatasetGraph();
             return new DatasetGraphSwitchable(null, containerLocation, dsg);
         }
@@ -148,6 +158,13 @@ public class DatabaseOps {
 
         StoreParams params = StoreParamsFactory.decideStoreParams(null, isNewArea, appParams, switchableParams, storageParams, dftParams);
 
+        // Record, in tdb.cfg, that a new database inlines short strings.
+        if ( isNewArea && SystemTDB.enableInlineStrings && ! params.isSetInlineStrings() )
+            params = StoreParams.builder(params.getLabel(), params).inlineStrings(true).build();
+        // Record, in tdb.cfg, that a new database has compressed indexes.
+        if ( isNewArea && SystemTDB.IndexCompression && ! params.isSetIndexCompression() )
+            params = StoreParams.builder(params.getLabel(), params).indexCompression(true).build();
+
         // If new and some form of custom setup (appParams) passed in by code: write it to the container location
         if ( isNewArea && /* !containerLocation.isMem() &&*/ switchableParams == null && storageParams == null && ! params.equals(dftParams) ) {
             StoreParamsCodec.write(containerLocation, params);
@@ -155,13 +172,21 @@ public class DatabaseOps {
 
         // ---- Reorder
         ReorderTransformation reorderTransform = appReorderTransform;
-        reorderTransform = maybeTransform(reorderTransform, storageLocation);
-        reorderTransform = maybeTransform(reorderTransform, containerLocation);
-        if ( reorderTransform == null )
-            reorderTransform = SystemTDB.getDefaultReorderTransform();
+        // With live statistics, the storage builder chooses the reorder transformation
+        // when the storage, and the statistics, have been built. It only looks in the
+        // storage location so a fixed.opt or none.opt in the container is applied here.
+        if ( params.getLiveStats() ) {
+            if ( reorderTransform == null && chooseReorderOverride(storageLocation) == null )
+                reorderTransform = chooseReorderOverride(containerLocation);
+        } else {
+            reorderTransform = maybeTransform(reorderTransform, storageLocation);
+            reorderTransform = maybeTransform(reorderTransform, containerLocation);
+            if ( reorderTransform == null )
+                reorderTransform = SystemTDB.getDefaultReorderTransform();
 
-        if ( reorderTransform == null && warnAboutOptimizer )
-            ARQ.getExecLogger().warn("No BGP optimizer");
+            if ( reorderTransform == null && warnAboutOptimizer )
+                ARQ.getExecLogger().warn("No BGP optimizer");
+        }
 
         DatasetGraphTDB dsg = StoreConnection.connectCreate(storageLocation, params, reorderTransform).getDatasetGraphTDB();
         DatasetGraphSwitchable appDSG = new DatasetGraphSwitchable(path, containerLocation, dsg);
@@ -316,7 +341,35 @@ public class DatabaseOps {
             DatabaseOpsWindows.compact_win(container, shouldDeleteOld);
             return;
         }
+        compact(container, shouldDeleteOld, DatabaseOps::compaction);
+    }
 
+    /**
+     * Compact a database while allowing writers to continue.
+     * <p>
+     * The current state is copied from a read transaction while changes made by
+     * writers to the current database are captured. The captured changes are then
+     * replayed onto the copy in catch-up rounds. Writers are held only for the last,
+     * short, catch-up round and the switch over to the compacted database.
+     * <p>
+     * The captured changes are kept in memory. Do not run a bulk loader at the same time.
+     * <p>
+     * On MS Windows, this is the same as {@link #compact(DatasetGraphSwitchable, boolean)}.
+     */
+    public static void compactOnline(DatasetGraphSwitchable container, boolean shouldDeleteOld) {
+        if ( Sys.isWindows) {
+            DatabaseOpsWindows.compact_win(container, shouldDeleteOld);
+            return;
+        }
+        compact(container, shouldDeleteOld, DatabaseOps::compactionOnline);
+    }
+
+    @FunctionalInterface
+    private interface CompactionStep {
+        void exec(DatasetGraphSwitchable container, Location loc1, Location loc2tmp, Path path2final);
+    }
+
+    private static void compact(DatasetGraphSwitchable container, boolean shouldDeleteOld, CompactionStep compactionStep) {
         checkSupportsAdmin(container);
         synchronized(compactionLock) {
             Path containerPath = container.getContainerPath();
@@ -356,7 +409,7 @@ public class DatabaseOps {
             Location loc2tmp = Location.create(tmpDir);
 
             try {
-                compaction(container, loc1, loc2tmp, db2);
+                compactionStep.exec(container, loc1, loc2tmp, db2);
                 // Container now using the new location.
                 // The original database is not in use.
             } catch (RuntimeIOException ex) {
@@ -388,24 +441,7 @@ public class DatabaseOps {
 
     /** Copy the latest version from one location to another. */
     private static void compaction(DatasetGraphSwitchable container, Location loc1, Location loc2tmp, Path path2final) {
-        if ( loc1.isMem() || loc2tmp.isMem() )
-            throw new TDBException("Compact involves a memory location: "+loc1+" : "+loc2tmp);
-
-        StoreConnection srcConn = StoreConnection.connectExisting(loc1);
-
-        if ( srcConn == null )
-            throw new TDBException("No database at location : "+loc1);
-        if ( ! ( container.get() instanceof DatasetGraphTDB ) )
-            throw new TDBException("Not a TDB2 database in DatasetGraphSwitchable");
-
-        DatasetGraphTDB dsgCurrent = (DatasetGraphTDB)container.get();
-        if ( ! dsgCurrent.getLocation().equals(loc1) )
-            throw new TDBException("Inconsistent locations for base : "+dsgCurrent.getLocation()+" , "+dsgCurrent.getLocation());
-
-        DatasetGraphTDB dsgBase = srcConn.getDatasetGraphTDB();
-        if ( dsgBase != dsgCurrent )
-            throw new TDBException("Inconsistent datasets : "+dsgCurrent.getLocation()+" , "+dsgBase.getLocation());
-
+        DatasetGraphTDB dsgBase = compactionSource(container, loc1, loc2tmp);
         TransactionCoordinator txnMgr1 = dsgBase.getTxnSystem().getTxnMgr();
 
         // -- Stop updates.
@@ -429,44 +465,11 @@ public class DatabaseOps {
             // directory as the data storage.
 
             DatasetGraphTDB dsgTmpCompact = StoreConnection.connectCreate(loc2tmp).getDatasetGraphTDB();
-            CopyDSG.copy(dsgBase, dsgTmpCompact);
-            StoreConnection.internalExpel(loc2tmp, true);
-            // Now on-disk in tmp location.
-
-            moveDirectory(loc2tmp, path2final);
-            Location loc2final = Location.create(path2final);   // Location must exist.
-
-            // Next generation storage datasetGraph.
-            DatasetGraphTDB dsgCompact = StoreConnection.connectCreate(loc2final).getDatasetGraphTDB();
-
-            // -- Switch
-            // Update TransactionCoordinator and switch over.
-            TransactionCoordinator txnMgr2 = dsgCompact.getTxnSystem().getTxnMgr();
-            txnMgr2.execExclusive(()->{
-                // No active transactions in either database.
-                txnMgr2.takeOverFrom(txnMgr1);
-
-                // Copy over external transaction components.
-                txnMgr2.modifyConfigDirect(()-> {
-                    txnMgr1.listExternals().forEach(txnMgr2::addExternal);
-                    // External listeners?
-                    // (the NodeTableCache listener is not external)
-                });
-
-                // No transactions on new database 2 (not exposed yet).
-                // No writers or promote transactions on database 1.
-                // Maybe old readers on database 1.
-                // -- Switch.
-                if ( ! container.change(dsgCurrent, dsgCompact) ) {
-                    Log.warn(DatabaseOps.class, "Inconsistent: old datasetgraph not as expected");
-                    container.set(dsgCompact);
-                }
-                // The compacted database is now active
-            });
-            // New database running.
-            // New transactions go to this database.
-            // Old readers continue on db1.
-
+            if ( SystemTDB.CompactThreads > 0 )
+                CopyPackedTDB.copy(dsgBase, dsgTmpCompact, SystemTDB.CompactThreads);
+            else
+                CopyDSG.copy(dsgBase, dsgTmpCompact);
+            switchToCompacted(container, dsgBase, loc2tmp, path2final);
         });
 
         // This switches off the source database.
@@ -480,6 +483,170 @@ public class DatabaseOps {
         StoreConnection.release(dsgBase.getLocation());
     }
 
+    // Online compaction: stop catching up when a round replays no more than this number of changes ...
+    private static final int onlineCatchUpThreshold = 1000;
+    // ... or after this number of rounds.
+    private static final int onlineCatchUpRounds    = 10;
+
+    /**
+     * Copy the latest version from one location to another, allowing writers to
+     * continue on the current database until the final catch-up and switch.
+     */
+    private static void compactionOnline(DatasetGraphSwitchable container, Location loc1, Location loc2tmp, Path path2final) {
+        DatasetGraphTDB dsgBase = compactionSource(container, loc1, loc2tmp);
+        TransactionCoordinator txnMgr1 = dsgBase.getTxnSystem().getTxnMgr();
+        ChangeCaptureTDB changes = dsgBase.getChangeCapture();
+
+        copyConfigFiles(loc1, loc2tmp);
+
+        try {
+            // -- Copy a snapshot. Writers continue on the current database.
+            DatasetGraphTDB dsgTmpCompact = copySnapshot(container, dsgBase, changes, loc2tmp);
+
+            // -- Catch up with changes committed during the copy.
+            for ( int i = 0 ; i < onlineCatchUpRounds ; i++ ) {
+                List<ChangeCaptureTDB.Change> batch = changes.drain();
+                FmtLog.debug(LOG, "Compact catch-up round %d : %d changes", i+1, batch.size());
+                replay(batch, dsgTmpCompact);
+                if ( batch.size() <= onlineCatchUpThreshold )
+                    break;
+            }
+
+            // -- Final catch-up and switch. Writers are held only for this step.
+            container.execReadOnlyDatabase(()->{
+                List<ChangeCaptureTDB.Change> batch = changes.drain();
+                FmtLog.debug(LOG, "Compact final catch-up : %d changes", batch.size());
+                replay(batch, dsgTmpCompact);
+                changes.stop();
+                // Prefix changes are not captured. There are few prefixes so copy them again.
+                Txn.executeRead(dsgBase, ()->{
+                    Txn.executeWrite(dsgTmpCompact, () -> {
+                        StoragePrefixes prefixes = dsgTmpCompact.getStoragePrefixes();
+                        Iter.toList(prefixes.listGraphNodes()).forEach(prefixes::deleteAll);
+                        CopyDSG.copyPrefixes(dsgBase, dsgTmpCompact);
+                    });
+                });
+                switchToCompacted(container, dsgBase, loc2tmp, path2final);
+            });
+        } finally {
+            changes.stop();
+        }
+
+        // As compaction() : switch off and release the source database.
+        txnMgr1.startExclusiveMode();
+        StoreConnection.release(dsgBase.getLocation());
+    }
+
+    /**
+     * Start capturing changes, and copy the state of the database at that point.
+     * Return the storage dataset for the copy.
+     */
+    private static DatasetGraphTDB copySnapshot(DatasetGraphSwitchable container, DatasetGraphTDB dsgBase,
+                                                ChangeCaptureTDB changes, Location loc2tmp) {
+        DatasetGraphTDB dsgTmpCompact = StoreConnection.connectCreate(loc2tmp).getDatasetGraphTDB();
+        if ( SystemTDB.CompactThreads > 0 ) {
+            CopyPackedTDB copier = new CopyPackedTDB(dsgBase, dsgTmpCompact, SystemTDB.CompactThreads);
+            // Start capturing changes and start the copy at the same point.
+            // This briefly waits for the active writer, if any, to finish.
+            container.execReadOnlyDatabase(()->{
+                changes.start();
+                copier.start();
+            });
+            copier.finish();
+            // The copy was written outside the transaction coordinator of the new database.
+            StoreConnection.internalExpel(loc2tmp, true);
+            return StoreConnection.connectCreate(loc2tmp).getDatasetGraphTDB();
+        }
+
+        // Start capturing changes and take the snapshot at the same point.
+        container.execReadOnlyDatabase(()->{
+            changes.start();
+            dsgBase.begin(TxnType.READ);
+        });
+        try {
+            Txn.executeWrite(dsgTmpCompact, () -> {
+                dsgBase.find().forEachRemaining(dsgTmpCompact::add);
+                CopyDSG.copyPrefixes(dsgBase, dsgTmpCompact);
+            });
+        } finally {
+            dsgBase.end();
+        }
+        return dsgTmpCompact;
+    }
+
+    /** Apply changes as one write transaction. */
+    private static void replay(List<ChangeCaptureTDB.Change> changes, DatasetGraphTDB dsg) {
+        if ( changes.isEmpty() )
+            return;
+        Txn.executeWrite(dsg, () -> changes.forEach(change -> change.applyTo(dsg.getData())));
+    }
+
+    /** Checks for compaction. Returns the current storage dataset. */
+    private static DatasetGraphTDB compactionSource(DatasetGraphSwitchable container, Location loc1, Location loc2tmp) {
+        if ( loc1.isMem() || loc2tmp.isMem() )
+            throw new TDBException("Compact involves a memory location: "+loc1+" : "+loc2tmp);
+
+        StoreConnection srcConn = StoreConnection.connectExisting(loc1);
+
+        if ( srcConn == null )
+            throw new TDBException("No database at location : "+loc1);
+        if ( ! ( container.get() instanceof DatasetGraphTDB ) )
+            throw new TDBException("Not a TDB2 database in DatasetGraphSwitchable");
+
+        DatasetGraphTDB dsgCurrent = (DatasetGraphTDB)container.get();
+        if ( ! dsgCurrent.getLocation().equals(loc1) )
+            throw new TDBException("Inconsistent locations for base : "+dsgCurrent.getLocation()+" , "+dsgCurrent.getLocation());
+
+        DatasetGraphTDB dsgBase = srcConn.getDatasetGraphTDB();
+        if ( dsgBase != dsgCurrent )
+            throw new TDBException("Inconsistent datasets : "+dsgCurrent.getLocation()+" , "+dsgBase.getLocation());
+        return dsgBase;
+    }
+
+    /**
+     * Move the compacted storage into place and switch the container over to it.
+     * The caller must ensure there are no writers on the current database.
+     */
+    private static void switchToCompacted(DatasetGraphSwitchable container, DatasetGraphTDB dsgCurrent, Location loc2tmp, Path path2final) {
+        TransactionCoordinator txnMgr1 = dsgCurrent.getTxnSystem().getTxnMgr();
+        StoreConnection.internalExpel(loc2tmp, true);
+        // Now on-disk in tmp location.
+
+        moveDirectory(loc2tmp, path2final);
+        Location loc2final = Location.create(path2final);   // Location must exist.
+
+        // Next generation storage datasetGraph.
+        DatasetGraphTDB dsgCompact = StoreConnection.connectCreate(loc2final).getDatasetGraphTDB();
+
+        // -- Switch
+        // Update TransactionCoordinator and switch over.
+        TransactionCoordinator txnMgr2 = dsgCompact.getTxnSystem().getTxnMgr();
+        txnMgr2.execExclusive(()->{
+            // No active transactions in either database.
+            txnMgr2.takeOverFrom(txnMgr1);
+
+            // Copy over external transaction components.
+            txnMgr2.modifyConfigDirect(()-> {
+                txnMgr1.listExternals().forEach(txnMgr2::addExternal);
+                // External listeners?
+                // (the NodeTableCache listener is not external)
+            });
+
+            // No transactions on new database 2 (not exposed yet).
+            // No writers or promote transactions on database 1.
+            // Maybe old readers on database 1.
+            // -- Switch.
+            if ( ! container.change(dsgCurrent, dsgCompact) ) {
+                Log.warn(DatabaseOps.class, "Inconsistent: old datasetgraph not as expected");
+                container.set(dsgCompact);
+            }
+            // The compacted database is now active
+        });
+        // New database running.
+        // New transactions go to this database.
+        // Old readers continue on db1.
+    }
+
     private static void moveDirectory(Location locTmp, Path pathDst) {
         Path pathSrc = IO_DB.asPath(locTmp);
         try {
@@ -594,11 +761,26 @@ public class DatabaseOps {
 
     // Find an optimizer settings file at a locations.
     public static ReorderTransformation chooseReorderTransformation(Location location) {
+        return chooseReorderTransformation(location, null);
+    }
+
+    /**
+     * Choose the reorder transformation for a database.
+     * If the database maintains statistics ({@code liveStats} is not null), the
+     * cardinality-based optimizer reads the latest committed statistics for each query
+     * and any stats.opt or cardinality.opt file is ignored.
+     * A fixed.opt or none.opt file overrides the statistics.
+     */
+    public static ReorderTransformation chooseReorderTransformation(Location location, LiveStatsTDB liveStats) {
         if ( location == null )
             return ReorderLib.identity();
 
         ReorderTransformation reorder = null;
-        if ( location.exists(Names.optStats) ) {
+        if ( liveStats != null ) {
+            reorder = new ReorderCardinality(liveStats::getStats);
+            LOG.debug("Live statistics BGP optimizer");
+        }
+        else if ( location.exists(Names.optStats) ) {
             try {
                 reorder = ReorderLib.weighted(location.getPath(Names.optStats));
                 LOG.debug("Statistics-based BGP optimizer");
@@ -609,16 +791,36 @@ public class DatabaseOps {
             }
         }
 
-        if ( location.exists(Names.optFixed) ) {
-            reorder = ReorderLib.fixed();
-            LOG.debug("Fixed pattern BGP optimizer");
+        // Preferred to stats.opt if both are present.
+        if ( liveStats == null && location.exists(Names.optCardinality) ) {
+            try {
+                reorder = ReorderCardinality.create(location.getPath(Names.optCardinality));
+                LOG.debug("Cardinality-based BGP optimizer");
+            }
+            catch (ARQException ex) {
+                LOG.warn("Error in cardinality stats file: " + ex.getMessage());
+            }
         }
 
+        ReorderTransformation override = chooseReorderOverride(location);
+        if ( override != null )
+            reorder = override;
+        return reorder;
+    }
+
+    /**
+     * The reorder transformation set by a fixed.opt or none.opt file at a location,
+     * or null if there is neither. none.opt is preferred if both are present.
+     */
+    private static ReorderTransformation chooseReorderOverride(Location location) {
         if ( location.exists(Names.optNone) ) {
-            reorder = ReorderLib.identity();
             LOG.debug("Optimizer explicitly turned off");
+            return ReorderLib.identity();
         }
-
-        return reorder;
+        if ( location.exists(Names.optFixed) ) {
+            LOG.debug("Fixed pattern BGP optimizer");
+            return ReorderLib.fixed();
+        }
+        return null;
     }
 }
@@ -92,7 +92,17 @@ public class StoreConnection
             }
             // Recovery happens when TransactionCoordinator.start is called
             // during the building of the DatasetGraphTDB
-            DatasetGraphTDB dsg = TDB2StorageBuilder.build(location, params, reorderTransform);
+            DatasetGraphTDB dsg;
+            try {
+                dsg = TDB2StorageBuilder.build(location, params, reorderTransform);
+            } catch (RuntimeException ex) {
+                // Not opened (e.g. store parameters that do not match this JVM).
+                if ( lock != null ) {
+                    lock.unlock();
+                    ProcessFileLock.release(lock);
+                }
+                throw ex;
+            }
             sConn = new StoreConnection(dsg, lock);
             if (!location.isMemUnique())
                 cache.put(location, sConn);
@@ -120,6 +120,45 @@ public class SystemTDB
     /** Experimental : triple and quad filtering at scan level */
     public static final Symbol symTupleFilter       = allocSymbol("tupleFilter");
 
+    /**
+     * Whether a basic graph pattern may start with a merge join of two triple
+     * patterns over sorted index scans. Default: true.
+     */
+    public static final Symbol symMergeJoin         = allocSymbol("mergeJoin");
+
+    /**
+     * Whether a cyclic basic graph pattern (e.g. a triangle) may be executed as a
+     * leapfrog triejoin over index scans. Default: true.
+     */
+    public static final Symbol symLeapfrogJoin      = allocSymbol("leapfrogJoin");
+
+    /**
+     * Maximum number of matches of a triple pattern that a leapfrog triejoin
+     * reads and sorts in memory, for a pattern with no index in the variable
+     * order. The basic graph pattern is executed without the leapfrog triejoin if
+     * a pattern has more matches. See {@link #LeapfrogSortLimit}.
+     */
+    public static final Symbol symLeapfrogSortLimit = allocSymbol("leapfrogSortLimit");
+
+    /**
+     * Whether {@code :p*} and {@code :p+} property paths (and their inverses) are
+     * evaluated on NodeIds. Default: true.
+     */
+    public static final Symbol symPathNodeId        = allocSymbol("pathNodeId");
+
+    /**
+     * Number of query results converted from NodeIds to Nodes together.
+     * See {@link #BindingResolveBatchSize}.
+     */
+    public static final Symbol symBindingResolveBatchSize = allocSymbol("bindingResolveBatchSize");
+
+    /**
+     * Checkpoint interval, in triples and quads, for the phased and parallel bulk
+     * loaders. A load that does not finish can be restarted from the last checkpoint.
+     * Default: 0 (no checkpoints).
+     */
+    public static final Symbol symLoaderCheckpoint  = allocSymbol("loaderCheckpoint");
+
     private static final String PropertyFileKey1    = tdbPropertyRoot+".settings";
     private static final String PropertyFileKey2    = tdbSymbolPrefix+":settings";
 
@@ -171,12 +210,54 @@ public class SystemTDB
     /** Initial capacity factor for node caches. */
     public static final double NodeCacheInitialCapacityFactor = doubleValue("NodeCacheInitialCapacityFactor", 0.25);
 
+    /** Number of shards for node caches; 0 for a choice based on the number of processors. */
+    public static final int NodeCacheShards = intValue("NodeCacheShards", 0);
+
+    /** Size, in megabytes, of the off-heap node cache; 0 for none. */
+    public static final int NodeCacheOffHeapSizeMB = intValue("NodeCacheOffHeapSizeMB", 0);
+
+    /**
+     * Whether a new database writes B+Tree records blocks of the tuple indexes prefix compressed.
+     * The choice is recorded with the database.
+     */
+    public static final boolean IndexCompression = booleanValue("IndexCompression", false);
+
+    /** Whether tuple indexes keep a bloom filter of their keys and key prefixes. */
+    public static final boolean IndexBloomFilter = booleanValue("IndexBloomFilter", false);
+
+    /** Whether the database maintains statistics as part of each write transaction. */
+    public static final boolean LiveStats = booleanValue("LiveStats", false);
+
+    /**
+     * Default number of results of a basic graph pattern read ahead and converted
+     * from NodeIds to Nodes as a block, with one node table access per variable
+     * for the block. This suits queries returning many results, such as exports.
+     * 0 or 1 for converting each result when it is used (the default).
+     * Can be set per query with the context symbol {@link #symBindingResolveBatchSize}.
+     */
+    public static int BindingResolveBatchSize       = intValue("BindingResolveBatchSize", 0);
+
+    /**
+     * Default maximum number of matches of a pattern sorted in memory by a leapfrog triejoin.
+     * Can be set per query with the context symbol {@link #symLeapfrogSortLimit}.
+     */
+    public static int LeapfrogSortLimit             = intValue("LeapfrogSortLimit", 1_000_000);
+
     /** Size of the delayed-write block cache (32 bit systems only). Per file. */
     public static final int BlockWriteCacheSize     = intValue("BlockWriteCacheSize", 1000);
 
     /** Size of read block cache (32 bit systems only). Per file. */
     public static final int BlockReadCacheSize      = intValue("BlockReadCacheSize", 5*1000);
 
+    // ---- Compaction
+
+    /**
+     * Number of threads used by compaction to rebuild the indexes of the new database
+     * directly from the indexes of the current database ({@link CopyPackedTDB}).
+     * Zero means compaction copies the data by adding each quad to the new database.
+     */
+    public static int CompactThreads                = intValue("CompactThreads", 0);
+
     // ---- Misc
 
     /** Default BGP optimizer */
@@ -224,6 +305,26 @@ public class SystemTDB
             return Boolean.valueOf(sysProperties.getProperty(key));
     }
 
+    /** Unsupported (for non-standard setups)
+     * @see #enableInlineStrings
+     */
+    private static String propertyEnableInlineStrings = "tdb:store.enableInlineStrings";
+
+    /**
+     * Whether short strings, and short strings with a two letter language tag,
+     * are inlined into NodeIds (see {@link org.apache.jena.tdb2.store.value.ShortStringNode}).
+     * This saves node table lookups for codes, flags and other short values.
+     * <p>
+     * The setting changes the NodeIds of short strings, so it is recorded
+     * when a database is created, as the store parameter "inline_strings",
+     * and a database can only be opened with the same setting. Databases
+     * without the store parameter store short strings in the node table.
+     * It can be set true with {@code -Dtdb:store.enableInlineStrings=true}.
+     * Default setting is {@code false}
+     */
+    public static final boolean enableInlineStrings =
+        Boolean.parseBoolean(System.getProperty(propertyEnableInlineStrings, "false"));
+
     /** null out (with the FillByte) freed up space in buffers */
     public static final boolean NullOut = false;
 
@@ -268,6 +369,10 @@ public class SystemTDB
         return value(name, defaultValue, Integer::parseInt);
     }
 
+    private static boolean booleanValue(String name, boolean defaultValue) {
+        return value(name, defaultValue, Boolean::parseBoolean);
+    }
+
     private static double doubleValue(String name, double defaultValue) {
         return value(name, defaultValue, Double::parseDouble);
     }
@@ -356,6 +461,14 @@ public class SystemTDB
             TDB2.logInfo.debug("File mode: Direct");
             return FileMode.direct;
         }
-        throw new TDBException("Unrecognized file mode (not one of 'default', 'direct' or 'mapped': "+x);
+
+        // "segment", "segmentSequential", "segmentRandom"
+        for ( FileMode mode : FileMode.values() ) {
+            if ( x.equalsIgnoreCase(mode.name()) ) {
+                TDB2.logInfo.info("File mode: "+mode.name()+" (forced)");
+                return mode;
+            }
+        }
+        throw new TDBException("Unrecognized file mode (not one of 'default', 'direct', 'mapped' or 'segment': "+x);
     }
 }
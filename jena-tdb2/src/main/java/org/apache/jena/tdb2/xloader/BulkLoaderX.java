@@ -58,6 +58,20 @@ public class BulkLoaderX {
      */
     public static boolean CompressSortIndexFiles = true;
 
+    /**
+     * Whether to sort in this JVM with {@link ExternalSorter} instead of running
+     * the external sort(1) program. Set with the system property
+     * "{@code tdb2.xloader.sort}" = "{@code java}".
+     * The compression settings above apply to the in-process sort run files.
+     */
+    public static boolean SortInProcess = "java".equalsIgnoreCase(System.getProperty("tdb2.xloader.sort", "unix"));
+
+    /**
+     * Size, in megabytes, of one in-memory run of the in-process sort.
+     * One buffer is filled while up to "threads" buffers are being sorted and written.
+     */
+    public static int SortRunSizeMB = 128;
+
     // Ubuntu: it now (21.04) is at /usr/bin/gzip.
     //   /bin has become a symbolic link to /usr/bin.
     //   New installs of 20.04 have it at /usr/bin, upgrades have it at /bin.
@@ -0,0 +1,427 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.xloader;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.jena.atlas.io.IO;
+import org.apache.jena.tdb2.TDBException;
+
+/**
+ * In-process external merge sort of fixed-width binary records.
+ * <p>
+ * Records are compared as unsigned bytes over the first {@code keyLength} bytes,
+ * which is the order of the B+Trees built from them (big-endian hashes and
+ * NodeIds). If the sort is "unique", only one record of each key is kept.
+ * <p>
+ * Records are collected into run buffers. Each full buffer is sorted by a pool
+ * of threads and written as a run file in the temporary directory, optionally
+ * gzip compressed, while the caller carries on filling the next buffer.
+ * {@link #sorted()} merges the runs with a heap. If all the records fit in one
+ * buffer, no file is written.
+ * <p>
+ * This is the alternative to calling out to sort(1): see {@link BulkLoaderX#SortInProcess}.
+ */
+public class ExternalSorter implements AutoCloseable {
+    // Maximum number of runs merged in one pass.
+    private static final int MergeFanIn = 128;
+    private static final int IOBufferSize = 128*1024;
+
+    private final int recordLength;
+    private final int keyLength;
+    private final boolean unique;
+    private final Path tmpDir;
+    private final boolean compress;
+    private final int recordsPerRun;
+
+    private final ExecutorService executor;
+    // Bounds the number of buffers being sorted and written.
+    private final Semaphore inFlight;
+    private final List<Future<Path>> pendingRuns = new ArrayList<>();
+    private final List<Path> tmpFiles = Collections.synchronizedList(new ArrayList<>());
+    private final List<RunReader> readers = new ArrayList<>();
+
+    private byte[] buffer;
+    private int count = 0;
+    private long added = 0;
+    private boolean sorting = false;
+
+    /**
+     * @param recordLength  Bytes per record.
+     * @param keyLength     Leading bytes of the record that are the sort key.
+     * @param unique        Keep only one record per key.
+     * @param tmpDir        Directory for run files.
+     * @param threads       Number of threads sorting and writing runs.
+     * @param runSizeBytes  Size of the in-memory buffer for one run.
+     * @param compress      Whether run files are gzip compressed.
+     */
+    public ExternalSorter(int recordLength, int keyLength, boolean unique, Path tmpDir, int threads, int runSizeBytes, boolean compress) {
+        if ( keyLength <= 0 || keyLength > recordLength )
+            throw new IllegalArgumentException("Bad key length: "+keyLength+" (record length "+recordLength+")");
+        if ( threads <= 0 )
+            threads = 1;
+        this.recordLength = recordLength;
+        this.keyLength = keyLength;
+        this.unique = unique;
+        this.tmpDir = Objects.requireNonNull(tmpDir);
+        this.compress = compress;
+        this.recordsPerRun = Math.max(1, runSizeBytes / recordLength);
+        this.buffer = new byte[recordsPerRun * recordLength];
+        this.inFlight = new Semaphore(threads);
+        this.executor = Executors.newFixedThreadPool(threads, runnable->{
+            Thread thread = new Thread(runnable, "ExternalSorter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Add a record: {@code recordLength} bytes are copied from {@code bytes}, starting at {@code offset}. */
+    public void add(byte[] bytes, int offset) {
+        if ( sorting )
+            throw new IllegalStateException("Sort already started");
+        System.arraycopy(bytes, offset, buffer, count * recordLength, recordLength);
+        count++;
+        added++;
+        if ( count == recordsPerRun )
+            spill();
+    }
+
+    /** Add a record. */
+    public void add(byte[] record) {
+        add(record, 0);
+    }
+
+    /** Number of records added, before removing duplicates. */
+    public long size() {
+        return added;
+    }
+
+    /**
+     * Finish adding records and return an iterator of the sorted records. Each
+     * call of {@code next()} returns a new byte array.
+     */
+    public Iterator<byte[]> sorted() {
+        if ( sorting )
+            throw new IllegalStateException("Sort already started");
+        sorting = true;
+        if ( pendingRuns.isEmpty() ) {
+            // All in memory.
+            byte[] block = buffer;
+            int n = count;
+            buffer = null;
+            int[] order = sortBlock(block, n);
+            executor.shutdown();
+            return new BlockIterator(block, order);
+        }
+        if ( count > 0 )
+            spill();
+        buffer = null;
+        List<Path> runs = new ArrayList<>();
+        for ( Future<Path> f : pendingRuns )
+            runs.add(get(f));
+        pendingRuns.clear();
+
+        // Reduce the number of runs so the final merge has at most MergeFanIn inputs.
+        while ( runs.size() > MergeFanIn ) {
+            List<Future<Path>> merges = new ArrayList<>();
+            for ( int i = 0 ; i < runs.size() ; i += MergeFanIn ) {
+                List<Path> group = runs.subList(i, Math.min(i + MergeFanIn, runs.size()));
+                List<Path> inputs = List.copyOf(group);
+                merges.add(executor.submit(()->mergeToRun(inputs)));
+            }
+            runs = new ArrayList<>();
+            for ( Future<Path> f : merges )
+                runs.add(get(f));
+        }
+        executor.shutdown();
+        return merge(runs);
+    }
+
+    /** Close any open run files and delete all temporary files. */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        readers.forEach(RunReader::close);
+        readers.clear();
+        synchronized(tmpFiles) {
+            for ( Path path : tmpFiles ) {
+                try { Files.deleteIfExists(path); }
+                catch (IOException ex) { /* Best effort. */ }
+            }
+            tmpFiles.clear();
+        }
+    }
+
+    private void spill() {
+        byte[] block = buffer;
+        int n = count;
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException ex) {
+            throw new TDBException("Interrupted", ex);
+        }
+        Future<Path> run = executor.submit(()->{
+            try {
+                int[] order = sortBlock(block, n);
+                return writeRun(new BlockIterator(block, order));
+            } finally {
+                inFlight.release();
+            }
+        });
+        pendingRuns.add(run);
+        buffer = new byte[recordsPerRun * recordLength];
+        count = 0;
+    }
+
+    private static <X> X get(Future<X> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            throw new TDBException("External sort failed", ex.getCause());
+        } catch (InterruptedException ex) {
+            throw new TDBException("Interrupted", ex);
+        }
+    }
+
+    private Path mergeToRun(List<Path> inputs) {
+        List<RunReader> group = new ArrayList<>();
+        try {
+            for ( Path p : inputs )
+                group.add(new RunReader(p));
+            Path path = writeRun(new MergeIterator(group));
+            for ( Path p : inputs ) {
+                Files.deleteIfExists(p);
+                tmpFiles.remove(p);
+            }
+            return path;
+        } catch (IOException ex) {
+            throw IOX(ex);
+        } finally {
+            group.forEach(RunReader::close);
+        }
+    }
+
+    private Path writeRun(Iterator<byte[]> records) throws IOException {
+        Path path = Files.createTempFile(tmpDir, "sort-", compress ? ".tmp.gz" : ".tmp");
+        tmpFiles.add(path);
+        try ( OutputStream out = openOutput(path) ) {
+            while ( records.hasNext() )
+                out.write(records.next());
+        }
+        return path;
+    }
+
+    private OutputStream openOutput(Path path) throws IOException {
+        OutputStream out = Files.newOutputStream(path);
+        if ( compress )
+            return new GZIPOutputStream(out, IOBufferSize);
+        return new BufferedOutputStream(out, IOBufferSize);
+    }
+
+    private InputStream openInput(Path path) throws IOException {
+        InputStream in = Files.newInputStream(path);
+        if ( compress )
+            return new GZIPInputStream(in, IOBufferSize);
+        return new BufferedInputStream(in, IOBufferSize);
+    }
+
+    private Iterator<byte[]> merge(List<Path> runs) {
+        List<RunReader> inputs = new ArrayList<>();
+        for ( Path p : runs ) {
+            RunReader r = new RunReader(p);
+            inputs.add(r);
+            readers.add(r);
+        }
+        return new MergeIterator(inputs);
+    }
+
+    // ---- Sorting one block.
+
+    /** Sort the record numbers of a block by key. The block itself is not moved. */
+    private int[] sortBlock(byte[] block, int n) {
+        int[] order = new int[n];
+        for ( int i = 0 ; i < n ; i++ )
+            order[i] = i;
+        if ( n > 1 )
+            mergeSort(block, order, new int[n], 0, n);
+        return order;
+    }
+
+    private static final int InsertionSortLimit = 16;
+
+    // Stable merge sort of order[lo, hi).
+    private void mergeSort(byte[] block, int[] order, int[] work, int lo, int hi) {
+        if ( hi - lo <= InsertionSortLimit ) {
+            for ( int i = lo + 1 ; i < hi ; i++ ) {
+                int x = order[i];
+                int j = i - 1;
+                while ( j >= lo && compare(block, order[j], block, x) > 0 ) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = x;
+            }
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        mergeSort(block, order, work, lo, mid);
+        mergeSort(block, order, work, mid, hi);
+        if ( compare(block, order[mid - 1], block, order[mid]) <= 0 )
+            return;
+        System.arraycopy(order, lo, work, lo, hi - lo);
+        int i = lo, j = mid, k = lo;
+        while ( i < mid && j < hi )
+            order[k++] = compare(block, work[j], block, work[i]) < 0 ? work[j++] : work[i++];
+        while ( i < mid )
+            order[k++] = work[i++];
+        while ( j < hi )
+            order[k++] = work[j++];
+    }
+
+    private int compare(byte[] block1, int rec1, byte[] block2, int rec2) {
+        int start1 = rec1 * recordLength;
+        int start2 = rec2 * recordLength;
+        return Arrays.compareUnsigned(block1, start1, start1 + keyLength, block2, start2, start2 + keyLength);
+    }
+
+    private int compareKeys(byte[] record1, byte[] record2) {
+        return Arrays.compareUnsigned(record1, 0, keyLength, record2, 0, keyLength);
+    }
+
+    // ---- Iterators
+
+    /** Records of a sorted block, removing duplicates if required. */
+    private class BlockIterator implements Iterator<byte[]> {
+        private final byte[] block;
+        private final int[] order;
+        private int idx = 0;
+
+        BlockIterator(byte[] block, int[] order) {
+            this.block = block;
+            this.order = order;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return idx < order.length;
+        }
+
+        @Override
+        public byte[] next() {
+            if ( !hasNext() )
+                throw new NoSuchElementException();
+            int rec = order[idx++];
+            if ( unique ) {
+                while ( idx < order.length && compare(block, rec, block, order[idx]) == 0 )
+                    idx++;
+            }
+            int start = rec * recordLength;
+            return Arrays.copyOfRange(block, start, start + recordLength);
+        }
+    }
+
+    /** k-way merge of runs. */
+    private class MergeIterator implements Iterator<byte[]> {
+        private final PriorityQueue<RunReader> heap;
+        private byte[] last = null;
+        private byte[] slot = null;
+
+        MergeIterator(List<RunReader> inputs) {
+            heap = new PriorityQueue<>(Math.max(1, inputs.size()), (r1, r2) -> compareKeys(r1.current, r2.current));
+            for ( RunReader r : inputs ) {
+                if ( r.advance() )
+                    heap.add(r);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if ( slot != null )
+                return true;
+            while ( !heap.isEmpty() ) {
+                RunReader r = heap.poll();
+                byte[] record = r.current;
+                if ( r.advance() )
+                    heap.add(r);
+                else
+                    r.close();
+                if ( unique && last != null && compareKeys(last, record) == 0 )
+                    continue;
+                last = record;
+                slot = record;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public byte[] next() {
+            if ( !hasNext() )
+                throw new NoSuchElementException();
+            byte[] x = slot;
+            slot = null;
+            return x;
+        }
+    }
+
+    /** Sequential reader of a run file. */
+    private class RunReader {
+        private final InputStream input;
+        private byte[] current;
+
+        RunReader(Path path) {
+            try {
+                input = openInput(path);
+            } catch (IOException ex) {
+                throw IOX(ex);
+            }
+        }
+
+        boolean advance() {
+            byte[] record = new byte[recordLength];
+            try {
+                int n = input.readNBytes(record, 0, recordLength);
+                if ( n == 0 ) {
+                    current = null;
+                    return false;
+                }
+                if ( n != recordLength )
+                    throw new TDBException("Short record in sort run file: "+n+" bytes");
+                current = record;
+                return true;
+            } catch (IOException ex) {
+                throw IOX(ex);
+            }
+        }
+
+        void close() {
+            IO.close(input);
+        }
+    }
+
+    private static RuntimeException IOX(IOException ex) {
+        return new TDBException("External sort I/O", ex);
+    }
+}
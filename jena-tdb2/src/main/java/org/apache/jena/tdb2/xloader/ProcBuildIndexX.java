@@ -30,6 +30,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import org.apache.jena.atlas.io.IO;
+import org.apache.jena.atlas.iterator.Iter;
 import org.apache.jena.atlas.lib.Timer;
 import org.apache.jena.atlas.lib.tuple.TupleMap;
 import org.apache.jena.atlas.logging.FmtLog;
@@ -163,6 +164,9 @@ public class ProcBuildIndexX
         if ( sortThreads <= 0 )
             sortThreads = 2;
 
+        if ( BulkLoaderX.SortInProcess )
+            return sort_build_index_java(datafile, dsg, indexName, sortThreads, TMPDIR);
+
         try {
             //LOG.info("Step : external sort : "+indexName);
             //if ( sortArgs != null ) {}
@@ -237,25 +241,32 @@ public class ProcBuildIndexX
         return count;
     }
 
-    private static long indexBuilder(DatasetGraph dsg, InputStream input, String indexName) {
-        long tickPoint = BulkLoaderX.DataTick;
-        int superTick = BulkLoaderX.DataSuperTick;
-
-        // Location of storage, not the DB.
-        DatasetGraphTDB dsgtdb = TDBInternal.getDatasetGraphTDB(dsg);
-
-        int keyLength = SystemTDB.SizeOfNodeId * indexName.length();
-        int valueLength = 0;
-
-        // The name is the order. Input is already in the right order.
-
+    /**
+     * Sort with {@link ExternalSorter}. The rows of the data file are converted to
+     * records in index order and sorted as binary keys.
+     */
+    private static long sort_build_index_java(String datafile, DatasetGraph dsg, String indexName, int sortThreads, String TMPDIR) {
         int tupleLength = indexName.length();
+        int keyLength = SystemTDB.SizeOfNodeId * tupleLength;
+        TupleMap colMap = colMap(indexName);
+        int runSize = BulkLoaderX.SortRunSizeMB * 1024 * 1024;
+        try ( InputStream inData = IO.openFile(datafile);
+              ExternalSorter sorter = new ExternalSorter(keyLength, keyLength, true, Path.of(TMPDIR), sortThreads, runSize,
+                                                         BulkLoaderX.CompressSortIndexFiles) ) {
+            Iterator<Record> rows = new RecordsFromInput(IO.ensureBuffered(inData), tupleLength, colMap, 1000);
+            rows.forEachRemaining(r->sorter.add(r.getKey()));
+            RecordFactory recordFactory = new RecordFactory(keyLength, 0);
+            Iterator<Record> iter = Iter.map(sorter.sorted(), recordFactory::create);
+            return indexBuilder(dsg, iter, indexName);
+        } catch (IOException ex) {
+            IO.exception(ex);
+            return -1;
+        }
+    }
 
-        TupleIndex index = TDBInternal.findIndex(dsg, indexName);
-        if ( index == null )
-            throw new TDBException("Can not find index: " + indexName);
-
+    private static TupleMap colMap(String indexName) {
         String primaryOrder;
+        int tupleLength = indexName.length();
         if ( tupleLength == 3 ) {
             primaryOrder = Names.primaryIndexTriples;
         } else if ( tupleLength == 4 ) {
@@ -263,23 +274,42 @@ public class ProcBuildIndexX
         } else {
             throw new TDBException("Index name: " + indexName);
         }
-        TupleMap colMap = TupleMap.create(primaryOrder, indexName);
+        return TupleMap.create(primaryOrder, indexName);
+    }
+
+    private static long indexBuilder(DatasetGraph dsg, InputStream input, String indexName) {
+        // The name is the order. Input is already in the right order.
+        int tupleLength = indexName.length();
+        TupleMap colMap = colMap(indexName);
+        int rowBlock = 1000;
+        Iterator<Record> iter = new RecordsFromInput(input, tupleLength, colMap, rowBlock);
+        return indexBuilder(dsg, iter, indexName);
+    }
+
+    /** Build an index from records in index order. */
+    private static long indexBuilder(DatasetGraph dsg, Iterator<Record> iter, String indexName) {
+        long tickPoint = BulkLoaderX.DataTick;
+        int superTick = BulkLoaderX.DataSuperTick;
+
+        TupleIndex index = TDBInternal.findIndex(dsg, indexName);
+        if ( index == null )
+            throw new TDBException("Can not find index: " + indexName);
 
         int blockSize = SystemTDB.BlockSize;
         RecordFactory recordFactory = ((TupleIndexRecord)index).getRangeIndex().getRecordFactory();
 
-        int order = BPlusTreeParams.calcOrder(blockSize, recordFactory);
-        BPlusTreeParams bptParams = new BPlusTreeParams(order, recordFactory);
-
         // Extract from index.
         TupleIndexRecord tIdxRec = (TupleIndexRecord)index;
         BPlusTree bpt = (BPlusTree)(tIdxRec.getRangeIndex());
+
+        int order = BPlusTreeParams.calcOrder(blockSize, recordFactory);
+        // Keep the records block format of the index.
+        BPlusTreeParams bptParams = new BPlusTreeParams(order, recordFactory, bpt.getParams().isCompressLeaves());
+
         BlockMgr blkMgrNodes = bpt.getNodeManager().getBlockMgr();
         BlockMgr blkMgrRecords = bpt.getRecordsMgr().getBlockMgr();
         BufferChannel blkState = bpt.getStateManager().getBufferChannel();
         // ----
-        int rowBlock = 1000;
-        Iterator<Record> iter = new RecordsFromInput(input, tupleLength, colMap, rowBlock);
         // ProgressMonitor.
         ProgressMonitor monitor = ProgressMonitorOutput.create(BulkLoaderX.LOG_Index, indexName, tickPoint, superTick);
         ProgressIterator<Record> iter2 = new ProgressIterator<>(iter, monitor);
@@ -290,6 +320,8 @@ public class ProcBuildIndexX
         CoLib.executeWrite(index, ()->{
             BPlusTree bpt2 = BPlusTreeRewriter.packIntoBPlusTree(iter2, bptParams, recordFactory, blkState, blkMgrNodes, blkMgrRecords);
         });
+        // The records were written directly to the B+Tree.
+        tIdxRec.resetFilter();
         monitor.finish();
 
         long count = monitor.getTicks();
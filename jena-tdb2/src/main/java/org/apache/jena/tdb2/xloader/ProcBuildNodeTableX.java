@@ -20,15 +20,22 @@ package org.apache.jena.tdb2.xloader;
 
 import static org.apache.jena.tdb2.xloader.BulkLoaderX.async;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 import org.apache.jena.atlas.io.IO;
 import org.apache.jena.atlas.iterator.IteratorSlotted;
@@ -60,6 +67,7 @@ import org.apache.jena.system.progress.ProgressIterator;
 import org.apache.jena.system.progress.ProgressMonitorOutput;
 import org.apache.jena.system.progress.ProgressStreamRDF;
 import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.jena.tdb2.TDBException;
 import org.apache.jena.tdb2.lib.NodeLib;
 import org.apache.jena.tdb2.store.DatasetGraphTDB;
 import org.apache.jena.tdb2.store.Hash;
@@ -129,6 +137,9 @@ public class ProcBuildNodeTableX {
         if ( sortThreads <= 0 )
             sortThreads = 2;
 
+        if ( BulkLoaderX.SortInProcess )
+            return exec2java(dsg, nodeTable, loaderFiles, sortThreads, datafiles);
+
         // ** Step 2: The sort
         Process procSort;
         try {
@@ -170,39 +181,12 @@ public class ProcBuildNodeTableX {
         AtomicLong countParseTicks = new AtomicLong(-1);
         AtomicLong countIndexedNodes = new AtomicLong(-1);
 
-        long tickPoint = BulkLoaderX.DataTick;
-        int superTick = BulkLoaderX.DataSuperTick;
-
         Runnable task1 = ()->{
-            ProgressMonitorOutput monitor = ProgressMonitorOutput.create(BulkLoaderX.LOG_Nodes, "Nodes", tickPoint, superTick);
             OutputStream output = IO.ensureBuffered(toSortOutputStream);
-            // Counting.
-            StreamRDF worker = new NodeHashTmpStream(output);
-            ProgressStreamRDF stream = new ProgressStreamRDF(worker, monitor);
-            monitor.start();
-            String label = monitor.getLabel();
-            datafiles.forEach( datafile->{
-                String basename = FileOps.basename(datafile);
-                monitor.setLabel(basename);
-                stream.start();
-                RDFParser.source(datafile).parse(stream);
-                stream.finish();
-            });
-            monitor.finish();
-            monitor.setLabel(label);
-
+            long count = parseNodes(new NodeHashTmpStream(output), datafiles);
             IO.flush(output);
             IO.close(output);
-
-            long x = monitor.getTime();
-
-            long count = monitor.getTicks();
             countParseTicks.set(count);
-
-            double xSec = x/1000.0;
-            double rate = count/xSec;
-            FmtLog.info(BulkLoaderX.LOG_Nodes, "%s Parse (nodes): %s seconds : %,d triples/quads %,.0f TPS", BulkLoaderX.StageMarker,
-                        Timer.timeStr(x), count, rate);
         };
 
         // AsyncParser.asyncParse(files, output) but with logging.
@@ -210,46 +194,11 @@ public class ProcBuildNodeTableX {
 
         // Step3: build node table.
         Runnable task3 = ()->{
-            Timer timer = new Timer();
-            // Don't start timer until sort send something
-
             // Process stream are already buffered.
             InputStream input = IO.ensureBuffered(fromSortInputStream);
-
-            FileSet fileSet = new FileSet(dsgtdb.getLocation(), Names.nodeTableBaseName);
-            BufferChannel blkState = FileFactory.createBufferChannel(fileSet, Names.extBptState);
-            long idxTickPoint = BulkLoaderX.DataTick;
-            int idxSuperTick = BulkLoaderX.DataSuperTick;
-            ProgressMonitorOutput monitor = ProgressMonitorOutput.create(BulkLoaderX.LOG_Terms, "Index", idxTickPoint, idxSuperTick);
-
-            dsg.executeWrite(()->{
-                BinaryDataFile objectFile = nodeTable.getData();
-                Iterator<Record> rIter = records(BulkLoaderX.LOG_Terms, input, objectFile);
-                rIter = new ProgressIterator<>(rIter, monitor);
-                BPlusTree bpt1 = (BPlusTree)(nodeTable.getIndex());
-                BPlusTreeParams bptParams = bpt1.getParams();
-                RecordFactory factory = new RecordFactory(SystemTDB.LenNodeHash,  NodeId.SIZE);
-                // Wait until something has been received from the sort step
-                rIter.hasNext();
-                monitor.start();
-                // .. then start the timer. It is closed after the transaction finishes.
-                timer.startTimer();
-
-                BPlusTree bpt2 = BPlusTreeRewriter.packIntoBPlusTree(rIter,
-                                                                     bptParams, factory, blkState,
-                                                                     bpt1.getNodeManager().getBlockMgr(),
-                                                                     bpt1.getRecordsMgr().getBlockMgr());
-                bpt2.sync();
-                //bpt1.sync();
-                objectFile.sync();
-                monitor.finish();
-            });
+            long count = buildNodeTable(dsg, nodeTable, objectFile->records(BulkLoaderX.LOG_Terms, input, objectFile));
             IO.close(input);
-            long x = timer.endTimer();
-            long count = monitor.getTicks();
             countIndexedNodes.set(count);
-            String rateStr = BulkLoaderX.rateStr(count, x);
-            FmtLog.info(BulkLoaderX.LOG_Terms, "%s Index terms: %s seconds : %,d indexed RDF terms : %s PerSecond", BulkLoaderX.StageMarker, Timer.timeStr(x), count, rateStr);
         };
         Thread thread3 = async(task3, "AsyncBuild");
 
@@ -276,6 +225,109 @@ public class ProcBuildNodeTableX {
         return Pair.create(countParseTicks.get(), countIndexedNodes.get());
     }
 
+    /**
+     * Build the node table using {@link ExternalSorter} in this JVM.
+     * Parsing appends each new term to a temporary file and adds a fixed-width
+     * (hash, offset) record to the sorter; the node table is then built from the
+     * records in hash order, reading the term bytes back from the temporary file.
+     */
+    private static Pair<Long, Long> exec2java(DatasetGraph dsg, NodeTableTRDF nodeTable, XLoaderFiles loaderFiles,
+                                              int sortThreads, List<String> datafiles) {
+        Path tmpdir = Path.of(loaderFiles.TMPDIR);
+        Path termsFile = tmpdir.resolve("terms.tmp");
+        int recordLength = SystemTDB.LenNodeHash + Long.BYTES;
+        int runSize = BulkLoaderX.SortRunSizeMB * 1024 * 1024;
+        try ( ExternalSorter sorter = new ExternalSorter(recordLength, SystemTDB.LenNodeHash, true, tmpdir, sortThreads, runSize,
+                                                         BulkLoaderX.CompressSortNodeTableFiles) ) {
+            long countParseTicks;
+            try ( OutputStream termsOutput = new BufferedOutputStream(Files.newOutputStream(termsFile), 128*1024) ) {
+                countParseTicks = parseNodes(new NodeHashSortStream(termsOutput, sorter), datafiles);
+            }
+            long countIndexedNodes;
+            try ( FileChannel terms = FileChannel.open(termsFile, StandardOpenOption.READ) ) {
+                Iterator<byte[]> sorted = sorter.sorted();
+                BulkLoaderX.LOG_Terms.info("Sort finished");
+                countIndexedNodes = buildNodeTable(dsg, nodeTable, objectFile->new IteratorSortedNodeRecords(sorted, terms, objectFile));
+            }
+            return Pair.create(countParseTicks, countIndexedNodes);
+        } catch (IOException ex) {
+            throw new TDBException("Failed to build the node table", ex);
+        } finally {
+            try { Files.deleteIfExists(termsFile); }
+            catch (IOException ex) { BulkLoaderX.LOG_Terms.warn("Failed to delete "+termsFile); }
+        }
+    }
+
+    /** Parse the data files, sending RDF terms to the worker. Returns the number of triples and quads. */
+    private static long parseNodes(StreamRDF worker, List<String> datafiles) {
+        long tickPoint = BulkLoaderX.DataTick;
+        int superTick = BulkLoaderX.DataSuperTick;
+        ProgressMonitorOutput monitor = ProgressMonitorOutput.create(BulkLoaderX.LOG_Nodes, "Nodes", tickPoint, superTick);
+        ProgressStreamRDF stream = new ProgressStreamRDF(worker, monitor);
+        monitor.start();
+        String label = monitor.getLabel();
+        datafiles.forEach( datafile->{
+            String basename = FileOps.basename(datafile);
+            monitor.setLabel(basename);
+            stream.start();
+            RDFParser.source(datafile).parse(stream);
+            stream.finish();
+        });
+        monitor.finish();
+        monitor.setLabel(label);
+
+        long x = monitor.getTime();
+        long count = monitor.getTicks();
+        double xSec = x/1000.0;
+        double rate = count/xSec;
+        FmtLog.info(BulkLoaderX.LOG_Nodes, "%s Parse (nodes): %s seconds : %,d triples/quads %,.0f TPS", BulkLoaderX.StageMarker,
+                    Timer.timeStr(x), count, rate);
+        return count;
+    }
+
+    /**
+     * Write the node table data file and pack the node table index from records
+     * in hash order. Returns the number of RDF terms indexed.
+     */
+    private static long buildNodeTable(DatasetGraph dsg, NodeTableTRDF nodeTable, Function<BinaryDataFile, Iterator<Record>> source) {
+        DatasetGraphTDB dsgtdb = TDBInternal.getDatasetGraphTDB(dsg);
+        Timer timer = new Timer();
+        // Don't start timer until sort send something
+        FileSet fileSet = new FileSet(dsgtdb.getLocation(), Names.nodeTableBaseName);
+        BufferChannel blkState = FileFactory.createBufferChannel(fileSet, Names.extBptState);
+        long idxTickPoint = BulkLoaderX.DataTick;
+        int idxSuperTick = BulkLoaderX.DataSuperTick;
+        ProgressMonitorOutput monitor = ProgressMonitorOutput.create(BulkLoaderX.LOG_Terms, "Index", idxTickPoint, idxSuperTick);
+
+        dsg.executeWrite(()->{
+            BinaryDataFile objectFile = nodeTable.getData();
+            Iterator<Record> rIter = source.apply(objectFile);
+            rIter = new ProgressIterator<>(rIter, monitor);
+            BPlusTree bpt1 = (BPlusTree)(nodeTable.getIndex());
+            BPlusTreeParams bptParams = bpt1.getParams();
+            RecordFactory factory = new RecordFactory(SystemTDB.LenNodeHash,  NodeId.SIZE);
+            // Wait until something has been received from the sort step
+            rIter.hasNext();
+            monitor.start();
+            // .. then start the timer. It is closed after the transaction finishes.
+            timer.startTimer();
+
+            BPlusTree bpt2 = BPlusTreeRewriter.packIntoBPlusTree(rIter,
+                                                                 bptParams, factory, blkState,
+                                                                 bpt1.getNodeManager().getBlockMgr(),
+                                                                 bpt1.getRecordsMgr().getBlockMgr());
+            bpt2.sync();
+            //bpt1.sync();
+            objectFile.sync();
+            monitor.finish();
+        });
+        long x = timer.endTimer();
+        long count = monitor.getTicks();
+        String rateStr = BulkLoaderX.rateStr(count, x);
+        FmtLog.info(BulkLoaderX.LOG_Terms, "%s Index terms: %s seconds : %,d indexed RDF terms : %s PerSecond", BulkLoaderX.StageMarker, Timer.timeStr(x), count, rateStr);
+        return count;
+    }
+
     private static Iterator<Record> records(Logger logger, InputStream input, BinaryDataFile objectFile) {
         return new IteratorNodeTableRecords(logger, input, objectFile);
     }
@@ -344,6 +396,66 @@ public class ProcBuildNodeTableX {
         }
     }
 
+    /**
+     * Node table records from the sorted (hash, offset) records of the in-process
+     * sort. The term bytes are read from the terms file at the offset.
+     */
+    private static class IteratorSortedNodeRecords extends IteratorSlotted<Record> {
+        private final static RecordFactory factory = new RecordFactory(SystemTDB.LenNodeHash,  NodeId.SIZE);
+        private final byte[] bbNodeId = new byte[NodeId.SIZE];
+        private final ByteBuffer lenBuffer = ByteBuffer.allocate(Integer.BYTES);
+        private final Iterator<byte[]> sorted;
+        private final FileChannel terms;
+        private final BinaryDataFile objectFile;
+
+        IteratorSortedNodeRecords(Iterator<byte[]> sorted, FileChannel terms, BinaryDataFile objectFile) {
+            this.sorted = sorted;
+            this.terms = terms;
+            this.objectFile = objectFile;
+        }
+
+        @Override
+        protected boolean hasMore() {
+            return sorted.hasNext();
+        }
+
+        @Override
+        protected Record moveToNext() {
+            byte[] hashOffset = sorted.next();
+            long offset = Bytes.getLong(hashOffset, SystemTDB.LenNodeHash);
+            byte[] thrift = readTerm(offset);
+            long x = objectFile.length();
+            NodeId nodeId = NodeIdFactory.createPtr(x);
+            objectFile.write(thrift);
+            Bytes.setLong(nodeId.getPtrLocation(), bbNodeId);
+            byte[] key = Arrays.copyOf(hashOffset, SystemTDB.LenNodeHash);
+            return factory.create(key, bbNodeId);
+        }
+
+        private byte[] readTerm(long offset) {
+            try {
+                lenBuffer.clear();
+                readFully(lenBuffer, offset);
+                lenBuffer.flip();
+                int len = lenBuffer.getInt();
+                ByteBuffer bb = ByteBuffer.allocate(len);
+                readFully(bb, offset + Integer.BYTES);
+                return bb.array();
+            } catch (IOException ex) {
+                throw new TDBException("Failed to read terms file", ex);
+            }
+        }
+
+        private void readFully(ByteBuffer bb, long position) throws IOException {
+            while ( bb.hasRemaining() ) {
+                int n = terms.read(bb, position);
+                if ( n < 0 )
+                    throw new TDBException("Unexpected end of terms file");
+                position += n;
+            }
+        }
+    }
+
     public static int hexRead(InputStream input) throws IOException {
         int c1 = input.read();
         if ( c1 < 0 )
@@ -426,10 +538,7 @@ public class ProcBuildNodeTableX {
                 byte k[] = hash.getBytes();
                 RDF_Term term = ThriftConvert.convert(node, false);
                 byte[] tBytes = serializer.serialize(term);
-                write(outputData, k);
-                outputData.write(' ');
-                write(outputData, tBytes);
-                outputData.write('\n');
+                output(k, tBytes);
             } catch (TException e) {
                 e.printStackTrace();
             } catch (IOException e) {
@@ -437,6 +546,14 @@ public class ProcBuildNodeTableX {
             }
         }
 
+        /** Output one (hash, encoded term) line. */
+        protected void output(byte[] hashBytes, byte[] termBytes) throws IOException {
+            write(outputData, hashBytes);
+            outputData.write(' ');
+            write(outputData, termBytes);
+            outputData.write('\n');
+        }
+
         private static void write(OutputStream outputData, byte[] bytes) throws IOException {
             for ( byte bits8 : bytes )
                 hexWrite(outputData, bits8);
@@ -456,4 +573,32 @@ public class ProcBuildNodeTableX {
             IO.flush(outputData);
         }
     }
+    /**
+     * Parser output for the in-process sort: append the encoded term, with its
+     * length, to the terms file and add a (hash, offset) record to the sorter.
+     */
+    static class NodeHashSortStream extends NodeHashTmpStream {
+        private final OutputStream termsOutput;
+        private final ExternalSorter sorter;
+        private final byte[] record = new byte[SystemTDB.LenNodeHash + Long.BYTES];
+        private final byte[] lenBytes = new byte[Integer.BYTES];
+        private long offset = 0;
+
+        NodeHashSortStream(OutputStream termsOutput, ExternalSorter sorter) {
+            super(termsOutput);
+            this.termsOutput = termsOutput;
+            this.sorter = sorter;
+        }
+
+        @Override
+        protected void output(byte[] hashBytes, byte[] termBytes) throws IOException {
+            Bytes.setInt(termBytes.length, lenBytes);
+            termsOutput.write(lenBytes);
+            termsOutput.write(termBytes);
+            System.arraycopy(hashBytes, 0, record, 0, SystemTDB.LenNodeHash);
+            Bytes.setLong(offset, record, SystemTDB.LenNodeHash);
+            sorter.add(record);
+            offset += Integer.BYTES + termBytes.length;
+        }
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.xloader;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jena.atlas.io.IO;
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonObject;
+import org.apache.jena.atlas.lib.DateTimeUtils;
+
+/**
+ * Record of the xloader steps that have completed, kept in the temporary
+ * directory. Each step (node table, ingest data, each index) commits as a whole,
+ * so a load that is restarted skips the completed steps and runs any step that
+ * did not complete from its beginning.
+ */
+public class XLoaderCheckpoint {
+    static final String nameCheckpoint = "xloader-checkpoint.json";
+
+    private final Path path;
+    private final List<String> datafiles;
+    private final Set<String> done = new LinkedHashSet<>();
+
+    /** Start a new record. */
+    public static XLoaderCheckpoint create(XLoaderFiles loaderFiles, List<String> datafiles) {
+        return new XLoaderCheckpoint(path(loaderFiles), normalize(datafiles));
+    }
+
+    /**
+     * Read the record of an earlier run of the same data files.
+     * Returns null if there is no record or it is for different files.
+     */
+    public static XLoaderCheckpoint resume(XLoaderFiles loaderFiles, List<String> datafiles) {
+        Path path = path(loaderFiles);
+        if ( !Files.exists(path) )
+            return null;
+        JsonObject obj = JSON.read(path.toString());
+        List<String> files = new ArrayList<>();
+        obj.getArray("files").forEach(v->files.add(v.getAsString().value()));
+        if ( !files.equals(normalize(datafiles)) )
+            return null;
+        XLoaderCheckpoint checkpoint = new XLoaderCheckpoint(path, files);
+        obj.getArray("done").forEach(v->checkpoint.done.add(v.getAsString().value()));
+        return checkpoint;
+    }
+
+    private static Path path(XLoaderFiles loaderFiles) {
+        return Path.of(loaderFiles.TMPDIR, nameCheckpoint);
+    }
+
+    private static List<String> normalize(List<String> files) {
+        List<String> x = new ArrayList<>(files.size());
+        files.forEach(fn->x.add(Path.of(fn).toAbsolutePath().normalize().toString()));
+        return List.copyOf(x);
+    }
+
+    private XLoaderCheckpoint(Path path, List<String> datafiles) {
+        this.path = path;
+        this.datafiles = datafiles;
+    }
+
+    public synchronized boolean isDone(String step) {
+        return done.contains(step);
+    }
+
+    public synchronized Set<String> getDone() {
+        return Set.copyOf(done);
+    }
+
+    /** Record a step as completed. The file is replaced atomically. */
+    public synchronized void done(String step) {
+        done.add(step);
+        JsonObject obj = JSON.buildObject(b->{
+            b.pair("written", DateTimeUtils.nowAsXSDDateTimeString());
+            b.key("files").startArray();
+            datafiles.forEach(fn->b.value(fn));
+            b.finishArray();
+            b.key("done").startArray();
+            done.forEach(s->b.value(s));
+            b.finishArray();
+        });
+        Path tmp = path.resolveSibling(nameCheckpoint+".tmp");
+        try {
+            try ( OutputStream out = Files.newOutputStream(tmp) ) {
+                JSON.write(out, obj);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            IO.exception(ex);
+        }
+    }
+
+    /** Remove the record, when the load has finished. */
+    public void delete() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            IO.exception(ex);
+        }
+    }
+}
@@ -21,8 +21,11 @@ package org.apache.jena.tdb2;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+
 import org.junit.Test;
 
 import org.apache.jena.atlas.lib.FileOps;
@@ -33,7 +36,9 @@ import org.apache.jena.sparql.sse.SSE;
 import org.apache.jena.system.Txn;
 import org.apache.jena.tdb2.params.StoreParams;
 import org.apache.jena.tdb2.params.StoreParamsBuilder;
+import org.apache.jena.tdb2.params.StoreParamsCodec;
 import org.apache.jena.tdb2.sys.DatabaseConnection;
+import org.apache.jena.tdb2.sys.SystemTDB;
 import org.apache.jena.tdb2.sys.TDBInternal;
 
 /** Test of DatabaseMgr - the DatasetGraph level API to TDB2 */
@@ -110,4 +115,136 @@ public class TestDatabaseMgr
         StoreParams storeParams2 = TDBInternal.requireStorage(dg1).getStoreParams();
         assertEquals(testBlockSize, storeParams2.getBlockSize().intValue());
     }
+
+    @Test
+    public void testDatabaseMgrIndexCompression() {
+        TDBInternal.reset();
+        String DIRx = ConfigTest.getCleanDir();
+        Location LOC = Location.create(DIRx);
+        FileOps.clearAll(DIRx);
+        int N = 2000;
+        try {
+            StoreParams storeParams1 = StoreParamsBuilder.create("test").indexCompression(true).build();
+            DatasetGraph dg1 = DatabaseMgr.connectDatasetGraph(LOC, storeParams1);
+            Txn.executeWrite(dg1, ()->{
+                for ( int i = 0 ; i < N ; i++ )
+                    dg1.add(SSE.parseQuad("(<g> <s"+(i/100)+"> <p"+(i%10)+"> "+i+")"));
+                dg1.delete(quad2);
+            });
+            // Reopen, reading the compressed blocks from disk.
+            TDBInternal.reset();
+            DatasetGraph dg2 = DatabaseMgr.connectDatasetGraph(LOC);
+            assertTrue(TDBInternal.requireStorage(dg2).getStoreParams().getIndexCompression());
+            Txn.executeWrite(dg2, ()->{
+                for ( int i = 0 ; i < N ; i += 2 )
+                    dg2.delete(SSE.parseQuad("(<g> <s"+(i/100)+"> <p"+(i%10)+"> "+i+")"));
+            });
+            Txn.executeRead(dg2, ()->{
+                assertEquals(N/2, dg2.getGraph(SSE.parseNode("<g>")).size());
+                assertTrue(dg2.contains(SSE.parseQuad("(<g> <s1> <p1> 101)")));
+                assertFalse(dg2.contains(SSE.parseQuad("(<g> <s1> <p0> 100)")));
+            });
+        }
+        finally {
+            TDBInternal.reset();
+            FileOps.clearAll(DIRx);
+        }
+    }
+
+    @Test
+    public void testDatabaseMgrIndexCompressionOff() {
+        // Compression is recorded with the database: asking for it to be off
+        // for a database created with it on does not mix page formats.
+        TDBInternal.reset();
+        String DIRx = ConfigTest.getCleanDir();
+        Location LOC = Location.create(DIRx);
+        FileOps.clearAll(DIRx);
+        int N = 10000;
+        try {
+            StoreParams storeParams1 = StoreParamsBuilder.create("test").indexCompression(true).build();
+            DatasetGraph dg1 = DatabaseMgr.connectDatasetGraph(LOC, storeParams1);
+            Txn.executeWrite(dg1, ()->{
+                for ( int i = 0 ; i < N ; i += 2 )
+                    dg1.add(SSE.parseQuad("(<g> <s"+(i/100)+"> <p"+(i%10)+"> "+i+")"));
+            });
+            TDBInternal.reset();
+            StoreParams storeParams2 = StoreParamsBuilder.create("test").indexCompression(false).build();
+            DatasetGraph dg2 = DatabaseMgr.connectDatasetGraph(LOC, storeParams2);
+            assertTrue(TDBInternal.requireStorage(dg2).getStoreParams().getIndexCompression());
+            // Fill in between the existing quads, splitting pages, then delete to merge pages.
+            Txn.executeWrite(dg2, ()->{
+                for ( int i = 1 ; i < N ; i += 2 )
+                    dg2.add(SSE.parseQuad("(<g> <s"+(i/100)+"> <p"+(i%10)+"> "+i+")"));
+            });
+            Txn.executeWrite(dg2, ()->{
+                for ( int i = 0 ; i < N ; i++ ) {
+                    if ( i % 3 != 0 )
+                        dg2.delete(SSE.parseQuad("(<g> <s"+(i/100)+"> <p"+(i%10)+"> "+i+")"));
+                }
+            });
+            Txn.executeRead(dg2, ()->{
+                assertEquals((N+2)/3, dg2.getGraph(SSE.parseNode("<g>")).size());
+                assertTrue(dg2.contains(SSE.parseQuad("(<g> <s1> <p3> 123)")));
+                assertFalse(dg2.contains(SSE.parseQuad("(<g> <s1> <p4> 124)")));
+            });
+        }
+        finally {
+            TDBInternal.reset();
+            FileOps.clearAll(DIRx);
+        }
+    }
+
+    @Test
+    public void testDatabaseMgrIndexBloomFilter() {
+        TDBInternal.reset();
+        String DIRx = ConfigTest.getCleanDir();
+        Location LOC = Location.create(DIRx);
+        FileOps.clearAll(DIRx);
+        try {
+            StoreParams storeParams1 = StoreParamsBuilder.create("test").indexBloomFilter(true).build();
+            DatasetGraph dg1 = DatabaseMgr.connectDatasetGraph(LOC, storeParams1);
+            Txn.executeWrite(dg1, ()->dg1.add(quad1));
+            Txn.executeRead(dg1, ()->{
+                assertTrue(dg1.contains(quad1));
+                assertFalse(dg1.contains(quad2));
+            });
+            // Close: the filters are written.
+            TDBInternal.reset();
+            assertTrue(new File(DIRx+"/Data-0001/SPO.bfl").exists());
+
+            DatasetGraph dg2 = DatabaseMgr.connectDatasetGraph(LOC);
+            Txn.executeWrite(dg2, ()->dg2.add(quad2));
+            Txn.executeRead(dg2, ()->{
+                assertTrue(dg2.contains(quad1));
+                assertTrue(dg2.contains(quad2));
+                assertFalse(dg2.contains(SSE.parseQuad("(_ <s> <p> 2)")));
+            });
+        }
+        finally {
+            TDBInternal.reset();
+            FileOps.clearAll(DIRx);
+        }
+    }
+
+    @Test
+    public void testDatabaseMgrInlineStrings() {
+        TDBInternal.reset();
+        String DIRx = ConfigTest.getCleanDir();
+        Location LOC = Location.create(DIRx);
+        FileOps.clearAll(DIRx);
+        try {
+            DatasetGraph dg1 = DatabaseMgr.connectDatasetGraph(LOC);
+            Txn.executeWrite(dg1, ()->dg1.add(SSE.parseQuad("(<g> <s> <p> 'abc')")));
+            assertEquals(SystemTDB.enableInlineStrings, TDBInternal.requireStorage(dg1).getStoreParams().getInlineStrings());
+            TDBInternal.reset();
+            // Record the other setting: the database must not be opened.
+            StoreParams params = StoreParams.builder("test").inlineStrings(!SystemTDB.enableInlineStrings).build();
+            StoreParamsCodec.write(LOC, params);
+            assertThrows(TDBException.class, ()->DatabaseMgr.connectDatasetGraph(LOC));
+        }
+        finally {
+            TDBInternal.reset();
+            FileOps.clearAll(DIRx);
+        }
+    }
 }
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jena.tdb2.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jena.atlas.io.IO;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.lib.FileOps;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.system.Txn;
+import org.apache.jena.system.progress.MonitorOutput;
+import org.apache.jena.tdb2.ConfigTest;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.jena.tdb2.loader.main.LoaderCheckpoint;
+import org.apache.jena.tdb2.loader.main.LoaderMain;
+import org.apache.jena.tdb2.loader.main.LoaderPlan;
+import org.apache.jena.tdb2.loader.main.LoaderPlans;
+import org.apache.jena.tdb2.sys.SystemTDB;
+import org.apache.jena.tdb2.sys.TDBInternal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Checkpoint and restart of {@link LoaderMain}. */
+public class TestLoaderCheckpoint {
+    private static MonitorOutput output = (fmt, args)->{};
+    private static LoaderPlan plan = LoaderPlans.loaderPlanParallel;
+    private String dir;
+    private DatasetGraph dsg;
+    private Path checkpointFile;
+
+    @Before public void before() {
+        dir = ConfigTest.getCleanDir();
+        dsg = DatabaseMgr.connectDatasetGraph(Path.of(dir, "DB").toString());
+        dsg.getContext().set(SystemTDB.symLoaderCheckpoint, 10);
+        checkpointFile = LoaderCheckpoint.checkpointFile(TDBInternal.getDatasetGraphTDB(dsg).getLocation());
+    }
+
+    @After public void after() {
+        TDBInternal.expel(dsg, true);
+        FileOps.clearAll(dir);
+    }
+
+    private static Graph data(String label, int N) {
+        Graph graph = GraphFactory.createDefaultGraph();
+        for ( int i = 0 ; i < N ; i++ ) {
+            Node s = NodeFactory.createURI("http://example/"+label+"/s"+(i%10));
+            Node p = NodeFactory.createURI("http://example/p"+(i%3));
+            Node o = NodeFactory.createLiteralString(label+" "+i);
+            graph.add(s, p, o);
+        }
+        return graph;
+    }
+
+    private String write(String filename, List<Triple> triples) {
+        Graph graph = GraphFactory.createDefaultGraph();
+        triples.forEach(graph::add);
+        String fn = Path.of(dir, filename).toString();
+        try ( OutputStream out = IO.openOutputFile(fn) ) {
+            RDFDataMgr.write(out, graph, Lang.NTRIPLES);
+        } catch (IOException ex) { IO.exception(ex); }
+        return fn;
+    }
+
+    private void load(List<String> files) {
+        DataLoader loader = new LoaderMain(plan, dsg, output);
+        loader.startBulk();
+        loader.load(files);
+        loader.finishBulk();
+    }
+
+    private Set<Triple> loaded() {
+        return Txn.calculateRead(dsg, ()->Iter.toSet(dsg.getDefaultGraph().find()));
+    }
+
+    @Test public void checkpoint_load() {
+        Graph graph = data("A", 105);
+        String fn = write("data.nt", graph.find().toList());
+        load(List.of(fn));
+        assertEquals(graph.find().toSet(), loaded());
+        // Removed on completion.
+        assertFalse(Files.exists(checkpointFile));
+    }
+
+    @Test public void checkpoint_restart() throws IOException {
+        List<Triple> triples1 = data("A", 40).find().toList();
+        List<Triple> triples2 = data("B", 50).find().toList();
+        String fn1 = write("data1.nt", triples1);
+        String fn2 = write("data2.nt", triples2);
+        // The order of the triples in the second file.
+        List<Triple> fileOrder2 = new ArrayList<>();
+        RDFDataMgr.parse(new StreamRDFBase() {
+            @Override public void triple(Triple triple) { fileOrder2.add(triple); }
+        }, fn2);
+
+        // A load that stopped after the first file and 20 triples of the second.
+        LoaderCheckpoint checkpoint = LoaderCheckpoint.create(checkpointFile, LoaderCheckpoint.planLabel(plan));
+        checkpoint.setFiles(List.of(fn1, fn2));
+        checkpoint.write();
+        String json = Files.readString(checkpointFile)
+                .replaceAll("\"triples\"\\s*:\\s*\\d+", "\"triples\" : 60")
+                .replaceAll("\"fileIndex\"\\s*:\\s*-?\\d+", "\"fileIndex\" : 1")
+                .replaceAll("\"fileItems\"\\s*:\\s*\\d+", "\"fileItems\" : 20");
+        Files.writeString(checkpointFile, json);
+        LoaderCheckpoint previous = LoaderCheckpoint.read(checkpointFile);
+        assertNotNull(previous);
+        assertEquals(1, previous.getFileIndex());
+        assertEquals(20, previous.getFileItems());
+
+        // The database is empty so the restart only loads the rest of the second file.
+        DataLoader loader = new LoaderMain(plan, dsg, output);
+        loader.startBulk();
+        loader.load(List.of(fn1, fn2));
+        loader.finishBulk();
+        assertEquals(90, loader.countTriples());
+
+        Set<Triple> expected = new HashSet<>(fileOrder2.subList(20, fileOrder2.size()));
+        assertEquals(expected, loaded());
+        assertFalse(Files.exists(checkpointFile));
+    }
+
+    @Test public void checkpoint_other_load() throws IOException {
+        Graph graph = data("A", 30);
+        String fn = write("data.nt", graph.find().toList());
+        // A checkpoint for different files is ignored.
+        LoaderCheckpoint checkpoint = LoaderCheckpoint.create(checkpointFile, LoaderCheckpoint.planLabel(plan));
+        checkpoint.setFiles(List.of(Path.of(dir, "other.nt").toString()));
+        checkpoint.write();
+        assertTrue(Files.exists(checkpointFile));
+        load(List.of(fn));
+        assertEquals(graph.find().toSet(), loaded());
+        assertFalse(Files.exists(checkpointFile));
+    }
+
+    @Test public void checkpoint_changed_file() throws IOException {
+        List<Triple> triples = data("A", 30).find().toList();
+        String fn = write("data.nt", triples);
+        LoaderCheckpoint checkpoint = LoaderCheckpoint.create(checkpointFile, LoaderCheckpoint.planLabel(plan));
+        checkpoint.setFiles(List.of(fn));
+        checkpoint.write();
+        LoaderCheckpoint previous = LoaderCheckpoint.read(checkpointFile);
+        assertNull(previous.changedFile());
+
+        // Same name, different content.
+        write("data.nt", triples.subList(0, 20));
+        assertEquals(Path.of(fn).toAbsolutePath().normalize().toString(), previous.changedFile());
+        DataLoader loader = new LoaderMain(plan, dsg, output);
+        loader.startBulk();
+        try {
+            assertThrows(BulkLoaderException.class, ()->loader.load(List.of(fn)));
+        } finally {
+            loader.finishBulk();
+        }
+        // The checkpoint is kept.
+        assertTrue(Files.exists(checkpointFile));
+    }
+}
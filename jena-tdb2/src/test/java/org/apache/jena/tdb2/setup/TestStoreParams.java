@@ -73,6 +73,30 @@ public class TestStoreParams {
         assertEqualsStoreParams(paramsExpected,paramsActual);
     }
 
+    @Test public void store_params_07() {
+        StoreParams params = StoreParams.builder(label()).nodeCacheShards(8).build();
+        StoreParams params2 = roundTrip(params);
+        assertEqualsStoreParams(params, params2);
+        assertEquals(Integer.valueOf(8), params2.getNodeCacheShards());
+    }
+
+    @Test public void store_params_08() {
+        StoreParams params = StoreParams.builder(label()).nodeCacheOffHeapSizeMB(256).build();
+        StoreParams params2 = roundTrip(params);
+        assertEqualsStoreParams(params, params2);
+        assertEquals(Integer.valueOf(256), params2.getNodeCacheOffHeapSizeMB());
+    }
+
+    @Test public void store_params_09() {
+        StoreParams params = StoreParams.builder(label()).indexCompression(true).build();
+        StoreParams params2 = roundTrip(params);
+        assertEqualsStoreParams(params, params2);
+        assertEquals(Boolean.TRUE, params2.getIndexCompression());
+        String xs = "{ \"tdb.index_compression\": true }";
+        StoreParams params3 = StoreParamsCodec.decode(JSON.parse(xs));
+        assertEqualsStoreParams(params, params3);
+    }
+
     // ----
 
     @Test public void store_params_10() {
@@ -116,6 +140,42 @@ public class TestStoreParams {
         assertArrayEquals(expected, params.getTripleIndexes());
     }
 
+    @Test public void store_params_15() {
+        StoreParams params = StoreParams.builder(label()).indexBloomFilter(true).build();
+        StoreParams params2 = roundTrip(params);
+        assertEqualsStoreParams(params, params2);
+        assertEquals(Boolean.TRUE, params2.getIndexBloomFilter());
+        String xs = "{ \"tdb.index_bloom_filter\": true }";
+        StoreParams params3 = StoreParamsCodec.decode(JSON.parse(xs));
+        assertEqualsStoreParams(params, params3);
+    }
+
+    @Test public void store_params_16() {
+        StoreParams params = StoreParams.builder(label()).liveStats(true).build();
+        StoreParams params2 = roundTrip(params);
+        assertEqualsStoreParams(params, params2);
+        assertEquals(Boolean.TRUE, params2.getLiveStats());
+        String xs = "{ \"tdb.live_stats\": true }";
+        StoreParams params3 = StoreParamsCodec.decode(JSON.parse(xs));
+        assertEqualsStoreParams(params, params3);
+    }
+
+    @Test public void store_params_17() {
+        StoreParams params = StoreParams.builder(label()).inlineStrings(true).build();
+        StoreParams params2 = roundTrip(params);
+        assertEqualsStoreParams(params, params2);
+        assertTrue(params2.getInlineStrings());
+        String xs = "{ \"tdb.inline_strings\": true }";
+        StoreParams params3 = StoreParamsCodec.decode(JSON.parse(xs));
+        assertEqualsStoreParams(params, params3);
+        // Not present: short strings are in the node table.
+        StoreParams params4 = StoreParamsCodec.decode(JSON.parse("{ }"));
+        assertFalse(params4.getInlineStrings());
+        // Layout: not changed by application parameters.
+        StoreParams params5 = StoreParamsBuilder.modify(params, StoreParams.builder(label()).inlineStrings(false).build());
+        assertTrue(params5.getInlineStrings());
+    }
+
     // Check that setting gets recorded and propagated.
 
     @Test public void store_params_20() {
@@ -25,6 +25,14 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses( {
     TestSolverTDB.class
     , TestStats.class
+    , TestBindingTDBBatch.class
+    , TestLateMaterialization.class
+    , TestMergeJoin.class
+    , TestCardinalityStats.class
+    , TestSolverAdaptiveTDB.class
+    , TestLeapfrogJoin.class
+    , TestPathNodeId.class
+    , TestParallelTDB.class
 })
 
 public class TS_SolverTDB
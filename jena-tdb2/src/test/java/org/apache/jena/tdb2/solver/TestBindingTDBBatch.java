@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.exec.RowSet;
+import org.apache.jena.sparql.exec.RowSetRewindable;
+import org.apache.jena.sparql.resultset.ResultsCompare;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.junit.TL;
+import org.apache.jena.tdb2.sys.SystemTDB;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Converting results from NodeIds to Nodes in blocks. */
+public class TestBindingTDBBatch {
+    static Dataset dataset = null;
+
+    @BeforeClass
+    static public void beforeClass() {
+        dataset = TL.createTestDatasetMem();
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        Txn.executeWrite(dsg, ()->{
+            for ( int i = 0 ; i < 1000 ; i++ ) {
+                dsg.add(SSE.parseQuad("(_ <http://example/s"+i+"> <http://example/p> 'v"+i+"')"));
+                dsg.add(SSE.parseQuad("(_ <http://example/s"+i+"> <http://example/q> "+i+")"));
+                if ( i % 3 == 0 )
+                    dsg.add(SSE.parseQuad("(_ <http://example/s"+i+"> <http://example/r> <http://example/o"+i+">)"));
+            }
+        });
+    }
+
+    @AfterClass
+    static public void afterClass() {
+        TL.expel(dataset);
+    }
+
+    private static final String PREFIX = "PREFIX : <http://example/> ";
+
+    @Test public void batch_resolve_01() {
+        test(PREFIX+"SELECT * { ?s :p ?v ; :q ?n }", 1000);
+    }
+
+    @Test public void batch_resolve_02() {
+        test(PREFIX+"SELECT ?s ?o { ?s :p ?v OPTIONAL { ?s :r ?o } }", 1000);
+    }
+
+    @Test public void batch_resolve_03() {
+        // Variable not used.
+        test(PREFIX+"SELECT ?s { ?s :p ?v ; :r ?o }", 334);
+    }
+
+    @Test public void batch_resolve_04() {
+        test(PREFIX+"SELECT * { ?s :p ?v } LIMIT 10", 10);
+    }
+
+    private static void test(String queryString, int expectedRows) {
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        Txn.executeRead(dsg, ()->{
+            RowSetRewindable rs1 = exec(dsg, queryString, 0);
+            RowSetRewindable rs2 = exec(dsg, queryString, 64);
+            assertEquals(expectedRows, rs1.size());
+            assertEquals(expectedRows, rs2.size());
+            assertTrue(ResultsCompare.equalsByTerm(rs1, rs2));
+        });
+    }
+
+    private static RowSetRewindable exec(DatasetGraph dsg, String queryString, int batchSize) {
+        RowSet rs = QueryExec.dataset(dsg)
+                .query(queryString)
+                .set(SystemTDB.symBindingResolveBatchSize, batchSize)
+                .select();
+        return rs.rewindable();
+    }
+}
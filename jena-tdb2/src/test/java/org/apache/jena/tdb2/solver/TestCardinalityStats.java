@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.graph.NodeConst;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.tdb2.solver.stats.CardinalityStats;
+import org.apache.jena.tdb2.solver.stats.CardinalityStats.PredicateStats;
+import org.apache.jena.tdb2.solver.stats.CardinalityStats.Slot;
+import org.apache.jena.tdb2.solver.stats.HyperLogLog;
+import org.apache.jena.tdb2.solver.stats.ReorderCardinality;
+import org.apache.jena.tdb2.solver.stats.StatsCollectorCardinality;
+import org.junit.Test;
+
+public class TestCardinalityStats {
+    private static Node uri(String x) { return NodeFactory.createURI("http://example/"+x); }
+
+    private static final Node pName   = uri("name");
+    private static final Node pEmail  = uri("email");
+    private static final Node pKnows  = uri("knows");
+    private static final Node pTitle  = uri("title");
+    private static final Node pAuthor = uri("author");
+    private static final Node tPerson = uri("Person");
+    private static final Node tBook   = uri("Book");
+
+    // 100 people, with a name, 10 with an email, each knows the next two.
+    // 20 books, with a title and an author.
+    private static final CardinalityStats stats = build();
+
+    private static CardinalityStats build() {
+        List<Triple> triples = new ArrayList<>();
+        for ( int i = 0 ; i < 100 ; i++ ) {
+            Node s = uri("person"+i);
+            triples.add(Triple.create(s, NodeConst.nodeRDFType, tPerson));
+            triples.add(Triple.create(s, pName, NodeFactory.createLiteralString("Name"+i)));
+            if ( i % 10 == 0 )
+                triples.add(Triple.create(s, pEmail, NodeFactory.createLiteralString("e"+i)));
+            triples.add(Triple.create(s, pKnows, uri("person"+((i+1)%100))));
+            triples.add(Triple.create(s, pKnows, uri("person"+((i+2)%100))));
+        }
+        for ( int i = 0 ; i < 20 ; i++ ) {
+            Node s = uri("book"+i);
+            triples.add(Triple.create(s, NodeConst.nodeRDFType, tBook));
+            triples.add(Triple.create(s, pTitle, NodeFactory.createLiteralString("T"+i)));
+            triples.add(Triple.create(s, pAuthor, uri("person"+i)));
+        }
+        triples.sort(Comparator.comparing(t->t.getSubject().getURI()));
+        StatsCollectorCardinality<Node> collector = StatsCollectorCardinality.create();
+        triples.forEach(t->collector.record(null, t.getSubject(), t.getPredicate(), t.getObject()));
+        return collector.results();
+    }
+
+    @Test public void hll_01() {
+        HyperLogLog hll = new HyperLogLog(12);
+        for ( long i = 0 ; i < 100_000 ; i++ )
+            hll.add(HyperLogLog.hash(i));
+        // Repeats make no difference.
+        for ( long i = 0 ; i < 1000 ; i++ )
+            hll.add(HyperLogLog.hash(i));
+        assertEquals(100_000, hll.estimate(), 5_000);
+    }
+
+    @Test public void hll_02() {
+        HyperLogLog hll = new HyperLogLog();
+        for ( long i = 0 ; i < 50 ; i++ )
+            hll.add(HyperLogLog.hash(i));
+        // Small cardinalities use linear counting.
+        assertEquals(50, hll.estimate(), 3);
+    }
+
+    @Test public void hll_03() {
+        HyperLogLog hll1 = new HyperLogLog(12);
+        HyperLogLog hll2 = new HyperLogLog(12);
+        for ( long i = 0 ; i < 20_000 ; i++ )
+            hll1.add(HyperLogLog.hash(i));
+        for ( long i = 10_000 ; i < 30_000 ; i++ )
+            hll2.add(HyperLogLog.hash(i));
+        assertEquals(10_000, HyperLogLog.estimateIntersection(hll1, hll2), 2_000);
+        HyperLogLog hll3 = HyperLogLog.decode(hll1.encode());
+        assertEquals(hll1.estimate(), hll3.estimate());
+        hll1.merge(hll2);
+        assertEquals(30_000, hll1.estimate(), 1_500);
+    }
+
+    @Test public void cardinality_collect_01() {
+        assertEquals(100*4+10+20*3, stats.getCount());
+        PredicateStats ps = stats.getPredicate(pKnows);
+        assertEquals(200, ps.count);
+        assertEquals(100, ps.subjects);
+        assertEquals(100, ps.objects, 5);
+        assertEquals(10, stats.getPredicate(pEmail).subjects);
+        assertEquals(100, stats.getTypeCount(tPerson));
+        assertEquals(20, stats.getTypeCount(tBook));
+        assertEquals(-1, stats.getTypeCount(uri("Other")));
+    }
+
+    @Test public void cardinality_collect_02() {
+        // Person with email, person without, book.
+        assertEquals(3, stats.getCharacteristicSets().size());
+        assertEquals(10, stats.estimateStar(Set.of(pName, pEmail)), 0.001);
+        assertEquals(100, stats.estimateStar(Set.of(pName)), 0.001);
+        assertEquals(0, stats.estimateStar(Set.of(pName, pTitle)), 0.001);
+        // Authors are people.
+        long x = stats.estimateOverlap(pAuthor, Slot.OBJECT, pName, Slot.SUBJECT);
+        assertEquals(20, x, 3);
+    }
+
+    @Test public void cardinality_write_read() throws Exception {
+        Path path = Files.createTempFile("cardinality", ".opt");
+        try {
+            stats.write(path.toString());
+            CardinalityStats stats2 = CardinalityStats.read(path.toString());
+            assertEquals(stats.getCount(), stats2.getCount());
+            assertEquals(stats.getPredicates().keySet(), stats2.getPredicates().keySet());
+            assertEquals(stats.getTypes(), stats2.getTypes());
+            assertEquals(stats.getCharacteristicSets().size(), stats2.getCharacteristicSets().size());
+            assertEquals(stats.getSubjects(), stats2.getSubjects());
+            PredicateStats ps1 = stats.getPredicate(pKnows);
+            PredicateStats ps2 = stats2.getPredicate(pKnows);
+            assertEquals(ps1.count, ps2.count);
+            assertEquals(ps1.subjects, ps2.subjects);
+            assertEquals(ps1.subjectSketch.estimate(), ps2.subjectSketch.estimate());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test public void cardinality_reorder_01() {
+        // Email is rarer than name.
+        testReorder("(bgp (?x :name ?n) (?x :email ?e))",
+                    "(bgp (?x :email ?e) (?x :name ?n))");
+    }
+
+    @Test public void cardinality_reorder_02() {
+        // Constant title is most selective, then the join on the author.
+        testReorder("(bgp (?x rdf:type :Person) (?b :author ?x) (?b :title 'T1'))",
+                    "(bgp (?b :title 'T1') (?b :author ?x) (?x rdf:type :Person))");
+    }
+
+    @Test public void cardinality_reorder_03() {
+        // Unknown predicate first.
+        testReorder("(bgp (?x :knows ?y) (?y :unknown ?z))",
+                    "(bgp (?y :unknown ?z) (?x :knows ?y))");
+    }
+
+    @Test public void cardinality_reorder_04() {
+        // Ties keep the original order.
+        testReorder("(bgp (?x :name ?n) (?y :name ?m))",
+                    "(bgp (?x :name ?n) (?y :name ?m))");
+    }
+
+    private static void testReorder(String input, String expected) {
+        String prefixes = "(prefix ((: <http://example/>) (rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>)) ";
+        BasicPattern bgp = SSE.parseBGP(prefixes+input+")");
+        BasicPattern bgpExpected = SSE.parseBGP(prefixes+expected+")");
+        BasicPattern bgp2 = new ReorderCardinality(stats).reorder(bgp);
+        assertEquals(bgpExpected, bgp2);
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.exec.RowSet;
+import org.apache.jena.sparql.exec.RowSetRewindable;
+import org.apache.jena.sparql.resultset.ResultsCompare;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.junit.TL;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+import org.apache.jena.tdb2.store.nodetable.NodeTableCache;
+import org.apache.jena.tdb2.sys.TDBInternal;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** DISTINCT, REDUCED, GROUP BY and filters working on NodeIds. */
+public class TestLateMaterialization {
+    static Dataset dataset = null;
+    static DatasetGraph dsgMem = null;
+
+    @BeforeClass
+    static public void beforeClass() {
+        dataset = TL.createTestDatasetMem();
+        dsgMem = DatasetGraphFactory.createTxnMem();
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        Txn.executeWrite(dsg, ()->load(dsg));
+        Txn.executeWrite(dsgMem, ()->load(dsgMem));
+    }
+
+    private static void load(DatasetGraph dsg) {
+        for ( int i = 0 ; i < 200 ; i++ ) {
+            dsg.add(SSE.parseQuad("(_ <http://example/s"+i+"> <http://example/p> <http://example/o"+(i%7)+">)"));
+            dsg.add(SSE.parseQuad("(_ <http://example/s"+i+"> <http://example/q> "+(i%5)+")"));
+            dsg.add(SSE.parseQuad("(_ <http://example/s"+i+"> <http://example/r> 'label"+(i%3)+"')"));
+        }
+        dsg.add(SSE.parseQuad("(_ <http://example/x> <http://example/p> <http://example/x>)"));
+    }
+
+    @AfterClass
+    static public void afterClass() {
+        TL.expel(dataset);
+    }
+
+    private static final String PREFIX = "PREFIX : <http://example/> PREFIX xsd: <http://www.w3.org/2001/XMLSchema#> ";
+
+    @Test public void distinct_01() { test("SELECT DISTINCT ?o { ?s :p ?o }"); }
+    @Test public void distinct_02() { test("SELECT DISTINCT ?o ?n { ?s :p ?o ; :q ?n }"); }
+    @Test public void distinct_03() { test("SELECT DISTINCT * { ?s :q ?n }"); }
+    @Test public void distinct_04() { test("SELECT DISTINCT ?n { { ?s :q ?n } UNION { VALUES ?n { 1 2 '01'^^xsd:integer 99 } } }"); }
+    @Test public void distinct_05() { test("SELECT DISTINCT ?o { { ?s :p ?o } UNION { VALUES ?o { :o1 :z } } }"); }
+    @Test public void distinct_06() { test("SELECT DISTINCT ?o ?n { ?s :p ?o OPTIONAL { ?s :q ?n FILTER(?n > 2) } }"); }
+    @Test public void reduced_01() { test("SELECT REDUCED ?o { ?s :p ?o } ORDER BY ?o"); }
+
+    @Test public void group_01() { test("SELECT ?o (count(*) AS ?c) { ?s :p ?o } GROUP BY ?o"); }
+    @Test public void group_02() { test("SELECT ?o ?n (count(*) AS ?c) { ?s :p ?o ; :q ?n } GROUP BY ?o ?n"); }
+    @Test public void group_03() { test("SELECT ?n (sum(?n) AS ?t) (min(?s) AS ?x) { ?s :q ?n } GROUP BY ?n"); }
+    @Test public void group_04() { test("SELECT ?n (count(*) AS ?c) { { ?s :q ?n } UNION { VALUES ?n { 1 2 '01'^^xsd:integer 99 } } } GROUP BY ?n"); }
+    @Test public void group_05() { test("SELECT ?z (count(*) AS ?c) { ?s :p ?o OPTIONAL { ?s :x ?z } } GROUP BY ?z"); }
+    @Test public void group_06() { test("SELECT ?k (count(*) AS ?c) { ?s :q ?n } GROUP BY (?n + 1 AS ?k)"); }
+    @Test public void group_07() { test("SELECT ?o { ?s :p ?o } GROUP BY ?o HAVING (count(*) > 28)"); }
+
+    @Test public void filter_01() { test("SELECT * { ?s :p ?o FILTER(sameTerm(?s, ?o)) }"); }
+    @Test public void filter_02() { test("SELECT * { ?s :p ?o FILTER(?o = :o3) }"); }
+    @Test public void filter_03() { test("SELECT * { ?s :p ?o FILTER(?o != :o3) }"); }
+    @Test public void filter_04() { test("SELECT * { ?s :q ?n FILTER(sameTerm(?n, 3)) }"); }
+    @Test public void filter_06() { test("SELECT * { ?s :r ?n FILTER(sameTerm(?n, 'label1')) }"); }
+    @Test public void filter_07() { test("SELECT * { ?s :p ?o OPTIONAL { ?s :x ?z } FILTER(?z != :o3) }"); }
+    @Test public void filter_08() { test("SELECT * { ?s :p ?o FILTER(:o3 = ?o) }"); }
+    @Test public void filter_09() { test("SELECT * { ?s :p ?o FILTER(?o = :notInData) }"); }
+    @Test public void filter_10() { test("SELECT * { ?s :p ?o { ?s :q ?n } FILTER(sameTerm(?n, 2)) }"); }
+
+    @Test public void node_key_inline() {
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        NodeTable nt = TDBInternal.getDatasetGraphTDB(dsg).getTripleTable().getNodeTupleTable().getNodeTable();
+        Txn.executeRead(dsg, ()->{
+            Object k1 = BindingKeyTDB.nodeKey(SSE.parseNode("3"), nt);
+            Object k2 = BindingKeyTDB.nodeKey(SSE.parseNode("'03'^^xsd:integer"), nt);
+            Object k3 = BindingKeyTDB.nodeKey(SSE.parseNode("'3'^^xsd:integer"), nt);
+            assertNotEquals(k1, k2);
+            assertEquals(k1, k3);
+        });
+    }
+
+    // An inline NodeId and a node table NodeId with the same value bits:
+    // integer 0 and the first term in the node table.
+    @Test public void inline_and_ptr_01() {
+        testInlineAndPtr("SELECT DISTINCT ?o { ?s :v ?o }", 2);
+    }
+
+    @Test public void inline_and_ptr_02() {
+        testInlineAndPtr("SELECT * { ?s :v ?o FILTER(sameTerm(?o, ?s)) }", 0);
+    }
+
+    @Test public void inline_and_ptr_03() {
+        testInlineAndPtr("SELECT * { ?s :v ?o FILTER(sameTerm(?o, :a)) }", 1);
+    }
+
+    @Test public void inline_and_ptr_04() {
+        testInlineAndPtr("SELECT * { ?s :v ?o FILTER(sameTerm(?o, 0)) }", 1);
+    }
+
+    @Test public void inline_and_ptr_05() {
+        testInlineAndPtr("SELECT ?o (count(*) AS ?c) { ?s :v ?o } GROUP BY ?o", 2);
+    }
+
+    private static void testInlineAndPtr(String queryString, int expected) {
+        DatasetGraph dsg = TL.createTestDatasetGraphMem();
+        Txn.executeWrite(dsg, ()->{
+            dsg.add(SSE.parseQuad("(_ <http://example/a> <http://example/v> 0)"));
+            dsg.add(SSE.parseQuad("(_ <http://example/b> <http://example/v> <http://example/a>)"));
+        });
+        Txn.executeRead(dsg, ()->{
+            NodeTable nt = TDBInternal.getDatasetGraphTDB(dsg).getTripleTable().getNodeTupleTable().getNodeTable();
+            NodeId idPtr = nt.getNodeIdForNode(SSE.parseNode("<http://example/a>"));
+            NodeId idInline = NodeId.inline(SSE.parseNode("0"));
+            // The case being tested: the same value bits.
+            assertEquals(0, idPtr.getPtrLocation());
+            assertNotEquals(idPtr, idInline);
+            assertNotEquals(BindingKeyTDB.nodeKey(SSE.parseNode("<http://example/a>"), nt),
+                            BindingKeyTDB.nodeKey(SSE.parseNode("0"), nt));
+            long count = QueryExec.dataset(dsg).query(PREFIX+queryString).select().rewindable().size();
+            assertEquals(expected, count);
+        });
+        TL.expel(dsg);
+    }
+
+    @Test public void distinct_no_nodes() {
+        // DISTINCT over NodeIds does not need to retrieve any nodes.
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        NodeTableCache cache = nodeTableCache(dsg);
+        Txn.executeRead(dsg, ()->{
+            long before = cache.idToNodeCacheInfo().requests;
+            RowSet rs = QueryExec.dataset(dsg).query(PREFIX+"SELECT DISTINCT ?o { ?s :p ?o }").select();
+            long count = 0;
+            while ( rs.hasNext() ) {
+                rs.next();
+                count++;
+            }
+            assertEquals(8, count);
+            assertEquals(before, cache.idToNodeCacheInfo().requests);
+        });
+    }
+
+    @Test public void group_nodes_per_group() {
+        // GROUP BY over NodeIds retrieves the node of each group once, not the node of each row.
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        NodeTableCache cache = nodeTableCache(dsg);
+        Txn.executeRead(dsg, ()->{
+            long before = cache.idToNodeCacheInfo().requests;
+            long count = QueryExec.dataset(dsg).query(PREFIX+"SELECT ?o (count(*) AS ?c) { ?s :p ?o } GROUP BY ?o").select().rewindable().size();
+            assertEquals(8, count);
+            assertEquals(before+8, cache.idToNodeCacheInfo().requests);
+        });
+    }
+
+    private static NodeTableCache nodeTableCache(DatasetGraph dsg) {
+        NodeTable nt = TDBInternal.getDatasetGraphTDB(dsg).getTripleTable().getNodeTupleTable().getNodeTable();
+        while ( nt != null ) {
+            if ( nt instanceof NodeTableCache ntc )
+                return ntc;
+            nt = nt.wrapped();
+        }
+        throw new AssertionError("No NodeTableCache");
+    }
+
+    private static void test(String queryString) {
+        String qs = PREFIX+queryString;
+        RowSetRewindable expected = Txn.calculateRead(dsgMem, ()->QueryExec.dataset(dsgMem).query(qs).select().rewindable());
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        Txn.executeRead(dsg, ()->{
+            RowSetRewindable actual = QueryExec.dataset(dsg).query(qs).select().rewindable();
+            assertEquals(expected.size(), actual.size());
+            assertTrue(ResultsCompare.equalsByTerm(expected, actual));
+        });
+    }
+}
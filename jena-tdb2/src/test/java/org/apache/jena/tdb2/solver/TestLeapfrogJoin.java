@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.dboe.base.file.Location;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.shared.impl.PrefixMappingImpl;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.jena.tdb2.junit.TL;
+import org.apache.jena.tdb2.params.StoreParams;
+import org.apache.jena.tdb2.store.DatasetGraphTDB;
+import org.apache.jena.tdb2.store.nodetupletable.NodeTupleTable;
+import org.apache.jena.tdb2.sys.SystemTDB;
+import org.apache.jena.tdb2.sys.TDBInternal;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Leapfrog triejoin of cyclic basic graph patterns. */
+public class TestLeapfrogJoin {
+    static Dataset dataset = null;
+    // With a PSO index.
+    static DatasetGraph dsgPSO = null;
+    static DatasetGraph dsgMem = null;
+    static PrefixMapping pmap = new PrefixMappingImpl();
+    static { pmap.setNsPrefix("", "http://example/"); }
+
+    @BeforeClass
+    static public void beforeClass() {
+        dataset = TL.createTestDatasetMem();
+        StoreParams params = StoreParams.builder().tripleIndexes(new String[] {"SPO", "POS", "OSP", "PSO"}).build();
+        dsgPSO = DatabaseMgr.connectDatasetGraph(Location.mem(), params);
+        dsgMem = DatasetGraphFactory.createTxnMem();
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        Txn.executeWrite(dsg, ()->load(dsg));
+        Txn.executeWrite(dsgPSO, ()->load(dsgPSO));
+        Txn.executeWrite(dsgMem, ()->load(dsgMem));
+    }
+
+    private static void load(DatasetGraph dsg) {
+        for ( int i = 0 ; i < 300 ; i++ ) {
+            String s = "<http://example/p"+i+">";
+            // Each person knows the next three people and the person three before, so there are triangles and 4-cycles.
+            for ( int j = 1 ; j <= 3 ; j++ )
+                dsg.add(SSE.parseQuad("(_ "+s+" :knows <http://example/p"+((i+j)%300)+">)", pmap));
+            dsg.add(SSE.parseQuad("(_ "+s+" :knows <http://example/p"+((i+297)%300)+">)", pmap));
+            dsg.add(SSE.parseQuad("(_ "+s+" :likes <http://example/t"+(i%7)+">)", pmap));
+            if ( i % 10 == 0 )
+                dsg.add(SSE.parseQuad("(_ "+s+" :type :Admin)", pmap));
+            dsg.add(SSE.parseQuad("(:g "+s+" :knows <http://example/p"+((i+1)%300)+">)", pmap));
+            dsg.add(SSE.parseQuad("(:g "+s+" :knows <http://example/p"+((i+2)%300)+">)", pmap));
+        }
+        dsg.add(SSE.parseQuad("(:g <http://example/p2> :knows <http://example/p0>)", pmap));
+    }
+
+    @AfterClass
+    static public void afterClass() {
+        TL.expel(dataset);
+        TL.expel(dsgPSO);
+    }
+
+    private static final String PREFIX = "PREFIX : <http://example/> ";
+
+    @Test public void leapfrog_01() { test("SELECT * { ?a :knows ?b . ?b :knows ?c . ?c :knows ?a }"); }
+    @Test public void leapfrog_02() { test("SELECT * { ?a :knows ?b . ?b :knows ?c . ?a :knows ?c }"); }
+    @Test public void leapfrog_03() { test("SELECT * { ?a :knows ?b . ?b :knows ?c . ?c :knows ?d . ?d :knows ?a }"); }
+    @Test public void leapfrog_04() { test("SELECT * { ?a :knows ?b . ?b :knows ?c . ?a :knows ?c . ?a :likes ?t . ?c :likes ?t }"); }
+    @Test public void leapfrog_05() { test("SELECT * { ?a :type :Admin . ?a :knows ?b . ?b :knows ?c . ?c :knows ?a }"); }
+    @Test public void leapfrog_06() { test("SELECT * { ?a ?p ?b . ?b ?p ?c . ?a ?q ?c }"); }
+    @Test public void leapfrog_07() { test("SELECT * { GRAPH :g { ?a :knows ?b . ?b :knows ?c . ?c :knows ?a } }"); }
+    @Test public void leapfrog_08() { test("SELECT * { ?a :knows ?b . ?b :knows ?c . ?c :notInData ?a }"); }
+    @Test public void leapfrog_09() { test("SELECT (count(*) AS ?n) { ?a :knows ?b . ?b :knows ?c . ?c :knows ?a }"); }
+
+    @Test public void leapfrog_cyclic_01() {
+        assertTrue(LeapfrogTDB.isCyclic(bgp("(?a :knows ?b) (?b :knows ?c) (?c :knows ?a)").getList()));
+    }
+
+    @Test public void leapfrog_cyclic_02() {
+        // Path
+        assertFalse(LeapfrogTDB.isCyclic(bgp("(?a :knows ?b) (?b :knows ?c) (?c :knows ?d)").getList()));
+    }
+
+    @Test public void leapfrog_cyclic_03() {
+        // Star
+        assertFalse(LeapfrogTDB.isCyclic(bgp("(?a :p ?b) (?a :q ?c) (?a :r ?d)").getList()));
+    }
+
+    @Test public void leapfrog_cyclic_04() {
+        // Covered by one pattern.
+        assertFalse(LeapfrogTDB.isCyclic(bgp("(?a ?b ?c) (?a :q ?b) (?b :r ?c) (?c :s ?a)").getList()));
+    }
+
+    @Test public void leapfrog_plan_01() {
+        LeapfrogTDB.Plan plan = plan(dataset.asDatasetGraph(), "(?a :knows ?b) (?b :knows ?c) (?c :knows ?a)");
+        assertNotNull(plan);
+        // SPO, POS, OSP: one of the patterns is sorted.
+        assertEquals(1, plan.countSorted());
+    }
+
+    @Test public void leapfrog_plan_02() {
+        LeapfrogTDB.Plan plan = plan(dsgPSO, "(?a :knows ?b) (?b :knows ?c) (?c :knows ?a)");
+        assertNotNull(plan);
+        assertEquals(0, plan.countSorted());
+    }
+
+    @Test public void leapfrog_plan_03() {
+        // Not cyclic
+        assertNull(plan(dataset.asDatasetGraph(), "(?a :knows ?b) (?b :knows ?c)"));
+    }
+
+    @Test public void leapfrog_plan_04() {
+        // Repeated variable.
+        assertNull(plan(dataset.asDatasetGraph(), "(?a :knows ?a) (?a :knows ?c) (?c :knows ?b) (?b :knows ?a)"));
+    }
+
+    @Test public void leapfrog_used() {
+        // Check the leapfrog path was taken by comparing with it turned off.
+        String qs = PREFIX+"SELECT * { ?a :knows ?b . ?b :knows ?c . ?c :knows ?a }";
+        List<Binding> rs1 = rows(dataset.asDatasetGraph(), qs, false);
+        List<Binding> rs2 = rows(dataset.asDatasetGraph(), qs, true);
+        assertFalse(rs1.isEmpty());
+        assertEquals(counts(rs1), counts(rs2));
+    }
+
+    @Test public void leapfrog_sortLimit_01() {
+        // The triangle has one pattern sorted in memory with 1200 matches.
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        LeapfrogTDB.Plan plan = plan(dsg, "(?a :knows ?b) (?b :knows ?c) (?c :knows ?a)");
+        NodeTupleTable ntt = TDBInternal.getDatasetGraphTDB(dsg).getTripleTable().getNodeTupleTable();
+        Txn.executeRead(dsg, ()->{
+            assertNull(LeapfrogTDB.execute(plan, ntt, null, BindingFactory.root(), 1000));
+            assertNotNull(LeapfrogTDB.execute(plan, ntt, null, BindingFactory.root(), 1200));
+        });
+    }
+
+    @Test public void leapfrog_sortLimit_02() {
+        // Over the limit: falls back to the usual execution of the basic graph pattern.
+        String qs = PREFIX+"SELECT * { ?a :knows ?b . ?b :knows ?c . ?c :knows ?a }";
+        List<Binding> expected = rows(dsgMem, qs, false);
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        List<Binding> actual = Txn.calculateRead(dsg, ()->{
+            List<Binding> rows = new ArrayList<>();
+            QueryExec.dataset(dsg).query(qs).set(SystemTDB.symLeapfrogSortLimit, 10).select()
+                .forEachRemaining(b->rows.add(BindingFactory.copy(b)));
+            return rows;
+        });
+        assertFalse(expected.isEmpty());
+        assertEquals(counts(expected), counts(actual));
+    }
+
+    private static BasicPattern bgp(String bgpStr) {
+        return SSE.parseBGP("(bgp "+bgpStr+")", pmap);
+    }
+
+    private static LeapfrogTDB.Plan plan(DatasetGraph dsg, String bgpStr) {
+        DatasetGraphTDB dsgtdb = TDBInternal.getDatasetGraphTDB(dsg);
+        NodeTupleTable ntt = dsgtdb.getTripleTable().getNodeTupleTable();
+        return LeapfrogTDB.plan(ntt, (Node)null, bgp(bgpStr));
+    }
+
+    private static void test(String queryString) {
+        String qs = PREFIX+queryString;
+        List<Binding> expected = rows(dsgMem, qs, false);
+        List<Binding> actual1 = rows(dataset.asDatasetGraph(), qs, true);
+        List<Binding> actual2 = rows(dsgPSO, qs, true);
+        // No blank nodes: compare as multisets.
+        assertEquals(expected.size(), actual1.size());
+        assertEquals(counts(expected), counts(actual1));
+        assertEquals(counts(expected), counts(actual2));
+    }
+
+    private static List<Binding> rows(DatasetGraph dsg, String queryString, boolean leapfrog) {
+        return Txn.calculateRead(dsg, ()->{
+            List<Binding> rows = new ArrayList<>();
+            QueryExec.dataset(dsg).query(queryString).set(SystemTDB.symLeapfrogJoin, leapfrog).select()
+                .forEachRemaining(b->rows.add(BindingFactory.copy(b)));
+            return rows;
+        });
+    }
+
+    private static Map<Binding, Long> counts(List<Binding> bindings) {
+        Map<Binding, Long> counts = new HashMap<>();
+        bindings.forEach(b->counts.merge(b, 1L, Long::sum));
+        return counts;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.shared.impl.PrefixMappingImpl;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.junit.TL;
+import org.apache.jena.tdb2.store.DatasetGraphTDB;
+import org.apache.jena.tdb2.store.nodetupletable.NodeTupleTable;
+import org.apache.jena.tdb2.sys.SystemTDB;
+import org.apache.jena.tdb2.sys.TDBInternal;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Merge join of triple patterns using sorted index scans. */
+public class TestMergeJoin {
+    static Dataset dataset = null;
+    static DatasetGraph dsgMem = null;
+    static PrefixMapping pmap = new PrefixMappingImpl();
+    static { pmap.setNsPrefix("", "http://example/"); }
+
+    @BeforeClass
+    static public void beforeClass() {
+        dataset = TL.createTestDatasetMem();
+        dsgMem = DatasetGraphFactory.createTxnMem();
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        Txn.executeWrite(dsg, ()->load(dsg));
+        Txn.executeWrite(dsgMem, ()->load(dsgMem));
+    }
+
+    private static void load(DatasetGraph dsg) {
+        for ( int i = 0 ; i < 2000 ; i++ ) {
+            String s = "<http://example/s"+i+">";
+            dsg.add(SSE.parseQuad("(_ "+s+" :type :A)", pmap));
+            if ( i % 100 == 0 )
+                dsg.add(SSE.parseQuad("(_ "+s+" :type :B)", pmap));
+            if ( i % 3 == 0 )
+                dsg.add(SSE.parseQuad("(_ "+s+" :status :active)", pmap));
+            dsg.add(SSE.parseQuad("(_ "+s+" :link <http://example/o"+(i%50)+">)", pmap));
+            dsg.add(SSE.parseQuad("(_ <http://example/x"+i+"> :ref <http://example/o"+(i%70)+">)", pmap));
+            dsg.add(SSE.parseQuad("(:g "+s+" :type :A)", pmap));
+            if ( i % 7 == 0 )
+                dsg.add(SSE.parseQuad("(:g "+s+" :status :active)", pmap));
+            if ( i < 30 ) {
+                dsg.add(SSE.parseQuad("(_ "+s+" :p <http://example/o"+(i%5)+">)", pmap));
+                dsg.add(SSE.parseQuad("(_ "+s+" :q <http://example/o"+(i%3)+">)", pmap));
+            }
+        }
+        dsg.add(SSE.parseQuad("(_ :a :p2 :x)", pmap));
+        dsg.add(SSE.parseQuad("(_ :b :p2 :x)", pmap));
+        dsg.add(SSE.parseQuad("(_ :a :q2 :x)", pmap));
+        dsg.add(SSE.parseQuad("(_ :c :q2 :x)", pmap));
+    }
+
+    @AfterClass
+    static public void afterClass() {
+        TL.expel(dataset);
+    }
+
+    private static final String PREFIX = "PREFIX : <http://example/> ";
+
+    @Test public void merge_join_01() { test("SELECT * { ?s :type :A . ?s :status :active }"); }
+    @Test public void merge_join_02() { test("SELECT * { ?s :type :B . ?s :type :A }"); }
+    @Test public void merge_join_03() { test("SELECT * { ?s :type :A . ?s :type :B }"); }
+    @Test public void merge_join_04() { test("SELECT * { ?s :link ?o . ?x :ref ?o }"); }
+    @Test public void merge_join_05() { test("SELECT * { ?s :type :B . ?s :status :active . ?s :link ?o }"); }
+    @Test public void merge_join_06() { test("SELECT * { GRAPH :g { ?s :type :A . ?s :status :active } }"); }
+    @Test public void merge_join_07() { test("SELECT * { ?s :type :A . ?s :status :notInData }"); }
+    @Test public void merge_join_08() { test("SELECT * { GRAPH :none { ?s :type :A . ?s :status :active } }"); }
+    @Test public void merge_join_09() { test("SELECT (count(*) AS ?c) { ?s :type :A . ?s :status :active }"); }
+
+    // Two shared variables: the join is on one, the other must also match.
+    @Test public void merge_join_10() { test("SELECT * { ?s :p ?o . ?s :q ?o }"); }
+    @Test public void merge_join_11() { test("SELECT * { ?s :p2 ?o . ?s :q2 ?o }"); }
+
+    @Test public void merge_join_shared_vars() {
+        String qs = PREFIX+"SELECT * { ?s :p2 ?o . ?s :q2 ?o }";
+        List<Binding> rs = rows(dataset.asDatasetGraph(), qs, true);
+        assertEquals(1, rs.size());
+        assertNotNull(plan("(?s :p2 ?o) (?s :q2 ?o)"));
+    }
+
+    @Test public void merge_join_plan_01() {
+        assertNotNull(plan("(?s :type :A) (?s :status :active)"));
+    }
+
+    @Test public void merge_join_plan_02() {
+        // Subject needs a PS index.
+        assertNull(plan("(?s :type ?t) (?s :status ?a)"));
+    }
+
+    @Test public void merge_join_plan_03() {
+        // Repeated variable.
+        assertNull(plan("(?s :type ?s) (?s :status :active)"));
+    }
+
+    @Test public void merge_join_plan_04() {
+        MergeJoinTDB.Plan plan = plan("(?s :link ?o) (?x :name ?n) (?x :ref ?o)");
+        assertNotNull(plan);
+        assertEquals(3, plan.pattern.size());
+        assertEquals(plan.triple2, plan.pattern.get(1));
+    }
+
+    @Test public void merge_join_used() {
+        // Check the merge join path was taken by comparing with it turned off.
+        String qs = PREFIX+"SELECT * { ?s :type :A . ?s :status :active }";
+        List<Binding> rs1 = rows(dataset.asDatasetGraph(), qs, false);
+        List<Binding> rs2 = rows(dataset.asDatasetGraph(), qs, true);
+        assertEquals(667, rs1.size());
+        assertEquals(counts(rs1), counts(rs2));
+    }
+
+    private static MergeJoinTDB.Plan plan(String bgpStr) {
+        BasicPattern bgp = SSE.parseBGP("(bgp "+bgpStr+")", pmap);
+        DatasetGraphTDB dsg = TDBInternal.getDatasetGraphTDB(dataset.asDatasetGraph());
+        NodeTupleTable ntt = dsg.getTripleTable().getNodeTupleTable();
+        return MergeJoinTDB.plan(ntt, (Node)null, bgp);
+    }
+
+    private static void test(String queryString) {
+        String qs = PREFIX+queryString;
+        List<Binding> expected = rows(dsgMem, qs, true);
+        List<Binding> actual = rows(dataset.asDatasetGraph(), qs, true);
+        // No blank nodes: compare as multisets.
+        assertEquals(expected.size(), actual.size());
+        assertEquals(counts(expected), counts(actual));
+    }
+
+    private static List<Binding> rows(DatasetGraph dsg, String queryString, boolean mergeJoin) {
+        return Txn.calculateRead(dsg, ()->{
+            List<Binding> rows = new ArrayList<>();
+            QueryExec.dataset(dsg).query(queryString).set(SystemTDB.symMergeJoin, mergeJoin).select()
+                .forEachRemaining(b->rows.add(BindingFactory.copy(b)));
+            return rows;
+        });
+    }
+
+    private static Map<Binding, Long> counts(List<Binding> bindings) {
+        Map<Binding, Long> counts = new HashMap<>();
+        bindings.forEach(b->counts.merge(b, 1L, Long::sum));
+        return counts;
+    }
+}
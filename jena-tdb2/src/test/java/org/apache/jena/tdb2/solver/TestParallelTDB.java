@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.shared.impl.PrefixMappingImpl;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.iterator.QueryIterParallel;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.junit.TL;
+import org.apache.jena.tdb2.store.DatasetGraphTDB;
+import org.apache.jena.tdb2.sys.TDBInternal;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Parallel execution ({@link ARQ#optParallelExecution}) with the read transaction shared by worker threads. */
+public class TestParallelTDB {
+    static Dataset dataset = null;
+    static PrefixMapping pmap = new PrefixMappingImpl();
+    static { pmap.setNsPrefix("", "http://example/"); }
+
+    @BeforeClass
+    static public void beforeClass() {
+        dataset = TL.createTestDatasetMem();
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        Txn.executeWrite(dsg, ()->load(dsg, 0, 1000));
+    }
+
+    private static void load(DatasetGraph dsg, int start, int finish) {
+        for ( int i = start ; i < finish ; i++ ) {
+            String s = "<http://example/s"+i+">";
+            dsg.add(SSE.parseQuad("(_ "+s+" :p <http://example/s"+(i+1)+">)", pmap));
+            dsg.add(SSE.parseQuad("(_ "+s+" :v "+i+")", pmap));
+            if ( i % 3 == 0 )
+                dsg.add(SSE.parseQuad("(_ "+s+" :q 'x')", pmap));
+            dsg.add(SSE.parseQuad("(:g "+s+" :p <http://example/s"+(i+2)+">)", pmap));
+        }
+    }
+
+    @AfterClass
+    static public void afterClass() {
+        TL.expel(dataset);
+    }
+
+    private static final String PREFIX = "PREFIX : <http://example/> ";
+
+    @Test public void parallel_bgp_01() { test("SELECT * { ?s :p ?o . ?o :p ?o2 . ?o2 :v ?v }"); }
+    @Test public void parallel_bgp_02() { test("SELECT * { ?s :q ?x . ?s :p ?o . ?o :v ?v }"); }
+    @Test public void parallel_bgp_03() { test("SELECT * { GRAPH :g { ?s :p ?o . ?o :p ?o2 } }"); }
+    @Test public void parallel_union_01() { test("SELECT * { { ?s :p ?o . ?o :q ?x } UNION { ?s :q ?x . ?s :v ?v } }"); }
+    @Test public void parallel_join_01() { test("SELECT * { { ?s :p ?o } { SELECT ?s (count(*) AS ?c) { ?s ?p ?x } GROUP BY ?s } }"); }
+
+    @Test public void parallel_enabled_01() {
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        Context cxt = new Context();
+        cxt.set(ARQ.optParallelExecution, true);
+        Txn.executeRead(dsg, ()->assertTrue(QueryIterParallel.isEnabled(execCxt(cxt, dsg))));
+        Txn.executeWrite(dsg, ()->assertFalse(QueryIterParallel.isEnabled(execCxt(cxt, dsg))));
+    }
+
+    @Test public void parallel_version_01() {
+        // A write transaction commits after the query's read transaction starts.
+        DatasetGraph dsg = TL.createTestDatasetGraphMem();
+        Txn.executeWrite(dsg, ()->load(dsg, 0, 100));
+        String qs = PREFIX+"SELECT * { ?s :p ?o . ?o :v ?v }";
+        dsg.begin(TxnType.READ);
+        try {
+            Thread writer = new Thread(()->Txn.executeWrite(dsg, ()->load(dsg, 100, 200)));
+            writer.start();
+            writer.join();
+            List<Binding> expected = rows(dsg, qs, false);
+            List<Binding> actual = rows(dsg, qs, true);
+            assertEquals(99, expected.size());
+            assertEquals(counts(expected), counts(actual));
+        } catch (InterruptedException ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            dsg.end();
+            TL.expel(dsg);
+        }
+    }
+
+    private static ExecutionContext execCxt(Context cxt, DatasetGraph dsg) {
+        DatasetGraphTDB dsgtdb = TDBInternal.getDatasetGraphTDB(dsg);
+        return new ExecutionContext(cxt, dsgtdb.getDefaultGraph(), dsgtdb, null);
+    }
+
+    private static void test(String queryString) {
+        String qs = PREFIX+queryString;
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        Txn.executeRead(dsg, ()->{
+            List<Binding> expected = rows(dsg, qs, false);
+            List<Binding> actual = rows(dsg, qs, true);
+            assertFalse(expected.isEmpty());
+            assertEquals(counts(expected), counts(actual));
+        });
+    }
+
+    private static List<Binding> rows(DatasetGraph dsg, String queryString, boolean parallel) {
+        List<Binding> rows = new ArrayList<>();
+        QueryExec.dataset(dsg).query(queryString).set(ARQ.optParallelExecution, parallel).select()
+            .forEachRemaining(b->rows.add(BindingFactory.copy(b)));
+        return rows;
+    }
+
+    private static Map<Binding, Long> counts(List<Binding> bindings) {
+        Map<Binding, Long> counts = new HashMap<>();
+        bindings.forEach(b->counts.merge(b, 1L, Long::sum));
+        return counts;
+    }
+}
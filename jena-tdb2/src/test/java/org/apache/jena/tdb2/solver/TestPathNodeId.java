@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.shared.impl.PrefixMappingImpl;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.junit.TL;
+import org.apache.jena.tdb2.sys.SystemTDB;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Evaluation of {@code :p*} and {@code :p+} on NodeIds. */
+public class TestPathNodeId {
+    static Dataset dataset = null;
+    static DatasetGraph dsgMem = null;
+    static PrefixMapping pmap = new PrefixMappingImpl();
+    static { pmap.setNsPrefix("", "http://example/"); }
+
+    @BeforeClass
+    static public void beforeClass() {
+        dataset = TL.createTestDatasetMem();
+        dsgMem = DatasetGraphFactory.createTxnMem();
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        Txn.executeWrite(dsg, ()->load(dsg));
+        Txn.executeWrite(dsgMem, ()->load(dsgMem));
+    }
+
+    private static void load(DatasetGraph dsg) {
+        for ( int i = 0 ; i < 200 ; i++ ) {
+            String s = "<http://example/p"+i+">";
+            // Chains of 20, with some longer links that make cycles.
+            if ( i % 20 != 19 )
+                dsg.add(SSE.parseQuad("(_ "+s+" :knows <http://example/p"+(i+1)+">)", pmap));
+            if ( i % 6 == 0 )
+                dsg.add(SSE.parseQuad("(_ "+s+" :knows <http://example/p"+((i*13+7)%200)+">)", pmap));
+            if ( i % 50 == 0 )
+                dsg.add(SSE.parseQuad("(_ "+s+" :knows 'literal')", pmap));
+            if ( i % 25 == 0 )
+                dsg.add(SSE.parseQuad("(_ "+s+" :type :Admin)", pmap));
+            dsg.add(SSE.parseQuad("(_ "+s+" :likes <http://example/t"+(i%7)+">)", pmap));
+            if ( i < 100 )
+                dsg.add(SSE.parseQuad("(:g "+s+" :knows <http://example/p"+(i+2)+">)", pmap));
+        }
+        for ( int i = 0 ; i < 10 ; i++ )
+            dsg.add(SSE.parseQuad("(_ <http://example/q"+i+"> :knows <http://example/q"+(i+1)+">)", pmap));
+    }
+
+    @AfterClass
+    static public void afterClass() {
+        TL.expel(dataset);
+    }
+
+    private static final String PREFIX = "PREFIX : <http://example/> ";
+
+    @Test public void path_nodeid_01() { test("SELECT * { :p0 :knows* ?x }"); }
+    @Test public void path_nodeid_02() { test("SELECT * { :p0 :knows+ ?x }"); }
+    @Test public void path_nodeid_03() { test("SELECT * { ?x :knows+ :p5 }"); }
+    @Test public void path_nodeid_04() { test("SELECT * { ?x ^:knows* :p5 }"); }
+    @Test public void path_nodeid_05() { test("SELECT * { :p0 (^:knows)+ ?x }"); }
+    @Test public void path_nodeid_06() { test("SELECT * { :p0 :knows+ :p42 }"); }
+    @Test public void path_nodeid_07() { test("SELECT * { :p0 :knows+ :q3 }"); }
+    @Test public void path_nodeid_08() { test("SELECT * { :notInData :knows* :notInData }"); }
+    @Test public void path_nodeid_09() { test("SELECT * { :notInData :knows* ?x }"); }
+    @Test public void path_nodeid_10() { test("SELECT * { :p0 :notInData* ?x }"); }
+    @Test public void path_nodeid_11() { test("SELECT * { :q0 :knows+ :q0 }"); }
+    @Test public void path_nodeid_12() { test("SELECT * { :p0 :knows+ 'literal' }"); }
+    @Test public void path_nodeid_13() { test("SELECT * { GRAPH :g { :p0 :knows+ ?x } }"); }
+    @Test public void path_nodeid_14() { test("SELECT * { GRAPH ?g { ?x :knows* :p10 } }"); }
+    @Test public void path_nodeid_15() { test("SELECT * { ?a :type :Admin . ?a :knows+ ?b }"); }
+    @Test public void path_nodeid_16() { test("SELECT * { ?a :type :Admin . ?b :type :Admin . ?a :knows+ ?b }"); }
+    @Test public void path_nodeid_17() { test("SELECT * { ?a :type :Admin . ?b :type :Admin . ?a ^:knows* ?b }"); }
+    @Test public void path_nodeid_18() { test("SELECT * { ?x :knows* ?y }"); }
+    @Test public void path_nodeid_19() { test("SELECT * { ?x :knows+ ?x }"); }
+    @Test public void path_nodeid_20() { test("SELECT * { :p0 :knows* ?x . ?x :likes ?t }"); }
+
+    @Test public void path_nodeid_set() {
+        NodeIdSet set = new NodeIdSet(4);
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        for ( long i = 1 ; i < 1000 ; i++ )
+            assertTrue(set.add(i * 0x100000001L));
+        for ( long i = 1 ; i < 1000 ; i++ )
+            assertFalse(set.add(i * 0x100000001L));
+        assertEquals(1000, set.size());
+        assertTrue(set.contains(0));
+        assertTrue(set.contains(999 * 0x100000001L));
+        assertFalse(set.contains(1000 * 0x100000001L));
+        assertTrue(set.add(Long.MIN_VALUE));
+        assertTrue(set.contains(Long.MIN_VALUE));
+    }
+
+    private static void test(String queryString) {
+        String qs = PREFIX+queryString;
+        List<Binding> expected = rows(dsgMem, qs, false);
+        List<Binding> actual1 = rows(dataset.asDatasetGraph(), qs, true);
+        List<Binding> actual2 = rows(dataset.asDatasetGraph(), qs, false);
+        // No blank nodes: compare as multisets.
+        assertEquals(expected.size(), actual1.size());
+        assertEquals(counts(expected), counts(actual1));
+        assertEquals(counts(expected), counts(actual2));
+    }
+
+    private static List<Binding> rows(DatasetGraph dsg, String queryString, boolean pathNodeId) {
+        return Txn.calculateRead(dsg, ()->{
+            List<Binding> rows = new ArrayList<>();
+            QueryExec.dataset(dsg).query(queryString).set(SystemTDB.symPathNodeId, pathNodeId).select()
+                .forEachRemaining(b->rows.add(BindingFactory.copy(b)));
+            return rows;
+        });
+    }
+
+    private static Map<Binding, Long> counts(List<Binding> bindings) {
+        Map<Binding, Long> counts = new HashMap<>();
+        bindings.forEach(b->counts.merge(b, 1L, Long::sum));
+        return counts;
+    }
+}
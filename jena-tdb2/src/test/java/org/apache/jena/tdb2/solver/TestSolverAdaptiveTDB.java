@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.solver;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.shared.impl.PrefixMappingImpl;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.junit.TL;
+import org.apache.jena.tdb2.sys.SystemTDB;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Adaptive (runtime reordered) execution of basic graph patterns. */
+public class TestSolverAdaptiveTDB {
+    static Dataset dataset = null;
+    static DatasetGraph dsgMem = null;
+    static PrefixMapping pmap = new PrefixMappingImpl();
+    static { pmap.setNsPrefix("", "http://example/"); }
+
+    @BeforeClass
+    static public void beforeClass() {
+        dataset = TL.createTestDatasetMem();
+        dsgMem = DatasetGraphFactory.createTxnMem();
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        Txn.executeWrite(dsg, ()->load(dsg));
+        Txn.executeWrite(dsgMem, ()->load(dsgMem));
+    }
+
+    private static void load(DatasetGraph dsg) {
+        // Skewed: every subject has many :link, few have :tag.
+        for ( int i = 0 ; i < 1000 ; i++ ) {
+            String s = "<http://example/s"+i+">";
+            for ( int j = 0 ; j < 10 ; j++ )
+                dsg.add(SSE.parseQuad("(_ "+s+" :link <http://example/o"+((i+j)%40)+">)", pmap));
+            if ( i % 50 == 0 )
+                dsg.add(SSE.parseQuad("(_ "+s+" :tag :T)", pmap));
+            dsg.add(SSE.parseQuad("(_ "+s+" :type :A)", pmap));
+            dsg.add(SSE.parseQuad("(:g "+s+" :type :A)", pmap));
+            if ( i % 20 == 0 )
+                dsg.add(SSE.parseQuad("(:g "+s+" :tag :T)", pmap));
+        }
+        for ( int k = 0 ; k < 40 ; k++ )
+            dsg.add(SSE.parseQuad("(_ <http://example/o"+k+"> :label 'o"+k+"')", pmap));
+    }
+
+    @AfterClass
+    static public void afterClass() {
+        TL.expel(dataset);
+    }
+
+    private static final String PREFIX = "PREFIX : <http://example/> ";
+
+    @Test public void adaptive_01() { test("SELECT * { ?s :type :A . ?s :link ?o . ?s :tag ?t }"); }
+    @Test public void adaptive_02() { test("SELECT * { ?s :link ?o . ?o :label ?l . ?s :tag :T }"); }
+    @Test public void adaptive_03() { test("SELECT * { ?s :link ?o . ?s :tag :none }"); }
+    @Test public void adaptive_04() { test("SELECT * { GRAPH :g { ?s :type :A . ?s :tag :T } }"); }
+    @Test public void adaptive_05() { test("SELECT * { GRAPH ?g { ?s :type ?t . ?s :tag :T } }"); }
+    @Test public void adaptive_06() { test("SELECT (count(*) AS ?c) { ?s :link ?o . ?x :link ?o . ?x :tag :T }"); }
+
+    private static void test(String queryString) {
+        String qs = PREFIX+queryString;
+        List<Binding> expected = rows(dsgMem, qs, false);
+        List<Binding> actual = rows(dataset.asDatasetGraph(), qs, true);
+        // No blank nodes: compare as multisets.
+        assertEquals(expected.size(), actual.size());
+        assertEquals(counts(expected), counts(actual));
+    }
+
+    private static List<Binding> rows(DatasetGraph dsg, String queryString, boolean adaptive) {
+        return Txn.calculateRead(dsg, ()->{
+            List<Binding> rows = new ArrayList<>();
+            QueryExec.dataset(dsg).query(queryString)
+                .set(ARQ.optAdaptiveBGP, adaptive)
+                .set(SystemTDB.symMergeJoin, false)
+                .select()
+                .forEachRemaining(b->rows.add(BindingFactory.copy(b)));
+            return rows;
+        });
+    }
+
+    private static Map<Binding, Long> counts(List<Binding> bindings) {
+        Map<Binding, Long> counts = new HashMap<>();
+        bindings.forEach(b->counts.merge(b, 1L, Long::sum));
+        return counts;
+    }
+}
@@ -45,8 +45,10 @@ import org.junit.runners.Suite;
     , TestTransactions.class
     , TestTransactionLifecycleTDB.class
     , TestTransPromoteTDB.class
+    , TestDatasetGraphMultiWriter.class
     , TestQuadFilter.class
     , TestGraphView_Prefixes.class
+    , TestLiveStats.class
 } )
 public class TS_Store
 {
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.store;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.jena.dboe.transaction.txn.TransactionException;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestDatasetGraphMultiWriter {
+    private static Quad q1 = SSE.parseQuad("(:g1 :s :p 1)");
+    private static Quad q2 = SSE.parseQuad("(:g2 :s :p 2)");
+    private static Quad q3 = SSE.parseQuad("(_ :s :p 3)");
+
+    private DatasetGraph dsgBase;
+    private DatasetGraph dsg;
+
+    @Before public void before() {
+        dsgBase = DatabaseMgr.createDatasetGraph();
+        dsg = DatabaseMgr.multiWriter(dsgBase);
+    }
+
+    @Test public void multiWriter_basic() {
+        Txn.executeWrite(dsg, ()->{
+            dsg.add(q1);
+            dsg.add(q3);
+            assertTrue(dsg.contains(q1));
+            assertTrue(dsg.getDefaultGraph().contains(q3.asTriple()));
+            // Not visible in the database until commit.
+            assertFalse(Txn.calculateRead(dsgBase, ()->dsgBase.contains(q1)));
+        });
+        Txn.executeRead(dsgBase, ()->{
+            assertTrue(dsgBase.contains(q1));
+            assertTrue(dsgBase.contains(q3));
+        });
+        Txn.executeWrite(dsg, ()->dsg.delete(q1));
+        Txn.executeRead(dsg, ()->{
+            assertFalse(dsg.contains(q1));
+            assertTrue(dsg.contains(q3));
+        });
+    }
+
+    @Test public void multiWriter_abort() {
+        dsg.begin(ReadWrite.WRITE);
+        dsg.add(q1);
+        dsg.abort();
+        dsg.end();
+        Txn.executeRead(dsgBase, ()->assertFalse(dsgBase.contains(q1)));
+    }
+
+    @Test public void multiWriter_disjoint() throws Exception {
+        // Two writers active at the same time, different graphs.
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch other = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(()->{
+            try {
+                Txn.executeWrite(dsg, ()->{
+                    dsg.add(q2);
+                    started.countDown();
+                    await(other);
+                });
+            } catch (Throwable th) { failure.set(th); }
+        });
+        thread.start();
+        await(started);
+        Txn.executeWrite(dsg, ()->dsg.add(q1));
+        other.countDown();
+        thread.join();
+        assertNull(failure.get());
+        Txn.executeRead(dsg, ()->{
+            assertTrue(dsg.contains(q1));
+            assertTrue(dsg.contains(q2));
+        });
+    }
+
+    @Test public void multiWriter_conflict() throws Exception {
+        // Two writers active at the same time, same graph.
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch other = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(()->{
+            try {
+                Txn.executeWrite(dsg, ()->{
+                    dsg.add(SSE.parseQuad("(:g1 :s :p 99)"));
+                    started.countDown();
+                    await(other);
+                });
+            } catch (Throwable th) { failure.set(th); }
+        });
+        thread.start();
+        await(started);
+        Txn.executeWrite(dsg, ()->dsg.add(q1));
+        other.countDown();
+        thread.join();
+        assertTrue(failure.get() instanceof TransactionException);
+        Txn.executeRead(dsg, ()->{
+            assertTrue(dsg.contains(q1));
+            assertFalse(dsg.contains(SSE.parseQuad("(:g1 :s :p 99)")));
+        });
+    }
+
+    @Test public void multiWriter_conflict_read() throws Exception {
+        // A writer that read a graph another writer changed.
+        Txn.executeWrite(dsg, ()->dsg.add(q1));
+        dsg.begin(ReadWrite.WRITE);
+        assertTrue(dsg.contains(q1));
+        Thread thread = new Thread(()->Txn.executeWrite(dsg, ()->dsg.delete(q1)));
+        thread.start();
+        join(thread);
+        dsg.add(q2);
+        assertThrows(TransactionException.class, ()->dsg.commit());
+        dsg.end();
+        Txn.executeRead(dsg, ()->assertFalse(dsg.contains(q2)));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try { latch.await(); } catch (InterruptedException ex) { throw new RuntimeException(ex); }
+    }
+
+    private static void join(Thread thread) {
+        try { thread.join(); } catch (InterruptedException ex) { throw new RuntimeException(ex); }
+    }
+}
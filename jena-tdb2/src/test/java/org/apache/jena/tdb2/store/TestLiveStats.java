@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.store;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.jena.atlas.lib.FileOps;
+import org.apache.jena.dboe.base.file.Location;
+import org.apache.jena.dboe.sys.Names;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderFixed;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderLib;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.ConfigTest;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.jena.tdb2.params.StoreParams;
+import org.apache.jena.tdb2.params.StoreParamsBuilder;
+import org.apache.jena.tdb2.solver.stats.CardinalityStats;
+import org.apache.jena.tdb2.solver.stats.ReorderCardinality;
+import org.apache.jena.tdb2.sys.TDBInternal;
+import org.junit.After;
+import org.junit.Test;
+
+public class TestLiveStats {
+    private static StoreParams params = StoreParamsBuilder.create("test").liveStats(true).build();
+
+    private static Quad q1 = SSE.parseQuad("(_ <s1> <p> 1)");
+    private static Quad q2 = SSE.parseQuad("(_ <s1> <q> 2)");
+    private static Quad q3 = SSE.parseQuad("(_ <s2> <p> 3)");
+    private static Quad q4 = SSE.parseQuad("(<g> <s3> <p> 4)");
+    private static Quad qType = SSE.parseQuad("(_ <s2> rdf:type <T>)");
+    private static Node p = SSE.parseNode("<p>");
+    private static Node q = SSE.parseNode("<q>");
+
+    @After public void after() {
+        TDBInternal.reset();
+    }
+
+    private static DatasetGraph create() {
+        return DatabaseMgr.connectDatasetGraph(Location.mem(), params);
+    }
+
+    private static CardinalityStats stats(DatasetGraph dsg) {
+        return TDBInternal.getDatasetGraphTDB(dsg).getLiveStats().getStats();
+    }
+
+    @Test public void live_stats_01() {
+        DatasetGraph dsg = create();
+        assertNotNull(TDBInternal.getDatasetGraphTDB(dsg).getLiveStats());
+        assertEquals(0, stats(dsg).getCount());
+        Txn.executeWrite(dsg, ()->{
+            dsg.add(q1);
+            dsg.add(q2);
+            dsg.add(q3);
+            dsg.add(q4);
+            dsg.add(qType);
+            // Not a change.
+            dsg.add(q1);
+            // Not visible until commit.
+            assertEquals(0, stats(dsg).getCount());
+        });
+        CardinalityStats stats = stats(dsg);
+        assertEquals(5, stats.getCount());
+        assertEquals(3, stats.getPredicate(p).count);
+        assertEquals(3, stats.getPredicate(p).subjects);
+        assertEquals(1, stats.getPredicate(q).count);
+        assertEquals(1, stats.getTypeCount(SSE.parseNode("<T>")));
+    }
+
+    @Test public void live_stats_02() {
+        DatasetGraph dsg = create();
+        Txn.executeWrite(dsg, ()->{
+            dsg.add(q1);
+            dsg.add(q2);
+            dsg.add(q3);
+        });
+        Txn.executeWrite(dsg, ()->{
+            dsg.delete(q3);
+            // Not a change.
+            dsg.delete(q4);
+            dsg.deleteAny(Quad.defaultGraphIRI, null, q, null);
+        });
+        CardinalityStats stats = stats(dsg);
+        assertEquals(1, stats.getCount());
+        assertEquals(1, stats.getPredicate(p).count);
+        assertNull(stats.getPredicate(q));
+    }
+
+    @Test public void live_stats_03() {
+        DatasetGraph dsg = create();
+        Txn.executeWrite(dsg, ()->dsg.add(q1));
+        dsg.begin(TxnType.WRITE);
+        try {
+            dsg.add(q2);
+            dsg.abort();
+        } finally { dsg.end(); }
+        assertEquals(1, stats(dsg).getCount());
+    }
+
+    @Test public void live_stats_reorder() {
+        DatasetGraph dsg = create();
+        ReorderTransformation reorder = TDBInternal.getDatasetGraphTDB(dsg).getReorderTransform();
+        assertTrue(reorder instanceof ReorderCardinality);
+        Txn.executeWrite(dsg, ()->dsg.add(q1));
+        // Reads the latest statistics.
+        assertEquals(1, ((ReorderCardinality)reorder).getStats().getCount());
+    }
+
+    @Test public void live_stats_persist() {
+        TDBInternal.reset();
+        String DIRx = ConfigTest.getCleanDir();
+        Location LOC = Location.create(DIRx);
+        FileOps.clearAll(DIRx);
+        try {
+            DatasetGraph dsg1 = DatabaseMgr.connectDatasetGraph(LOC, params);
+            Txn.executeWrite(dsg1, ()->{
+                dsg1.add(q1);
+                dsg1.add(q2);
+                dsg1.add(q4);
+            });
+            TDBInternal.reset();
+            File statsFile = new File(DIRx+"/Data-0001/stats.sse");
+            assertTrue(statsFile.exists());
+
+            DatasetGraph dsg2 = DatabaseMgr.connectDatasetGraph(LOC);
+            assertEquals(3, stats(dsg2).getCount());
+            TDBInternal.reset();
+
+            // Recalculated if missing.
+            statsFile.delete();
+            DatasetGraph dsg3 = DatabaseMgr.connectDatasetGraph(LOC);
+            assertEquals(3, stats(dsg3).getCount());
+            assertEquals(2, stats(dsg3).getPredicate(p).count);
+        }
+        finally {
+            TDBInternal.reset();
+            FileOps.clearAll(DIRx);
+        }
+    }
+
+    @Test public void live_stats_container_opt() throws IOException {
+        TDBInternal.reset();
+        String DIRx = ConfigTest.getCleanDir();
+        Location LOC = Location.create(DIRx);
+        FileOps.clearAll(DIRx);
+        try {
+            DatasetGraph dsg1 = DatabaseMgr.connectDatasetGraph(LOC, params);
+            Txn.executeWrite(dsg1, ()->dsg1.add(q1));
+            assertTrue(TDBInternal.getDatasetGraphTDB(dsg1).getReorderTransform() instanceof ReorderCardinality);
+            TDBInternal.reset();
+
+            // fixed.opt in the container overrides the statistics.
+            new File(DIRx, Names.optFixed).createNewFile();
+            DatasetGraph dsg2 = DatabaseMgr.connectDatasetGraph(LOC);
+            assertTrue(TDBInternal.getDatasetGraphTDB(dsg2).getReorderTransform() instanceof ReorderFixed);
+            // Statistics are still kept.
+            assertEquals(1, stats(dsg2).getCount());
+            TDBInternal.reset();
+
+            // none.opt in the storage is preferred to the container setting.
+            new File(DIRx+"/Data-0001", Names.optNone).createNewFile();
+            DatasetGraph dsg3 = DatabaseMgr.connectDatasetGraph(LOC);
+            assertSame(ReorderLib.identity(), TDBInternal.getDatasetGraphTDB(dsg3).getReorderTransform());
+        }
+        finally {
+            TDBInternal.reset();
+            FileOps.clearAll(DIRx);
+        }
+    }
+}
@@ -20,6 +20,7 @@ package org.apache.jena.tdb2.store;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 
 import java.nio.ByteBuffer;
 
@@ -57,6 +58,16 @@ public class TestNodeId
         assertEquals(NodeIdType.PTR.type(), t);
     }
 
+    @Test public void nodeId_ptr_inline_equals() {
+        // Same value bits, different types.
+        NodeId ptr = NodeIdFactory.createPtr(0);
+        NodeId inline = NodeId.inline(NodeFactoryExtra.parseNode("0"));
+        assertEquals(ptr.getValue2(), inline.getValue2());
+        assertNotEquals(ptr, inline);
+        assertFalse(ptr.equals(inline));
+        assertEquals(inline, NodeId.inline(NodeFactoryExtra.parseNode("0")));
+    }
+
     // Specials.
     @Test public void nodeId_special_01() {
         assertFalse(NodeId.isConcrete(NodeId.NodeDoesNotExist));
@@ -21,8 +21,15 @@ package org.apache.jena.tdb2.store.nodetable;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.sparql.util.NodeFactoryExtra;
 import org.apache.jena.tdb2.store.NodeId;
 import org.junit.Test;
@@ -66,4 +73,34 @@ public abstract class AbstractTestNodeTable
     @Test public void nodetable_07()    { testNode("'x'^^<http://example/dt>"); }
     @Test public void nodetable_08()    { testNode("'نواف'"); }
     @Test public void nodetable_09()    { testNode("'نواف'"); }
+
+    @Test public void nodetable_bulk_01() {
+        NodeTable nt = createEmptyNodeTable();
+        List<Node> nodes = new ArrayList<>();
+        for ( int i = 0 ; i < 2000 ; i++ )
+            nodes.add(NodeFactory.createURI("http://example/node/"+i));
+        // Inline
+        nodes.add(NodeFactoryExtra.parseNode("123"));
+        // Larger than the bulk read buffer.
+        nodes.add(NodeFactory.createLiteralString("x".repeat(100_000)));
+        List<NodeId> ids = new ArrayList<>();
+        for ( Node n : nodes )
+            ids.add(nt.getAllocateNodeId(n));
+        // Random order, with repeats.
+        List<Integer> order = new ArrayList<>();
+        for ( int i = 0 ; i < nodes.size() ; i++ )
+            order.add(i);
+        order.addAll(order.subList(0, 100));
+        Collections.shuffle(order, new Random(1234));
+        List<NodeId> request = new ArrayList<>();
+        for ( int i : order )
+            request.add(ids.get(i));
+        request.add(NodeId.NodeDoesNotExist);
+
+        List<Node> results = nt.bulkNodeIdToNode(request);
+        assertEquals(request.size(), results.size());
+        for ( int i = 0 ; i < order.size() ; i++ )
+            assertEquals(nodes.get(order.get(i)), results.get(i));
+        assertNull(results.get(request.size()-1));
+    }
 }
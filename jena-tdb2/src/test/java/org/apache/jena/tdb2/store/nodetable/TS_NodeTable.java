@@ -27,6 +27,8 @@ import org.junit.runners.Suite;
     , TestNodeTableStoredBase.class
     , TestNodeTableStored.class
     , TestNodeTable.class
+    , TestNodeTableCacheSharded.class
+    , TestNodeCacheOffHeap.class
 })
 public class TS_NodeTable
 {
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.store.nodetable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.jena.atlas.lib.cache.CacheInfo;
+import org.apache.jena.dboe.base.file.Location;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.util.NodeFactoryExtra;
+import org.apache.jena.tdb2.junit.BuildTestLib;
+import org.apache.jena.tdb2.params.StoreParams;
+import org.apache.jena.tdb2.params.StoreParamsBuilder;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.NodeIdFactory;
+import org.junit.Test;
+
+/** Node table with an off-heap cache tier, and the off-heap cache itself. */
+public class TestNodeCacheOffHeap extends AbstractTestNodeTable
+{
+    private static int counter = 0;
+    private static String label() { return TestNodeCacheOffHeap.class.getSimpleName()+"-"+(++counter); }
+
+    private static final long MB = 1024L * 1024L;
+
+    @Override
+    protected NodeTable createEmptyNodeTable()
+    {
+        // Small on-heap caches so lookups reach the off-heap tier.
+        StoreParams params =
+            StoreParamsBuilder.create(label())
+                .nodeId2NodeCacheSize(10)
+                .node2NodeIdCacheSize(10)
+                .nodeMissCacheSize(10)
+                .nodeCacheOffHeapSizeMB(1)
+                .build();
+        return BuildTestLib.makeNodeTable(Location.mem(), "test", params);
+    }
+
+    private static NodeId nodeId(long x) { return NodeIdFactory.createPtr(x); }
+
+    @Test public void offheap_cache_1() {
+        NodeCacheOffHeap cache = NodeCacheOffHeap.create(MB);
+        try {
+            Node n = NodeFactory.createURI("http://example/s");
+            NodeId nid = nodeId(10);
+            assertNull(cache.getNode(nid));
+            assertNull(cache.getNodeId(n));
+            cache.put(n, nid);
+            assertEquals(n, cache.getNode(nid));
+            assertEquals(nid, cache.getNodeId(n));
+        } finally { cache.close(); }
+    }
+
+    @Test public void offheap_cache_2() {
+        NodeCacheOffHeap cache = NodeCacheOffHeap.create(MB);
+        try {
+            Node n1 = NodeFactoryExtra.parseNode("'abc'@en");
+            Node n2 = NodeFactoryExtra.parseNode("123");
+            Node n3 = NodeFactory.createBlankNode();
+            cache.put(n1, nodeId(1));
+            cache.put(n2, nodeId(2));
+            cache.put(n3, nodeId(3));
+            assertEquals(n1, cache.getNode(nodeId(1)));
+            assertEquals(n2, cache.getNode(nodeId(2)));
+            assertEquals(n3, cache.getNode(nodeId(3)));
+            assertEquals(nodeId(3), cache.getNodeId(n3));
+            cache.clear();
+            assertNull(cache.getNode(nodeId(1)));
+            assertNull(cache.getNodeId(n2));
+        } finally { cache.close(); }
+    }
+
+    @Test public void offheap_cache_evict() {
+        // Many more nodes than fit: the cache drops old entries and keeps recent ones.
+        NodeCacheOffHeap cache = NodeCacheOffHeap.create(MB);
+        try {
+            int N = 50_000;
+            for ( int i = 0 ; i < N ; i++ )
+                cache.put(NodeFactory.createURI("http://example/node/"+i), nodeId(i));
+            assertNull(cache.getNode(nodeId(0)));
+            assertNull(cache.getNodeId(NodeFactory.createURI("http://example/node/0")));
+            Node last = NodeFactory.createURI("http://example/node/"+(N-1));
+            assertEquals(last, cache.getNode(nodeId(N-1)));
+            assertEquals(nodeId(N-1), cache.getNodeId(last));
+            // Anything found is correct.
+            for ( int i = 0 ; i < N ; i++ ) {
+                Node n = cache.getNode(nodeId(i));
+                if ( n != null )
+                    assertEquals("http://example/node/"+i, n.getURI());
+            }
+        } finally { cache.close(); }
+    }
+
+    @Test public void offheap_cache_metrics() {
+        NodeCacheOffHeap cache = NodeCacheOffHeap.create(MB);
+        try {
+            Node n = NodeFactory.createURI("http://example/s");
+            cache.getNode(nodeId(1));
+            cache.put(n, nodeId(1));
+            cache.getNode(nodeId(1));
+            cache.getNodeId(n);
+            CacheInfo id2node = cache.idToNodeCacheInfo();
+            assertEquals(2, id2node.requests);
+            assertEquals(1, id2node.hits);
+            assertEquals(1, id2node.misses);
+            CacheInfo node2id = cache.nodeToIdCacheInfo();
+            assertEquals(1, node2id.hits);
+        } finally { cache.close(); }
+    }
+
+    @Test public void offheap_nodetable() {
+        NodeTable nt = createEmptyNodeTable();
+        NodeTableCache ntc = null;
+        for ( NodeTable x = nt ; x != null ; x = x.wrapped() ) {
+            if ( x instanceof NodeTableCache c ) {
+                ntc = c;
+                break;
+            }
+        }
+        assertNotNull(ntc);
+        NodeCacheOffHeap offHeap = ntc.getOffHeapCache();
+        assertNotNull(offHeap);
+        int N = 100;
+        NodeId[] ids = new NodeId[N];
+        for ( int i = 0 ; i < N ; i++ )
+            ids[i] = nt.getAllocateNodeId(NodeFactory.createURI("http://example/n"+i));
+        // Not in the small on-heap cache; read via the base table and added off-heap.
+        nt.getNodeForNodeId(ids[0]);
+        assertEquals("http://example/n0", offHeap.getNode(ids[0]).getURI());
+        for ( int i = 0 ; i < N ; i++ )
+            assertEquals("http://example/n"+i, nt.getNodeForNodeId(ids[i]).getURI());
+        assertTrue(offHeap.idToNodeCacheInfo().hits > 0);
+        nt.close();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.store.nodetable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.atlas.lib.Cache;
+import org.apache.jena.atlas.lib.cache.CacheInfo;
+import org.apache.jena.dboe.base.file.Location;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.tdb2.junit.BuildTestLib;
+import org.apache.jena.tdb2.params.StoreParams;
+import org.apache.jena.tdb2.params.StoreParamsBuilder;
+import org.apache.jena.tdb2.store.NodeId;
+import org.junit.Test;
+
+/** Node table with sharded caches. */
+public class TestNodeTableCacheSharded extends AbstractTestNodeTable
+{
+    private static int counter = 0;
+    private static String label() { return TestNodeTableCacheSharded.class.getSimpleName()+"-"+(++counter); }
+
+    @Override
+    protected NodeTable createEmptyNodeTable()
+    {
+        StoreParams params =
+            StoreParamsBuilder.create(label())
+                .nodeId2NodeCacheSize(10000)
+                .node2NodeIdCacheSize(10000)
+                .nodeMissCacheSize(1000)
+                .nodeCacheShards(4)
+                .build();
+        return BuildTestLib.makeNodeTable(Location.mem(), "test", params);
+    }
+
+    private static NodeTableCache cacheOf(NodeTable nt) {
+        while ( nt != null ) {
+            if ( nt instanceof NodeTableCache ntc )
+                return ntc;
+            nt = nt.wrapped();
+        }
+        throw new AssertionError("No NodeTableCache");
+    }
+
+    @Test public void sharded_cache_1() {
+        assertEquals(1, ShardedCache.numShards(10, 8));
+        assertEquals(8, ShardedCache.numShards(1_000_000, 8));
+        // Rounded down to a power of two.
+        assertEquals(4, ShardedCache.numShards(1_000_000, 6));
+        // At least 1024 per shard.
+        assertEquals(2, ShardedCache.numShards(3000, 16));
+    }
+
+    @Test public void sharded_cache_2() {
+        Cache<Integer, String> cache = ShardedCache.create(10000, 0.25, 4);
+        assertTrue(cache instanceof ShardedCache);
+        for ( int i = 0 ; i < 100 ; i++ )
+            cache.put(i, "v"+i);
+        assertEquals(100, cache.size());
+        assertEquals("v42", cache.getIfPresent(42));
+        cache.remove(42);
+        assertNull(cache.getIfPresent(42));
+        assertEquals(99, cache.size());
+        cache.clear();
+        assertTrue(cache.isEmpty());
+    }
+
+    @Test public void nodetable_cache_metrics() {
+        NodeTable nt = createEmptyNodeTable();
+        NodeTableCache cache = cacheOf(nt);
+        Node n = NodeFactory.createURI("http://example/s");
+        NodeId nid = nt.getAllocateNodeId(n);
+        nt.getNodeForNodeId(nid);
+        nt.getNodeIdForNode(n);
+        CacheInfo node2id = cache.nodeToIdCacheInfo();
+        assertEquals(2, node2id.requests);
+        assertEquals(1, node2id.hits);
+        CacheInfo id2node = cache.idToNodeCacheInfo();
+        assertEquals(1, id2node.hits);
+        assertEquals(0, id2node.misses);
+
+        Node n2 = NodeFactory.createURI("http://example/none");
+        assertEquals(NodeId.NodeDoesNotExist, nt.getNodeIdForNode(n2));
+        assertEquals(NodeId.NodeDoesNotExist, nt.getNodeIdForNode(n2));
+        assertEquals(1, cache.notPresentHits());
+    }
+
+    @Test public void nodetable_cache_concurrent() throws Exception {
+        NodeTable nt = createEmptyNodeTable();
+        int N = 2000;
+        List<NodeId> ids = new ArrayList<>();
+        for ( int i = 0 ; i < N ; i++ )
+            ids.add(nt.getAllocateNodeId(NodeFactory.createURI("http://example/n"+i)));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for ( int t = 0 ; t < 8 ; t++ ) {
+                results.add(executor.submit(()->{
+                    for ( int i = 0 ; i < N ; i++ ) {
+                        Node n = nt.getNodeForNodeId(ids.get(i));
+                        assertEquals("http://example/n"+i, n.getURI());
+                        assertEquals(ids.get(i), nt.getNodeIdForNode(n));
+                    }
+                }));
+            }
+            for ( Future<?> f : results )
+                f.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.store.tupletable;
+
+import static org.apache.jena.atlas.lib.tuple.TupleFactory.tuple;
+import static org.apache.jena.tdb2.store.tupletable.NData.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.lib.FileOps;
+import org.apache.jena.atlas.lib.tuple.Tuple;
+import org.apache.jena.atlas.lib.tuple.TupleMap;
+import org.apache.jena.dboe.base.file.FileSet;
+import org.apache.jena.dboe.base.record.RecordFactory;
+import org.apache.jena.dboe.index.IndexParams;
+import org.apache.jena.dboe.index.RangeIndex;
+import org.apache.jena.tdb2.ConfigTest;
+import org.apache.jena.tdb2.junit.BuildTestLib;
+import org.apache.jena.tdb2.params.StoreParams;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.NodeIdFactory;
+import org.apache.jena.tdb2.sys.SystemTDB;
+import org.junit.Test;
+
+/** TupleIndexRecord with a bloom filter. */
+public class TestTupleIndexBloomFilter extends AbstractTestTupleIndex
+{
+    static RecordFactory factory = new RecordFactory(3*SystemTDB.SizeOfNodeId, 0);
+
+    @Override
+    protected TupleIndexRecord create(String description)
+    {
+        IndexParams indexParams = StoreParams.getDftStoreParams();
+        RangeIndex rIdx = BuildTestLib.buildRangeIndex(FileSet.mem(), factory, indexParams);
+        TupleMap tmap = TupleMap.create("SPO", description);
+        TupleIndexBloomFilter filter = TupleIndexBloomFilter.create(null, 3, 0, 0);
+        TupleIndexRecord index = new TupleIndexRecord(3, tmap, description, factory, rIdx, filter);
+        return index;
+    }
+
+    private static NodeId nodeId(long x) {
+        return NodeIdFactory.createPtr(x);
+    }
+
+    private static byte[] key(NodeId x1, NodeId x2, NodeId x3) {
+        byte[] key = new byte[factory.keyLength()];
+        NodeId[] x = { x1, x2, x3 };
+        // Leading slots only.
+        for ( int i = 0 ; i < x.length && x[i] != null ; i++ )
+            NodeIdFactory.set(x[i], key, i*NodeId.SIZE);
+        return key;
+    }
+
+    @Test public void bloom_filter_1()
+    {
+        TupleIndexRecord index = create("SPO");
+        TupleIndexBloomFilter filter = index.getBloomFilter();
+        for ( int i = 0 ; i < 100 ; i++ )
+            add(index, nodeId(i), nodeId(i%10), nodeId(i));
+        assertFalse(filter.isReady());
+        assertEquals(1, Iter.count(index.find(tuple(nodeId(5), nodeId(5), nodeId(5)))));
+        assertTrue(filter.isReady());
+        for ( int i = 0 ; i < 100 ; i++ ) {
+            assertTrue(filter.mightContain(key(nodeId(i), nodeId(i%10), nodeId(i)), 3));
+            assertTrue(filter.mightContain(key(nodeId(i), nodeId(i%10), null), 2));
+            assertTrue(filter.mightContain(key(nodeId(i), null, null), 1));
+        }
+        int falsePositives = 0;
+        for ( int i = 100 ; i < 1100 ; i++ ) {
+            if ( filter.mightContain(key(nodeId(i), null, null), 1) )
+                falsePositives++;
+        }
+        assertTrue("False positives: "+falsePositives, falsePositives < 20);
+    }
+
+    @Test public void bloom_filter_2()
+    {
+        TupleIndexRecord index = create("POS");
+        add(index, n1, n2, n3);
+        // Missing: full key, leading prefixes in index order.
+        assertFalse(index.find(tuple(n1, n2, n4)).hasNext());
+        assertFalse(index.find(tuple(NodeId.NodeIdAny, n1, NodeId.NodeIdAny)).hasNext());
+        assertFalse(index.find(tuple(NodeId.NodeIdAny, n2, n4)).hasNext());
+        assertFalse(index.findFrom(tuple(NodeId.NodeIdAny, n3, NodeId.NodeIdAny), null).hasNext());
+        // Added after the filter was built.
+        add(index, n1, n3, n4);
+        assertTrue(index.find(tuple(n1, n3, n4)).hasNext());
+        assertTrue(index.find(tuple(NodeId.NodeIdAny, n3, NodeId.NodeIdAny)).hasNext());
+        assertTrue(index.findFrom(tuple(NodeId.NodeIdAny, n3, NodeId.NodeIdAny), null).hasNext());
+    }
+
+    @Test public void bloom_filter_3()
+    {
+        // Deleted before the filter is built, while older readers could still see it.
+        TupleIndexRecord index = create("SPO");
+        add(index, n1, n2, n3);
+        index.delete(tuple(n1, n2, n3));
+        assertFalse(index.find(tuple(n1, n2, n3)).hasNext());
+        assertTrue(index.getBloomFilter().mightContain(key(n1, n2, n3), 3));
+    }
+
+    @Test public void bloom_filter_4()
+    {
+        // Reset after changing the range index directly.
+        TupleIndexRecord index = create("SPO");
+        add(index, n1, n2, n3);
+        assertFalse(index.find(tuple(n2, n3, n4)).hasNext());
+        Tuple<NodeId> t = tuple(n2, n3, n4);
+        index.getRangeIndex().insert(factory.create(key(n2, n3, n4)));
+        index.resetFilter();
+        assertFalse(index.getBloomFilter().isReady());
+        assertTrue(index.find(t).hasNext());
+    }
+
+    @Test public void bloom_filter_persist()
+    {
+        String dir = ConfigTest.getCleanDir();
+        String filename = dir+"/SPO.bfl";
+        TupleIndexBloomFilter filter1 = TupleIndexBloomFilter.create(filename, 3, 100, 99);
+        filter1.build(List.of(factory.create(key(n1, n2, n3))).iterator());
+        filter1.close(99);
+        assertTrue(new File(filename).exists());
+
+        TupleIndexBloomFilter filter2 = TupleIndexBloomFilter.create(filename, 3, 100, 99);
+        // Read and removed until written again on close.
+        assertFalse(new File(filename).exists());
+        assertTrue(filter2.isReady());
+        assertTrue(filter2.mightContain(key(n1, n2, n3), 3));
+        assertFalse(filter2.mightContain(key(n2, null, null), 1));
+        filter2.close(99);
+
+        // Index changed since written.
+        TupleIndexBloomFilter filter3 = TupleIndexBloomFilter.create(filename, 3, 100, 100);
+        assertFalse(filter3.isReady());
+        assertFalse(new File(filename).exists());
+        FileOps.clearAll(dir);
+    }
+}
@@ -25,6 +25,8 @@ import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.sparql.expr.NodeValue;
 import org.apache.jena.sparql.util.NodeFactoryExtra;
 import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.NodeIdInline;
+import org.apache.jena.tdb2.sys.SystemTDB;
 import org.junit.Test;
 
 public class TestNodeIdInline
@@ -275,6 +277,104 @@ public class TestNodeIdInline
     @Test public void nodeId_float_11()
     { test("'NaN'^^xsd:float"); }
 
+    @Test public void nodeId_string_1()
+    { testString("''"); }
+
+    @Test public void nodeId_string_2()
+    { testString("'abc'"); }
+
+    @Test public void nodeId_string_3()
+    { testString("'1234567'"); }
+
+    @Test public void nodeId_string_4()
+    { testStringNoInline("'12345678'"); }
+
+    @Test public void nodeId_string_5()
+    { testString("'abc'^^xsd:string", "'abc'"); }
+
+    @Test public void nodeId_string_6()
+    // 6 bytes of UTF-8
+    { testString("'\u00E9t\u00E9s'"); }
+
+    @Test public void nodeId_string_7()
+    // 8 bytes of UTF-8
+    { testStringNoInline("'\u00E9t\u00E9s\u00E9'"); }
+
+    @Test public void nodeId_string_8()
+    { testStringNoInline("'a\u0000b'"); }
+
+    // Not well-formed UTF-16: unpaired surrogates.
+    @Test public void nodeId_string_9()
+    { testStringNoInline(NodeFactory.createLiteralString("a\uD800b")); }
+
+    @Test public void nodeId_string_10()
+    { testStringNoInline(NodeFactory.createLiteralString("a\uDC00b")); }
+
+    @Test public void nodeId_string_11()
+    { testStringNoInline(NodeFactory.createLiteralString("ab\uD83D")); }
+
+    @Test public void nodeId_string_12()
+    { testStringNoInline(NodeFactory.createLiteralString("\uDE00\uD83D")); }
+
+    @Test public void nodeId_string_13() {
+        // A surrogate pair.
+        Node n = NodeFactory.createLiteralString("a\uD83D\uDE00");
+        NodeId nodeId = NodeIdInline.inlineString(n);
+        assertNotNull(nodeId);
+        assertEquals(n, NodeId.extract(nodeId));
+    }
+
+    @Test public void nodeId_langString_surrogate()
+    { testStringNoInline(NodeFactory.createLiteralLang("a\uD800", "en")); }
+
+    @Test public void nodeId_langString_1()
+    { testString("'abc'@en"); }
+
+    @Test public void nodeId_langString_2()
+    { testString("'12345'@fr"); }
+
+    @Test public void nodeId_langString_3()
+    { testStringNoInline("'123456'@fr"); }
+
+    @Test public void nodeId_langString_4()
+    { testStringNoInline("'abc'@en-GB"); }
+
+    @Test public void nodeId_langString_5()
+    { testString("''@de"); }
+
+    @Test public void nodeId_string_off() {
+        Node n = NodeFactoryExtra.parseNode("'abc'");
+        assertEquals(SystemTDB.enableInlineStrings, NodeId.inline(n) != null);
+    }
+
+    @Test public void nodeId_string_order() {
+        // Packed values sort in the byte order of the strings.
+        long a = ShortStringNode.packString("ab");
+        long b = ShortStringNode.packString("abc");
+        long c = ShortStringNode.packString("b");
+        assertTrue(a < b);
+        assertTrue(b < c);
+    }
+
+    private void testString(String x) { testString(x, x); }
+
+    private void testString(String x, String expected) {
+        Node n = NodeFactoryExtra.parseNode(x);
+        NodeId nodeId = NodeIdInline.inlineString(n);
+        assertNotNull("Expected inlining: "+x, nodeId);
+        Node n2 = NodeId.extract(nodeId);
+        assertEquals("Not same term", NodeFactoryExtra.parseNode(expected), n2);
+    }
+
+    private void testStringNoInline(String x) {
+        testStringNoInline(NodeFactoryExtra.parseNode(x));
+    }
+
+    private void testStringNoInline(Node n) {
+        NodeId nodeId = NodeIdInline.inlineString(n);
+        assertNull("Converted NodeId but expected no inline form: "+n, nodeId);
+    }
+
     private void test(String x) { test(x, x); }
 
     private void test(String x, String expected) {
@@ -302,6 +302,113 @@ public class TestDatabaseCompact
         assertEquals(2, counter.get());
     }
 
+    @Test public void compact_online_1() {
+        assumeFalse(Sys.isWindows);
+        DatasetGraph dsg = DatabaseMgr.connectDatasetGraph(dir);
+        DatasetGraphSwitchable dsgs = (DatasetGraphSwitchable)dsg;
+        DatasetGraph dsg1 = dsgs.get();
+        Location loc1 = ((DatasetGraphTDB)dsg1).getLocation();
+
+        Txn.executeWrite(dsg, ()-> {
+            dsg.add(quad2);
+            dsg.add(quad1);
+            dsg.getDefaultGraph().getPrefixMapping().setNsPrefix("ex", "http://example/");
+        });
+        DatabaseMgr.compactOnline(dsg, false);
+
+        assertFalse(StoreConnection.isSetup(loc1));
+        DatasetGraph dsg2 = dsgs.get();
+        assertNotEquals(dsg1, dsg2);
+        assertFalse(((DatasetGraphTDB)dsg1).getChangeCapture().isActive());
+
+        Txn.executeRead(dsg, ()-> {
+            assertTrue(dsg.contains(quad2));
+            assertTrue(dsg.contains(quad1));
+            assertEquals("http://example/", dsg.getDefaultGraph().getPrefixMapping().getNsPrefixURI("ex"));
+        });
+    }
+
+    @Test public void compact_packed_1() {
+        assumeFalse(Sys.isWindows);
+        int x = SystemTDB.CompactThreads;
+        try {
+            SystemTDB.CompactThreads = 2;
+            DatasetGraph dsg = DatabaseMgr.connectDatasetGraph(dir);
+            DatasetGraphSwitchable dsgs = (DatasetGraphSwitchable)dsg;
+            DatasetGraph dsg1 = dsgs.get();
+            Txn.executeWrite(dsg, ()-> {
+                for ( int i = 0 ; i < 2000 ; i++ ) {
+                    dsg.add(SSE.parseQuad("(_ <s> <p> 'abc"+i+"')"));
+                    dsg.add(SSE.parseQuad("(<g> <s> <p> 'abc"+i+"')"));
+                }
+                dsg.getDefaultGraph().getPrefixMapping().setNsPrefix("ex", "http://example/");
+            });
+            DatabaseMgr.compact(dsg, true);
+            assertNotEquals(dsg1, dsgs.get());
+            Txn.executeRead(dsg, ()-> {
+                assertEquals(2000, dsg.getDefaultGraph().size());
+                assertEquals(2000, dsg.getGraph(SSE.parseNode("<g>")).size());
+                assertTrue(dsg.contains(SSE.parseQuad("(<g> <s> <p> 'abc1999')")));
+                assertEquals(2, dsg.stream(null, null, null, SSE.parseNode("'abc99'")).count());
+                assertEquals("http://example/", dsg.getDefaultGraph().getPrefixMapping().getNsPrefixURI("ex"));
+            });
+            // The compacted database is usable for update.
+            Txn.executeWrite(dsg, ()->dsg.add(quad1));
+            Txn.executeRead(dsg, ()->assertTrue(dsg.contains(quad1)));
+        } finally {
+            SystemTDB.CompactThreads = x;
+        }
+    }
+
+    @Test public void compact_online_concurrent_writer() throws Exception {
+        assumeFalse(Sys.isWindows);
+        compact_online_concurrent_writer_test();
+    }
+
+    @Test public void compact_online_packed_concurrent_writer() throws Exception {
+        assumeFalse(Sys.isWindows);
+        int x = SystemTDB.CompactThreads;
+        try {
+            SystemTDB.CompactThreads = 3;
+            compact_online_concurrent_writer_test();
+        } finally {
+            SystemTDB.CompactThreads = x;
+        }
+    }
+
+    private void compact_online_concurrent_writer_test() throws Exception {
+        DatasetGraph dsg = DatabaseMgr.connectDatasetGraph(dir);
+        Txn.executeWrite(dsg, ()-> {
+            for ( int i = 0 ; i < 1000 ; i++ )
+                dsg.add(SSE.parseQuad("(<g> <s> <p> "+i+")"));
+        });
+
+        // Writer running during compaction: adds to the default graph, deletes from the named graph.
+        AtomicInteger written = new AtomicInteger(0);
+        Thread writer = new Thread(()->{
+            for ( int i = 0 ; i < 200 ; i++ ) {
+                int x = i;
+                Txn.executeWrite(dsg, ()->{
+                    dsg.add(SSE.parseQuad("(_ <s> <q> "+x+")"));
+                    dsg.delete(SSE.parseQuad("(<g> <s> <p> "+x+")"));
+                });
+                written.incrementAndGet();
+            }
+        });
+        writer.start();
+        DatabaseMgr.compactOnline(dsg, true);
+        writer.join();
+
+        assertEquals(200, written.get());
+        Txn.executeRead(dsg, ()-> {
+            for ( int i = 0 ; i < 200 ; i++ ) {
+                assertTrue(dsg.contains(SSE.parseQuad("(_ <s> <q> "+i+")")));
+                assertFalse(dsg.contains(SSE.parseQuad("(<g> <s> <p> "+i+")")));
+            }
+            assertEquals(800, dsg.getGraph(SSE.parseNode("<g>")).size());
+        });
+    }
+
     @Test public void compact_recovery_1() throws IOException {
         DatasetGraph dsg = DatabaseMgr.connectDatasetGraph(dir);
         Txn.executeWrite(dsg, ()->dsg.add(quad1));
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.xloader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestExternalSorter {
+    private Path tmpDir;
+
+    @Before public void before() throws IOException {
+        tmpDir = Files.createTempDirectory("sort");
+    }
+
+    @After public void after() throws IOException {
+        try ( Stream<Path> files = Files.list(tmpDir) ) {
+            // All run files removed by close()
+            assertFalse(files.findAny().isPresent());
+        }
+        Files.delete(tmpDir);
+    }
+
+    @Test public void sort_empty() {
+        try ( ExternalSorter sorter = new ExternalSorter(8, 8, false, tmpDir, 2, 1024, false) ) {
+            assertFalse(sorter.sorted().hasNext());
+        }
+    }
+
+    // Fits in one buffer - no run files.
+    @Test public void sort_memory_01() {
+        test(1000, 24, 16, false, 1024*1024, false);
+    }
+
+    @Test public void sort_memory_02() {
+        test(1000, 24, 16, true, 1024*1024, false);
+    }
+
+    @Test public void sort_runs_01() {
+        test(5000, 24, 24, false, 24*500, false);
+    }
+
+    @Test public void sort_runs_02() {
+        test(5000, 24, 16, true, 24*500, false);
+    }
+
+    @Test public void sort_runs_compressed() {
+        test(5000, 32, 32, true, 32*300, true);
+    }
+
+    // More runs than the merge fan-in so there are intermediate merges.
+    @Test public void sort_runs_multipass() {
+        test(3000, 16, 8, true, 16*10, false);
+    }
+
+    private void test(int N, int recordLength, int keyLength, boolean unique, int runSize, boolean compress) {
+        Random random = new Random(N);
+        List<byte[]> records = new ArrayList<>();
+        for ( int i = 0 ; i < N ; i++ ) {
+            byte[] r = new byte[recordLength];
+            // Small key space for duplicates; include bytes with the high bit set.
+            for ( int j = 0 ; j < keyLength ; j++ )
+                r[j] = (byte)(random.nextInt(3) * 0x70);
+            for ( int j = keyLength ; j < recordLength ; j++ )
+                r[j] = (byte)random.nextInt(256);
+            records.add(r);
+        }
+
+        Comparator<byte[]> keyOrder = (r1, r2) -> Arrays.compareUnsigned(r1, 0, keyLength, r2, 0, keyLength);
+        List<byte[]> expected = new ArrayList<>(records);
+        expected.sort(keyOrder);
+        if ( unique ) {
+            List<byte[]> x = new ArrayList<>();
+            for ( byte[] r : expected ) {
+                if ( x.isEmpty() || keyOrder.compare(x.get(x.size()-1), r) != 0 )
+                    x.add(r);
+            }
+            expected = x;
+        }
+
+        List<byte[]> actual = new ArrayList<>();
+        try ( ExternalSorter sorter = new ExternalSorter(recordLength, keyLength, unique, tmpDir, 3, runSize, compress) ) {
+            records.forEach(sorter::add);
+            assertEquals(N, sorter.size());
+            sorter.sorted().forEachRemaining(actual::add);
+        }
+
+        assertEquals(expected.size(), actual.size());
+        for ( int i = 0 ; i < expected.size() ; i++ ) {
+            assertEquals(0, keyOrder.compare(expected.get(i), actual.get(i)));
+            if ( keyLength == recordLength )
+                assertArrayEquals(expected.get(i), actual.get(i));
+        }
+        if ( !unique ) {
+            // Same multiset of records.
+            Comparator<byte[]> recordOrder = Arrays::compareUnsigned;
+            records.sort(recordOrder);
+            actual.sort(recordOrder);
+            for ( int i = 0 ; i < N ; i++ )
+                assertArrayEquals(records.get(i), actual.get(i));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb2.xloader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jena.atlas.io.IO;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.lib.FileOps;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.ConfigTest;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.jena.tdb2.sys.TDBInternal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Run the xloader steps with {@link BulkLoaderX#SortInProcess} set. */
+public class TestXLoaderSortInProcess {
+    private boolean sortInProcess;
+    private String dir;
+
+    @Before public void before() {
+        sortInProcess = BulkLoaderX.SortInProcess;
+        BulkLoaderX.SortInProcess = true;
+        dir = ConfigTest.getCleanDir();
+    }
+
+    @After public void after() {
+        BulkLoaderX.SortInProcess = sortInProcess;
+        FileOps.clearAll(dir);
+    }
+
+    @Test public void xloader_sort_java() {
+        DatasetGraph expected = DatasetGraphFactory.createTxnMem();
+        for ( int i = 0 ; i < 500 ; i++ ) {
+            Node s = NodeFactory.createURI("http://example/s"+(i%50));
+            Node p = NodeFactory.createURI("http://example/p"+(i%7));
+            Node o = (i%3 == 0) ? NodeFactory.createLiteralString("value "+(i%120)) : NodeFactory.createURI("http://example/o"+i);
+            expected.add(Quad.defaultGraphIRI, s, p, o);
+            expected.add(NodeFactory.createURI("http://example/g"+(i%4)), s, p, o);
+        }
+        // Inline values.
+        expected.add(SSE.parseQuad("(_ :s :p 123)"));
+
+        String datafile = Path.of(dir, "data.nq").toString();
+        try ( OutputStream out = IO.openOutputFile(datafile) ) {
+            RDFDataMgr.write(out, expected, Lang.NQUADS);
+        } catch (Exception ex) { throw new RuntimeException(ex); }
+
+        String DB = Path.of(dir, "DB").toString();
+        FileOps.ensureDir(DB);
+        XLoaderFiles loaderFiles = new XLoaderFiles(dir);
+        List<String> datafiles = List.of(datafile);
+
+        ProcBuildNodeTableX.exec(DB, loaderFiles, 2, null, datafiles);
+        ProcIngestDataX.exec(DB, loaderFiles, datafiles, false);
+        for ( String idx : List.of("SPO", "POS", "OSP", "GSPO", "GPOS", "GOSP", "SPOG", "POSG", "OSPG") )
+            ProcBuildIndexX.exec(DB, idx, 2, null, loaderFiles);
+
+        DatasetGraph dsg = DatabaseMgr.connectDatasetGraph(DB);
+        try {
+            Txn.executeRead(dsg, ()->{
+                Set<Quad> expectedQuads = Iter.toSet(expected.find());
+                Set<Quad> actualQuads = Iter.toSet(dsg.find());
+                assertEquals(expectedQuads, actualQuads);
+                // Lookups by term go through the node table index and the other indexes.
+                Node o = NodeFactory.createLiteralString("value 7");
+                List<Quad> x = new ArrayList<>();
+                dsg.find(Node.ANY, Node.ANY, Node.ANY, o).forEachRemaining(x::add);
+                assertEquals(Iter.count(expected.find(Node.ANY, Node.ANY, Node.ANY, o)), x.size());
+                assertTrue(dsg.contains(Quad.defaultGraphIRI, NodeFactory.createURI("http://example/s4"),
+                                        NodeFactory.createURI("http://example/p4"), NodeFactory.createURI("http://example/o4")));
+            });
+        } finally {
+            TDBInternal.expel(dsg, true);
+        }
+    }
+}